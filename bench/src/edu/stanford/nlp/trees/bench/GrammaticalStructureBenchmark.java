@@ -0,0 +1,71 @@
+package edu.stanford.nlp.trees.bench;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import edu.stanford.nlp.trees.*;
+import edu.stanford.nlp.util.Filter;
+
+
+/**
+ * Benchmarks of making a {@link GrammaticalStructure} of synthetic trees
+ * with a {@link GrammaticalStructureFactory}, which finds the heads of the
+ * trees, and the grammatical relations between them by matching the tregex
+ * patterns of the {@link EnglishGrammaticalRelations}.
+ * <p/>
+ * The English <code>GrammaticalStructure</code> class that the
+ * {@link PennTreebankLanguagePack} names is not part of this distribution,
+ * so the structures made are {@link EnglishRelationsStructure}s, which use
+ * the same relations and head finder.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GrammaticalStructureBenchmark {
+
+  static final int NUM_TREES = 200;
+
+  @Param({"10", "25", "50"})
+  int sentenceLength;
+
+  private List<Tree> trees;
+  private GrammaticalStructureFactory gsf;
+
+  @Setup
+  public void setUp() {
+    trees = SyntheticTreebank.trees(NUM_TREES, sentenceLength, SyntheticTreebank.DEFAULT_SEED);
+    gsf = new GrammaticalStructureFactory(EnglishRelationsStructure.class.getName(),
+                                          new PennTreebankLanguagePack().punctuationWordRejectFilter(),
+                                          new SemanticHeadFinder());
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(NUM_TREES)
+  public void newGrammaticalStructure(Blackhole bh) {
+    for (Tree t : trees) {
+      bh.consume(gsf.newGrammaticalStructure(t));
+    }
+  }
+
+
+  /**
+   * A <code>GrammaticalStructure</code> found with the {@link
+   * EnglishGrammaticalRelations}.
+   */
+  public static class EnglishRelationsStructure extends GrammaticalStructure {
+
+    private static final long serialVersionUID = 1L;
+
+    public EnglishRelationsStructure(Tree t, Filter<String> puncFilter, HeadFinder hf) {
+      super(t, EnglishGrammaticalRelations.values(), EnglishGrammaticalRelations.valuesLock(), hf, puncFilter);
+    }
+
+  }
+
+}
@@ -0,0 +1,56 @@
+package edu.stanford.nlp.trees.bench;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import edu.stanford.nlp.trees.CollinsHeadFinder;
+import edu.stanford.nlp.trees.HeadFinder;
+import edu.stanford.nlp.trees.Tree;
+
+
+/**
+ * Benchmarks of {@link CollinsHeadFinder#determineHead} on each phrasal
+ * node of synthetic trees.  The throughput is per tree.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HeadFinderBenchmark {
+
+  static final int NUM_TREES = 200;
+
+  @Param({"10", "25", "50"})
+  int sentenceLength;
+
+  private Tree[] phrases;
+  private HeadFinder hf;
+
+  @Setup
+  public void setUp() {
+    List<Tree> phraseList = new ArrayList<Tree>();
+    for (Tree t : SyntheticTreebank.trees(NUM_TREES, sentenceLength, SyntheticTreebank.DEFAULT_SEED)) {
+      for (Tree node : t) {
+        if ( ! node.isLeaf() && ! node.isPreTerminal()) {
+          phraseList.add(node);
+        }
+      }
+    }
+    phrases = phraseList.toArray(new Tree[phraseList.size()]);
+    hf = new CollinsHeadFinder();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(NUM_TREES)
+  public void determineHead(Blackhole bh) {
+    for (Tree phrase : phrases) {
+      bh.consume(hf.determineHead(phrase));
+    }
+  }
+
+}
@@ -0,0 +1,295 @@
+package edu.stanford.nlp.trees.bench;
+
+import java.io.*;
+import java.util.*;
+
+import edu.stanford.nlp.ling.StringLabelFactory;
+import edu.stanford.nlp.trees.LabeledScoredTreeFactory;
+import edu.stanford.nlp.trees.PennTreeReader;
+import edu.stanford.nlp.trees.Tree;
+import edu.stanford.nlp.trees.TreeReader;
+
+
+/**
+ * Makes Penn Treebank style trees of sentences of a given length, for the
+ * benchmarks to run on.  The trees come from a small context-free grammar
+ * of English noun phrases, prepositional phrases, relative clauses, verb
+ * phrases with modals, auxiliaries and sentential complements, and
+ * coordination, with a few words of each part of speech.  They are made
+ * from a fixed random seed, so that every run of a benchmark sees the same
+ * trees.
+ * <p/>
+ * Its <code>main</code> method writes treebank files of them:
+ * <p/>
+ * <code>java edu.stanford.nlp.trees.bench.SyntheticTreebank numTrees outputDirectory length ...</code>
+ * <p/>
+ * writes <code>numTrees</code> trees of sentences of each given length to
+ * the file <code>synthetic-</code><i>length</i><code>.mrg</code> in
+ * <code>outputDirectory</code>.
+ */
+public class SyntheticTreebank {
+
+  /** The seed the benchmarks make their trees with. */
+  public static final long DEFAULT_SEED = 20090331L;
+
+  private static final String[] DT = { "the", "a", "this", "every", "some" };
+  private static final String[] JJ = { "big", "old", "red", "happy", "recent", "foreign" };
+  private static final String[] NN = { "dog", "market", "company", "year", "report", "price", "man" };
+  private static final String[] NNS = { "dogs", "markets", "shares", "years", "investors", "prices" };
+  private static final String[] NNP = { "John", "Mary", "Smith", "Democrats", "Republicans", "Boston" };
+  private static final String[] PRP = { "it", "he", "they", "we" };
+  private static final String[] IN = { "of", "in", "on", "with", "from", "after" };
+  private static final String[] VBD = { "saw", "bought", "sold", "expected", "rose", "took" };
+  private static final String[] VBD_INTRANSITIVE = { "slept", "rose", "fell", "arrived" };
+  private static final String[] VBD_SAY = { "said", "thought", "reported", "believed" };
+  private static final String[] VB = { "see", "buy", "sell", "expect", "take", "help" };
+  private static final String[] VBN = { "seen", "bought", "sold", "expected", "taken" };
+  private static final String[] VBZ = { "has", "is" };
+  private static final String[] MD = { "will", "would", "could", "may", "ca" };
+  private static final String[] CC = { "and", "or", "but" };
+  private static final String[] WDT = { "that", "which" };
+  private static final String[] COMPLEMENTIZER = { "that", "whether" };
+
+  private final Random random;
+  private final StringBuilder sb = new StringBuilder();
+
+
+  private SyntheticTreebank(long seed) {
+    random = new Random(seed);
+  }
+
+  /**
+   * Returns the bracketings, one to a line, of <code>numTrees</code> trees
+   * of sentences of <code>sentenceLength</code> words (counting the final
+   * punctuation), each with a root node labeled ROOT.
+   *
+   * @param numTrees The number of trees
+   * @param sentenceLength The number of words in each sentence, at least 3
+   * @param seed The seed of the random choices of rules and words
+   * @return The bracketings
+   */
+  public static List<String> bracketings(int numTrees, int sentenceLength, long seed) {
+    if (sentenceLength < 3) {
+      throw new IllegalArgumentException("Sentence length must be at least 3: " + sentenceLength);
+    }
+    SyntheticTreebank generator = new SyntheticTreebank(seed);
+    List<String> bracketings = new ArrayList<String>(numTrees);
+    for (int i = 0; i < numTrees; i++) {
+      bracketings.add(generator.sentence(sentenceLength));
+    }
+    return bracketings;
+  }
+
+  /**
+   * Returns the trees whose bracketings {@link #bracketings} gives, as read
+   * by a <code>PennTreeReader</code> into <code>LabeledScoredTree</code>s
+   * with <code>StringLabel</code>s, as tregex reads them.
+   *
+   * @param numTrees The number of trees
+   * @param sentenceLength The number of words in each sentence, at least 3
+   * @param seed The seed of the random choices of rules and words
+   * @return The trees
+   */
+  public static List<Tree> trees(int numTrees, int sentenceLength, long seed) {
+    List<Tree> trees = new ArrayList<Tree>(numTrees);
+    TreeReader tr = new PennTreeReader(new StringReader(text(bracketings(numTrees, sentenceLength, seed))),
+                                       new LabeledScoredTreeFactory(new StringLabelFactory()));
+    try {
+      for (Tree t; (t = tr.readTree()) != null; ) {
+        trees.add(t);
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);  // cannot happen, reading a string
+    }
+    return trees;
+  }
+
+  /** Joins bracketings into the text of a treebank file, one tree to a line. */
+  public static String text(List<String> bracketings) {
+    StringBuilder text = new StringBuilder();
+    for (String bracketing : bracketings) {
+      text.append(bracketing).append('\n');
+    }
+    return text.toString();
+  }
+
+
+  private String sentence(int n) {
+    sb.setLength(0);
+    sb.append("(ROOT (S ");
+    int k = 1 + random.nextInt(Math.min(n - 2, n / 3 + 1));
+    np(k);
+    sb.append(' ');
+    vp(n - 1 - k);
+    sb.append(" (. .)))");
+    return sb.toString();
+  }
+
+  /** A clause of exactly n words, without final punctuation. */
+  private void clause(int n) {
+    sb.append("(S ");
+    int k = 1 + random.nextInt(Math.min(n - 1, n / 3 + 1));
+    np(k);
+    sb.append(' ');
+    vp(n - k);
+    sb.append(')');
+  }
+
+  private void np(int n) {
+    sb.append("(NP ");
+    if (n == 1) {
+      switch (random.nextInt(4)) {
+      case 0: word("PRP", PRP); break;
+      case 1: word("NNS", NNS); break;
+      case 2: word("NNP", NNP); break;
+      default: word("NN", NN); break;
+      }
+    } else if (n == 2) {
+      if (random.nextBoolean()) {
+        word("DT", DT);
+        sb.append(' ');
+        word("NN", NN);
+      } else {
+        word("NNP", NNP);
+        sb.append(' ');
+        word("NNP", NNP);
+      }
+    } else if (n <= 4 && random.nextBoolean()) {
+      word("DT", DT);
+      for (int i = 2; i < n; i++) {
+        sb.append(' ');
+        word("JJ", JJ);
+      }
+      sb.append(' ');
+      word("NN", NN);
+    } else if (n >= 5 && random.nextInt(4) == 0) {
+      int k = 2 + random.nextInt(n - 4);
+      np(k);
+      sb.append(' ');
+      word("CC", CC);
+      sb.append(' ');
+      np(n - k - 1);
+    } else if (n >= 5 && random.nextInt(3) == 0) {
+      int k = 2 + random.nextInt(n - 4);
+      np(k);
+      sb.append(" (SBAR (WHNP ");
+      word("WDT", WDT);
+      sb.append(") (S ");
+      vp(n - k - 1);
+      sb.append("))");
+    } else {
+      int k = 1 + random.nextInt(n - 2);
+      np(k);
+      sb.append(' ');
+      pp(n - k);
+    }
+    sb.append(')');
+  }
+
+  private void pp(int n) {
+    sb.append("(PP ");
+    word("IN", IN);
+    sb.append(' ');
+    np(n - 1);
+    sb.append(')');
+  }
+
+  private void vp(int n) {
+    sb.append("(VP ");
+    if (n == 1) {
+      word("VBD", VBD_INTRANSITIVE);
+    } else if (n == 2) {
+      word("VBD", VBD);
+      sb.append(' ');
+      np(1);
+    } else {
+      switch (random.nextInt(n >= 5 ? 6 : 5)) {
+      case 0:
+        word("MD", MD);
+        sb.append(" (VP ");
+        word("VB", VB);
+        sb.append(' ');
+        np(n - 2);
+        sb.append(')');
+        break;
+      case 1:
+        word("VBZ", VBZ);
+        sb.append(" (VP ");
+        word("VBN", VBN);
+        sb.append(' ');
+        np(n - 2);
+        sb.append(')');
+        break;
+      case 2:
+        if (n >= 4) {
+          int k = 1 + random.nextInt(n - 3);
+          word("VBD", VBD);
+          sb.append(' ');
+          np(k);
+          sb.append(' ');
+          pp(n - 1 - k);
+          break;
+        }
+        // fall through
+      case 3:
+        if (n >= 4) {
+          word("VBD", VBD_SAY);
+          sb.append(" (SBAR ");
+          word("IN", COMPLEMENTIZER);
+          sb.append(' ');
+          clause(n - 2);
+          sb.append(')');
+          break;
+        }
+        // fall through
+      case 4:
+        word("VBD", VBD);
+        sb.append(' ');
+        np(n - 1);
+        break;
+      default: {
+        int k = 2 + random.nextInt(n - 4);
+        vp(k);
+        sb.append(' ');
+        word("CC", CC);
+        sb.append(' ');
+        vp(n - k - 1);
+        break;
+      }
+      }
+    }
+    sb.append(')');
+  }
+
+  private void word(String tag, String[] words) {
+    sb.append('(').append(tag).append(' ').append(words[random.nextInt(words.length)]).append(')');
+  }
+
+
+  /**
+   * Writes synthetic treebank files.  See the class comment for usage.
+   *
+   * @param args Command-line arguments
+   * @throws IOException If a file cannot be written
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length < 3) {
+      System.err.println("Usage: java edu.stanford.nlp.trees.bench.SyntheticTreebank numTrees outputDirectory length ...");
+      return;
+    }
+    int numTrees = Integer.parseInt(args[0]);
+    File outputDirectory = new File(args[1]);
+    outputDirectory.mkdirs();
+    for (int i = 2; i < args.length; i++) {
+      int length = Integer.parseInt(args[i]);
+      File file = new File(outputDirectory, "synthetic-" + length + ".mrg");
+      Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+      try {
+        out.write(text(bracketings(numTrees, length, DEFAULT_SEED)));
+      } finally {
+        out.close();
+      }
+    }
+  }
+
+}
@@ -0,0 +1,64 @@
+package edu.stanford.nlp.trees.bench;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import edu.stanford.nlp.ling.StringLabelFactory;
+import edu.stanford.nlp.trees.LabeledScoredTreeFactory;
+import edu.stanford.nlp.trees.PennTreeReader;
+import edu.stanford.nlp.trees.StreamingPennTreeReader;
+import edu.stanford.nlp.trees.Tree;
+import edu.stanford.nlp.trees.TreeFactory;
+import edu.stanford.nlp.trees.TreeReader;
+
+
+/**
+ * Benchmarks of reading the text of synthetic trees, with a
+ * {@link PennTreeReader} and with a {@link StreamingPennTreeReader}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TreeReaderBenchmark {
+
+  static final int NUM_TREES = 200;
+
+  @Param({"10", "25", "50"})
+  int sentenceLength;
+
+  private String text;
+  private TreeFactory tf;
+
+  @Setup
+  public void setUp() {
+    text = SyntheticTreebank.text(SyntheticTreebank.bracketings(NUM_TREES, sentenceLength, SyntheticTreebank.DEFAULT_SEED));
+    tf = new LabeledScoredTreeFactory(new StringLabelFactory());
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(NUM_TREES)
+  public void pennTreeReader(Blackhole bh) throws IOException {
+    read(new PennTreeReader(new StringReader(text), tf), bh);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(NUM_TREES)
+  public void streamingPennTreeReader(Blackhole bh) throws IOException {
+    read(new StreamingPennTreeReader(new StringReader(text), tf), bh);
+  }
+
+  private static void read(TreeReader tr, Blackhole bh) throws IOException {
+    for (Tree t; (t = tr.readTree()) != null; ) {
+      bh.consume(t);
+    }
+    tr.close();
+  }
+
+}
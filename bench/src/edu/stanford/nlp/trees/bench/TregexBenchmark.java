@@ -0,0 +1,99 @@
+package edu.stanford.nlp.trees.bench;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import edu.stanford.nlp.trees.Tree;
+import edu.stanford.nlp.trees.tregex.ParseException;
+import edu.stanford.nlp.trees.tregex.TregexMatcher;
+import edu.stanford.nlp.trees.tregex.TregexPattern;
+
+
+/**
+ * Benchmarks of compiling tregex patterns and matching them against trees.
+ * The matching benchmarks are run with a pattern for each family of
+ * relations, over {@link #NUM_TREES} synthetic trees of each sentence
+ * length, and report the throughput per tree.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TregexBenchmark {
+
+  static final int NUM_TREES = 200;
+
+  /** A pattern for each family of relations, by the name of the family. */
+  static final Map<String, String> FAMILY_PATTERNS = new LinkedHashMap<String, String>();
+
+  static {
+    FAMILY_PATTERNS.put("dominance", "VP < NP");
+    FAMILY_PATTERNS.put("descendant", "S << NN");
+    FAMILY_PATTERNS.put("ancestor", "DT >> VP");
+    FAMILY_PATTERNS.put("sister", "NP $ PP");
+    FAMILY_PATTERNS.put("immediateSister", "VBD $+ NP");
+    FAMILY_PATTERNS.put("precedence", "DT .. NNS");
+    FAMILY_PATTERNS.put("immediatePrecedence", "JJ . NN");
+    FAMILY_PATTERNS.put("edgeDescendant", "NP <<, DT");
+    FAMILY_PATTERNS.put("unary", "NP <<: NN");
+    FAMILY_PATTERNS.put("headship", "NP <<# NN");
+    FAMILY_PATTERNS.put("chain", "S <+(VP) VB");
+    FAMILY_PATTERNS.put("coordination", "NP < (NP $+ CC) | < (CC $+ NP)");
+    FAMILY_PATTERNS.put("named", "VP < (VBD=verb $+ (NP=object < DT))");
+  }
+
+  @Param({"10", "25", "50"})
+  int sentenceLength;
+
+  @Param({"dominance", "descendant", "ancestor", "sister", "immediateSister",
+          "precedence", "immediatePrecedence", "edgeDescendant", "unary",
+          "headship", "chain", "coordination", "named"})
+  String family;
+
+  private List<Tree> trees;
+  private TregexPattern pattern;
+
+  @Setup
+  public void setUp() throws ParseException {
+    trees = SyntheticTreebank.trees(NUM_TREES, sentenceLength, SyntheticTreebank.DEFAULT_SEED);
+    pattern = TregexPattern.compile(FAMILY_PATTERNS.get(family));
+  }
+
+  /** Compiles the family's pattern. */
+  @Benchmark
+  public TregexPattern compile() throws ParseException {
+    return TregexPattern.compile(FAMILY_PATTERNS.get(family));
+  }
+
+  /** Finds all the matches of the family's pattern in each tree. */
+  @Benchmark
+  @OperationsPerInvocation(NUM_TREES)
+  public int find() {
+    int matches = 0;
+    for (Tree t : trees) {
+      TregexMatcher m = pattern.matcher(t);
+      while (m.find()) {
+        matches++;
+      }
+    }
+    return matches;
+  }
+
+  /** Tries the family's pattern at each node of each tree. */
+  @Benchmark
+  @OperationsPerInvocation(NUM_TREES)
+  public void matchesAt(Blackhole bh) {
+    for (Tree t : trees) {
+      TregexMatcher m = pattern.matcher(t);
+      for (Tree node : t) {
+        bh.consume(m.matchesAt(node));
+      }
+    }
+  }
+
+}
@@ -0,0 +1,78 @@
+package edu.stanford.nlp.trees.bench;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import edu.stanford.nlp.trees.EnglishPTBTreebankCorrector;
+import edu.stanford.nlp.trees.Tree;
+import edu.stanford.nlp.trees.tregex.TregexPattern;
+import edu.stanford.nlp.trees.tregex.TregexPatternSet;
+import edu.stanford.nlp.trees.tregex.tsurgeon.Tsurgeon;
+import edu.stanford.nlp.trees.tregex.tsurgeon.TsurgeonPattern;
+import edu.stanford.nlp.util.Pair;
+
+
+/**
+ * Benchmarks of running the {@link EnglishPTBTreebankCorrector} script
+ * over synthetic trees with {@link Tsurgeon#processPatternsOnTree}.  Since
+ * the operations change the trees, each tree is copied before they are
+ * run on it; {@link #copy} measures the copying alone.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TsurgeonBenchmark {
+
+  static final int NUM_TREES = 200;
+
+  @Param({"10", "25", "50"})
+  int sentenceLength;
+
+  private List<Tree> trees;
+  private List<Pair<TregexPattern, TsurgeonPattern>> ops;
+  private TregexPatternSet patternSet;
+
+  @Setup
+  public void setUp() {
+    trees = SyntheticTreebank.trees(NUM_TREES, sentenceLength, SyntheticTreebank.DEFAULT_SEED);
+    ops = new EnglishPTBTreebankCorrector().getOperations();
+    patternSet = Tsurgeon.getPatternSet(ops);
+  }
+
+  /** Runs the corrections on a copy of each tree, one pattern at a time. */
+  @Benchmark
+  @OperationsPerInvocation(NUM_TREES)
+  public void processPatternsOnTree(Blackhole bh) {
+    for (Tree t : trees) {
+      bh.consume(Tsurgeon.processPatternsOnTree(ops, t.deepCopy()));
+    }
+  }
+
+  /**
+   * Runs the corrections on a copy of each tree, skipping the patterns
+   * their pattern set shows cannot match.
+   */
+  @Benchmark
+  @OperationsPerInvocation(NUM_TREES)
+  public void processPatternsOnTreeWithPatternSet(Blackhole bh) {
+    for (Tree t : trees) {
+      bh.consume(Tsurgeon.processPatternsOnTree(ops, patternSet, t.deepCopy()));
+    }
+  }
+
+  /** Copies each tree. */
+  @Benchmark
+  @OperationsPerInvocation(NUM_TREES)
+  public void copy(Blackhole bh) {
+    for (Tree t : trees) {
+      bh.consume(t.deepCopy());
+    }
+  }
+
+}
@@ -0,0 +1,272 @@
+package edu.stanford.nlp.io;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Writer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A <code>Writer</code> for printing a lot of output, such as the results of
+ * a search over a treebank.  The text is kept in a large buffer, and only
+ * written to the underlying <code>Writer</code> (and that flushed) when the
+ * buffer holds <code>flushSize</code> characters, when
+ * <code>flushMillis</code> milliseconds have gone by since it was last
+ * written, or when this is flushed or closed.  A <code>PrintWriter</code> over
+ * this should not be made with automatic flushing, or the buffer would be
+ * written at every line.
+ * <p/>
+ * Optionally, the buffer is written by a thread of its own, so that the
+ * thread producing the output need not wait for a slow stream.  That thread
+ * also writes the buffer out when the time is up even if nothing more is
+ * printed, so output still appears while a long search finds nothing.  An
+ * error in writing is thrown from the next call after it happens.
+ */
+public class BatchingWriter extends Writer {
+
+  public static final int DEFAULT_FLUSH_SIZE = 1 << 16;
+  public static final long DEFAULT_FLUSH_MILLIS = 1000;
+
+  /** The most batches waiting for the writer thread, after which printing waits for it. */
+  private static final int MAX_PENDING = 4;
+
+  private final Writer out;
+  private final int flushSize;
+  private final long flushMillis;
+
+  /** The text not yet written out, which is also the lock for it and for <code>lastWritten</code>. */
+  private final StringBuilder buffer;
+  private long lastWritten;
+  private boolean closed; // = false;
+
+  /** Where batches wait for the writer thread, or null if there is none. */
+  private final BlockingQueue<Batch> pending;
+  private final Thread writerThread;
+  private volatile IOException writeError; // = null;
+
+
+  /** A batch of text for the writer thread, and who, if anyone, is waiting for it to be written. */
+  private static class Batch {
+    final String text;
+    final CountDownLatch written;
+    final boolean last;
+
+    Batch(String text, CountDownLatch written, boolean last) {
+      this.text = text;
+      this.written = written;
+      this.last = last;
+    }
+  }
+
+
+  /**
+   * Makes a <code>BatchingWriter</code> with the default size and time
+   * thresholds, which writes on the calling thread.
+   */
+  public BatchingWriter(Writer out) {
+    this(out, DEFAULT_FLUSH_SIZE, DEFAULT_FLUSH_MILLIS, false);
+  }
+
+  /**
+   * Makes a <code>BatchingWriter</code>.
+   *
+   * @param out Where the text is written
+   * @param flushSize How many characters may be buffered before they are written
+   * @param flushMillis How long, in milliseconds, text may be buffered before it
+   *     is written, or 0 or less for no time limit
+   * @param useWriterThread Whether a thread of its own writes the text
+   */
+  public BatchingWriter(Writer out, int flushSize, long flushMillis, boolean useWriterThread) {
+    this.out = out;
+    this.flushSize = flushSize;
+    this.flushMillis = flushMillis;
+    buffer = new StringBuilder(flushSize + 1024);
+    lastWritten = System.currentTimeMillis();
+    if (useWriterThread) {
+      pending = new ArrayBlockingQueue<Batch>(MAX_PENDING);
+      writerThread = new Thread(new Runnable() {
+        public void run() {
+          writeBatches();
+        }
+      }, "BatchingWriter");
+      writerThread.setDaemon(true);
+      writerThread.start();
+    } else {
+      pending = null;
+      writerThread = null;
+    }
+  }
+
+
+  @Override
+  public void write(char[] cbuf, int off, int len) throws IOException {
+    synchronized (lock) {
+      ensureOpen();
+      String text;
+      synchronized (buffer) {
+        buffer.append(cbuf, off, len);
+        text = takeBufferIfDue();
+      }
+      if (text != null) {
+        send(text, false, false);
+      }
+    }
+  }
+
+  @Override
+  public void write(String str, int off, int len) throws IOException {
+    synchronized (lock) {
+      ensureOpen();
+      String text;
+      synchronized (buffer) {
+        buffer.append(str, off, off + len);
+        text = takeBufferIfDue();
+      }
+      if (text != null) {
+        send(text, false, false);
+      }
+    }
+  }
+
+  /** Writes out everything printed so far, and waits until it has been. */
+  @Override
+  public void flush() throws IOException {
+    synchronized (lock) {
+      ensureOpen();
+      send(takeBuffer(), true, false);
+    }
+  }
+
+  /**
+   * Writes out everything printed so far, stops the writer thread, if any,
+   * and closes the underlying <code>Writer</code>.
+   */
+  @Override
+  public void close() throws IOException {
+    synchronized (lock) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      try {
+        send(takeBuffer(), true, true);
+      } finally {
+        if (writerThread == null) {
+          out.close();
+        }
+      }
+    }
+  }
+
+
+  private void ensureOpen() throws IOException {
+    if (closed) {
+      throw new IOException("Writer closed");
+    }
+    if (writeError != null) {
+      throw writeError;
+    }
+  }
+
+  /** Empties the buffer, returning what was in it. */
+  private String takeBuffer() {
+    synchronized (buffer) {
+      String text = buffer.toString();
+      buffer.setLength(0);
+      lastWritten = System.currentTimeMillis();
+      return text;
+    }
+  }
+
+  /**
+   * Empties the buffer, returning what was in it, if it is full or has held
+   * text for too long, or else returns null.
+   */
+  private String takeBufferIfDue() {
+    synchronized (buffer) {
+      if (buffer.length() == 0) {
+        return null;
+      }
+      if (buffer.length() >= flushSize ||
+          (flushMillis > 0 && System.currentTimeMillis() - lastWritten >= flushMillis)) {
+        return takeBuffer();
+      }
+      return null;
+    }
+  }
+
+  /**
+   * Hands text to the writer thread, or writes it out if there is none.
+   * Must be called holding <code>lock</code>, so that texts are sent in the
+   * order they were printed, but not the buffer's lock, which the writer
+   * thread takes.
+   *
+   * @param wait Whether to wait until the text has been written
+   * @param last Whether nothing will be written after this, so the writer
+   *     thread should close the underlying <code>Writer</code> and stop
+   */
+  private void send(String text, boolean wait, boolean last) throws IOException {
+    if (writerThread == null) {
+      out.write(text);
+      out.flush();
+      return;
+    }
+    CountDownLatch written = wait ? new CountDownLatch(1) : null;
+    try {
+      pending.put(new Batch(text, written, last));
+      if (written != null) {
+        written.await();
+      }
+    } catch (InterruptedException e) {
+      throw new InterruptedIOException();
+    }
+    if (writeError != null) {
+      throw writeError;
+    }
+  }
+
+  /** What the writer thread does: writes out the batches it is given, and the buffer when the time is up. */
+  private void writeBatches() {
+    while (true) {
+      Batch batch;
+      try {
+        if (flushMillis > 0) {
+          batch = pending.poll(flushMillis, TimeUnit.MILLISECONDS);
+        } else {
+          batch = pending.take();
+        }
+      } catch (InterruptedException e) {
+        return;
+      }
+      if (batch == null) {
+        // nothing was handed over in time, so take what has been printed since
+        String text = takeBufferIfDue();
+        if (text == null) {
+          continue;
+        }
+        batch = new Batch(text, null, false);
+      }
+      try {
+        if (writeError == null) {
+          out.write(batch.text);
+          out.flush();
+          if (batch.last) {
+            out.close();
+          }
+        }
+      } catch (IOException e) {
+        writeError = e;
+      } finally {
+        if (batch.written != null) {
+          batch.written.countDown();
+        }
+      }
+      if (batch.last) {
+        return;
+      }
+    }
+  }
+
+}
@@ -0,0 +1,440 @@
+package edu.stanford.nlp.trees;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+import edu.stanford.nlp.io.FileSequentialCollection;
+import edu.stanford.nlp.io.RuntimeIOException;
+import edu.stanford.nlp.ling.HasIndex;
+import edu.stanford.nlp.ling.StringLabelFactory;
+
+
+/**
+ * A <code>BinaryTreebank</code> is a <code>Treebank</code> of trees stored
+ * in the binary format written by {@link BinaryTreebankWriter}.  Like a
+ * {@link DiskTreebank}, it stores merely the paths of its files, and reads
+ * them when it is iterated over.  But rather than tokenizing and parsing
+ * the text of each tree, it maps each file into memory, and builds the
+ * trees from the node arrays in the file as they are asked for.  The trees
+ * of a file can also be got at individually by number, through {@link
+ * TreeFile}, without building the others.
+ * <p/>
+ * A binary treebank file (by default, with the suffix "trb") holds the
+ * trees of one text treebank file.  All numbers are big-endian ints.  The
+ * file starts with a magic number, a version number, and the name of the
+ * file it was made from, as a byte count and UTF-8 bytes.  There follows a
+ * dictionary of all the node labels in the file: its size, and then each
+ * label, written in the same way.  Then comes the number
+ * of trees, <i>n</i>, and a table of <i>n</i>+1 offsets: the nodes of tree
+ * <i>i</i> are those numbered from offset <i>i</i> up to offset
+ * <i>i</i>+1.  Last come the node arrays, one after the other, each with a
+ * value for every node in the file: the label (as an index into the
+ * dictionary, or -1 for none), first child, next sibling, parent, and the
+ * left and right edges of the span of leaves under the node.  The nodes of
+ * each tree are in preorder, and the child, sibling and parent of a node
+ * are numbered from the tree's first node (and are -1 if there are none).
+ * <p/>
+ * Only the label values of the nodes are stored, so the trees are built
+ * with labels made from Strings, as by a {@link PennTreeReader}.
+ */
+public final class BinaryTreebank extends Treebank {
+
+  public static final String DEFAULT_BINARY_TREE_FILE_SUFFIX = "trb";
+
+  static final int MAGIC = 0x54524221; // "TRB!"
+  static final int VERSION = 1;
+
+  static final int LABEL = 0;
+  static final int FIRST_CHILD = 1;
+  static final int NEXT_SIBLING = 2;
+  static final int PARENT = 3;
+  static final int LEFT_EDGE = 4;
+  static final int RIGHT_EDGE = 5;
+  static final int NUM_ARRAYS = 6;
+
+  private final TreeFactory tf;
+
+  private final ArrayList<File> filePaths = new ArrayList<File>();
+  private final ArrayList<FileFilter> fileFilters = new ArrayList<FileFilter>();
+
+  private TreeFile currentFile; // = null;
+
+  private int currentTreeNumber = -1;
+
+
+  /**
+   * Create a new BinaryTreebank.  The trees are made with a
+   * <code>LabeledScoredTreeFactory</code> with <code>StringLabel</code>s.
+   */
+  public BinaryTreebank() {
+    this(new LabeledScoredTreeFactory(new StringLabelFactory()));
+  }
+
+  /**
+   * Create a new BinaryTreebank.
+   *
+   * @param tf The factory used to build the trees that are read
+   */
+  public BinaryTreebank(TreeFactory tf) {
+    this.tf = tf;
+  }
+
+  /**
+   * Empty a <code>Treebank</code>.
+   */
+  @Override
+  public void clear() {
+    filePaths.clear();
+    fileFilters.clear();
+  }
+
+  /**
+   * Load trees from given directory.  As with a <code>DiskTreebank</code>,
+   * this just records the paths to be processed, and actually processes
+   * them at apply time.
+   *
+   * @param path file or directory to load from
+   * @param filt a FilenameFilter of files to load
+   */
+  @Override
+  public void loadPath(File path, FileFilter filt) {
+    filePaths.add(path);
+    fileFilters.add(filt);
+  }
+
+  /**
+   * Load a sequence of trees from given file or directory and its
+   * subdirectories.  In a directory, the trees must reside in files with
+   * the suffix "trb".
+   *
+   * @param path File specification
+   */
+  @Override
+  public void loadPath(File path) {
+    loadPath(path, DEFAULT_BINARY_TREE_FILE_SUFFIX, true);
+  }
+
+  /**
+   * Applies the TreeVisitor to to all trees in the Treebank.
+   *
+   * @param tp A class that can process trees.
+   */
+  @Override
+  public void apply(TreeVisitor tp) {
+    for (Tree t : this) {
+      tp.visitTree(t);
+    }
+  }
+
+  /**
+   * Returns the size of the Treebank.  Only the headers of the files are
+   * read, and no trees are built.
+   *
+   * @return size How many trees are in the treebank
+   */
+  @Override
+  public int size() {
+    int size = 0;
+    for (File file : files()) {
+      size += open(file).size();
+    }
+    return size;
+  }
+
+  /**
+   * Return the file from which trees are currently being read by an
+   * Iterator or <code>apply()</code>, or <code>null</code> if no file is
+   * currently open.
+   */
+  public TreeFile getCurrentFile() {
+    return currentFile;
+  }
+
+  private List<File> files() {
+    List<File> files = new ArrayList<File>();
+    for (int i = 0; i < filePaths.size(); i++) {
+      for (File file : new FileSequentialCollection(Collections.singletonList(filePaths.get(i)), fileFilters.get(i))) {
+        files.add(file);
+      }
+    }
+    return files;
+  }
+
+  private TreeFile open(File file) {
+    try {
+      return new TreeFile(file, tf);
+    } catch (IOException e) {
+      throw new RuntimeIOException("Could not read binary treebank file " + file, e);
+    }
+  }
+
+  /**
+   * Return an Iterator over Trees in the Treebank.
+   */
+  @Override
+  public Iterator<Tree> iterator() {
+    return new BinaryTreebankIterator(null);
+  }
+
+  /**
+   * Return an Iterator over just those Trees in the Treebank that have,
+   * for each of the given sets of labels, a node whose value is in that
+   * set.  As with {@link DiskTreebank#iterator(Collection)}, a {@link
+   * LabelIndex} of each file is used to find these trees, and is saved
+   * in the index cache directory.  Only these trees are built, and files that have none
+   * of them are not read at all.
+   *
+   * @param requiredLabels The sets of labels, of which the trees must each
+   *     contain one
+   */
+  public Iterator<Tree> iterator(Collection<? extends Collection<String>> requiredLabels) {
+    return new BinaryTreebankIterator(requiredLabels);
+  }
+
+  /**
+   * Return the number (counting from 0) of the tree last returned by an
+   * Iterator or passed to a <code>TreeVisitor</code> by
+   * <code>apply()</code>, among all the trees of the Treebank, including
+   * any that an {@link #iterator(Collection)} skipped.
+   *
+   * @return the number of the current tree, or -1 if there is none
+   */
+  public int getCurrentTreeNumber() {
+    return currentTreeNumber;
+  }
+
+
+  private class BinaryTreebankIterator implements Iterator<Tree> {
+
+    // if not null, only trees with a label from each of these are returned
+    private final Collection<? extends Collection<String>> requiredLabels;
+
+    private final Iterator<File> files = files().iterator();
+    private TreeFile file;
+    private BitSet candidates;  // the numbers of the trees of file to return, or null for all
+    private int nextTree;  // the number in file of the next tree to return, or -1 if there is none
+    private int treesBefore;  // the number of trees in the files before file
+
+    private BinaryTreebankIterator(Collection<? extends Collection<String>> requiredLabels) {
+      this.requiredLabels = requiredLabels;
+    }
+
+    public boolean hasNext() {
+      while (file == null || nextTree < 0) {
+        if (file != null) {
+          treesBefore += file.size();
+          file = null;
+        }
+        if ( ! files.hasNext()) {
+          currentFile = null;
+          currentTreeNumber = -1;
+          return false;
+        }
+        File f = files.next();
+        try {
+          if (requiredLabels == null) {
+            candidates = null;
+          } else {
+            LabelIndex index = LabelIndex.forBinaryFile(f);
+            candidates = index.candidates(requiredLabels);
+            if (candidates.isEmpty()) {
+              treesBefore += index.numTrees();
+              continue;
+            }
+          }
+        } catch (IOException e) {
+          throw new RuntimeIOException("Could not index binary treebank file " + f, e);
+        }
+        file = open(f);
+        nextTree = next(0);
+      }
+      return true;
+    }
+
+    /** The number of the first tree to return from number i on, or -1 if there is none. */
+    private int next(int i) {
+      if (candidates == null) {
+        return i < file.size() ? i : -1;
+      }
+      return candidates.nextSetBit(i);
+    }
+
+    public Tree next() {
+      if ( ! hasNext()) {
+        throw new NoSuchElementException();
+      }
+      int i = nextTree;
+      nextTree = next(i + 1);
+      currentFile = file;
+      currentTreeNumber = treesBefore + i;
+      return file.getTree(i);
+    }
+
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+
+  } // end class BinaryTreebankIterator
+
+
+  /**
+   * One file of a binary treebank, mapped into memory, or the same data
+   * held in a buffer.  Its trees are built afresh each time they are asked
+   * for.
+   */
+  public static final class TreeFile {
+
+    private final File file;
+    private final TreeFactory tf;
+    private final String sourceName;
+    private final String[] labels;
+    private final int[] offsets;
+    private final IntBuffer[] arrays = new IntBuffer[NUM_ARRAYS];
+
+    /**
+     * Maps a binary treebank file into memory and reads its header.
+     *
+     * @param file The file
+     * @param tf The factory used to build the trees
+     * @throws IOException If the file cannot be read, or is not a binary
+     *     treebank file
+     */
+    public TreeFile(File file, TreeFactory tf) throws IOException {
+      this(file, map(file), tf);
+    }
+
+    /**
+     * Reads the trees of a binary treebank file from a buffer holding its
+     * contents, such as one {@link BinaryTreebankWriter#write(OutputStream,
+     * String)} wrote.  The labels are interned, so that trees held this way
+     * share them.  The buffer must not be changed afterwards.
+     *
+     * @param buffer The buffer, from its current position on
+     * @param tf The factory used to build the trees
+     * @throws IOException If the buffer does not hold a binary treebank file
+     */
+    public TreeFile(ByteBuffer buffer, TreeFactory tf) throws IOException {
+      this(null, buffer, tf);
+    }
+
+    private static ByteBuffer map(File file) throws IOException {
+      FileInputStream in = new FileInputStream(file);
+      try {
+        FileChannel channel = in.getChannel();
+        return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      } finally {
+        in.close();
+      }
+    }
+
+    private TreeFile(File file, ByteBuffer buffer, TreeFactory tf) throws IOException {
+      this.file = file;
+      this.tf = tf;
+      Object name = (file == null) ? "Buffer" : file;
+      try {
+        if (buffer.getInt() != MAGIC) {
+          throw new IOException(name + " is not a binary treebank file");
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+          throw new IOException(name + " has unknown binary treebank version " + version);
+        }
+        sourceName = readString(buffer);
+        labels = new String[buffer.getInt()];
+        for (int i = 0; i < labels.length; i++) {
+          labels[i] = (file == null) ? readString(buffer).intern() : readString(buffer);
+        }
+        offsets = new int[buffer.getInt() + 1];
+        buffer.asIntBuffer().get(offsets);
+        buffer.position(buffer.position() + 4 * offsets.length);
+        int numNodes = offsets[offsets.length - 1];
+        for (int i = 0; i < NUM_ARRAYS; i++) {
+          ByteBuffer array = buffer.slice();
+          array.limit(4 * numNodes);
+          arrays[i] = array.asIntBuffer();
+          buffer.position(buffer.position() + 4 * numNodes);
+        }
+      } catch (RuntimeException e) {
+        // a BufferUnderflowException, IllegalArgumentException, etc., from a truncated file
+        throw new IOException(name + " is not a valid binary treebank file: " + e);
+      }
+    }
+
+    private static String readString(ByteBuffer buffer) throws IOException {
+      byte[] bytes = new byte[buffer.getInt()];
+      buffer.get(bytes);
+      return new String(bytes, "UTF-8");
+    }
+
+    /** The binary treebank file, or null if the trees are held in a buffer. */
+    public File getFile() {
+      return file;
+    }
+
+    /** The name of the text treebank file this file was made from. */
+    public String getSourceName() {
+      return sourceName;
+    }
+
+    /** The number of trees in the file. */
+    public int size() {
+      return offsets.length - 1;
+    }
+
+    /** The number of nodes in tree <code>i</code>. */
+    public int numNodes(int i) {
+      return offsets[i + 1] - offsets[i];
+    }
+
+    /**
+     * The labels of the nodes in this file.  The label of node
+     * <code>n</code> of tree <code>i</code> (in preorder) is
+     * <code>getLabels()[getLabelId(i, n)]</code>.  The array must not be
+     * changed.
+     */
+    String[] getLabels() {
+      return labels;
+    }
+
+    /** The label id of node <code>n</code> of tree <code>i</code>, or -1 if it has no label. */
+    int getLabelId(int i, int n) {
+      return arrays[LABEL].get(offsets[i] + n);
+    }
+
+    /**
+     * Builds tree number <code>i</code> of the file.
+     *
+     * @param i The tree number, counting from 0
+     * @return The tree
+     */
+    public Tree getTree(int i) {
+      if (i < 0 || i >= size()) {
+        throw new IndexOutOfBoundsException("Tree " + i + " of " + size() + " in " + (file == null ? sourceName : file));
+      }
+      return buildTree(offsets[i], 0);
+    }
+
+    private Tree buildTree(int start, int n) {
+      int labelId = arrays[LABEL].get(start + n);
+      String label = labelId < 0 ? null : labels[labelId];
+      int child = arrays[FIRST_CHILD].get(start + n);
+      if (child < 0) {
+        Tree leaf = tf.newLeaf(label);
+        if (leaf.label() instanceof HasIndex) {
+          ((HasIndex) leaf.label()).setIndex(arrays[LEFT_EDGE].get(start + n));
+        }
+        return leaf;
+      }
+      List<Tree> children = new ArrayList<Tree>();
+      for ( ; child >= 0; child = arrays[NEXT_SIBLING].get(start + child)) {
+        children.add(buildTree(start, child));
+      }
+      return tf.newTreeNode(label, children);
+    }
+
+  } // end class TreeFile
+
+}
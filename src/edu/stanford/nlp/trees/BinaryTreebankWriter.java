@@ -0,0 +1,224 @@
+package edu.stanford.nlp.trees;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import edu.stanford.nlp.io.ExtensionFileFilter;
+import edu.stanford.nlp.io.FileSequentialCollection;
+import edu.stanford.nlp.util.StringUtils;
+import edu.stanford.nlp.trees.tregex.TregexPattern;
+
+
+/**
+ * Writes trees in the binary treebank format read by {@link
+ * BinaryTreebank}.  A <code>BinaryTreebankWriter</code> is a
+ * <code>TreeVisitor</code>, so the trees of any <code>Treebank</code> can
+ * be collected by <code>apply()</code>ing it to the treebank, and then
+ * written out to one file with {@link #write}.
+ * <p/>
+ * Its <code>main</code> method converts a text treebank, file by file:
+ * <p/>
+ * <code>java edu.stanford.nlp.trees.BinaryTreebankWriter [-trf class] [-encoding enc] [-suffix ext] treebankPath outputDirectory</code>
+ * <p/>
+ * Each file under <code>treebankPath</code> (with the given suffix, if
+ * any) is read with the <code>TreeReaderFactory</code> (by default, the
+ * one tregex uses), and its trees are written to a file of the same
+ * relative path under <code>outputDirectory</code>, with the suffix "trb".
+ */
+public class BinaryTreebankWriter implements TreeVisitor {
+
+  private final Map<String, Integer> labelIds = new HashMap<String, Integer>();
+  private final List<String> labels = new ArrayList<String>();
+
+  private int numTrees; // = 0
+  private int[] offsets = new int[64];
+  private int numNodes; // = 0
+  private int[][] arrays = new int[BinaryTreebank.NUM_ARRAYS][256];
+
+  // used while adding a tree
+  private int treeStart;
+  private int nextLeaf;
+
+
+  /**
+   * Adds a tree to those to be written.
+   *
+   * @param t The tree
+   */
+  public void visitTree(Tree t) {
+    if (numTrees + 1 == offsets.length) {
+      int[] newOffsets = new int[2 * offsets.length];
+      System.arraycopy(offsets, 0, newOffsets, 0, offsets.length);
+      offsets = newOffsets;
+    }
+    treeStart = numNodes;
+    nextLeaf = 0;
+    add(t, -1);
+    numTrees++;
+    offsets[numTrees] = numNodes;
+  }
+
+  /** Adds the nodes of <code>t</code> in preorder, and returns the number of its root. */
+  private int add(Tree t, int parent) {
+    int n = numNodes - treeStart;
+    int i = numNodes++;
+    if (numNodes > arrays[0].length) {
+      for (int j = 0; j < arrays.length; j++) {
+        int[] newArray = new int[2 * arrays[j].length];
+        System.arraycopy(arrays[j], 0, newArray, 0, arrays[j].length);
+        arrays[j] = newArray;
+      }
+    }
+    arrays[BinaryTreebank.LABEL][i] = labelId(t.value());
+    arrays[BinaryTreebank.PARENT][i] = parent;
+    arrays[BinaryTreebank.FIRST_CHILD][i] = -1;
+    arrays[BinaryTreebank.NEXT_SIBLING][i] = -1;
+    arrays[BinaryTreebank.LEFT_EDGE][i] = nextLeaf;
+    Tree[] kids = t.children();
+    if (kids.length == 0) {
+      nextLeaf++;
+    }
+    int previous = -1;
+    for (Tree kid : kids) {
+      int k = add(kid, n);
+      if (previous < 0) {
+        arrays[BinaryTreebank.FIRST_CHILD][i] = k;
+      } else {
+        arrays[BinaryTreebank.NEXT_SIBLING][treeStart + previous] = k;
+      }
+      previous = k;
+    }
+    arrays[BinaryTreebank.RIGHT_EDGE][i] = nextLeaf;
+    return n;
+  }
+
+  private int labelId(String label) {
+    if (label == null) {
+      return -1;
+    }
+    Integer id = labelIds.get(label);
+    if (id == null) {
+      id = labels.size();
+      labelIds.put(label, id);
+      labels.add(label);
+    }
+    return id;
+  }
+
+  /** The number of trees added. */
+  public int numTrees() {
+    return numTrees;
+  }
+
+  /**
+   * Writes all the trees added so far to a binary treebank file.
+   *
+   * @param file The file to write
+   * @param sourceName The name of the text treebank file the trees came from
+   * @throws IOException If the file cannot be written
+   */
+  public void write(File file, String sourceName) throws IOException {
+    OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16);
+    try {
+      write(out, sourceName);
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Writes all the trees added so far in the binary treebank format, for
+   * instance to a <code>ByteArrayOutputStream</code> to be read back with
+   * {@link BinaryTreebank.TreeFile#TreeFile(ByteBuffer, TreeFactory)}.
+   * The stream is flushed but not closed.
+   *
+   * @param stream The stream to write to
+   * @param sourceName The name of the text treebank file the trees came from
+   * @throws IOException If the stream cannot be written
+   */
+  public void write(OutputStream stream, String sourceName) throws IOException {
+    DataOutputStream out = new DataOutputStream(stream);
+    out.writeInt(BinaryTreebank.MAGIC);
+    out.writeInt(BinaryTreebank.VERSION);
+    writeString(out, sourceName);
+    out.writeInt(labels.size());
+    for (String label : labels) {
+      writeString(out, label);
+    }
+    out.writeInt(numTrees);
+    for (int i = 0; i <= numTrees; i++) {
+      out.writeInt(offsets[i]);
+    }
+    for (int[] array : arrays) {
+      for (int i = 0; i < numNodes; i++) {
+        out.writeInt(array[i]);
+      }
+    }
+    out.flush();
+  }
+
+  private static void writeString(DataOutputStream out, String s) throws IOException {
+    byte[] bytes = s.getBytes("UTF-8");
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+
+  /**
+   * Converts a text treebank to binary treebank files.  See the class
+   * comment for usage.
+   *
+   * @param args Command-line arguments
+   * @throws IOException If a file cannot be read or written
+   */
+  public static void main(String[] args) throws IOException {
+    Map<String, Integer> flagMap = new HashMap<String, Integer>();
+    flagMap.put("-trf", 1);
+    flagMap.put("-encoding", 1);
+    flagMap.put("-suffix", 1);
+    Map<String, String[]> argsMap = StringUtils.argsToMap(args, flagMap);
+    args = argsMap.get(null);
+    if (args.length != 2) {
+      System.err.println("Usage: java edu.stanford.nlp.trees.BinaryTreebankWriter [-trf class] [-encoding enc] [-suffix ext] treebankPath outputDirectory");
+      return;
+    }
+    TreeReaderFactory trf = new TregexPattern.TRegexTreeReaderFactory();
+    if (argsMap.containsKey("-trf")) {
+      try {
+        trf = (TreeReaderFactory) Class.forName(argsMap.get("-trf")[0]).newInstance();
+      } catch (Exception e) {
+        throw new RuntimeException("Error occurred while constructing TreeReaderFactory: " + e);
+      }
+    }
+    String encoding = argsMap.containsKey("-encoding") ? argsMap.get("-encoding")[0] : "UTF-8";
+    String suffix = argsMap.containsKey("-suffix") ? argsMap.get("-suffix")[0] : null;
+    File treebankPath = new File(args[0]);
+    File outputDirectory = new File(args[1]);
+
+    int numFiles = 0;
+    int numTrees = 0;
+    for (File file : new FileSequentialCollection(Collections.singletonList(treebankPath), new ExtensionFileFilter(suffix, true))) {
+      String relativePath = file.getName();
+      if (treebankPath.isDirectory()) {
+        relativePath = file.getPath().substring(treebankPath.getPath().length());
+      }
+      int dot = relativePath.lastIndexOf('.');
+      if (dot > relativePath.lastIndexOf(File.separatorChar)) {
+        relativePath = relativePath.substring(0, dot);
+      }
+      File outputFile = new File(outputDirectory, relativePath + '.' + BinaryTreebank.DEFAULT_BINARY_TREE_FILE_SUFFIX);
+      outputFile.getParentFile().mkdirs();
+
+      Treebank treebank = new DiskTreebank(trf, encoding);
+      treebank.loadPath(file);
+      BinaryTreebankWriter writer = new BinaryTreebankWriter();
+      treebank.apply(writer);
+      writer.write(outputFile, file.getPath());
+      numFiles++;
+      numTrees += writer.numTrees();
+    }
+    System.err.println("Wrote " + numTrees + " trees in " + numFiles + " files to " + outputDirectory);
+  }
+
+}
@@ -0,0 +1,567 @@
+package edu.stanford.nlp.trees;
+
+import java.io.Serializable;
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import edu.stanford.nlp.ling.CyclicCoreLabel;
+import edu.stanford.nlp.ling.Label;
+import edu.stanford.nlp.ling.LabelFactory;
+import edu.stanford.nlp.ling.StringLabel;
+import edu.stanford.nlp.ling.ValueLabel;
+import edu.stanford.nlp.util.Generics;
+import edu.stanford.nlp.util.Index;
+import edu.stanford.nlp.util.IntPair;
+
+/**
+ * A <code>Tree</code> that stores a whole tree in a few <code>int</code>
+ * arrays, rather than as an object (with a label object and a children
+ * array) for each node.  The nodes are numbered in preorder, and for each
+ * there is kept the number of its label in a symbol table shared by all
+ * the trees made by one {@link CompactTreeFactory}, the number of its
+ * parent, the number after the last node it dominates, and the number of
+ * leaves before it.  The first child of
+ * a node is the node after it, and the next sibling is the node after its
+ * last descendant.  A <code>CompactTree</code> is a view of one node of such
+ * a tree.  The views of the nodes below the root are made when they are
+ * first needed, and kept for as long as any of them is in use, so that the
+ * same node is always the same object, as code such as Tregex that compares
+ * nodes by identity needs.  Once none is in use, they can be garbage
+ * collected, so a tree kept for a long time, as in a {@link MemoryTreebank},
+ * costs no more for having been walked over.  Reading labels takes no locks.
+ * <p/>
+ * This takes a fraction of the memory of a tree of {@link
+ * LabeledScoredTreeNode}s, and makes {@link #parent()}, {@link
+ * #parent(Tree)}, {@link #nodeNumber}, {@link #dominates}, {@link #size}
+ * and {@link #getSpan} take constant time.  The price is that the
+ * structure of the tree cannot be changed: {@link #setChildren} throws an
+ * <code>UnsupportedOperationException</code>, though the labels can be
+ * changed (labels are only kept as their values).  Trees made with the
+ * factory copy the children they are given, rather than sharing them.
+ * There are no scores.
+ */
+public class CompactTree extends Tree {
+
+  private static final long serialVersionUID = -3052962519744312758L;
+
+  /**
+   * The symbol table of the trees made by one factory: a map from label
+   * values to numbers, and an array of the values by number, which can be
+   * read, and searched, without taking a lock.  The table numbers values
+   * itself, or, if it is given an {@link Index}, takes their numbers from
+   * that, and the lock of the <code>Index</code> is only taken to add a
+   * value that is not there yet.  The <code>Index</code> may be shared with
+   * other symbol tables, and so have values added through them.
+   */
+  static final class Symbols implements Serializable {
+
+    private static final long serialVersionUID = -6224431742935427302L;
+
+    /** The index the numbers are taken from, or null if this table numbers values itself. */
+    final Index<String> index;
+    /** What numbers values: the index, or this table.  Adding a value locks it. */
+    private final Object table;
+    private final ConcurrentHashMap<String, Integer> numbers = Generics.newConcurrentHashMap();
+    /**
+     * The values by number, as far as they are known here.  Entries are only
+     * ever added, and the array is published again after each, so a reader
+     * sees either the entry or null.
+     */
+    private volatile String[] values = new String[64];
+    private int size; // = 0; only used without an index
+
+    /** Makes a symbol table that numbers values itself. */
+    Symbols() {
+      this.index = null;
+      this.table = this;
+    }
+
+    Symbols(Index<String> index) {
+      this.index = index;
+      this.table = index;
+    }
+
+    /** Whether <code>other</code> gives every value the same number as this table. */
+    boolean sameNumbers(Symbols other) {
+      return table == other.table;
+    }
+
+    /** The number of <code>value</code>, which is added if it is new, or -1 if it is null. */
+    int number(String value) {
+      if (value == null) {
+        return -1;
+      }
+      Integer number = numbers.get(value);
+      if (number != null) {
+        return number;
+      }
+      synchronized (table) {
+        int n;
+        if (index != null) {
+          n = index.indexOf(value, true);
+        } else {
+          number = numbers.get(value);
+          if (number != null) {
+            return number;
+          }
+          n = size++;
+        }
+        put(n, value);
+        return n;
+      }
+    }
+
+    /** The value with the given number, or null if it is -1. */
+    String value(int number) {
+      if (number < 0) {
+        return null;
+      }
+      String[] known = values;
+      if (number < known.length && known[number] != null) {
+        return known[number];
+      }
+      // added through another symbol table with the same index
+      synchronized (table) {
+        String value = index.get(number);
+        put(number, value);
+        return value;
+      }
+    }
+
+    /** Records the number of a value.  Must be called holding the lock of the table. */
+    private void put(int number, String value) {
+      String[] known = values;
+      if (number >= known.length) {
+        String[] grown = new String[Math.max(2 * known.length, number + 1)];
+        System.arraycopy(known, 0, grown, 0, known.length);
+        known = grown;
+      }
+      known[number] = value;
+      values = known;
+      numbers.put(value, number);
+    }
+
+  } // end class Symbols
+
+
+  /** The arrays of a whole tree, which the views of its nodes share. */
+  private static final class Nodes implements Serializable {
+
+    private static final long serialVersionUID = 2843760325097145712L;
+
+    final Symbols symbols;
+    /** The symbol number of each node's label value, or -1 if it is null. */
+    final int[] labels;
+    /** The parent of each node, or -1 for the root. */
+    final int[] parents;
+    /** The number after the last node each node dominates. */
+    final int[] ends;
+    /** The number of leaves before each node, and at the end, the number of leaves. */
+    final int[] leavesBefore;
+    /** The view of the root, which is always kept. */
+    final CompactTree root;
+    /**
+     * The views of the other nodes, as far as they have been made.  Each of
+     * them holds on to these, which are otherwise only weakly held.
+     */
+    private transient volatile WeakReference<AtomicReferenceArray<CompactTree>> views;
+
+    Nodes(Symbols symbols, int size) {
+      this.symbols = symbols;
+      labels = new int[size];
+      parents = new int[size];
+      ends = new int[size];
+      leavesBefore = new int[size + 1];
+      root = new CompactTree(this, 0, null);
+    }
+
+    CompactTree view(int node) {
+      if (node == 0) {
+        return root;
+      }
+      AtomicReferenceArray<CompactTree> made = views();
+      CompactTree view = made.get(node);
+      if (view == null) {
+        // if another thread makes it first, use theirs
+        made.compareAndSet(node, null, new CompactTree(this, node, made));
+        view = made.get(node);
+      }
+      return view;
+    }
+
+    private AtomicReferenceArray<CompactTree> views() {
+      WeakReference<AtomicReferenceArray<CompactTree>> ref = views;
+      AtomicReferenceArray<CompactTree> made = (ref == null) ? null : ref.get();
+      if (made == null) {
+        synchronized (this) {
+          ref = views;
+          made = (ref == null) ? null : ref.get();
+          if (made == null) {
+            made = new AtomicReferenceArray<CompactTree>(labels.length);
+            views = Generics.newWeakReference(made);
+          }
+        }
+      }
+      return made;
+    }
+
+    String value(int node) {
+      return symbols.value(labels[node]);
+    }
+
+  } // end class Nodes
+
+
+  private final Nodes nodes;
+  private final int node;
+  /** The views of the other nodes of the tree, kept while this is, or null for the root. */
+  private final transient AtomicReferenceArray<CompactTree> views;
+
+  private CompactTree(Nodes nodes, int node, AtomicReferenceArray<CompactTree> views) {
+    this.nodes = nodes;
+    this.node = node;
+    this.views = views;
+  }
+
+
+  /**
+   * Makes a tree of a node with the given label value and children.  The
+   * children are copied into the new tree.
+   *
+   * @param symbols The symbol table for the labels
+   * @param value The label value of the root, which may be null
+   * @param children The children of the root, which may be any kind of tree
+   * @return The root of the new tree
+   */
+  static CompactTree newTree(Symbols symbols, String value, List<Tree> children) {
+    int size = 1;
+    if (children != null) {
+      for (Tree kid : children) {
+        size += kid.size();
+      }
+    }
+    Nodes nodes = new Nodes(symbols, size);
+    nodes.labels[0] = symbols.number(value);
+    nodes.parents[0] = -1;
+    nodes.ends[0] = size;
+    int next = 1;
+    int leaves = 0;
+    if (children != null) {
+      for (Tree kid : children) {
+        leaves = add(nodes, kid, 0, next, leaves);
+        next = nodes.ends[next];
+      }
+    }
+    nodes.leavesBefore[size] = (size == 1) ? 1 : leaves;
+    return nodes.root;
+  }
+
+  /**
+   * Copies the tree <code>t</code> into <code>nodes</code>, starting at
+   * node number <code>first</code>, under <code>parent</code>.
+   *
+   * @return The number of leaves before the node after <code>t</code>
+   */
+  private static int add(Nodes nodes, Tree t, int parent, int first, int leaves) {
+    if (t instanceof CompactTree && ((CompactTree) t).nodes.symbols.sameNumbers(nodes.symbols)) {
+      // copy the arrays across, renumbering
+      CompactTree from = (CompactTree) t;
+      Nodes old = from.nodes;
+      int offset = first - from.node;
+      int leafOffset = leaves - old.leavesBefore[from.node];
+      int end = old.ends[from.node];
+      for (int i = from.node; i < end; i++) {
+        nodes.labels[i + offset] = old.labels[i];
+        nodes.parents[i + offset] = old.parents[i] + offset;
+        nodes.ends[i + offset] = old.ends[i] + offset;
+        nodes.leavesBefore[i + offset] = old.leavesBefore[i] + leafOffset;
+      }
+      nodes.parents[first] = parent;
+      return old.leavesBefore[end] + leafOffset;
+    }
+    nodes.labels[first] = nodes.symbols.number(t.value());
+    nodes.parents[first] = parent;
+    nodes.leavesBefore[first] = leaves;
+    int next = first + 1;
+    if (t.isLeaf()) {
+      leaves++;
+    } else {
+      for (Tree kid : t.children()) {
+        leaves = add(nodes, kid, first, next, leaves);
+        next = nodes.ends[next];
+      }
+    }
+    nodes.ends[first] = next;
+    return leaves;
+  }
+
+  /** Whether <code>t</code> is a node of the same tree as this one. */
+  private boolean sameTree(Tree t) {
+    return t instanceof CompactTree && ((CompactTree) t).nodes == nodes;
+  }
+
+
+  @Override
+  public boolean isLeaf() {
+    return nodes.ends[node] == node + 1;
+  }
+
+  @Override
+  public int numChildren() {
+    int numChildren = 0;
+    for (int kid = node + 1, end = nodes.ends[node]; kid < end; kid = nodes.ends[kid]) {
+      numChildren++;
+    }
+    return numChildren;
+  }
+
+  /**
+   * Returns the children of this node.  The array is made anew on each call,
+   * and changing it does not change the tree.
+   */
+  @Override
+  public Tree[] children() {
+    if (isLeaf()) {
+      return EMPTY_TREE_ARRAY;
+    }
+    Tree[] kids = new Tree[numChildren()];
+    for (int kid = node + 1, i = 0; i < kids.length; kid = nodes.ends[kid], i++) {
+      kids[i] = nodes.view(kid);
+    }
+    return kids;
+  }
+
+  @Override
+  public Tree firstChild() {
+    return isLeaf() ? null : nodes.view(node + 1);
+  }
+
+  /**
+   * Returns a label with the value of this node's label.  Setting the value
+   * of the label sets that of this node.
+   */
+  @Override
+  public Label label() {
+    return new NodeLabel();
+  }
+
+  /** A view of the label of this node. */
+  private class NodeLabel extends ValueLabel {
+
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public String value() {
+      return CompactTree.this.value();
+    }
+
+    @Override
+    public void setValue(String value) {
+      CompactTree.this.setValue(value);
+    }
+
+    @Override
+    public void setFromString(String labelStr) {
+      CompactTree.this.setValue(labelStr);
+    }
+
+    @Override
+    public LabelFactory labelFactory() {
+      return StringLabel.factory();
+    }
+
+    /** Returns the value, which is null if there is none, as for a <code>StringLabel</code>. */
+    @Override
+    public String toString() {
+      return value();
+    }
+
+  } // end class NodeLabel
+
+  /** Sets the value of this node's label to that of <code>label</code>. */
+  @Override
+  public void setLabel(Label label) {
+    nodes.labels[node] = nodes.symbols.number(label == null ? null : label.value());
+  }
+
+  @Override
+  public String value() {
+    return nodes.value(node);
+  }
+
+  @Override
+  public void setValue(String value) {
+    nodes.labels[node] = nodes.symbols.number(value);
+  }
+
+  @Override
+  public void setFromString(String labelStr) {
+    setValue(labelStr);
+  }
+
+  @Override
+  public LabelFactory labelFactory() {
+    return StringLabel.factory();
+  }
+
+  @Override
+  public String nodeString() {
+    String value = value();
+    return value == null ? "" : value;
+  }
+
+  @Override
+  public StringBuilder toStringBuilder(StringBuilder sb) {
+    if (isLeaf()) {
+      return sb.append(nodeString());
+    }
+    sb.append('(');
+    sb.append(nodeString());
+    for (int kid = node + 1, end = nodes.ends[node]; kid < end; kid = nodes.ends[kid]) {
+      sb.append(' ');
+      nodes.view(kid).toStringBuilder(sb);
+    }
+    return sb.append(')');
+  }
+
+  /**
+   * Whether <code>o</code> is a tree equal to this one, as for any tree.
+   * This takes constant time when <code>o</code> is this same node.
+   */
+  @Override
+  public boolean equals(Object o) {
+    if (o instanceof CompactTree && ((CompactTree) o).nodes == nodes && ((CompactTree) o).node == node) {
+      return true;
+    }
+    return super.equals(o);
+  }
+
+  @Override
+  public Tree parent() {
+    int parent = nodes.parents[node];
+    return parent < 0 ? null : nodes.view(parent);
+  }
+
+  @Override
+  public Tree parent(Tree root) {
+    if ( ! sameTree(root)) {
+      return super.parent(root);
+    }
+    return ((CompactTree) root).dominates(this) ? parent() : null;
+  }
+
+  @Override
+  public boolean dominates(Tree t) {
+    if ( ! sameTree(t)) {
+      return super.dominates(t);
+    }
+    int other = ((CompactTree) t).node;
+    return other > node && other < nodes.ends[node];
+  }
+
+  @Override
+  public int nodeNumber(Tree root) {
+    if ( ! sameTree(root)) {
+      return super.nodeNumber(root);
+    }
+    int rootNode = ((CompactTree) root).node;
+    if (node < rootNode || node >= nodes.ends[rootNode]) {
+      return -1;
+    }
+    return node - rootNode + 1;
+  }
+
+  @Override
+  public int size() {
+    return nodes.ends[node] - node;
+  }
+
+  /**
+   * Returns the indices, counting from 0, of the first and last leaves
+   * this node dominates (or of itself, if it is a leaf).  Unlike for other
+   * trees, the spans need not be set first with {@link #setSpans}.
+   */
+  @Override
+  public IntPair getSpan() {
+    return new IntPair(nodes.leavesBefore[node], nodes.leavesBefore[nodes.ends[node]] - 1);
+  }
+
+  /**
+   * Returns a factory that makes <code>CompactTree</code>s sharing this
+   * tree's symbol table.
+   */
+  @Override
+  public TreeFactory treeFactory() {
+    return new CompactTreeFactory(nodes.symbols);
+  }
+
+  /**
+   * For testing: checks the constant time {@link #parent(Tree)}, {@link
+   * #nodeNumber}, {@link #dominates}, {@link #size} and {@link #getSpan}
+   * against those of trees of {@link LabeledScoredTreeNode}s.  The treebank
+   * is read both ways, and for each pair of nodes of each tree, each must
+   * give the same answer for the compact tree as for the other, taking the
+   * spans of the other from {@link #setSpans}.
+   * <br>
+   * Usage: <code>
+   * java edu.stanford.nlp.trees.CompactTree treebankPath
+   * </code>
+   */
+  public static void main(String[] args) {
+    if (args.length < 1) {
+      System.err.println("usage: CompactTree treebankPath");
+      return;
+    }
+    Treebank plain = new DiskTreebank(new PennTreeReaderFactory(new LabeledScoredTreeFactory(CyclicCoreLabel.factory())));
+    Treebank compact = new DiskTreebank(new CompactTreeFactory().treeReaderFactory(new TreeNormalizer()));
+    plain.loadPath(args[0]);
+    compact.loadPath(args[0]);
+    int trees = 0, nodePairs = 0;
+    Iterator<Tree> compactIter = compact.iterator();
+    for (Tree p : plain) {
+      Tree c = compactIter.next();
+      p.setSpans();
+      List<Tree> pNodes = p.subTreeList();
+      List<Tree> cNodes = c.subTreeList();
+      if (pNodes.size() != cNodes.size()) {
+        fail("Different trees", p);
+      }
+      for (int i = 0; i < pNodes.size(); i++) {
+        Tree px = pNodes.get(i);
+        Tree cx = cNodes.get(i);
+        String value = px.value();
+        if ((value == null ? cx.value() != null : ! value.equals(cx.value())) || px.numChildren() != cx.numChildren()) {
+          fail("Different trees", p);
+        }
+        IntPair pSpan = px.getSpan();
+        IntPair cSpan = cx.getSpan();
+        if (px.size() != cx.size() || pSpan.getSource() != cSpan.getSource() || pSpan.getTarget() != cSpan.getTarget()) {
+          fail("Different size or span of node " + i, p);
+        }
+        for (int j = 0; j < pNodes.size(); j++) {
+          Tree py = pNodes.get(j);
+          Tree cy = cNodes.get(j);
+          Tree pParent = px.parent(py);
+          Tree cParent = cx.parent(cy);
+          if (px.dominates(py) != cx.dominates(cy) || px.nodeNumber(py) != cx.nodeNumber(cy) ||
+              (pParent == null ? cParent != null : cParent == null || pParent.nodeNumber(p) != cParent.nodeNumber(c))) {
+            fail("Different dominance, node number or parent of nodes " + i + " and " + j, p);
+          }
+          nodePairs++;
+        }
+      }
+      trees++;
+    }
+    System.out.println("Checked " + nodePairs + " pairs of nodes in " + trees + " trees with no errors.");
+  }
+
+  private static void fail(String message, Tree t) {
+    System.err.println(message + " in tree:");
+    t.pennPrint(System.err);
+    System.exit(1);
+  }
+
+}
@@ -0,0 +1,93 @@
+package edu.stanford.nlp.trees;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.List;
+
+import edu.stanford.nlp.ling.Label;
+import edu.stanford.nlp.util.Index;
+
+/**
+ * A <code>TreeFactory</code> that makes {@link CompactTree}s, whose labels
+ * are numbers in a symbol table shared by all the trees the factory makes.
+ * A node is made by copying its children into a new tree, so building a tree
+ * bottom up, as a <code>TreeReader</code> does, takes time proportional to
+ * its size times its depth, and the children given are not part of the
+ * result.  To hold a whole treebank in a fraction of the memory, read it
+ * into a {@link MemoryTreebank} with a {@link #treeReaderFactory}, or
+ * convert trees already read with {@link #compact}.
+ */
+public class CompactTreeFactory implements TreeFactory {
+
+  private final CompactTree.Symbols symbols;
+
+  /** Makes a factory with a new symbol table of its own. */
+  public CompactTreeFactory() {
+    this(new CompactTree.Symbols());
+  }
+
+  /**
+   * Makes a factory whose trees number their labels in <code>symbols</code>,
+   * which may be shared with other factories.
+   */
+  public CompactTreeFactory(Index<String> symbols) {
+    this(new CompactTree.Symbols(symbols));
+  }
+
+  CompactTreeFactory(CompactTree.Symbols symbols) {
+    this.symbols = symbols;
+  }
+
+  public Tree newLeaf(String word) {
+    return CompactTree.newTree(symbols, word, null);
+  }
+
+  public Tree newLeaf(Label label) {
+    return newLeaf(label == null ? null : label.value());
+  }
+
+  public Tree newTreeNode(String parent, List<Tree> children) {
+    return CompactTree.newTree(symbols, parent, children);
+  }
+
+  public Tree newTreeNode(Label parentLabel, List<Tree> children) {
+    return newTreeNode(parentLabel == null ? null : parentLabel.value(), children);
+  }
+
+  /**
+   * Returns a copy of <code>t</code>, which may be any kind of tree, as a
+   * <code>CompactTree</code>.  This takes time proportional to the size of
+   * the tree.
+   */
+  public Tree compact(Tree t) {
+    if (t.isLeaf()) {
+      return newLeaf(t.value());
+    }
+    return newTreeNode(t.value(), t.getChildrenAsList());
+  }
+
+  /**
+   * Returns a <code>TreeReaderFactory</code> whose readers read Penn
+   * Treebank trees, normalized by <code>tn</code>, into
+   * <code>CompactTree</code>s made by this factory.  Each tree is read into
+   * an ordinary tree and then compacted, which is faster than building it
+   * bottom up from <code>CompactTree</code>s.
+   */
+  public TreeReaderFactory treeReaderFactory(final TreeNormalizer tn) {
+    return new TreeReaderFactory() {
+      public TreeReader newTreeReader(Reader in) {
+        final TreeReader reader = new PennTreeReader(in, new LabeledScoredTreeFactory(), tn);
+        return new TreeReader() {
+          public Tree readTree() throws IOException {
+            Tree t = reader.readTree();
+            return t == null ? null : compact(t);
+          }
+          public void close() throws IOException {
+            reader.close();
+          }
+        };
+      }
+    };
+  }
+
+}
@@ -42,6 +42,8 @@ public final class DiskTreebank extends Treebank {
    */
   private File currentFile; // = null;
 
+  private int currentTreeNumber = -1;
+
 
   /**
    * Create a new DiskTreebank.
@@ -67,6 +69,9 @@ public final class DiskTreebank extends Treebank {
   /**
    * Create a new DiskTreebank.
    *
+   * For the fastest reading of Penn Treebank files, pass a
+   * {@link StreamingPennTreeReaderFactory}.
+   *
    * @param trf the factory class to be called to create a new
    *            <code>TreeReader</code>
    */
@@ -148,6 +153,28 @@ public final class DiskTreebank extends Treebank {
     }
   }
 
+  /**
+   * Splits the Treebank by file: each part reads the trees of one of the
+   * files.  (<code>getCurrentFile()</code> and
+   * <code>getCurrentTreeNumber()</code> are not kept up to date while the
+   * parts are read.)
+   *
+   * @param numThreads Not used; there is a part per file
+   * @return The files, as treebanks of their own, in order
+   */
+  @Override
+  protected Iterator<DiskTreebank> parts(int numThreads) {
+    List<DiskTreebank> parts = new ArrayList<DiskTreebank>();
+    for (int i = 0; i < filePaths.size(); i++) {
+      for (File file : new FileSequentialCollection(Collections.singletonList(filePaths.get(i)), fileFilters.get(i))) {
+        DiskTreebank part = new DiskTreebank(treeReaderFactory(), encoding());
+        part.loadPath(file, null);
+        parts.add(part);
+      }
+    }
+    return parts.iterator();
+  }
+
   /**
    * Return the <code>File</code> from which trees are currently being
    * read by an Iterator or <code>apply()</code> and passed to a
@@ -166,57 +193,85 @@ public final class DiskTreebank extends Treebank {
   }
 
 
+  /**
+   * Return the number (counting from 0) of the tree last returned by an
+   * Iterator or passed to a <code>TreeVisitor</code> by
+   * <code>apply()</code>, among all the trees of the Treebank, including
+   * any that an {@link #iterator(Collection)} skipped.
+   *
+   * @return the number of the current tree, or -1 if there is none
+   */
+  public int getCurrentTreeNumber() {
+    return currentTreeNumber;
+  }
+
+
   private class DiskTreebankIterator implements Iterator<Tree> {
 
+    // if not null, only trees with a label from each of these are returned
+    private final Collection<? extends Collection<String>> requiredLabels;
+
     private int fileUpto; // = 0 (will start on index array 0)
     Iterator<File> fileIterator;
     private TreeReader tr;
+    private File file;  // the file tr reads from
+    private BitSet candidates;  // the numbers of the trees of file to return, or null for all
+    private int fileTreeNumber;  // the number in file of the next tree tr reads
+    private int treesBefore;  // the number of trees in the files before file
+
     private Tree storedTree;  // null means iterator is exhausted (or not yet constructed)
+    private File storedFile;
+    private int storedTreeNumber;
 
-    private DiskTreebankIterator() {
+    private DiskTreebankIterator(Collection<? extends Collection<String>> requiredLabels) {
+      this.requiredLabels = requiredLabels;
       storedTree = primeNextTree();
     }
 
     private Tree primeNextTree() {
-      Tree nextTree = null;
-      int fpsize = filePaths.size();
-      while (nextTree == null && fileUpto <= fpsize) {
-        if (tr == null && (fileIterator == null || ! fileIterator.hasNext())) {
-          if (fileUpto < fpsize) {
-            FileSequentialCollection fsc = new FileSequentialCollection(Collections.singletonList(filePaths.get(fileUpto)), fileFilters.get(fileUpto));
-            fileIterator = fsc.iterator();
-          }
-          // else we're finished, but increment anyway so we leave outermost loop
-          fileUpto++;
-        }
-        while (nextTree == null && (tr != null || (fileIterator != null && fileIterator.hasNext()))) {
-          try {
-            while (nextTree == null && (tr != null || (fileIterator != null && fileIterator.hasNext()))) {
-              if (tr != null) {
-                nextTree = tr.readTree();
-                if (nextTree == null) {
-                  tr.close();
-                  tr = null;
-                }
+      try {
+        while (true) {
+          if (tr != null) {
+            Tree nextTree = tr.readTree();
+            if (nextTree == null) {
+              tr.close();
+              tr = null;
+              treesBefore += fileTreeNumber;
+            } else {
+              int treeNumber = fileTreeNumber++;
+              if (candidates == null || candidates.get(treeNumber)) {
+                storedFile = file;
+                storedTreeNumber = treesBefore + treeNumber;
+                return nextTree;
               }
-              if (nextTree == null && (fileIterator != null && fileIterator.hasNext())) {
-                currentFile = fileIterator.next();
-                // maybe print file name to stdout to get some feedback
-                if (PRINT_FILENAMES) {
-                  System.err.println(currentFile);
-                }
-                tr = treeReaderFactory().newTreeReader(new BufferedReader(new InputStreamReader(new FileInputStream(currentFile), encoding())));
+            }
+          } else if (fileIterator != null && fileIterator.hasNext()) {
+            file = fileIterator.next();
+            // maybe print file name to stdout to get some feedback
+            if (PRINT_FILENAMES) {
+              System.err.println(file);
+            }
+            if (requiredLabels != null) {
+              LabelIndex index = LabelIndex.forFile(file, treeReaderFactory(), encoding());
+              candidates = index.candidates(requiredLabels);
+              if (candidates.isEmpty()) {
+                treesBefore += index.numTrees();
+                continue;
               }
             }
-          } catch (IOException e) {
-            throw new RuntimeIOException("primeNextTree IO Exception in file " + currentFile, e);
+            tr = treeReaderFactory().newTreeReader(new BufferedReader(new InputStreamReader(new FileInputStream(file), encoding())));
+            fileTreeNumber = 0;
+          } else if (fileUpto < filePaths.size()) {
+            FileSequentialCollection fsc = new FileSequentialCollection(Collections.singletonList(filePaths.get(fileUpto)), fileFilters.get(fileUpto));
+            fileIterator = fsc.iterator();
+            fileUpto++;
+          } else {
+            return null;
           }
         }
+      } catch (IOException e) {
+        throw new RuntimeIOException("primeNextTree IO Exception in file " + file, e);
       }
-      if (nextTree == null) {
-        currentFile = null;
-      }
-      return nextTree;
     }
 
 
@@ -224,6 +279,10 @@ public final class DiskTreebank extends Treebank {
      * Returns true if the iteration has more elements.
      */
     public boolean hasNext() {
+      if (storedTree == null) {
+        currentFile = null;
+        currentTreeNumber = -1;
+      }
       return storedTree != null;
     }
 
@@ -235,6 +294,8 @@ public final class DiskTreebank extends Treebank {
         throw new NoSuchElementException();
       }
       Tree ret = storedTree;
+      currentFile = storedFile;
+      currentTreeNumber = storedTreeNumber;
       storedTree = primeNextTree();
       return ret;
     }
@@ -257,7 +318,25 @@ public final class DiskTreebank extends Treebank {
    */
   @Override
   public Iterator<Tree> iterator() {
-    return new DiskTreebankIterator();
+    return new DiskTreebankIterator(null);
+  }
+
+  /**
+   * Return an Iterator over just those Trees in the Treebank that have,
+   * for each of the given sets of labels, a node whose value is in that
+   * set, such as {@link edu.stanford.nlp.trees.tregex.TregexPattern#requiredLabels}
+   * gives.  A {@link LabelIndex} of each file is used to find these trees,
+   * and files that have none of them are not read at all.  The indices are
+   * built the first time they are needed and saved in the {@link
+   * LabelIndex#getCacheDirectory cache directory}, so that later searches of the Treebank need not build them again.
+   * {@link #getCurrentTreeNumber} gives the number of each tree in the
+   * whole Treebank.
+   *
+   * @param requiredLabels The sets of labels, of which the trees must each
+   *     contain one
+   */
+  public Iterator<Tree> iterator(Collection<? extends Collection<String>> requiredLabels) {
+    return new DiskTreebankIterator(requiredLabels);
   }
 
 
@@ -283,6 +362,7 @@ public final class DiskTreebank extends Treebank {
       System.err.println("\t-maxLength n\t-suffix ext\t-treeReaderFactory class");
       System.err.println("\t-pennPrint\t-encoding enc\t-tlp class\t-sentenceLengths");
       System.err.println("\t-summary\t-decimate\t-yield\t-correct\t-punct");
+      System.err.println("\t-threads n\t(for -summary, -sentenceLengths, -punct, -countTaggings and -correct)");
       return;
     }
     int i = 0;
@@ -297,6 +377,7 @@ public final class DiskTreebank extends Treebank {
     boolean punct = false;
     boolean sentenceLengths = false;
     boolean countTaggings = false;
+    int numThreads = 1;
     String decimatePrefix = null;
     String encoding = TreebankLanguagePack.DEFAULT_ENCODING;
     String suffix = Treebank.DEFAULT_TREE_FILE_SUFFIX;
@@ -363,6 +444,9 @@ public final class DiskTreebank extends Treebank {
       } else if (args[i].equals("-sentenceLengths")) {
         sentenceLengths = true;
         i++;
+      } else if (args[i].equals("-threads") && i + 1 < args.length) {
+        numThreads = Integer.parseInt(args[i+1]);
+        i += 2;
       } else {
         System.err.println("Unknown option: " + args[i]);
         i++;
@@ -392,18 +476,18 @@ public final class DiskTreebank extends Treebank {
     // System.err.println("Loaded " + treebank.size() + " trees from " + args[i]);
 
     if (summary) {
-      System.out.println(treebank.textualSummary());
+      System.out.println(treebank.textualSummary(null, numThreads));
     }
     if (sentenceLengths) {
-      sentenceLengths(treebank, args[i], ((i+1)<args.length ? args[i+1]: null), pw);
+      sentenceLengths(treebank, args[i], ((i+1)<args.length ? args[i+1]: null), pw, numThreads);
     }
 
     if (punct) {
-      printPunct(treebank, tlp, pw);
+      printPunct(treebank, tlp, pw, numThreads);
     }
 
     if (correct) {
-      treebank = new EnglishPTBTreebankCorrector().transformTrees(treebank);
+      treebank = new EnglishPTBTreebankCorrector().transformTrees(treebank, numThreads);
     }
 
     if (pennPrintTrees) {
@@ -416,7 +500,7 @@ public final class DiskTreebank extends Treebank {
     }
 
     if (countTaggings) {
-      countTaggings(treebank, pw);
+      countTaggings(treebank, pw, numThreads);
     }
 
     if (yield) {
@@ -444,31 +528,55 @@ public final class DiskTreebank extends Treebank {
   } // end main()
 
 
-  private static void printPunct(Treebank treebank, TreebankLanguagePack tlp, PrintWriter pw) {
+  private static void printPunct(Treebank treebank, TreebankLanguagePack tlp, PrintWriter pw, int numThreads) {
     if (tlp == null) {
       System.err.println("The -punct option requires you to specify -tlp");
     } else {
-      Filter<String> punctTagFilter = tlp.punctuationTagAcceptFilter();
-      for (Tree t : treebank) {
-        List<TaggedWord> tws = t.taggedYield();
-        for (TaggedWord tw : tws) {
-          if (punctTagFilter.accept(tw.tag())) {
-            pw.println(tw);
+      final Filter<String> punctTagFilter = tlp.punctuationTagAcceptFilter();
+      List<TaggedWord> puncts = treebank.apply(new TreeReducer<List<TaggedWord>>() {
+          public List<TaggedWord> newPartial() {
+            return new ArrayList<TaggedWord>();
           }
-        }
+          public void visitTree(List<TaggedWord> partial, Tree t) {
+            for (TaggedWord tw : t.taggedYield()) {
+              if (punctTagFilter.accept(tw.tag())) {
+                partial.add(tw);
+              }
+            }
+          }
+          public List<TaggedWord> merge(List<TaggedWord> earlier, List<TaggedWord> later) {
+            earlier.addAll(later);
+            return earlier;
+          }
+        }, numThreads);
+      for (TaggedWord tw : puncts) {
+        pw.println(tw);
       }
     }
   }
 
-  private static void countTaggings(Treebank tb, final PrintWriter pw) {
-    final TwoDimensionalCounter<String,String> wtc = new TwoDimensionalCounter<String,String>();
-    tb.apply(new TreeVisitor() {
-        public void visitTree(Tree tree) {
+  private static void countTaggings(Treebank tb, final PrintWriter pw, int numThreads) {
+    TwoDimensionalCounter<String,String> wtc = tb.apply(new TreeReducer<TwoDimensionalCounter<String,String>>() {
+        public TwoDimensionalCounter<String,String> newPartial() {
+          return new TwoDimensionalCounter<String,String>();
+        }
+        public void visitTree(TwoDimensionalCounter<String,String> partial, Tree tree) {
           List<TaggedWord> tags = tree.taggedYield();
           for (TaggedWord tag : tags)
-            wtc.incrementCount(tag.word(), tag.tag());
+            partial.incrementCount(tag.word(), tag.tag());
         }
-      });
+        public TwoDimensionalCounter<String,String> merge(TwoDimensionalCounter<String,String> earlier,
+                                                          TwoDimensionalCounter<String,String> later) {
+          // key by key in the order later has them, so that the keys keep the order they were first seen in
+          for (String word : later.firstKeySet()) {
+            Counter<String> ctr = later.getCounter(word);
+            for (String tag : ctr.keySet()) {
+              earlier.incrementCount(word, tag, ctr.getCount(tag));
+            }
+          }
+          return earlier;
+        }
+      }, numThreads);
     for (String key : wtc.firstKeySet()) {
       pw.print(key);
       pw.print('\t');
@@ -508,25 +616,23 @@ public final class DiskTreebank extends Treebank {
   }
 
 
-  public static void sentenceLengths(Treebank treebank, String name, String range,
-                                     PrintWriter pw) {
-    final int maxleng = 150;
-    int[] lengthCounts = new int[maxleng+2];
-    int numSents = 0;
-    int longestSeen = 0;
-    int totalWords = 0;
+  /** The lengths of some sentences, for <code>sentenceLengths</code>. */
+  private static final class SentenceLengths {
+    static final int MAX_LENG = 150;
+
+    final int[] lengthCounts = new int[MAX_LENG+2];
+    int numSents; // = 0;
+    int longestSeen; // = 0;
+    int totalWords; // = 0;
     String longSent = "";
-    double median = 0.0;
-    NumberFormat nf = new DecimalFormat("0.0");
-    boolean foundMedian = false;
 
-    for (Tree t : treebank) {
+    void add(Tree t) {
       numSents++;
       int len = t.yield().length();
-      if (len <= maxleng) {
+      if (len <= MAX_LENG) {
         lengthCounts[len]++;
       } else {
-        lengthCounts[maxleng+1]++;
+        lengthCounts[MAX_LENG+1]++;
       }
       totalWords += len;
       if (len > longestSeen) {
@@ -534,6 +640,53 @@ public final class DiskTreebank extends Treebank {
         longSent = t.toString();
       }
     }
+
+    /** Adds the lengths of the sentences after these ones. */
+    void addAll(SentenceLengths later) {
+      for (int i = 0; i < lengthCounts.length; i++) {
+        lengthCounts[i] += later.lengthCounts[i];
+      }
+      numSents += later.numSents;
+      totalWords += later.totalWords;
+      // the first of the longest sentences is kept
+      if (later.longestSeen > longestSeen) {
+        longestSeen = later.longestSeen;
+        longSent = later.longSent;
+      }
+    }
+  }
+
+  private static final TreeReducer<SentenceLengths> sentenceLengthsReducer = new TreeReducer<SentenceLengths>() {
+    public SentenceLengths newPartial() {
+      return new SentenceLengths();
+    }
+    public void visitTree(SentenceLengths partial, Tree t) {
+      partial.add(t);
+    }
+    public SentenceLengths merge(SentenceLengths earlier, SentenceLengths later) {
+      earlier.addAll(later);
+      return earlier;
+    }
+  };
+
+  public static void sentenceLengths(Treebank treebank, String name, String range,
+                                     PrintWriter pw) {
+    sentenceLengths(treebank, name, range, pw, 1);
+  }
+
+  public static void sentenceLengths(Treebank treebank, String name, String range,
+                                     PrintWriter pw, int numThreads) {
+    final int maxleng = SentenceLengths.MAX_LENG;
+    SentenceLengths lengths = treebank.apply(sentenceLengthsReducer, numThreads);
+    int[] lengthCounts = lengths.lengthCounts;
+    int numSents = lengths.numSents;
+    int longestSeen = lengths.longestSeen;
+    int totalWords = lengths.totalWords;
+    String longSent = lengths.longSent;
+    double median = 0.0;
+    NumberFormat nf = new DecimalFormat("0.0");
+    boolean foundMedian = false;
+
     System.out.print("Files " + name + ' ');
     if (range != null) {
       System.out.print(range + ' ');
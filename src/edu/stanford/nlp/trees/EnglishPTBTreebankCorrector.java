@@ -64,7 +64,35 @@ public class EnglishPTBTreebankCorrector implements TreebankTransformer {
 
   /** Fix all the English Penn Treebank errors, or at least some of them (!).
    */
-  public MemoryTreebank transformTrees(Treebank tb) {
+  public Treebank transformTrees(Treebank tb) {
+    return transformTrees(tb, 1);
+  }
+
+  /** Fix all the English Penn Treebank errors, or at least some of them (!),
+   *  on <code>numThreads</code> threads.  Unless <code>tb</code> is a
+   *  {@link MemoryTreebank}, the trees are corrected lazily, one at a time as
+   *  they are read from the Treebank returned, so a treebank on disk is
+   *  never held in memory.  A MemoryTreebank's trees are corrected in place,
+   *  once, into a new MemoryTreebank, rather than each time they are read.
+   */
+  public Treebank transformTrees(Treebank tb, int numThreads) {
+    TreeTransformer corrector = Tsurgeon.getTransformer(getOperations());
+    if ( ! (tb instanceof MemoryTreebank)) {
+      return tb.transform(corrector, numThreads);
+    }
+    MemoryTreebank mtb = new MemoryTreebank(tb.treeReaderFactory(),
+                                            tb.encoding());
+    for (Tree t : tb) {
+      mtb.add(corrector.transformTree(t));
+    }
+    return mtb;
+  }
+
+  /** The corrections, as (tregex pattern, tsurgeon operation) pairs to be
+   *  applied in order with {@link Tsurgeon#processPatternsOnTree}.  They
+   *  are compiled anew on each call.
+   */
+  public List<Pair<TregexPattern,TsurgeonPattern>> getOperations() {
     List<Pair<TregexPattern,TsurgeonPattern>> ops = new ArrayList<Pair<TregexPattern,TsurgeonPattern>>();
     String line = null;
     try {
@@ -90,12 +118,7 @@ public class EnglishPTBTreebankCorrector implements TreebankTransformer {
     } catch (ParseException pe) {
       throw new RuntimeException("EnglishPTBTreebankCorrector: tregex expression is ill-formed: " + line, pe);
     }
-    MemoryTreebank mtb = new MemoryTreebank(tb.treeReaderFactory(),
-                                            tb.encoding());
-    for (Tree t : tb) {
-      mtb.add(Tsurgeon.processPatternsOnTree(ops, t));
-    }
-    return mtb;
+    return ops;
   }
   
   private static boolean continuing(String str) {
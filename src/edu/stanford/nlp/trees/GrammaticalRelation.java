@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
@@ -321,17 +322,39 @@ public class GrammaticalRelation implements Comparable<GrammaticalRelation>, Ser
    *  @return Governor nodes to which t bears this GR
    */
   public Collection<Tree> getRelatedNodes(Tree t, Tree root) {
+    return getRelatedNodes(t, root, new IdentityHashMap<TregexPattern, TregexMatcher>());
+  }
+
+  /** Given a <code>Tree</code> node <code>t</code>, attempts to
+   *  return a list of nodes to which node <code>t</code> has this
+   *  grammatical relation.  The target patterns are only tried with
+   *  their root node at <code>t</code>, using matchers from
+   *  <code>matchers</code>, which are added to it as needed.  The same
+   *  map can be passed in for all the nodes of one tree (and all the
+   *  relations), so that each target pattern's matcher and its index of
+   *  the tree are made just once per tree.
+   *
+   *  @param t Target for finding governors of t related by this GR
+   *  @param root The root of the Tree
+   *  @param matchers Matchers on <code>root</code> for target patterns
+   *  @return Governor nodes to which t bears this GR
+   */
+  Collection<Tree> getRelatedNodes(Tree t, Tree root, Map<TregexPattern, TregexMatcher> matchers) {
     Set<Tree> nodeList = new LinkedHashSet<Tree>();
     for (TregexPattern p : targetPatterns) {    // cdm: I deleted: && nodeList.isEmpty()
       if (root.value() == null) {
 	      root.setValue("ROOT");
       }
-      TregexMatcher m = p.matcher(root);
-      while (m.find()) {
-        if (m.getMatch() == t) {
-          nodeList.add(m.getNode("target"));
-          //System.out.println("found " + this + "(" + t + ", " + m.getNode("target") + ")");
-        }
+      TregexMatcher m = matchers.get(p);
+      if (m == null) {
+        m = p.matcher(root);
+        matchers.put(p, m);
+      } else {
+        m.reset();
+      }
+      while (m.findAt(t)) {
+        nodeList.add(m.getNode("target"));
+        //System.out.println("found " + this + "(" + t + ", " + m.getNode("target") + ")");
       }
     }
     return nodeList;
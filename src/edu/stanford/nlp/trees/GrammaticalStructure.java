@@ -5,6 +5,8 @@ import edu.stanford.nlp.ling.Label;
 import static edu.stanford.nlp.trees.GrammaticalRelation.DEPENDENT;
 import static edu.stanford.nlp.trees.GrammaticalRelation.GOVERNOR;
 import edu.stanford.nlp.trees.GrammaticalRelation.GrammaticalRelationAnnotation;
+import edu.stanford.nlp.trees.tregex.TregexMatcher;
+import edu.stanford.nlp.trees.tregex.TregexPattern;
 import edu.stanford.nlp.util.Filter;
 import edu.stanford.nlp.util.Generics;
 
@@ -79,7 +81,7 @@ public abstract class GrammaticalStructure extends TreeGraph {
       relationsLock.lock();
     }
     try {
-      analyzeNode(root, root, relations);
+      analyzeNode(root, root, relations, new IdentityHashMap<TregexPattern, TregexMatcher>());
     }
     finally {
       if (relationsLock != null) {
@@ -109,19 +111,26 @@ public abstract class GrammaticalStructure extends TreeGraph {
   }
 
 
-  private static void analyzeNode(TreeGraphNode t, TreeGraphNode root, Collection<GrammaticalRelation> relations) {
+  /**
+   * Adds the grammatical relation arcs of <code>t</code> and its
+   * descendants.  This is a single pass over the tree: at each node, the
+   * target patterns of the applicable relations are matched anchored at
+   * that node only, with one matcher per pattern shared across the tree.
+   */
+  private static void analyzeNode(TreeGraphNode t, TreeGraphNode root, Collection<GrammaticalRelation> relations,
+                                  Map<TregexPattern, TregexMatcher> matchers) {
     if (t.numChildren() > 0) {          // don't do leaves
       TreeGraphNode tHigh = t.highestNodeWithSameHead();
       for (GrammaticalRelation egr : relations) {
         if (egr.isApplicable(t)) {
-          for (Tree u : egr.getRelatedNodes(t, root)) {
+          for (Tree u : egr.getRelatedNodes(t, root, matchers)) {
             tHigh.addArc(GrammaticalRelation.getAnnotationClass(egr), (TreeGraphNode) u);
           }
         }
       }
       // now recurse into children
       for (TreeGraphNode kid : t.children()) {
-        analyzeNode(kid, root, relations);
+        analyzeNode(kid, root, relations, matchers);
       }
     }
   }
@@ -0,0 +1,493 @@
+package edu.stanford.nlp.trees;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+
+/**
+ * An inverted index from the node labels of the trees in one treebank file
+ * to the numbers of the trees they occur in.  Both the labels of phrasal
+ * nodes and the words at the leaves are indexed, by their
+ * <code>value()</code>.  With it, a search for trees that must contain
+ * certain labels, such as {@link
+ * edu.stanford.nlp.trees.tregex.TregexPattern#requiredLabels} gives, need
+ * only read those trees that do.
+ * <p/>
+ * The index of a treebank file is saved in a cache directory, not next to
+ * the file, so that the treebank directories are left as they were (see
+ * {@link #setCacheDirectory}).  It is built the first time it is asked for,
+ * and again whenever the treebank file has changed since (as judged by its
+ * length and modification time), or was read in a different way.  Only the
+ * indexes of files read with a {@link KeyedTreeReaderFactory} that gives a
+ * key are saved, since only then can it be told that two factories read
+ * the same trees; the key, with the encoding, must match for a saved index
+ * to be used.  The indexes of files read with any other factory, and those
+ * that cannot be saved, are kept in memory, for as long as the factory is.
+ * <p/>
+ * In the index file, all numbers are big-endian.  It starts with a magic
+ * number and a version number, then the length and modification time of
+ * the treebank file (as longs), and the path of the treebank file and the
+ * key of the way it was read, with the encoding (together as a byte count
+ * and UTF-8 bytes).  Then come the number of trees and the
+ * number of distinct labels, followed by three tables with an entry per
+ * label, sorted by the labels' hash codes: the hash codes, the offsets of
+ * the labels in the label text, and where their tree lists start (with a
+ * final entry for the end of the last).  Last come the byte count of the
+ * label text, the label text itself, with each label as a byte count and
+ * UTF-8 bytes, and the tree lists, each in increasing order.  So a label
+ * can be looked up by binary search, without reading the others.
+ */
+public final class LabelIndex {
+
+  public static final String INDEX_FILE_SUFFIX = ".lidx";
+
+  private static final int MAGIC = 0x4c494458; // "LIDX"
+  private static final int VERSION = 3;
+
+  private static final String BINARY_READER_NAME = "binary";
+
+  private static volatile File cacheDirectory =
+    new File(System.getProperty("edu.stanford.nlp.trees.LabelIndex.dir",
+                                new File(System.getProperty("java.io.tmpdir"), "stanford-label-index").getPath()));
+
+  // the indexes of the files read with factories that give no key, by
+  // factory, then by file, encoding and the file's length and modification time
+  private static final Map<TreeReaderFactory, Map<String, LabelIndex>> unsaved =
+    new WeakHashMap<TreeReaderFactory, Map<String, LabelIndex>>();
+
+  private final int numTrees;
+  private final IntBuffer hashes;
+  private final IntBuffer labelOffsets;
+  private final IntBuffer postingStarts;
+  private final ByteBuffer labelText;
+  private final IntBuffer postings;
+
+
+  private LabelIndex(ByteBuffer buffer) {
+    buffer.position(4 + 4 + 8 + 8);
+    buffer.position(buffer.position() + 4 + buffer.getInt());
+    numTrees = buffer.getInt();
+    int numLabels = buffer.getInt();
+    hashes = intArray(buffer, numLabels);
+    labelOffsets = intArray(buffer, numLabels);
+    postingStarts = intArray(buffer, numLabels + 1);
+    int labelTextLength = buffer.getInt();
+    labelText = buffer.slice();
+    labelText.limit(labelTextLength);
+    buffer.position(buffer.position() + labelTextLength);
+    postings = intArray(buffer, postingStarts.get(numLabels));
+  }
+
+  private static IntBuffer intArray(ByteBuffer buffer, int length) {
+    ByteBuffer array = buffer.slice();
+    array.limit(4 * length);
+    buffer.position(buffer.position() + 4 * length);
+    return array.asIntBuffer();
+  }
+
+  /** The number of trees in the treebank file. */
+  public int numTrees() {
+    return numTrees;
+  }
+
+  /**
+   * Returns the numbers (counting from 0) of the trees that have, for
+   * each of the given sets of labels, a node whose value is in that set.
+   * If there are no sets, this is all the trees.
+   *
+   * @param requiredLabels The sets of labels, of which the trees must each
+   *     contain one
+   * @return The numbers of the trees that do
+   */
+  public BitSet candidates(Collection<? extends Collection<String>> requiredLabels) {
+    BitSet result = new BitSet(numTrees);
+    result.set(0, numTrees);
+    for (Collection<String> labels : requiredLabels) {
+      BitSet trees = new BitSet(numTrees);
+      for (String label : labels) {
+        int i = find(label);
+        if (i >= 0) {
+          for (int j = postingStarts.get(i), end = postingStarts.get(i + 1); j < end; j++) {
+            trees.set(postings.get(j));
+          }
+        }
+      }
+      result.and(trees);
+      if (result.isEmpty()) {
+        break;
+      }
+    }
+    return result;
+  }
+
+  /** The number of the label in the tables, or -1 if it is not in them. */
+  private int find(String label) {
+    int h = label.hashCode();
+    int lo = 0;
+    int hi = hashes.limit() - 1;
+    while (lo <= hi) {
+      int mid = (lo + hi) >>> 1;
+      int midHash = hashes.get(mid);
+      if (midHash < h) {
+        lo = mid + 1;
+      } else if (midHash > h) {
+        hi = mid - 1;
+      } else {
+        // look through all the labels with this hash code
+        int i = mid;
+        while (i > 0 && hashes.get(i - 1) == h) {
+          i--;
+        }
+        for ( ; i < hashes.limit() && hashes.get(i) == h; i++) {
+          if (label.equals(label(i))) {
+            return i;
+          }
+        }
+        return -1;
+      }
+    }
+    return -1;
+  }
+
+  private String label(int i) {
+    ByteBuffer text = labelText.duplicate();
+    text.position(labelOffsets.get(i));
+    byte[] bytes = new byte[text.getInt()];
+    text.get(bytes);
+    try {
+      return new String(bytes, "UTF-8");
+    } catch (UnsupportedEncodingException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+
+  /**
+   * Sets the directory the index files are saved in, which is made if it
+   * does not exist.  By default this is the directory given by the system
+   * property <code>edu.stanford.nlp.trees.LabelIndex.dir</code>, or else
+   * <code>stanford-label-index</code> in the temporary directory.
+   */
+  public static void setCacheDirectory(File dir) {
+    cacheDirectory = dir;
+  }
+
+  /** Returns the directory the index files are saved in. */
+  public static File getCacheDirectory() {
+    return cacheDirectory;
+  }
+
+  /**
+   * Returns the index of a text treebank file, as read with the given
+   * <code>TreeReaderFactory</code>, loading it from its index file if that
+   * is up to date, and otherwise building (and saving) it.  If the factory
+   * gives no {@link KeyedTreeReaderFactory#labelIndexKey key}, the index is
+   * only kept in memory, and built again for another factory.
+   *
+   * @param file The treebank file
+   * @param trf The factory of the readers its trees are read with
+   * @param encoding The encoding of the treebank file
+   * @return The index
+   * @throws IOException If the treebank file cannot be read
+   */
+  public static LabelIndex forFile(File file, TreeReaderFactory trf, String encoding) throws IOException {
+    String key = (trf instanceof KeyedTreeReaderFactory) ? ((KeyedTreeReaderFactory) trf).labelIndexKey() : null;
+    if (key == null) {
+      return unsavedIndex(file, trf, encoding);
+    }
+    String readerName = key + ' ' + encoding;
+    LabelIndex index = load(file, readerName);
+    if (index != null) {
+      return index;
+    }
+    return build(file, trf, encoding).save(file, readerName);
+  }
+
+  /**
+   * Returns the index of a file read with a factory that gives no key,
+   * from memory if it has been built already for this factory.
+   */
+  private static LabelIndex unsavedIndex(File file, TreeReaderFactory trf, String encoding) throws IOException {
+    String name = sourcePath(file) + '\n' + encoding + '\n' + file.length() + '\n' + file.lastModified();
+    Map<String, LabelIndex> indexes;
+    synchronized (unsaved) {
+      indexes = unsaved.get(trf);
+      if (indexes == null) {
+        indexes = new HashMap<String, LabelIndex>();
+        unsaved.put(trf, indexes);
+      }
+    }
+    synchronized (indexes) {
+      LabelIndex index = indexes.get(name);
+      if (index == null) {
+        index = build(file, trf, encoding).index(file, name);
+        indexes.put(name, index);
+      }
+      return index;
+    }
+  }
+
+  private static Builder build(File file, TreeReaderFactory trf, String encoding) throws IOException {
+    Builder builder = new Builder();
+    TreeReader tr = trf.newTreeReader(new BufferedReader(new InputStreamReader(new FileInputStream(file), encoding)));
+    try {
+      for (Tree t; (t = tr.readTree()) != null; ) {
+        for (Tree node : t) {
+          builder.add(node.value());
+        }
+        builder.endTree();
+      }
+    } finally {
+      tr.close();
+    }
+    return builder;
+  }
+
+  /**
+   * Returns the index of a file of a {@link BinaryTreebank}, loading it
+   * from its index file if that is up to date, and otherwise building (and
+   * saving) it.  It is built from the node labels in the file, without
+   * building its trees.
+   *
+   * @param file The binary treebank file
+   * @return The index
+   * @throws IOException If the binary treebank file cannot be read
+   */
+  public static LabelIndex forBinaryFile(File file) throws IOException {
+    LabelIndex index = load(file, BINARY_READER_NAME);
+    if (index != null) {
+      return index;
+    }
+    BinaryTreebank.TreeFile treeFile = new BinaryTreebank.TreeFile(file, null);
+    Builder builder = new Builder();
+    String[] labels = treeFile.getLabels();
+    for (int i = 0; i < treeFile.size(); i++) {
+      for (int n = 0, numNodes = treeFile.numNodes(i); n < numNodes; n++) {
+        int id = treeFile.getLabelId(i, n);
+        builder.add(id < 0 ? null : labels[id]);
+      }
+      builder.endTree();
+    }
+    return builder.save(file, BINARY_READER_NAME);
+  }
+
+  /**
+   * The file in the cache directory that the index of <code>file</code>,
+   * read in the way named, is saved in.  Its name is made from the name of
+   * <code>file</code> and its key, which the index file also records, so
+   * that a file of the same name elsewhere, or the same file read in
+   * another way, is not mistaken for it.
+   */
+  private static File indexFile(File file, String readerName) {
+    String key = key(file, readerName);
+    return new File(cacheDirectory, file.getName() + '-' + Integer.toHexString(key.hashCode()) + INDEX_FILE_SUFFIX);
+  }
+
+  private static String sourcePath(File file) {
+    try {
+      return file.getCanonicalPath();
+    } catch (IOException e) {
+      return file.getAbsolutePath();
+    }
+  }
+
+  /** The key an index file of <code>file</code> read in the way named must have to be used. */
+  private static String key(File file, String readerName) {
+    return sourcePath(file) + '\n' + readerName;
+  }
+
+  /**
+   * Loads the index of <code>file</code> from its index file, or returns
+   * null if there is no index file, or it is out of date.
+   */
+  private static LabelIndex load(File file, String readerName) {
+    File indexFile = indexFile(file, readerName);
+    readerName = key(file, readerName);
+    if ( ! indexFile.exists()) {
+      return null;
+    }
+    try {
+      FileInputStream in = new FileInputStream(indexFile);
+      ByteBuffer buffer;
+      try {
+        FileChannel channel = in.getChannel();
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      } finally {
+        in.close();
+      }
+      if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION ||
+          buffer.getLong() != file.length() || buffer.getLong() != file.lastModified()) {
+        return null;
+      }
+      byte[] name = new byte[buffer.getInt()];
+      buffer.get(name);
+      if ( ! readerName.equals(new String(name, "UTF-8"))) {
+        return null;
+      }
+      return new LabelIndex(buffer);
+    } catch (IOException e) {
+      return null;
+    } catch (RuntimeException e) {
+      // a truncated or otherwise damaged index file; it will be rebuilt
+      return null;
+    }
+  }
+
+
+  /**
+   * A <code>TreeReaderFactory</code> that can say how its readers read
+   * trees, so that the label indexes of the files it reads can be saved and
+   * used again.
+   */
+  public interface KeyedTreeReaderFactory extends TreeReaderFactory {
+
+    /**
+     * Returns a key that is the same for two factories only if their
+     * readers read the same trees from the same text, or null if this
+     * factory cannot tell, as when it holds objects (such as a
+     * <code>TreeNormalizer</code>) that it was given, whose settings it
+     * does not know.  The key is usually made of the names of the classes
+     * of the factory and of what it holds.
+     */
+    String labelIndexKey();
+
+  }
+
+
+  /** Collects the labels of the trees of a file, tree by tree. */
+  private static class Builder {
+
+    private final Map<String, TreeList> postings = new HashMap<String, TreeList>();
+    private int numTrees; // = 0
+
+    void add(String label) {
+      if (label == null) {
+        return;
+      }
+      TreeList trees = postings.get(label);
+      if (trees == null) {
+        trees = new TreeList();
+        postings.put(label, trees);
+      }
+      trees.add(numTrees);
+    }
+
+    void endTree() {
+      numTrees++;
+    }
+
+    /**
+     * Writes the index to the index file of <code>file</code>, if it can,
+     * and returns it.
+     */
+    LabelIndex save(File file, String readerName) throws IOException {
+      byte[] index = toBytes(file, readerName);
+      File indexFile = indexFile(file, readerName);
+      try {
+        if ( ! cacheDirectory.isDirectory() && ! cacheDirectory.mkdirs()) {
+          throw new IOException("cannot make directory " + cacheDirectory);
+        }
+        OutputStream indexOut = new FileOutputStream(indexFile);
+        try {
+          indexOut.write(index);
+        } finally {
+          indexOut.close();
+        }
+      } catch (IOException e) {
+        System.err.println("Could not save label index " + indexFile + ": " + e.getMessage());
+      }
+      return new LabelIndex(ByteBuffer.wrap(index));
+    }
+
+    /** Returns the index, without saving it. */
+    LabelIndex index(File file, String readerName) throws IOException {
+      return new LabelIndex(ByteBuffer.wrap(toBytes(file, readerName)));
+    }
+
+    /** The index, as it is saved in an index file. */
+    private byte[] toBytes(File file, String readerName) throws IOException {
+      long length = file.length();
+      long lastModified = file.lastModified();
+      List<String> labels = new ArrayList<String>(postings.keySet());
+      Collections.sort(labels, new Comparator<String>() {
+        public int compare(String s1, String s2) {
+          int h1 = s1.hashCode();
+          int h2 = s2.hashCode();
+          return h1 < h2 ? -1 : (h1 == h2 ? 0 : 1);
+        }
+      });
+      ByteArrayOutputStream textBytes = new ByteArrayOutputStream();
+      DataOutputStream text = new DataOutputStream(textBytes);
+      int[] labelOffsets = new int[labels.size()];
+      for (int i = 0; i < labels.size(); i++) {
+        labelOffsets[i] = text.size();
+        writeString(text, labels.get(i));
+      }
+      text.flush();
+
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeLong(length);
+      out.writeLong(lastModified);
+      writeString(out, key(file, readerName));
+      out.writeInt(numTrees);
+      out.writeInt(labels.size());
+      for (String label : labels) {
+        out.writeInt(label.hashCode());
+      }
+      for (int offset : labelOffsets) {
+        out.writeInt(offset);
+      }
+      int start = 0;
+      for (String label : labels) {
+        out.writeInt(start);
+        start += postings.get(label).size;
+      }
+      out.writeInt(start);
+      out.writeInt(textBytes.size());
+      textBytes.writeTo(out);
+      for (String label : labels) {
+        TreeList trees = postings.get(label);
+        for (int i = 0; i < trees.size; i++) {
+          out.writeInt(trees.trees[i]);
+        }
+      }
+      out.flush();
+      return bytes.toByteArray();
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+      byte[] bytes = s.getBytes("UTF-8");
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+
+
+    /** The numbers of the trees a label occurs in, in increasing order. */
+    private static class TreeList {
+
+      int[] trees = new int[4];
+      int size; // = 0
+
+      void add(int tree) {
+        if (size > 0 && trees[size - 1] == tree) {
+          return;  // already seen in this tree
+        }
+        if (size == trees.length) {
+          int[] newTrees = new int[2 * size];
+          System.arraycopy(trees, 0, newTrees, 0, size);
+          trees = newTrees;
+        }
+        trees[size++] = tree;
+      }
+
+    } // end class TreeList
+
+  } // end class Builder
+
+}
@@ -14,17 +14,21 @@ import java.io.Reader;
  *
  * @author Christopher Manning
  */
-public class LabeledScoredTreeReaderFactory implements TreeReaderFactory {
+public class LabeledScoredTreeReaderFactory implements LabelIndex.KeyedTreeReaderFactory {
 
   private final LabelFactory lf;
   private final TreeNormalizer tm;
 
+  // whether this factory made what it holds itself, with known settings
+  private boolean defaultSettings; // = false;
+
   /**
    * Create a new TreeReaderFactory with CategoryWordTag labels.
    */
   public LabeledScoredTreeReaderFactory() {
     lf = new CategoryWordTagFactory();
     tm = new BobChrisTreeNormalizer();
+    defaultSettings = true;
   }
 
   public LabeledScoredTreeReaderFactory(LabelFactory lf) {
@@ -48,4 +52,16 @@ public class LabeledScoredTreeReaderFactory implements TreeReaderFactory {
   public TreeReader newTreeReader(Reader in) {
     return new PennTreeReader(in, new LabeledScoredTreeFactory(lf), tm);
   }
+
+  /**
+   * Returns the names of the classes of this factory and of its label factory and normalizer, if it
+   * was made with the default constructor, or else null, since the
+   * settings of what it was given are not known.
+   */
+  public String labelIndexKey() {
+    if ( ! defaultSettings || getClass() != LabeledScoredTreeReaderFactory.class) {
+      return null;
+    }
+    return getClass().getName() + ' ' + lf.getClass().getName() + ' ' + tm.getClass().getName();
+  }
 }
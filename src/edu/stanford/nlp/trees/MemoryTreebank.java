@@ -70,6 +70,9 @@ public final class MemoryTreebank extends Treebank implements FileProcessor, Lis
   /**
    * Create a new tree bank.
    *
+   * For the fastest reading of Penn Treebank files, pass a
+   * {@link StreamingPennTreeReaderFactory}.
+   *
    * @param trf the factory class to be called to create a new
    *            <code>TreeReader</code>
    */
@@ -383,6 +386,26 @@ public final class MemoryTreebank extends Treebank implements FileProcessor, Lis
   }
 
 
+  /**
+   * Splits the trees into ranges of consecutive indices, a few per thread,
+   * so that a thread that gets quick ranges can take on more of them.
+   *
+   * @param numThreads The number of threads the ranges will be shared among
+   * @return Views of the ranges of trees, in order
+   */
+  @Override
+  protected Iterator<List<Tree>> parts(int numThreads) {
+    int size = parseTrees.size();
+    int numParts = 4 * numThreads;
+    int partSize = Math.max(1, (size + numParts - 1) / numParts);
+    List<List<Tree>> parts = new ArrayList<List<Tree>>();
+    for (int start = 0; start < size; start += partSize) {
+      parts.add(parseTrees.subList(start, Math.min(size, start + partSize)));
+    }
+    return parts.iterator();
+  }
+
+
   /**
    * Return an Iterator over Trees in the Treebank.
    *
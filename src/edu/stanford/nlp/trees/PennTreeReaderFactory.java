@@ -6,11 +6,14 @@ import java.io.Reader;
  *
  *  @author Roger Levy (rog@nlp.stanford.edu)
  */
-public class PennTreeReaderFactory implements TreeReaderFactory {
+public class PennTreeReaderFactory implements LabelIndex.KeyedTreeReaderFactory {
 
   private final TreeFactory tf;
   private final TreeNormalizer tn;
 
+  // whether this factory made what it holds itself, with known settings
+  private boolean defaultSettings; // = false;
+
   /**
    * Default constructor; uses a {@link LabeledScoredTreeFactory},
    * with StringLabels, a {@link PennTreebankTokenizer},
@@ -18,6 +21,7 @@ public class PennTreeReaderFactory implements TreeReaderFactory {
    */
   public PennTreeReaderFactory() {
     this(new LabeledScoredTreeFactory());
+    defaultSettings = true;
   }
 
   /**
@@ -59,4 +63,16 @@ public class PennTreeReaderFactory implements TreeReaderFactory {
     return new PennTreeReader(in, tf, tn, new PennTreebankTokenizer(in));
   }
 
+  /**
+   * Returns the names of the classes of this factory and of its tree factory and normalizer, if it
+   * was made with the default constructor, or else null, since the
+   * settings of what it was given are not known.
+   */
+  public String labelIndexKey() {
+    if ( ! defaultSettings || getClass() != PennTreeReaderFactory.class) {
+      return null;
+    }
+    return getClass().getName() + ' ' + tf.getClass().getName() + ' ' + tn.getClass().getName();
+  }
+
 }
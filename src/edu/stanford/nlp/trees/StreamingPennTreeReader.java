@@ -0,0 +1,469 @@
+package edu.stanford.nlp.trees;
+
+import edu.stanford.nlp.ling.HasIndex;
+
+import java.io.*;
+import java.util.*;
+
+
+/**
+ * A <code>StreamingPennTreeReader</code> is a <code>TreeReader</code> that
+ * reads in Penn Treebank-style files, like {@link PennTreeReader}, and
+ * produces the same trees, but faster.  Rather than getting each token as a
+ * <code>String</code> from a tokenizer, it scans the characters of the
+ * <code>Reader</code> itself, through its own buffer.  Labels and words are
+ * made into <code>String</code>s through a fixed-size symbol table, so a
+ * label that has been seen recently is not allocated again, and the
+ * children of each node are collected in a reused scratch array rather than
+ * in a new list.
+ * <p>
+ * Tokens are delimited exactly as by {@link PennTreebankTokenizer}: parentheses
+ * are tokens by themselves, characters up to and including space are
+ * whitespace, and everything else is part of a word.  As with
+ * <code>PennTreeReader</code>, several words in a row make up a single leaf,
+ * with their words separated by single spaces.
+ * <p>
+ * The lists of children given to the <code>TreeFactory</code> are only
+ * valid during the call to {@link TreeFactory#newTreeNode}, so the factory
+ * must copy them, as all the factories in this package do.
+ * Example usage:
+ * <br>
+ * <code> TreeReader tr = new StreamingPennTreeReader(new BufferedReader(new
+ * InputStreamReader(new FileInputStream(file),"UTF-8")),
+ * myTreeFactory); </code>
+ */
+public class StreamingPennTreeReader implements TreeReader {
+
+  private final Reader in;
+  private final TreeNormalizer tn;
+  private final TreeFactory tf;
+
+  private static final int EOF = 0;
+  private static final int LEFT_PAREN = 1;
+  private static final int RIGHT_PAREN = 2;
+  private static final int WORD = 3;
+
+  private static final char DEL = '\u007f';
+
+  private final char[] buffer = new char[8192];
+  private int bufferPos; // = 0
+  private int bufferLimit; // = 0
+
+  /** The type of a token that has been peeked at, or -1 if none. */
+  private int peekedToken = -1;
+
+  /**
+   * The text of the word tokens read since it was last cleared: the pending
+   * words of a leaf are collected here, separated by spaces.
+   */
+  private char[] text = new char[64];
+  private int textLength; // = 0
+
+  private static final int SYMBOL_TABLE_SIZE = 1 << 14;
+  // a direct-mapped cache of the strings made from text
+  private final String[] symbols = new String[SYMBOL_TABLE_SIZE];
+
+  // the finished subtrees of the open nodes, in order
+  private Tree[] children = new Tree[64];
+  private int numChildren; // = 0
+  // for each open node, its label and the position of its first child
+  private String[] openLabels = new String[16];
+  private int[] openStarts = new int[16];
+  private int numOpen; // = 0
+  private final ChildList childList = new ChildList();
+
+  private boolean checkedHeader; // = false
+  private int wordIndex;
+
+
+  /**
+   * Read parse trees from a <code>Reader</code>.
+   * For the defaulted arguments, you get a
+   * <code>SimpleTreeFactory</code> and no <code>TreeNormalizer</code>.
+   *
+   * @param in The <code>Reader</code>
+   */
+  public StreamingPennTreeReader(Reader in) {
+    this(in, new SimpleTreeFactory());
+  }
+
+
+  /**
+   * Read parse trees from a <code>Reader</code>.
+   *
+   * @param in the Reader
+   * @param tf TreeFactory -- factory to create some kind of Tree
+   */
+  public StreamingPennTreeReader(Reader in, TreeFactory tf) {
+    this(in, tf, null);
+  }
+
+
+  /**
+   * Read parse trees from a Reader.
+   *
+   * @param in Reader
+   * @param tf TreeFactory -- factory to create some kind of Tree
+   * @param tn the method of normalizing trees
+   */
+  public StreamingPennTreeReader(Reader in, TreeFactory tf, TreeNormalizer tn) {
+    this.in = in;
+    this.tf = tf;
+    this.tn = tn;
+  }
+
+
+  /**
+   * Reads a single tree in standard Penn Treebank format,
+   * with or without an additional set of parens around it (an unnamed
+   * ROOT node).
+   *
+   * @return A single tree, or <code>null</code> at end of input.
+   * @throws IOException If the input ends before the current tree is complete
+   */
+  public Tree readTree() throws IOException {
+    if ( ! checkedHeader) {
+      skipHeader();
+      checkedHeader = true;
+    }
+    Tree tr = null;
+    while (tr == null) {
+      textLength = 0;
+      int token = nextToken();
+      if (token == EOF) {
+        return null;
+      } else if (token == RIGHT_PAREN) {
+        System.err.println("Expecting start of tree; found surplus close parenthesis ')'. Ignoring it.");
+      } else {
+        wordIndex = 0;
+        if (token == WORD) {
+          tr = newLeaf();
+        } else {
+          tr = readTreeFromLeftParen();
+        }
+        if (tn != null) {
+          tr = tn.normalizeWholeTree(tr, tf);
+        }
+      }
+    }
+    return tr;
+  }
+
+
+  /**
+   * Skips past the whacked out headers still present in the Brown corpus in
+   * Treebank 3, as <code>PennTreeReader</code> does.
+   */
+  private void skipHeader() throws IOException {
+    if (peekToken() != WORD || ! textStartsWith("*x*x*x")) {
+      textLength = 0;
+      return;
+    }
+    nextToken();
+    int foundCount = 1;
+    while (foundCount < 4) {
+      textLength = 0;
+      int token = nextToken();
+      if (token == EOF) {
+        break;
+      } else if (token == WORD && textStartsWith("*x*x*x")) {
+        foundCount++;
+      }
+    }
+    textLength = 0;
+  }
+
+  private boolean textStartsWith(String prefix) {
+    if (textLength < prefix.length()) {
+      return false;
+    }
+    for (int i = 0; i < prefix.length(); i++) {
+      if (text[i] != prefix.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+
+  /**
+   * Reads the rest of a tree whose left parenthesis has just been read.
+   */
+  private Tree readTreeFromLeftParen() throws IOException {
+    numChildren = 0;
+    numOpen = 0;
+    openNode();
+    while (true) {
+      switch (nextToken()) {
+      case WORD:
+        // the words are collected in text until the leaf is complete
+        break;
+      case LEFT_PAREN:
+        addPendingLeaf();
+        openNode();
+        break;
+      case RIGHT_PAREN:
+        addPendingLeaf();
+        closeNode();
+        if (numOpen == 0) {
+          numChildren = 0;
+          return children[0];
+        }
+        break;
+      default:
+        throw new IOException("Expecting right paren found eof");
+      }
+    }
+  }
+
+  /** Reads the label, if any, of a node whose left parenthesis has just been read. */
+  private void openNode() throws IOException {
+    String name = null;
+    if (peekToken() == WORD) {
+      nextToken();
+      name = newSymbol();
+      textLength = 0;
+    }
+    if (tn != null) {
+      name = tn.normalizeNonterminal(name);
+    }
+    if (numOpen == openLabels.length) {
+      String[] newOpenLabels = new String[2 * numOpen];
+      System.arraycopy(openLabels, 0, newOpenLabels, 0, numOpen);
+      openLabels = newOpenLabels;
+      int[] newOpenStarts = new int[2 * numOpen];
+      System.arraycopy(openStarts, 0, newOpenStarts, 0, numOpen);
+      openStarts = newOpenStarts;
+    }
+    openLabels[numOpen] = name;
+    openStarts[numOpen] = numChildren;
+    numOpen++;
+  }
+
+  private void closeNode() {
+    numOpen--;
+    int start = openStarts[numOpen];
+    childList.set(children, start, numChildren - start);
+    Tree node = tf.newTreeNode(openLabels[numOpen], childList);
+    openLabels[numOpen] = null;
+    numChildren = start;
+    addChild(node);
+  }
+
+  private void addPendingLeaf() {
+    if (textLength > 0) {
+      addChild(newLeaf());
+    }
+  }
+
+  /** Makes a leaf of the words in text, and clears it. */
+  private Tree newLeaf() {
+    String name = newSymbol();
+    textLength = 0;
+    if (tn != null) {
+      name = tn.normalizeTerminal(name);
+    }
+    Tree leaf = tf.newLeaf(name);
+    if (leaf.label() instanceof HasIndex) {
+      HasIndex hi = (HasIndex) leaf.label();
+      hi.setIndex(wordIndex);
+    }
+    wordIndex++;
+    return leaf;
+  }
+
+  private void addChild(Tree child) {
+    if (numChildren == children.length) {
+      Tree[] newChildren = new Tree[2 * numChildren];
+      System.arraycopy(children, 0, newChildren, 0, numChildren);
+      children = newChildren;
+    }
+    children[numChildren++] = child;
+  }
+
+
+  /**
+   * Returns the string in text, reusing the last string in its slot of the
+   * symbol table if it has the same characters.
+   */
+  private String newSymbol() {
+    int h = 0;
+    for (int i = 0; i < textLength; i++) {
+      h = 31 * h + text[i];
+    }
+    int slot = (h ^ (h >>> 16)) & (SYMBOL_TABLE_SIZE - 1);
+    String symbol = symbols[slot];
+    // String.hashCode() is the same function, and is cached in the string
+    if (symbol != null && symbol.length() == textLength && symbol.hashCode() == h) {
+      int i = 0;
+      while (i < textLength && symbol.charAt(i) == text[i]) {
+        i++;
+      }
+      if (i == textLength) {
+        return symbol;
+      }
+    }
+    symbol = new String(text, 0, textLength);
+    symbols[slot] = symbol;
+    return symbol;
+  }
+
+
+  private int peekToken() throws IOException {
+    if (peekedToken < 0) {
+      peekedToken = scanToken();
+    }
+    return peekedToken;
+  }
+
+  private int nextToken() throws IOException {
+    if (peekedToken >= 0) {
+      int token = peekedToken;
+      peekedToken = -1;
+      return token;
+    }
+    return scanToken();
+  }
+
+  /**
+   * Reads the next token.  If it is a word, its characters are appended to
+   * text, after a space if text is not empty.
+   */
+  private int scanToken() throws IOException {
+    int c;
+    do {
+      c = read();
+    } while (c >= 0 && c <= ' ');
+    if (c < 0) {
+      return EOF;
+    } else if (c == '(') {
+      return LEFT_PAREN;
+    } else if (c == ')') {
+      return RIGHT_PAREN;
+    }
+    if (textLength > 0) {
+      appendText(' ');
+    }
+    appendText((char) c);
+    if (c != DEL) {  // DEL is a word by itself, as in PennTreebankTokenizer
+      while (true) {
+        if (bufferPos == bufferLimit && ! fillBuffer()) {
+          break;
+        }
+        char next = buffer[bufferPos];
+        if (next <= ' ' || next == '(' || next == ')' || next == DEL) {
+          break;
+        }
+        appendText(next);
+        bufferPos++;
+      }
+    }
+    return WORD;
+  }
+
+  private void appendText(char c) {
+    if (textLength == text.length) {
+      char[] newText = new char[2 * textLength];
+      System.arraycopy(text, 0, newText, 0, textLength);
+      text = newText;
+    }
+    text[textLength++] = c;
+  }
+
+  private int read() throws IOException {
+    if (bufferPos == bufferLimit && ! fillBuffer()) {
+      return -1;
+    }
+    return buffer[bufferPos++];
+  }
+
+  private boolean fillBuffer() throws IOException {
+    int n = in.read(buffer, 0, buffer.length);
+    while (n == 0) {
+      n = in.read(buffer, 0, buffer.length);
+    }
+    if (n < 0) {
+      return false;
+    }
+    bufferPos = 0;
+    bufferLimit = n;
+    return true;
+  }
+
+
+  /**
+   * Close the Reader behind this <code>TreeReader</code>.
+   */
+  public void close() throws IOException {
+    in.close();
+  }
+
+
+  /**
+   * A view of a range of the children array, which can be given to a
+   * <code>TreeFactory</code> without making a new list.
+   */
+  private static class ChildList extends AbstractList<Tree> implements RandomAccess {
+
+    private Tree[] trees;
+    private int offset;
+    private int size;
+
+    void set(Tree[] trees, int offset, int size) {
+      this.trees = trees;
+      this.offset = offset;
+      this.size = size;
+    }
+
+    @Override
+    public Tree get(int index) {
+      if (index < 0 || index >= size) {
+        throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+      }
+      return trees[offset + index];
+    }
+
+    @Override
+    public int size() {
+      return size;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T[] toArray(T[] a) {
+      if (a.length < size) {
+        a = (T[]) java.lang.reflect.Array.newInstance(a.getClass().getComponentType(), size);
+      }
+      System.arraycopy(trees, offset, a, 0, size);
+      if (a.length > size) {
+        a[size] = null;
+      }
+      return a;
+    }
+
+  } // end class ChildList
+
+
+  /**
+   * Loads treebank data from first argument and prints it.
+   *
+   * @param args Array of command-line arguments: specifies a filename
+   */
+  public static void main(String[] args) {
+    try {
+      TreeFactory tf = new LabeledScoredTreeFactory();
+      Reader r = new BufferedReader(new InputStreamReader(new FileInputStream(args[0]), "UTF-8"));
+      TreeReader tr = new StreamingPennTreeReader(r, tf);
+      Tree t = tr.readTree();
+      while (t != null) {
+        System.out.println(t);
+        System.out.println();
+        t = tr.readTree();
+      }
+      r.close();
+    } catch (IOException ioe) {
+      ioe.printStackTrace();
+    }
+  }
+
+}
@@ -0,0 +1,80 @@
+package edu.stanford.nlp.trees;
+
+import java.io.Reader;
+
+/** Vends {@link StreamingPennTreeReader} objects.  These read the same
+ *  trees as the {@link PennTreeReader}s of a {@link PennTreeReaderFactory}
+ *  with the same arguments, but faster.  Since it has a no-argument
+ *  constructor, this factory can be given by class name where a
+ *  <code>-treeReaderFactory</code> (<code>-trf</code>) option is accepted,
+ *  or passed to the <code>TreeReaderFactory</code> constructors of
+ *  {@link DiskTreebank} and {@link MemoryTreebank}.
+ */
+public class StreamingPennTreeReaderFactory implements LabelIndex.KeyedTreeReaderFactory {
+
+  private final TreeFactory tf;
+  private final TreeNormalizer tn;
+
+  // whether this factory made what it holds itself, with known settings
+  private boolean defaultSettings; // = false;
+
+  /**
+   * Default constructor; uses a {@link LabeledScoredTreeFactory},
+   * with StringLabels, and a {@link TreeNormalizer}.
+   */
+  public StreamingPennTreeReaderFactory() {
+    this(new LabeledScoredTreeFactory());
+    defaultSettings = true;
+  }
+
+  /**
+   * Specify your own {@link TreeFactory};
+   * uses a {@link TreeNormalizer}.
+   *
+   * @param tf The TreeFactory to use in building Tree objects to return.
+   */
+  public StreamingPennTreeReaderFactory(TreeFactory tf) {
+    this(tf, new TreeNormalizer());
+  }
+
+
+  /**
+   * Specify your own {@link TreeNormalizer};
+   * uses a {@link LabeledScoredTreeFactory}.
+   *
+   * @param tn The TreeNormalizer to use in building Tree objects to return.
+   */
+  public StreamingPennTreeReaderFactory(TreeNormalizer tn) {
+    this(new LabeledScoredTreeFactory(), tn);
+  }
+
+
+  /**
+   * Specify your own {@link TreeFactory} and {@link TreeNormalizer}.
+   *
+   * @param tf The TreeFactory to use in building Tree objects to return.
+   * @param tn The TreeNormalizer to use
+   */
+  public StreamingPennTreeReaderFactory(TreeFactory tf, TreeNormalizer tn) {
+    this.tf = tf;
+    this.tn = tn;
+  }
+
+
+  public TreeReader newTreeReader(Reader in) {
+    return new StreamingPennTreeReader(in, tf, tn);
+  }
+
+  /**
+   * Returns the names of the classes of this factory and of its tree factory and normalizer, if it
+   * was made with the default constructor, or else null, since the
+   * settings of what it was given are not known.
+   */
+  public String labelIndexKey() {
+    if ( ! defaultSettings || getClass() != StreamingPennTreeReaderFactory.class) {
+      return null;
+    }
+    return getClass().getName() + ' ' + tf.getClass().getName() + ' ' + tn.getClass().getName();
+  }
+
+}
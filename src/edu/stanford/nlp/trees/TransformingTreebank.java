@@ -1,6 +1,8 @@
 package edu.stanford.nlp.trees;
 
+import edu.stanford.nlp.util.Function;
 import edu.stanford.nlp.util.Timing;
+import edu.stanford.nlp.util.concurrent.InOrderMapper;
 import edu.stanford.nlp.ling.Label;
 
 import java.io.File;
@@ -14,9 +16,20 @@ import java.util.Arrays;
  *  a TreeTransformer.  You can access them via requests like <code>apply()</code> or
  *  <code>iterator()</code>.
  *  <p>
- *  <i>Important note</i>: This class will only function properly if the TreeTransfomer
- *  used is a function (which doesn't change its argument) rather than if it is a
- *  TreeMunger.
+ *  Each tree is deep copied (with {@link Tree#deeperCopy()}) before it is
+ *  transformed, by both <code>apply()</code> and <code>iterator()</code>,
+ *  on any number of threads.  So the trees of the base Treebank are never
+ *  changed, even by a TreeTransformer that changes its argument, and each
+ *  tree given out is a new one.
+ *  <p>
+ *  Nothing is kept: each tree is read from the base Treebank and transformed
+ *  as it is needed, so a TransformingTreebank over a {@link DiskTreebank}
+ *  can process a treebank of any size in constant space.  Transformations
+ *  are chained by transforming a TransformingTreebank again, or with a
+ *  {@link CompositeTreeTransformer}.  Given a number of threads, the trees are
+ *  transformed on that many threads, a bounded number of trees ahead of the
+ *  one being used, and are still given out in order; the TreeTransformer
+ *  must then be safe to call from several threads at once.
  *
  *  @author Pi-Chuan Chang
  *  @author Christopher Manning
@@ -25,6 +38,7 @@ public class TransformingTreebank extends Treebank {
 
   private TreeTransformer transformer;
   private Treebank tb;
+  private int numThreads = 1;
 
   private static final boolean VERBOSE = false;
 
@@ -64,6 +78,20 @@ public class TransformingTreebank extends Treebank {
     this.transformer = transformer;
   }
 
+  /**
+   * Create a new TransformingTreebank from a base Treebank that will
+   * transform trees with the given TreeTransformer on several threads.
+   *
+   * @param tb The base Treebank
+   * @param transformer The TreeTransformer applied to each Tree, which must be
+   *     thread-safe if <code>numThreads</code> is more than 1
+   * @param numThreads The number of threads to transform the trees on
+   */
+  public TransformingTreebank(Treebank tb, TreeTransformer transformer, int numThreads) {
+    this(tb, transformer);
+    this.numThreads = numThreads;
+  }
+
 
   /**
    * Empty a <code>Treebank</code>.
@@ -98,6 +126,17 @@ public class TransformingTreebank extends Treebank {
    */
   @Override
   public void apply(TreeVisitor tv) {
+    if (numThreads > 1 && transformer != null) {
+      InOrderMapper.Results<Tree,Tree> trees = new InOrderMapper<Tree,Tree>(copyAndTransform(), numThreads).map(tb.iterator());
+      try {
+        while (trees.hasNext()) {
+          tv.visitTree(trees.next());
+        }
+      } finally {
+        trees.close();
+      }
+      return;
+    }
     for (Tree t : tb) {
       if (VERBOSE) System.out.println("TfTbApply transforming " + t);
       Tree tmpT = t.deeperCopy();
@@ -110,12 +149,27 @@ public class TransformingTreebank extends Treebank {
   }
 
   /**
+   * Returns an iterator over transformed copies of the trees of the base
+   * Treebank.
    */
   @Override
   public Iterator<Tree> iterator() {
+    if (numThreads > 1 && transformer != null) {
+      return new InOrderMapper<Tree,Tree>(copyAndTransform(), numThreads).map(tb.iterator());
+    }
     return new TransformingTreebankIterator(tb.iterator(), transformer);
   }
 
+  /** A function that transforms a deep copy of its argument. */
+  private Function<Tree,Tree> copyAndTransform() {
+    final TreeTransformer tt = transformer;
+    return new Function<Tree,Tree>() {
+      public Tree apply(Tree t) {
+        return tt.transformTree(t.deeperCopy());
+      }
+    };
+  }
+
   /**
    * Loads treebank grammar from first argument and prints it.
    * Just a demonstration of functionality. <br>
@@ -196,7 +250,7 @@ public class TransformingTreebank extends Treebank {
 
     public Tree next() {
       // this line will throw NoSuchElement exception if empty base iterator....
-      Tree ret = iter.next();
+      Tree ret = iter.next().deeperCopy();
       if (VERBOSE) System.out.println("TfTbIterator transforming " + ret);
       if (transformer != null) {
         ret = transformer.transformTree(ret);
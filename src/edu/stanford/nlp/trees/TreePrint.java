@@ -58,6 +58,8 @@ public class TreePrint {
   private boolean collapsedDependencies;
   private boolean CCPropagatedDependencies;
   private boolean treeDependencies;
+  private boolean xml; // = false;
+  private boolean removeTopBracket; // = false;
 
   private HeadFinder hf;
   private TreebankLanguagePack tlp;
@@ -156,6 +158,8 @@ public class TreePrint {
     transChinese = propertyToBoolean(this.options, "transChinese");
     ptb2text = propertyToBoolean(this.options, "ptb2text");
     removeEmpty = propertyToBoolean(this.options, "noempty") || ptb2text;
+    xml = propertyToBoolean(this.options, "xml");
+    removeTopBracket = propertyToBoolean(this.options, "removeTopBracket");
 
     basicDependencies =  propertyToBoolean(this.options, "basicDependencies");
     collapsedDependencies = propertyToBoolean(this.options, "collapsedDependencies");
@@ -204,10 +208,9 @@ public class TreePrint {
    * @param pw Where to dislay the tree
    */
   public void printTree(final Tree t, final String id, final PrintWriter pw) {
-    final boolean inXml = propertyToBoolean(options, "xml");
     if (t == null) {
       // Parsing didn't succeed.
-      if (inXml) {
+      if (xml) {
         pw.print("<s");
         if (id != null && ! "".equals(id)) {
           pw.print(" id=\"" + XMLUtils.escapeXML(id) + '\"');
@@ -218,15 +221,15 @@ public class TreePrint {
         pw.println("SENTENCE_SKIPPED_OR_UNPARSABLE");
       }
     } else {
-      if (inXml) {
+      if (xml) {
         pw.print("<s");
         if (id != null && ! "".equals(id)) {
           pw.print(" id=\"" + XMLUtils.escapeXML(id) + '\"');
         }
         pw.println(">");
       }
-      printTreeInternal(t, pw, inXml);
-      if (inXml) {
+      printTreeInternal(t, pw, xml);
+      if (xml) {
         pw.println("</s>");
         pw.println();
       }
@@ -247,7 +250,6 @@ public class TreePrint {
    * @param pw Where to dislay the tree
    */
   public void printTrees(final List<ScoredObject<Tree>> trees, final String id, final PrintWriter pw) {
-    final boolean inXml = propertyToBoolean(options, "xml");
     int ii = 0;  // incremented before used, so first tree is numbered 1
     for (ScoredObject<Tree> tp : trees) {
       ii++;
@@ -256,7 +258,7 @@ public class TreePrint {
 
       if (t == null) {
         // Parsing didn't succeed.
-        if (inXml) {
+        if (xml) {
           pw.print("<s");
           if (id != null && ! "".equals(id)) {
             pw.print(" id=\"" + XMLUtils.escapeXML(id) + '\"');
@@ -271,7 +273,7 @@ public class TreePrint {
           pw.println("SENTENCE_SKIPPED_OR_UNPARSABLE Parse #" + ii + " with score " + score);
         }
       } else {
-        if (inXml) {
+        if (xml) {
           pw.print("<s");
           if (id != null && ! "".equals(id)) {
             pw.print(" id=\"");
@@ -291,8 +293,8 @@ public class TreePrint {
           pw.print(" with score ");
           pw.println(score);
         }
-        printTreeInternal(t, pw, inXml);
-        if (inXml) {
+        printTreeInternal(t, pw, xml);
+        if (xml) {
           pw.println("</s>");
           pw.println();
         }
@@ -336,7 +338,7 @@ public class TreePrint {
       }
     }
 
-    if (propertyToBoolean(options, "removeTopBracket")) {
+    if (removeTopBracket) {
       String s = outputTree.label().value();
       if (tlp.isStartSymbol(s)) {
         if (outputTree.isUnaryRewrite()) {
@@ -398,7 +400,7 @@ public class TreePrint {
       outputPSTree = tt.transformTree(outputPSTree);
     }
 
-    if (propertyToBoolean(options, "xml")) {
+    if (inXml) {
       if (formats.containsKey("wordsAndTags")) {
         Sentence<TaggedWord> sent = outputTree.taggedYield();
         pw.println("  <words pos=\"true\">");
@@ -640,7 +642,7 @@ public class TreePrint {
 
 
   public void printHeader(PrintWriter pw, String charset) {
-    if (propertyToBoolean(options, "xml")) {
+    if (xml) {
       pw.println("<?xml version=\"1.0\" encoding=\"" + charset + "\"?>");
       pw.println("<corpus>");
     }
@@ -648,7 +650,7 @@ public class TreePrint {
 
 
   public void printFooter(PrintWriter pw) {
-    if (propertyToBoolean(options, "xml")) {
+    if (xml) {
       pw.println("</corpus>");
     }
   }
@@ -0,0 +1,44 @@
+package edu.stanford.nlp.trees;
+
+/**
+ * A <code>TreeVisitor</code> that can be run over parts of a treebank at
+ * once, on several threads, by {@link Treebank#apply(TreeReducer, int)}.
+ * Rather than accumulating into its own fields, it accumulates into partial
+ * results: each part of the treebank is visited, in order, into a partial
+ * result of its own, and the partial results of the parts are then merged,
+ * also in order.  Done this way, the result can be made the same as that of
+ * visiting all the trees one after another, even for things like "the
+ * first tree with ...", provided that merging two partial results gives what
+ * visiting the trees of both in turn would have.
+ *
+ * @param <P> The type of the partial results
+ */
+public interface TreeReducer<P> {
+
+  /**
+   * Returns a new, empty partial result, for a part of the treebank.
+   * Several partial results are accumulated into at once, by different
+   * threads, so they must not share anything mutable.
+   */
+  public P newPartial();
+
+  /**
+   * Accumulates the tree into the partial result.  Trees are visited into
+   * each partial result in their order in the treebank.
+   *
+   * @param partial The partial result for the part the tree is in
+   * @param t A tree.  Implementations can assume that it is not
+   *          <code>null</code>.
+   */
+  public void visitTree(P partial, Tree t);
+
+  /**
+   * Merges the partial results of two adjoining parts of the treebank,
+   * <code>earlier</code> being that of the part before the other.  This may
+   * change and return <code>earlier</code>, which is not used again.
+   *
+   * @return The partial result of the two parts together
+   */
+  public P merge(P earlier, P later);
+
+}
@@ -3,15 +3,17 @@ package edu.stanford.nlp.trees;
 import edu.stanford.nlp.io.ExtensionFileFilter;
 import edu.stanford.nlp.stats.ClassicCounter;
 import edu.stanford.nlp.stats.Counters;
+import edu.stanford.nlp.util.Function;
 import edu.stanford.nlp.util.Sets;
-import edu.stanford.nlp.ling.Label;
-import edu.stanford.nlp.ling.StringLabel;
+import edu.stanford.nlp.util.concurrent.InOrderMapper;
 
 import java.io.*;
 import java.text.NumberFormat;
 import java.util.AbstractCollection;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Set;
 
 
@@ -212,11 +214,79 @@ public abstract class Treebank extends AbstractCollection<Tree> {
   public abstract void apply(TreeVisitor tp);
 
 
+  /**
+   * Apply a TreeReducer to the trees of the Treebank, on
+   * <code>numThreads</code> threads at once.  The Treebank is split into
+   * {@link #parts}, the trees of each part are visited into a partial result
+   * of its own on one of the threads, and the partial results are merged in
+   * the order of the parts on the calling thread, as they become ready.  The
+   * reducer itself is shared by the threads, so it must be safe to call from
+   * several at once.  With one thread, all the trees are visited into a
+   * single partial result with {@link #apply(TreeVisitor)}.
+   *
+   * @param reducer The TreeReducer to be applied
+   * @param numThreads The number of threads to use
+   * @return The partial result of the whole Treebank
+   */
+  public <P> P apply(final TreeReducer<P> reducer, int numThreads) {
+    if (numThreads < 1) {
+      throw new IllegalArgumentException("Number of threads must be at least 1: " + numThreads);
+    }
+    if (numThreads == 1) {
+      final P partial = reducer.newPartial();
+      apply(new TreeVisitor() {
+        public void visitTree(Tree t) {
+          reducer.visitTree(partial, t);
+        }
+      });
+      return partial;
+    }
+    Function<Iterable<Tree>, P> visitPart = new Function<Iterable<Tree>, P>() {
+      public P apply(Iterable<Tree> part) {
+        P partial = reducer.newPartial();
+        for (Tree t : part) {
+          reducer.visitTree(partial, t);
+        }
+        return partial;
+      }
+    };
+    InOrderMapper.Results<Iterable<Tree>, P> partials = new InOrderMapper<Iterable<Tree>, P>(visitPart, numThreads).map(parts(numThreads));
+    try {
+      if ( ! partials.hasNext()) {
+        return reducer.newPartial();
+      }
+      P result = partials.next();
+      while (partials.hasNext()) {
+        result = reducer.merge(result, partials.next());
+      }
+      return result;
+    } finally {
+      partials.close();
+    }
+  }
+
+
+  /**
+   * Splits the Treebank into consecutive parts, for
+   * {@link #apply(TreeReducer, int)} to visit on different threads.  Going
+   * through the trees of the parts in turn must give all the trees of the
+   * Treebank in order, and the parts must be able to be gone through at
+   * once.  This implementation returns the whole Treebank as one part;
+   * subclasses that can be split should override it.
+   *
+   * @param numThreads The number of threads the parts will be shared among
+   * @return The parts, in order
+   */
+  protected Iterator<? extends Iterable<Tree>> parts(int numThreads) {
+    return Collections.<Iterable<Tree>>singletonList(this).iterator();
+  }
+
+
   /**
    * Return a Treebank (actually a TransformingTreebank) where each
    * Tree in the current treebank has been transformed using the
-   * TreeTransformer.  The argument Treebank is unchanged (assuming
-   * that the TreeTransformer correctly doesn't change input Trees).
+   * TreeTransformer.  The argument Treebank is unchanged, as each Tree
+   * is copied before it is transformed.
    *
    * @param treeTrans The TreeTransformer to use
    * @return A Treebank (actually a TransformingTreebank) where each
@@ -227,6 +297,22 @@ public abstract class Treebank extends AbstractCollection<Tree> {
     return new TransformingTreebank(this, treeTrans);
   }
 
+  /**
+   * Return a Treebank (actually a TransformingTreebank) where each
+   * Tree in the current treebank is transformed, as it is iterated over,
+   * on <code>numThreads</code> threads.  The TreeTransformer must be safe to
+   * call from several threads at once.
+   *
+   * @param treeTrans The TreeTransformer to use
+   * @param numThreads The number of threads to transform the trees on
+   * @return A Treebank (actually a TransformingTreebank) where each
+   * Tree in the current treebank has been transformed using the
+   * TreeTransformer.
+   */
+  public Treebank transform(TreeTransformer treeTrans, int numThreads) {
+    return new TransformingTreebank(this, treeTrans, numThreads);
+  }
+
 
   /**
    * Return the whole treebank as a series of big bracketed lists.
@@ -311,99 +397,44 @@ public abstract class Treebank extends AbstractCollection<Tree> {
    * @return A big string for human consumption describing the treebank
    */
   public String textualSummary(TreebankLanguagePack tlp) {
-    int numTrees = 0;
-    int numTreesLE40 = 0;
-    int numNonUnaryRoots = 0;
-    ClassicCounter<Tree> nonUnaries = new ClassicCounter<Tree>();
-    ClassicCounter<String> roots = new ClassicCounter<String>();
-    ClassicCounter<String> starts = new ClassicCounter<String>();
-    ClassicCounter<String> puncts = new ClassicCounter<String>();
-    int numUnenclosedLeaves = 0;
-    int numLeaves = 0;
-    int numNonPhrasal = 0;
-    int numPreTerminalWithMultipleChildren = 0;
-    int numWords = 0;
-    int numTags = 0;
-    int shortestSentence = Integer.MAX_VALUE;
-    int longestSentence = 0;
-    int numNullLabel = 0;
-    Set<String> words = new HashSet<String>();
-    ClassicCounter<String> tags = new ClassicCounter<String>();
-    ClassicCounter<String> cats = new ClassicCounter<String>();
-    Tree leafEg = null;
-    Tree preTerminalMultipleChildrenEg = null;
-    Tree nullLabelEg = null;
-    for (Tree t : this) {
-      roots.incrementCount(t.value());
-      numTrees++;
-      int leng = t.yield().length();
-      if (leng <= 40) {
-        numTreesLE40++;
-      }
-      if (leng < shortestSentence) {
-        shortestSentence = leng;
-      }
-      if (leng > longestSentence) {
-        longestSentence = leng;
-      }
-      if (t.numChildren() > 1) {
-        if (numNonUnaryRoots < 100) {
-          nonUnaries.incrementCount(t.localTree());
-        }
-        numNonUnaryRoots++;
-      } else if (t.isLeaf()) {
-        numUnenclosedLeaves++;
-      } else {
-        Tree t2 = t.firstChild();
-        if (t2.isLeaf()) {
-          numLeaves++;
-          leafEg = t;
-        } else if (t2.isPreTerminal()) {
-          numNonPhrasal++;
-        }
-        starts.incrementCount(t2.value());
-      }
-      for (Tree subtree : t) {
-        Label lab = subtree.label();
-        if (lab == null || lab.value() == null || "".equals(lab.value())) {
-          if (numNullLabel == 0) {
-            nullLabelEg = subtree;
-          }
-          numNullLabel++;
-          if (lab == null) {
-            subtree.setLabel(new StringLabel(""));
-          } else if (lab.value() == null) {
-            subtree.label().setValue("");
-          }
-        }
-        if (subtree.isLeaf()) {
-          numWords++;
-          words.add(subtree.value());
-        } else if (subtree.isPreTerminal()) {
-          numTags++;
-          tags.incrementCount(subtree.value());
-          if (tlp != null && tlp.isPunctuationTag(subtree.value())) {
-            puncts.incrementCount(subtree.firstChild().value());
-          }
-        } else if (subtree.isPhrasal()) {
-          boolean hasLeafChild = false;
-          for (Tree kt : subtree.children()) {
-            if (kt.isLeaf()) {
-              hasLeafChild = true;
-            }
-          }
-          if (hasLeafChild) {
-            numPreTerminalWithMultipleChildren++;
-            if (preTerminalMultipleChildrenEg == null) {
-              preTerminalMultipleChildrenEg = subtree;
-            }
-          }
-          cats.incrementCount(subtree.value());
-        } else {
-          throw new IllegalStateException("Treebank: Bad tree in treebank!: " + subtree);
-        }
-      }
-    }
+    return textualSummary(tlp, 1);
+  }
+
+  /**
+   * Return various statistics about the treebank (number of sentences,
+   * words, tag set, etc.), gathering them over parts of the treebank on
+   * several threads at once.  The statistics are the same as those gathered
+   * on one thread.
+   *
+   * @param tlp The TreebankLanguagePack used to determine punctuation and an
+   *            appropriate character encoding
+   * @param numThreads The number of threads to use
+   * @return A big string for human consumption describing the treebank
+   */
+  public String textualSummary(TreebankLanguagePack tlp, int numThreads) {
+    TreebankStatistics stats = apply(TreebankStatistics.reducer(tlp), numThreads);
+    int numTrees = stats.numTrees;
+    int numTreesLE40 = stats.numTreesLE40;
+    int numNonUnaryRoots = stats.numNonUnaryRoots;
+    ClassicCounter<Tree> nonUnaries = stats.nonUnaries();
+    ClassicCounter<String> roots = stats.roots;
+    ClassicCounter<String> starts = stats.starts;
+    ClassicCounter<String> puncts = stats.puncts;
+    int numUnenclosedLeaves = stats.numUnenclosedLeaves;
+    int numLeaves = stats.numLeaves;
+    int numNonPhrasal = stats.numNonPhrasal;
+    int numPreTerminalWithMultipleChildren = stats.numPreTerminalWithMultipleChildren;
+    int numWords = stats.numWords;
+    int numTags = stats.numTags;
+    int shortestSentence = stats.shortestSentence;
+    int longestSentence = stats.longestSentence;
+    int numNullLabel = stats.numNullLabel;
+    Set<String> words = stats.words;
+    ClassicCounter<String> tags = stats.tags;
+    ClassicCounter<String> cats = stats.cats;
+    Tree leafEg = stats.leafEg;
+    Tree preTerminalMultipleChildrenEg = stats.preTerminalMultipleChildrenEg;
+    Tree nullLabelEg = stats.nullLabelEg;
     StringWriter sw = new StringWriter(2000);
     PrintWriter pw = new PrintWriter(sw);
     NumberFormat nf = NumberFormat.getNumberInstance();
@@ -421,8 +452,8 @@ public abstract class Treebank extends AbstractCollection<Tree> {
       }
       if (numNonUnaryRoots > 0) {
         pw.print("  Warning! " + numNonUnaryRoots + " trees without unary initial rewrite.  ");
-        if (numNonUnaryRoots > 100) {
-          pw.print("First 100 ");
+        if (numNonUnaryRoots > TreebankStatistics.MAX_NON_UNARIES) {
+          pw.print("First " + TreebankStatistics.MAX_NON_UNARIES + ' ');
         }
         pw.println("Rewrites: " + Counters.toString(nonUnaries, nf));
       }
@@ -0,0 +1,205 @@
+package edu.stanford.nlp.trees;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import edu.stanford.nlp.ling.Label;
+import edu.stanford.nlp.ling.StringLabel;
+import edu.stanford.nlp.stats.ClassicCounter;
+import edu.stanford.nlp.stats.Counters;
+
+/**
+ * The counts that {@link Treebank#textualSummary} reports, for some trees.
+ * The statistics of two runs of trees can be merged into those of both, so
+ * they can be gathered over parts of a treebank at once.  Merging the parts
+ * in order gives exactly what going through all the trees in turn would
+ * have, down to the examples chosen and the order the counters' keys are
+ * iterated in.
+ */
+final class TreebankStatistics {
+
+  /** How many of the rewrites of non-unary roots are counted. */
+  static final int MAX_NON_UNARIES = 100;
+
+  private final TreebankLanguagePack tlp;
+
+  int numTrees; // = 0;
+  int numTreesLE40; // = 0;
+  int numNonUnaryRoots; // = 0;
+  // the rewrites of the first MAX_NON_UNARIES non-unary roots, in order
+  final List<Tree> nonUnaryRewrites = new ArrayList<Tree>();
+  final ClassicCounter<String> roots = new ClassicCounter<String>();
+  final ClassicCounter<String> starts = new ClassicCounter<String>();
+  final ClassicCounter<String> puncts = new ClassicCounter<String>();
+  int numUnenclosedLeaves; // = 0;
+  int numLeaves; // = 0;
+  int numNonPhrasal; // = 0;
+  int numPreTerminalWithMultipleChildren; // = 0;
+  int numWords; // = 0;
+  int numTags; // = 0;
+  int shortestSentence = Integer.MAX_VALUE;
+  int longestSentence; // = 0;
+  int numNullLabel; // = 0;
+  final Set<String> words = new HashSet<String>();
+  final ClassicCounter<String> tags = new ClassicCounter<String>();
+  final ClassicCounter<String> cats = new ClassicCounter<String>();
+  Tree leafEg; // = null;  the last one
+  Tree preTerminalMultipleChildrenEg; // = null;  the first one
+  Tree nullLabelEg; // = null;  the first one
+
+  /**
+   * @param tlp Says which tags are punctuation, for counting punctuation
+   *            words; if null, they are not counted
+   */
+  TreebankStatistics(TreebankLanguagePack tlp) {
+    this.tlp = tlp;
+  }
+
+  /**
+   * Counts a tree.  As a side effect, null labels in the tree, and labels
+   * with null values, are replaced with empty ones.
+   */
+  void add(Tree t) {
+    roots.incrementCount(t.value());
+    numTrees++;
+    int leng = t.yield().length();
+    if (leng <= 40) {
+      numTreesLE40++;
+    }
+    if (leng < shortestSentence) {
+      shortestSentence = leng;
+    }
+    if (leng > longestSentence) {
+      longestSentence = leng;
+    }
+    if (t.numChildren() > 1) {
+      if (numNonUnaryRoots < MAX_NON_UNARIES) {
+        nonUnaryRewrites.add(t.localTree());
+      }
+      numNonUnaryRoots++;
+    } else if (t.isLeaf()) {
+      numUnenclosedLeaves++;
+    } else {
+      Tree t2 = t.firstChild();
+      if (t2.isLeaf()) {
+        numLeaves++;
+        leafEg = t;
+      } else if (t2.isPreTerminal()) {
+        numNonPhrasal++;
+      }
+      starts.incrementCount(t2.value());
+    }
+    for (Tree subtree : t) {
+      Label lab = subtree.label();
+      if (lab == null || lab.value() == null || "".equals(lab.value())) {
+        if (numNullLabel == 0) {
+          nullLabelEg = subtree;
+        }
+        numNullLabel++;
+        if (lab == null) {
+          subtree.setLabel(new StringLabel(""));
+        } else if (lab.value() == null) {
+          subtree.label().setValue("");
+        }
+      }
+      if (subtree.isLeaf()) {
+        numWords++;
+        words.add(subtree.value());
+      } else if (subtree.isPreTerminal()) {
+        numTags++;
+        tags.incrementCount(subtree.value());
+        if (tlp != null && tlp.isPunctuationTag(subtree.value())) {
+          puncts.incrementCount(subtree.firstChild().value());
+        }
+      } else if (subtree.isPhrasal()) {
+        boolean hasLeafChild = false;
+        for (Tree kt : subtree.children()) {
+          if (kt.isLeaf()) {
+            hasLeafChild = true;
+          }
+        }
+        if (hasLeafChild) {
+          numPreTerminalWithMultipleChildren++;
+          if (preTerminalMultipleChildrenEg == null) {
+            preTerminalMultipleChildrenEg = subtree;
+          }
+        }
+        cats.incrementCount(subtree.value());
+      } else {
+        throw new IllegalStateException("Treebank: Bad tree in treebank!: " + subtree);
+      }
+    }
+  }
+
+  /**
+   * Adds the statistics of the trees that come after these ones.  The
+   * counters and the set of words are added to key by key in the order the
+   * later ones iterate in, which keeps keys that share a hash bucket in the
+   * order they were first seen in, as counting the trees in turn would.
+   */
+  void addAll(TreebankStatistics later) {
+    numTrees += later.numTrees;
+    numTreesLE40 += later.numTreesLE40;
+    for (Tree rewrite : later.nonUnaryRewrites) {
+      if (nonUnaryRewrites.size() >= MAX_NON_UNARIES) {
+        break;
+      }
+      nonUnaryRewrites.add(rewrite);
+    }
+    numNonUnaryRoots += later.numNonUnaryRoots;
+    Counters.addInPlace(roots, later.roots);
+    Counters.addInPlace(starts, later.starts);
+    Counters.addInPlace(puncts, later.puncts);
+    numUnenclosedLeaves += later.numUnenclosedLeaves;
+    numLeaves += later.numLeaves;
+    numNonPhrasal += later.numNonPhrasal;
+    if (preTerminalMultipleChildrenEg == null) {
+      preTerminalMultipleChildrenEg = later.preTerminalMultipleChildrenEg;
+    }
+    numPreTerminalWithMultipleChildren += later.numPreTerminalWithMultipleChildren;
+    numWords += later.numWords;
+    numTags += later.numTags;
+    shortestSentence = Math.min(shortestSentence, later.shortestSentence);
+    longestSentence = Math.max(longestSentence, later.longestSentence);
+    if (numNullLabel == 0) {
+      nullLabelEg = later.nullLabelEg;
+    }
+    numNullLabel += later.numNullLabel;
+    words.addAll(later.words);
+    Counters.addInPlace(tags, later.tags);
+    Counters.addInPlace(cats, later.cats);
+    if (later.leafEg != null) {
+      leafEg = later.leafEg;
+    }
+  }
+
+  /** The rewrites of the first non-unary roots, counted. */
+  ClassicCounter<Tree> nonUnaries() {
+    ClassicCounter<Tree> nonUnaries = new ClassicCounter<Tree>();
+    for (Tree rewrite : nonUnaryRewrites) {
+      nonUnaries.incrementCount(rewrite);
+    }
+    return nonUnaries;
+  }
+
+  /** Gathers the statistics of the parts of a treebank. */
+  static TreeReducer<TreebankStatistics> reducer(final TreebankLanguagePack tlp) {
+    return new TreeReducer<TreebankStatistics>() {
+      public TreebankStatistics newPartial() {
+        return new TreebankStatistics(tlp);
+      }
+
+      public void visitTree(TreebankStatistics partial, Tree t) {
+        partial.add(t);
+      }
+
+      public TreebankStatistics merge(TreebankStatistics earlier, TreebankStatistics later) {
+        earlier.addAll(later);
+        return earlier;
+      }
+    };
+  }
+
+}
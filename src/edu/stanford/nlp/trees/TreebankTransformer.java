@@ -2,6 +2,12 @@ package edu.stanford.nlp.trees;
 
 public interface TreebankTransformer {
 
-  public MemoryTreebank transformTrees(Treebank tb);
+  /**
+   * Returns the trees of <code>tb</code>, transformed.  The result may be a
+   * view of <code>tb</code> that transforms each tree as it is read, such as
+   * a {@link TransformingTreebank}, so that a large treebank on disk need not
+   * be held in memory.
+   */
+  public Treebank transformTrees(Treebank tb);
 
 }
@@ -2,14 +2,18 @@ package edu.stanford.nlp.trees.tregex;
 
 import edu.stanford.nlp.trees.Tree;
 
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
 
 class CoordinationPattern extends TregexPattern {
 
   private boolean isConj;
   private List<TregexPattern> children;
+  // the order in which the children are tried, if planning has changed it
+  private transient volatile int[] order; // = null;
 
   /* if isConj is true, then it is an "AND" ; if it is false, it is an "OR".*/
   public CoordinationPattern(List<TregexPattern> children, boolean isConj) {
@@ -26,6 +30,56 @@ class CoordinationPattern extends TregexPattern {
     return children;
   }
 
+  boolean isConj() {
+    return isConj;
+  }
+
+  /**
+   * Sets the order in which the children are tried, by their positions in
+   * {@link #getChildren}, or null for the order they were written in.  This
+   * must not change what the pattern matches, as {@link TregexPlanner}
+   * explains.
+   */
+  void setOrder(int[] order) {
+    this.order = order;
+  }
+
+  /** The order set by {@link #setOrder}, or null if there is none. */
+  int[] getOrder() {
+    return order;
+  }
+
+  @Override
+  void addRequiredLabels(List<Set<String>> required) {
+    if (isNegated() || isOptional()) {
+      return;
+    }
+    if (isConj) {
+      for (TregexPattern child : children) {
+        child.addRequiredLabels(required);
+      }
+      return;
+    }
+    // one of the disjuncts must match, so the tree must contain a label
+    // from one of the sets each requires: take the smallest of each
+    Set<String> labels = new HashSet<String>();
+    for (TregexPattern child : children) {
+      List<Set<String>> childRequired = new ArrayList<Set<String>>();
+      child.addRequiredLabels(childRequired);
+      if (childRequired.isEmpty()) {
+        return;
+      }
+      Set<String> smallest = childRequired.get(0);
+      for (Set<String> set : childRequired) {
+        if (set.size() < smallest.size()) {
+          smallest = set;
+        }
+      }
+      labels.addAll(smallest);
+    }
+    required.add(labels);
+  }
+
   @Override
   public String localString() {
     return (isConj ? "and" : "or");
@@ -53,8 +107,8 @@ class CoordinationPattern extends TregexPattern {
   }
 
   @Override
-  public TregexMatcher matcher(Tree root, Tree tree, Map<String, Tree> namesToNodes, VariableStrings variableStrings) {
-    return new CoordinationMatcher(this, root, tree, namesToNodes,variableStrings);
+  public TregexMatcher matcher(Tree root, Tree tree, TreeIndex treeIndex, NamedNodes namedNodes, VariableStrings variableStrings) {
+    return new CoordinationMatcher(this, root, tree, treeIndex, namedNodes,variableStrings);
   }
 
   private static class CoordinationMatcher extends TregexMatcher {
@@ -65,13 +119,14 @@ class CoordinationPattern extends TregexPattern {
     // do all con/dis-juncts have to be considered to determine a match?
     // i.e. true if conj and not negated or disj and negated
 
-    public CoordinationMatcher(CoordinationPattern n, Tree root, Tree tree, Map<String, Tree> namesToNodes, VariableStrings variableStrings) {
-      super(root, tree, namesToNodes,variableStrings);
+    public CoordinationMatcher(CoordinationPattern n, Tree root, Tree tree, TreeIndex treeIndex, NamedNodes namedNodes, VariableStrings variableStrings) {
+      super(root, tree, treeIndex, namedNodes,variableStrings);
       myNode = n;
       children = new TregexMatcher[myNode.children.size()];
+      int[] order = myNode.order;
       for (int i = 0; i < children.length; i++) {
-        TregexPattern node = myNode.children.get(i);
-        children[i] = node.matcher(root, tree, namesToNodes,variableStrings);
+        TregexPattern node = myNode.children.get(order == null ? i : order[i]);
+        children[i] = node.matcher(root, tree, treeIndex, namedNodes,variableStrings);
       }
       currChild = 0;
       considerAll = myNode.isConj ^ myNode.isNegated();
@@ -85,6 +140,21 @@ class CoordinationPattern extends TregexPattern {
       }
     }
 
+    @Override
+    void forgetVariables() {
+      for (TregexMatcher child : children) {
+        child.forgetVariables();
+      }
+    }
+
+    @Override
+    void setRoot(Tree newRoot) {
+      super.setRoot(newRoot);
+      for (TregexMatcher child : children) {
+        child.setRoot(newRoot);
+      }
+    }
+
     @Override
     void resetChildIter(Tree tree) {
       this.tree = tree;
@@ -18,9 +18,42 @@ class DescriptionPattern extends TregexPattern {
   private boolean isLink;
   private TregexPattern child;
   private List<Pair<Integer,String>> variableGroups; // specifies the groups in a regex that are captured as matcher-global string variables
+  private Set<String> literalDescs; // if non-null, the only strings descPattern can match
+  private DescriptionMode descMode; // how to test a value against the description, if not a link
+  private String descString; // the literal string of an EXACT, PREFIX or SUBSTRING description
+  private Set<String> descSet; // the literal strings of an ONE_OF description
+  // the slots of the name and of the variables, set by assignSlots
+  private int nameSlot = -1;
+  private int[] varGroupNumbers; // the regex groups captured as variables
+  private int[] varSlots; // and the slots of the variables
+
+  private static final Pattern anchoredPattern = Pattern.compile("\\^(.*)\\$");
+  private static final Pattern regexMetaPattern = Pattern.compile("[\\\\^$.*+?()\\[\\]{}]");
 
   private Function<String, String> basicCatFunction;
 
+  /**
+   * The ways in which a value can be tested against a description, from
+   * the cheapest to the most expensive.  All but <code>REGEX</code> are
+   * exactly equivalent to finding <code>descPattern</code> in the value,
+   * but without the allocation and interpretation of a regex
+   * <code>Matcher</code>.
+   */
+  private enum DescriptionMode {
+    /** Any value matches, as with <code>__</code>. */
+    ANYTHING,
+    /** The value must equal a literal string, as with <code>NP</code>. */
+    EXACT,
+    /** The value must equal one of a set of literal strings, as with <code>NN|NNS</code>. */
+    ONE_OF,
+    /** The value must start with a literal string, as with <code>/^NP/</code>. */
+    PREFIX,
+    /** The value must contain a literal string, as with <code>/NP/</code>. */
+    SUBSTRING,
+    /** The regex must be run, because it is not literal, or it captures variables. */
+    REGEX
+  }
+
   public DescriptionPattern(Relation rel, boolean negDesc, String desc, String name, boolean useBasicCat) {
     this(rel,negDesc,desc,name,useBasicCat, new ArrayList<Pair<Integer,String>>(0));
   }
@@ -37,9 +70,46 @@ class DescriptionPattern extends TregexPattern {
       if (desc.equals("__")) {
         descPattern = Pattern.compile(".*");
       } else if (desc.matches("/.*/")) {
-        descPattern = Pattern.compile(desc.substring(1, desc.length() - 1));
+        String regex = desc.substring(1, desc.length() - 1);
+        descPattern = Pattern.compile(regex);
+        Matcher m = anchoredPattern.matcher(regex);
+        if (m.matches()) {
+          // in /^a|b$/ the anchors bind to a and b alone, so without
+          // parentheses only a single literal is an exact match
+          String body = m.group(1);
+          if (body.startsWith("(") && body.endsWith(")")) {
+            literalDescs = literalAlternatives(body.substring(1, body.length() - 1));
+          } else if (body.indexOf('|') < 0) {
+            literalDescs = literalAlternatives(body);
+          }
+        } else if (isLiteral(regex)) {
+          descMode = DescriptionMode.SUBSTRING;
+          descString = regex;
+        } else if (regex.startsWith("^") && isLiteral(regex.substring(1))) {
+          descMode = DescriptionMode.PREFIX;
+          descString = regex.substring(1);
+        }
       } else { // raw description
         descPattern = Pattern.compile("^(" + desc + ")$");
+        literalDescs = literalAlternatives(desc);
+      }
+      if (literalDescs != null) {
+        if (literalDescs.size() == 1) {
+          descMode = DescriptionMode.EXACT;
+          descString = literalDescs.iterator().next();
+        } else {
+          descMode = DescriptionMode.ONE_OF;
+          descSet = literalDescs;
+        }
+      }
+      if (desc.equals("__") || (descMode == DescriptionMode.SUBSTRING || descMode == DescriptionMode.PREFIX) && descString.length() == 0) {
+        descMode = DescriptionMode.ANYTHING;
+      }
+      if (descMode == null || ! variableGroups.isEmpty()) {
+        descMode = DescriptionMode.REGEX;
+      }
+      if (negDesc) {
+        literalDescs = null;
       }
     } else {
       assert name != null;
@@ -57,6 +127,57 @@ class DescriptionPattern extends TregexPattern {
     isLink = true;
   }
 
+  /**
+   * If <code>regex</code> is a plain disjunction of strings, such as
+   * <code>NN|NNS|NNP</code>, returns those strings, otherwise null.
+   */
+  private static Set<String> literalAlternatives(String regex) {
+    if (regexMetaPattern.matcher(regex).find()) {
+      return null;
+    }
+    return new HashSet<String>(Arrays.asList(regex.split("\\|", -1)));
+  }
+
+  /** Whether <code>regex</code> has no special characters, and so matches only itself. */
+  private static boolean isLiteral(String regex) {
+    return regex.indexOf('|') < 0 && ! regexMetaPattern.matcher(regex).find();
+  }
+
+  /**
+   * Returns the set of strings that the value of a tree node (or its basic
+   * category, if {@link #basicCatFunction} is not null) must be one of for
+   * this node to match it, or null if there is no such finite set, as with
+   * negated, <code>__</code> and most regular expression descriptions.
+   * This is only a necessary condition; variable groups and children must
+   * still be checked by matching.
+   */
+  Set<String> literalDescriptions() {
+    return literalDescs;
+  }
+
+  Function<String, String> basicCatFunction() {
+    return basicCatFunction;
+  }
+
+  @Override
+  void addRequiredLabels(List<Set<String>> required) {
+    if (isNegated() || isOptional()) {
+      return;
+    }
+    // with a basic category function, the set holds categories, not labels
+    if (literalDescs != null && basicCatFunction == null) {
+      required.add(Collections.unmodifiableSet(literalDescs));
+    }
+    if (child != null) {
+      child.addRequiredLabels(required);
+    }
+  }
+
+  @Override
+  boolean relatesWithinSubtree() {
+    return rel.isWithinSubtree() && super.relatesWithinSubtree();
+  }
+
   @Override
   public String localString() {
     return rel.toString() + ' ' + (negDesc ? "!" : "") + (basicCatFunction != null ? "@" : "") + stringDesc + (name == null ? "" : '=' + name);
@@ -107,13 +228,154 @@ class DescriptionPattern extends TregexPattern {
     }
   }
 
+  /**
+   * Whether the description, or its negation if it is negated, can match
+   * <code>node</code>, before any variables are compared: if it cannot,
+   * this pattern cannot match the node.  A link or backreference can match
+   * any node, as far as this knows.
+   *
+   * @param m A matcher of this pattern's regex to reuse, or null
+   */
+  boolean mayMatch(Tree node, Matcher m) {
+    return mayMatchValue(node.value(), m);
+  }
+
+  private boolean mayMatchValue(String value, Matcher m) {
+    if (descPattern == null) {
+      return true;
+    }
+    boolean found = descriptionFound(value, m);
+    if (negDesc) {
+      // a variable that does not match makes the description not found
+      return ! found || ! variableGroups.isEmpty();
+    }
+    return found;
+  }
+
+  /**
+   * Whether the description is found in <code>value</code> (or its basic
+   * category), as <code>descPattern.matcher(value).find()</code> would.
+   *
+   * @param m A matcher of <code>descPattern</code> to reuse, which is left
+   *     reset to the value, or null to make one if it is needed
+   */
+  private boolean descriptionFound(String value, Matcher m) {
+    if (value == null) {
+      return false;
+    }
+    if (basicCatFunction != null) {
+      value = basicCatFunction.apply(value);
+    }
+    switch (descMode) {
+    case ANYTHING:
+      return true;
+    case EXACT:
+      return value.equals(descString);
+    case ONE_OF:
+      return descSet.contains(value);
+    case PREFIX:
+      return value.startsWith(descString);
+    case SUBSTRING:
+      return value.contains(descString);
+    default:
+      return (m == null ? descPattern.matcher(value) : m.reset(value)).find();
+    }
+  }
+
+  /** A matcher of this pattern's regex, to pass to {@link #mayMatch}, or null if none is needed. */
+  Matcher newDescMatcher() {
+    return (descMode == DescriptionMode.REGEX) ? descPattern.matcher("") : null;
+  }
+
+  /**
+   * Estimates the fraction of the nodes of a tree that {@link #mayMatch}
+   * accepts.  This is the fraction of the nodes counted in
+   * <code>frequencies</code> whose labels it accepts, or if there are no
+   * frequencies, a guess from the kind of description.
+   */
+  double selectivity(LabelFrequencies frequencies) {
+    if (descPattern == null) {
+      return 1.0;
+    }
+    if (frequencies != null && frequencies.numNodes() > 0) {
+      Matcher m = newDescMatcher();
+      long count = 0;
+      for (String label : frequencies.labels()) {
+        if (mayMatchValue(label, m)) {
+          count += frequencies.count(label);
+        }
+      }
+      if (mayMatchValue(null, m)) {
+        count += frequencies.numNodes() - frequencies.numLabeledNodes();
+      }
+      return (double) count / frequencies.numNodes();
+    }
+    double found;
+    switch (descMode) {
+    case ANYTHING:
+      found = 1.0;
+      break;
+    case EXACT:
+      found = 0.02;
+      break;
+    case ONE_OF:
+      found = Math.min(1.0, 0.02 * descSet.size());
+      break;
+    case PREFIX:
+    case SUBSTRING:
+      found = 0.1;
+      break;
+    default:
+      found = 0.3;
+    }
+    return negDesc ? 1.0 - found : found;
+  }
+
+  Relation relation() {
+    return rel;
+  }
+
+  /** The pattern of the relations of the matched node, or null if it has none. */
+  TregexPattern child() {
+    return child;
+  }
+
+  /** Whether this pattern names its node, refers to a named node, or captures variables. */
+  boolean usesNames() {
+    return name != null || ! variableGroups.isEmpty();
+  }
+
+  @Override
+  void assignSlots(Map<String, Integer> names, Map<String, Integer> vars) {
+    if (name != null) {
+      nameSlot = slot(names, name);
+    }
+    varGroupNumbers = new int[variableGroups.size()];
+    varSlots = new int[variableGroups.size()];
+    for (int i = 0; i < varSlots.length; i++) {
+      varGroupNumbers[i] = variableGroups.get(i).first();
+      varSlots[i] = slot(vars, variableGroups.get(i).second());
+    }
+    super.assignSlots(names, vars);
+  }
+
+  private static int slot(Map<String, Integer> slots, String key) {
+    Integer slot = slots.get(key);
+    if (slot == null) {
+      slot = slots.size();
+      slots.put(key, slot);
+    }
+    return slot;
+  }
+
   @Override
-  public TregexMatcher matcher(Tree root, Tree tree, Map<String, Tree> namesToNodes, VariableStrings variableStrings) {
-    return new DescriptionMatcher(this, root, tree, namesToNodes,variableStrings);
+  public TregexMatcher matcher(Tree root, Tree tree, TreeIndex treeIndex, NamedNodes namedNodes, VariableStrings variableStrings) {
+    return new DescriptionMatcher(this, root, tree, treeIndex, namedNodes,variableStrings);
   }
 
   private static class DescriptionMatcher extends TregexMatcher {
-    private Iterator<Tree> treeNodeMatchCandidateIterator;
+    private final Relation.SearchNodeIterator treeNodeMatchCandidateIterator;
+    private final Matcher descMatcher; // reused for each value, if the description is a regex
     private final DescriptionPattern myNode;
     private TregexMatcher childMatcher; // a DescriptionMatcher only has a single child; if it is the left side of multiple relations, a CoordinationMatcher is used.
     private Tree nextTreeNodeMatchCandidate; // the Tree node that this DescriptionMatcher node is trying to match on.
@@ -124,25 +386,43 @@ class DescriptionPattern extends TregexPattern {
     // universal: childMatcher is null if and only if
     // myNode.child == null OR resetChild has never been called
 
-    public DescriptionMatcher(DescriptionPattern n, Tree root, Tree tree, Map<String, Tree> namesToNodes, VariableStrings variableStrings) {
-      super(root, tree, namesToNodes,variableStrings);
+    public DescriptionMatcher(DescriptionPattern n, Tree root, Tree tree, TreeIndex treeIndex, NamedNodes namedNodes, VariableStrings variableStrings) {
+      super(root, tree, treeIndex, namedNodes,variableStrings);
       myNode = n;
+      treeNodeMatchCandidateIterator = myNode.rel.newSearchNodeIterator();
+      descMatcher = myNode.newDescMatcher();
       resetChildIter();
     }
 
+    @Override
+    void setRoot(Tree newRoot) {
+      super.setRoot(newRoot);
+      if (childMatcher != null) {
+        childMatcher.setRoot(newRoot);
+      }
+    }
+
     @Override
     void resetChildIter() {
-      treeNodeMatchCandidateIterator = myNode.rel.searchNodeIterator(tree, root);
+      treeNodeMatchCandidateIterator.reset(tree, treeIndex);
       finished = false;
       nextTreeNodeMatchCandidate = null;
     }
 
+    @Override
+    void forgetVariables() {
+      committedVariables = false;
+      if (childMatcher != null) {
+        childMatcher.forgetVariables();
+      }
+    }
+
     private void resetChild() {
       if (childMatcher == null) {
         if (myNode.child == null) {
           matchedOnce = false;
         } else {
-          childMatcher = myNode.child.matcher(root, nextTreeNodeMatchCandidate, namesToNodes,variableStrings);
+          childMatcher = myNode.child.matcher(root, nextTreeNodeMatchCandidate, treeIndex, namedNodes,variableStrings);
         }
       } else {
         childMatcher.resetChildIter(nextTreeNodeMatchCandidate);
@@ -154,13 +434,12 @@ class DescriptionPattern extends TregexPattern {
     private void goToNextTreeNodeMatch() {
       decommitVariableGroups(); // make sure variable groups are free.
       finished = true;
-      Matcher m = null;
       while (treeNodeMatchCandidateIterator.hasNext()) {
         nextTreeNodeMatchCandidate = treeNodeMatchCandidateIterator.next();
         if (myNode.descPattern == null) {
           // this is a backreference or link
           if (myNode.isLink) {
-            Tree otherTree = namesToNodes.get(myNode.name);
+            Tree otherTree = namedNodes.get(myNode.nameSlot);
             if (otherTree != null) {
               String otherValue = myNode.basicCatFunction == null ? otherTree.value() : myNode.basicCatFunction.apply(otherTree.value());
               String myValue = myNode.basicCatFunction == null ? nextTreeNodeMatchCandidate.value() : myNode.basicCatFunction.apply(nextTreeNodeMatchCandidate.value());
@@ -169,7 +448,7 @@ class DescriptionPattern extends TregexPattern {
                 break;
               }
             }
-          } else if (namesToNodes.get(myNode.name) == nextTreeNodeMatchCandidate) {
+          } else if (namedNodes.get(myNode.nameSlot) == nextTreeNodeMatchCandidate) {
             finished = false;
             break;
           }
@@ -178,22 +457,11 @@ class DescriptionPattern extends TregexPattern {
           // String value = (myNode.basicCatFunction == null ? nextTreeNodeMatchCandidate.value() : myNode.basicCatFunction.apply(nextTreeNodeMatchCandidate.value()));
           // m = myNode.descPattern.matcher(value);
           // boolean found = m.find();
-          boolean found;
-          String value = nextTreeNodeMatchCandidate.value();
-          if (value == null) {
-            found = false;
-          } else {
-            if (myNode.basicCatFunction != null) {
-              value = myNode.basicCatFunction.apply(value);
-            }
-            m = myNode.descPattern.matcher(value);
-            found = m.find();
-          }
+          boolean found = myNode.descriptionFound(nextTreeNodeMatchCandidate.value(), descMatcher);
           if (found) {
-            for (Pair<Integer,String> varGroup : myNode.variableGroups) { // if variables have been captured from a regex, they must match any previous matchings
-              String thisVariable = varGroup.second();
-              String thisVarString = variableStrings.getString(thisVariable);
-              if (thisVarString != null && ! thisVarString.equals(m.group(varGroup.first()))) {  // failed to match a variable
+            for (int i = 0; i < myNode.varSlots.length; i++) { // if variables have been captured from a regex, they must match any previous matchings
+              String thisVarString = variableStrings.getString(myNode.varSlots[i]);
+              if (thisVarString != null && ! thisVarString.equals(descMatcher.group(myNode.varGroupNumbers[i]))) {  // failed to match a variable
                 found = false;
                 break;
               }
@@ -210,27 +478,27 @@ class DescriptionPattern extends TregexPattern {
         // cdm bugfix jul 2009: on next line need to check for descPattern not null, or else this is a backreference or a link to an already named node, and the map should _not_ be updated
         if (myNode.descPattern != null && myNode.name != null) {
           // note: have to fill in the map as we go for backreferencing
-          namesToNodes.put(myNode.name, nextTreeNodeMatchCandidate);
+          namedNodes.set(myNode.nameSlot, nextTreeNodeMatchCandidate);
         }
-        commitVariableGroups(m); // commit my variable groups.
+        commitVariableGroups(); // commit my variable groups.
       }
       // finished is false exiting this if and only if nextChild exists
       // and has a label or backreference that matches
       // (also it will just have been reset)
     }
 
-    private void commitVariableGroups(Matcher m) {
+    private void commitVariableGroups() {
       committedVariables = true; // commit all my variable groups.
-      for(Pair<Integer,String> varGroup : myNode.variableGroups) {
-        String thisVarString = m.group(varGroup.first());
-        variableStrings.setVar(varGroup.second(),thisVarString);
+      for (int i = 0; i < myNode.varSlots.length; i++) {
+        String thisVarString = descMatcher.group(myNode.varGroupNumbers[i]);
+        variableStrings.setVar(myNode.varSlots[i],thisVarString);
       }
     }
 
     private void decommitVariableGroups() {
       if(committedVariables)
-        for(Pair<Integer,String> varGroup : myNode.variableGroups) {
-          variableStrings.unsetVar(varGroup.second());
+        for (int varSlot : myNode.varSlots) {
+          variableStrings.unsetVar(varSlot);
         }
       committedVariables = false;
     }
@@ -283,7 +551,7 @@ class DescriptionPattern extends TregexPattern {
       } else { // couldn't match my relation/pattern, so failed!
         nextTreeNodeMatchCandidate = null;
         if (myNode.name != null) {
-          namesToNodes.remove(myNode.name);
+          namedNodes.remove(myNode.nameSlot);
         }
         // didn't match, but return true anyway if optional
         return myNode.isOptional();
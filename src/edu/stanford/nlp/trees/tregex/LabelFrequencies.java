@@ -0,0 +1,69 @@
+package edu.stanford.nlp.trees.tregex;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import edu.stanford.nlp.trees.Tree;
+import edu.stanford.nlp.trees.TreeVisitor;
+
+/**
+ * How often each node label occurs in some trees, for {@link
+ * TregexPattern#plan} to estimate how many nodes of a tree the parts of a
+ * pattern can match.  Both the labels of phrasal nodes and the words at the
+ * leaves are counted, by their <code>value()</code>.  The frequencies of a
+ * treebank can be gathered with <code>treebank.apply(frequencies)</code>, or
+ * from a sample of its trees, or counted in any other way with {@link
+ * #add}.
+ */
+public class LabelFrequencies implements TreeVisitor {
+
+  private final Map<String, Long> counts = new HashMap<String, Long>();
+  private long numNodes; // = 0;
+  private long numLabeledNodes; // = 0;
+
+  /** Counts the labels of all the nodes of <code>t</code>. */
+  public void visitTree(Tree t) {
+    for (Tree node : t) {
+      add(node.value(), 1);
+    }
+  }
+
+  /**
+   * Adds <code>count</code> nodes with the given label.
+   *
+   * @param label The label, or null for nodes without one
+   * @param count The number of nodes
+   */
+  public void add(String label, long count) {
+    numNodes += count;
+    if (label != null) {
+      numLabeledNodes += count;
+      Long old = counts.get(label);
+      counts.put(label, (old == null) ? count : old + count);
+    }
+  }
+
+  /** The number of nodes with the given label. */
+  public long count(String label) {
+    Long count = counts.get(label);
+    return (count == null) ? 0 : count;
+  }
+
+  /** The labels counted. */
+  public Set<String> labels() {
+    return Collections.unmodifiableSet(counts.keySet());
+  }
+
+  /** The number of nodes counted, including those without labels. */
+  public long numNodes() {
+    return numNodes;
+  }
+
+  /** The number of nodes counted that have labels. */
+  public long numLabeledNodes() {
+    return numLabeledNodes;
+  }
+
+}
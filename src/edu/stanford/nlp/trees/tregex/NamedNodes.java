@@ -0,0 +1,54 @@
+package edu.stanford.nlp.trees.tregex;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import edu.stanford.nlp.trees.Tree;
+
+/**
+ * The nodes that the named nodes of a pattern have matched, in one match
+ * session.  The names are numbered, by the slots the pattern gives them
+ * when it is compiled, so that the nodes can be kept in an array; the
+ * slots of the names are needed only to look nodes up by name.
+ */
+class NamedNodes {
+
+  private final Map<String, Integer> slots;
+  private final Tree[] nodes;
+
+  /**
+   * @param slots The slot of each name in the pattern
+   */
+  NamedNodes(Map<String, Integer> slots) {
+    this.slots = slots;
+    nodes = new Tree[slots.size()];
+  }
+
+  Tree get(int slot) {
+    return nodes[slot];
+  }
+
+  /** The node named <code>name</code>, or null if there is none. */
+  Tree get(String name) {
+    Integer slot = slots.get(name);
+    return (slot == null) ? null : nodes[slot];
+  }
+
+  /** The number of names, and so of slots. */
+  int size() {
+    return nodes.length;
+  }
+
+  void set(int slot, Tree node) {
+    nodes[slot] = node;
+  }
+
+  void remove(int slot) {
+    nodes[slot] = null;
+  }
+
+  void reset() {
+    Arrays.fill(nodes, null);
+  }
+
+}
@@ -11,7 +11,6 @@ import edu.stanford.nlp.io.NumberRangesFileFilter;
 import edu.stanford.nlp.trees.DiskTreebank;
 import edu.stanford.nlp.trees.HeadFinder;
 import edu.stanford.nlp.trees.Tree;
-import edu.stanford.nlp.trees.Trees;
 import edu.stanford.nlp.trees.TreeReaderFactory;
 import edu.stanford.nlp.trees.PennTreeReaderFactory;
 import edu.stanford.nlp.trees.NPTmpRetainingTreeNormalizer;
@@ -31,8 +30,10 @@ import edu.stanford.nlp.util.Function;
  * <p/>
  * If you want to add a new
  * relation, you just have to fill in the definition of satisfies and
- * searchNodeIterator. Also be careful to make the appropriate adjustments to
- * getRelation and SIMPLE_RELATIONS. Finally, if you are using the TregexParser,
+ * newSearchNodeIterator. Also be careful to make the appropriate adjustments to
+ * getRelation and SIMPLE_RELATIONS, and if the relation has a converse, to
+ * converse (it is also worth saying how many nodes it usually relates a node
+ * to, in fanOut). Finally, if you are using the TregexParser,
  * you need to add the new relation symbol to the list of tokens.
  *
  * @author Galen Andrew
@@ -59,21 +60,31 @@ abstract class Relation implements Serializable {
    *
    * @param t1 The tree that is the left operand.
    * @param t2 The tree that is the right operand.
-   * @param root The common root of t1 and t2
+   * @param index The {@link TreeIndex} of the common root of t1 and t2
    * @return Whether this relationship is satisfied.
    */
-  abstract boolean satisfies(Tree t1, Tree t2, Tree root);
+  abstract boolean satisfies(Tree t1, Tree t2, TreeIndex index);
 
   /**
    * For a given node and its root, returns an {@link Iterator} over the nodes
    * of the root tree that satisfy the relation.
    *
    * @param t A node in a Tree
-   * @param root The root node of the tree
+   * @param index The {@link TreeIndex} of the root node of the tree
    * @return An Iterator over the nodes
    * of the root tree that satisfy the relation.
    */
-  abstract Iterator<Tree> searchNodeIterator(Tree t, Tree root);
+  Iterator<Tree> searchNodeIterator(Tree t, TreeIndex index) {
+    return newSearchNodeIterator().reset(t, index);
+  }
+
+  /**
+   * Returns a new {@link SearchNodeIterator} for this relation, which does
+   * not iterate over anything until it is {@link SearchNodeIterator#reset
+   * reset} to a node, and which can be reset again and again, so that a
+   * matcher needs only one for each relation in its pattern.
+   */
+  abstract SearchNodeIterator newSearchNodeIterator();
 
   private static final Pattern parentOfLastChild = Pattern.compile("(<-|<`)");
 
@@ -169,12 +180,108 @@ abstract class Relation implements Serializable {
     return symbol;
   }
 
+  /**
+   * Returns whether every node this relation can hold between a node
+   * <code>t1</code> and is <code>t1</code> itself or dominated by it, so
+   * that whether it holds depends only on the subtree of <code>t1</code>.
+   */
+  boolean isWithinSubtree() {
+    return this == EQUALS || this == DOMINATES || this == PARENT_OF ||
+      this == HAS_LEFTMOST_DESCENDENT || this == HAS_RIGHTMOST_DESCENDENT ||
+      this == HAS_ONLY_CHILD || this == UNARY_PATH_ANCESTOR_OF ||
+      this instanceof HeadedBy || this instanceof ImmediatelyHeadedBy ||
+      this instanceof HasIthChild || this instanceof UnbrokenCategoryDominates;
+  }
+
+  /**
+   * Returns a relation whose {@link #searchNodeIterator} from a node
+   * <code>t2</code> gives every node <code>t1</code> for which this relation
+   * holds between <code>t1</code> and <code>t2</code>, and perhaps others,
+   * or null if there is none.  So the converse of <code>&lt;</code> is
+   * <code>&gt;</code>, and that of <code>&lt;1</code> is <code>&gt;</code>.
+   */
+  Relation converse() {
+    if (this == EQUALS || this == SISTER_OF) {
+      return this;
+    } else if (this == DOMINATES || this instanceof HeadedBy || this instanceof UnbrokenCategoryDominates) {
+      return DOMINATED_BY;
+    } else if (this == DOMINATED_BY || this instanceof Heads || this instanceof UnbrokenCategoryIsDominatedBy) {
+      return DOMINATES;
+    } else if (this == PARENT_OF || this instanceof ImmediatelyHeadedBy || this instanceof HasIthChild) {
+      return CHILD_OF;
+    } else if (this == CHILD_OF || this instanceof ImmediatelyHeads || this instanceof IthChildOf) {
+      return PARENT_OF;
+    } else if (this == PRECEDES) {
+      return FOLLOWS;
+    } else if (this == FOLLOWS) {
+      return PRECEDES;
+    } else if (this == IMMEDIATELY_PRECEDES) {
+      return IMMEDIATELY_FOLLOWS;
+    } else if (this == IMMEDIATELY_FOLLOWS) {
+      return IMMEDIATELY_PRECEDES;
+    } else if (this == HAS_LEFTMOST_DESCENDENT) {
+      return LEFTMOST_DESCENDENT_OF;
+    } else if (this == LEFTMOST_DESCENDENT_OF) {
+      return HAS_LEFTMOST_DESCENDENT;
+    } else if (this == HAS_RIGHTMOST_DESCENDENT) {
+      return RIGHTMOST_DESCENDENT_OF;
+    } else if (this == RIGHTMOST_DESCENDENT_OF) {
+      return HAS_RIGHTMOST_DESCENDENT;
+    } else if (this == LEFT_SISTER_OF) {
+      return RIGHT_SISTER_OF;
+    } else if (this == RIGHT_SISTER_OF) {
+      return LEFT_SISTER_OF;
+    } else if (this == IMMEDIATE_LEFT_SISTER_OF) {
+      return IMMEDIATE_RIGHT_SISTER_OF;
+    } else if (this == IMMEDIATE_RIGHT_SISTER_OF) {
+      return IMMEDIATE_LEFT_SISTER_OF;
+    } else if (this == ONLY_CHILD_OF) {
+      return HAS_ONLY_CHILD;
+    } else if (this == HAS_ONLY_CHILD) {
+      return ONLY_CHILD_OF;
+    } else if (this == UNARY_PATH_ANCESTOR_OF) {
+      return UNARY_PATH_DESCENDENT_OF;
+    } else if (this == UNARY_PATH_DESCENDENT_OF) {
+      return UNARY_PATH_ANCESTOR_OF;
+    }
+    return null;
+  }
+
+  /**
+   * A rough guess at how many nodes {@link #searchNodeIterator} gives for a
+   * node of a typical tree, for planning how to match a pattern.
+   */
+  double fanOut() {
+    if (this == EQUALS || this == ROOT || this == CHILD_OF ||
+        this == IMMEDIATE_LEFT_SISTER_OF || this == IMMEDIATE_RIGHT_SISTER_OF ||
+        this == ONLY_CHILD_OF || this == HAS_ONLY_CHILD ||
+        this instanceof ImmediatelyHeads || this instanceof ImmediatelyHeadedBy ||
+        this instanceof IthChildOf || this instanceof HasIthChild) {
+      return 1.0;
+    } else if (this == PARENT_OF || this == SISTER_OF || this == LEFT_SISTER_OF ||
+               this == RIGHT_SISTER_OF || this == UNARY_PATH_ANCESTOR_OF ||
+               this == UNARY_PATH_DESCENDENT_OF || this instanceof Heads || this instanceof HeadedBy) {
+      return 2.0;
+    } else if (this == DOMINATED_BY || this == HAS_LEFTMOST_DESCENDENT ||
+               this == HAS_RIGHTMOST_DESCENDENT || this == LEFTMOST_DESCENDENT_OF ||
+               this == RIGHTMOST_DESCENDENT_OF || this == IMMEDIATELY_PRECEDES ||
+               this == IMMEDIATELY_FOLLOWS) {
+      return 4.0;
+    } else if (this == DOMINATES) {
+      return 10.0;
+    } else if (this == PRECEDES || this == FOLLOWS || this == PATTERN_SPLITTER) {
+      return 30.0;
+    }
+    return 5.0;
+  }
+
   private boolean testRelation(Tree t, Tree root) {
+    TreeIndex index = new TreeIndex(root);
     Collection<Tree> sat = new HashSet<Tree>();
     boolean error = false;
-    for (Iterator<Tree> iter = searchNodeIterator(t, root); iter.hasNext();) {
+    for (Iterator<Tree> iter = searchNodeIterator(t, index); iter.hasNext();) {
       Tree satTree = iter.next();
-      if (!satisfies(t, satTree, root)) {
+      if (!satisfies(t, satTree, index)) {
         System.err.println("Subtree " + satTree.value()
             + " does not satisfy rel " + this + " with subtree " + t.value());
         error = true;
@@ -184,7 +291,7 @@ abstract class Relation implements Serializable {
     Collection<Tree> unSat = root.subTrees();
     unSat.removeAll(sat);
     for (Tree unSatTree : unSat) {
-      if (satisfies(t, unSatTree, root)) {
+      if (satisfies(t, unSatTree, index)) {
         System.err.println("Subtree " + unSatTree.value() + " satisfies rel "
                 + this + " with subtree " + t.value());
         error = true;
@@ -251,11 +358,20 @@ abstract class Relation implements Serializable {
   /**
    * This abstract Iterator implements a NULL iterator, but by subclassing and
    * overriding advance and/or initialize, it is an efficient implementation.
+   * <p/>
+   * An iterator is reusable: {@link #reset} sets the node whose related
+   * nodes it iterates over, and calls {@link #initialize}, which must set
+   * up all the state the iteration needs.  It also has a stack for depth
+   * first searches, which keeps its space from one search to the next.
    */
   abstract static class SearchNodeIterator implements Iterator<Tree> {
-    public SearchNodeIterator() {
-      initialize();
-    }
+
+    private static final Tree[] EMPTY_STACK = new Tree[0];
+
+    /** The node whose related nodes are iterated over */
+    Tree t;
+    /** The index of the tree that <code>t</code> is in */
+    TreeIndex index;
 
     /**
      * This is the next tree to be returned by the iterator, or null if there
@@ -263,6 +379,47 @@ abstract class Relation implements Serializable {
      */
     Tree next = null;
 
+    private Tree[] stack = EMPTY_STACK;
+    private int stackSize; // = 0;
+
+    /**
+     * Starts the iteration over the nodes related to <code>t</code>, and
+     * returns this iterator.
+     */
+    SearchNodeIterator reset(Tree t, TreeIndex index) {
+      this.t = t;
+      this.index = index;
+      next = null;
+      clearStack();
+      initialize();
+      return this;
+    }
+
+    void push(Tree node) {
+      if (stackSize == stack.length) {
+        Tree[] newStack = new Tree[Math.max(16, 2 * stackSize)];
+        System.arraycopy(stack, 0, newStack, 0, stackSize);
+        stack = newStack;
+      }
+      stack[stackSize++] = node;
+    }
+
+    Tree pop() {
+      Tree node = stack[--stackSize];
+      stack[stackSize] = null;
+      return node;
+    }
+
+    boolean stackIsEmpty() {
+      return stackSize == 0;
+    }
+
+    void clearStack() {
+      while (stackSize > 0) {
+        stack[--stackSize] = null;
+      }
+    }
+
     /**
      * This method must insure that next points to first item, or null if there
      * are no items.
@@ -305,12 +462,12 @@ abstract class Relation implements Serializable {
     private static final long serialVersionUID = -8311913236233762612L;
 
     @Override
-    boolean satisfies(Tree t1, Tree t2, Tree root) {
+    boolean satisfies(Tree t1, Tree t2, TreeIndex index) {
       return t1 == t2;
     }
 
     @Override
-    Iterator<Tree> searchNodeIterator(final Tree t, final Tree root) {
+    SearchNodeIterator newSearchNodeIterator() {
       return new SearchNodeIterator() {
         @Override
         void initialize() {
@@ -327,13 +484,18 @@ abstract class Relation implements Serializable {
     private static final long serialVersionUID = 164629344977943816L;
 
     @Override
-    boolean satisfies(Tree t1, Tree t2, Tree root) {
+    boolean satisfies(Tree t1, Tree t2, TreeIndex index) {
       return t1 == t2;
     }
 
     @Override
-    Iterator<Tree> searchNodeIterator(Tree t, Tree root) {
-      return Collections.singletonList(t).iterator();
+    SearchNodeIterator newSearchNodeIterator() {
+      return new SearchNodeIterator() {
+        @Override
+        void initialize() {
+          next = t;
+        }
+      };
     }
 
   };
@@ -346,13 +508,32 @@ abstract class Relation implements Serializable {
     private static final long serialVersionUID = 3409941930361386114L;
 
     @Override
-    boolean satisfies(Tree t1, Tree t2, Tree root) {
+    boolean satisfies(Tree t1, Tree t2, TreeIndex index) {
       return true;
     }
 
     @Override
-    Iterator<Tree> searchNodeIterator(Tree t, Tree root) {
-      return root.iterator();
+    SearchNodeIterator newSearchNodeIterator() {
+      return new SearchNodeIterator() {
+        // every node of the tree, in preorder
+        @Override
+        void initialize() {
+          push(index.root());
+          advance();
+        }
+
+        @Override
+        void advance() {
+          if (stackIsEmpty()) {
+            next = null;
+          } else {
+            next = pop();
+            for (int i = next.numChildren() - 1; i >= 0; i--) {
+              push(next.getChild(i));
+            }
+          }
+        }
+      };
     }
   };
 
@@ -363,34 +544,32 @@ abstract class Relation implements Serializable {
     private static final long serialVersionUID = -2580199434621268260L;
 
     @Override
-    boolean satisfies(Tree t1, Tree t2, Tree root) {
-      return t1 != t2 && t1.dominates(t2);
+    boolean satisfies(Tree t1, Tree t2, TreeIndex index) {
+      return t1 != t2 && index.dominates(t1, t2);
     }
 
     @Override
-    Iterator<Tree> searchNodeIterator(final Tree t, final Tree root) {
+    SearchNodeIterator newSearchNodeIterator() {
       return new SearchNodeIterator() {
-        Stack<Tree> searchStack;
 
         @Override
         public void initialize() {
-          searchStack = new Stack<Tree>();
           for (int i = t.numChildren() - 1; i >= 0; i--) {
-            searchStack.push(t.getChild(i));
+            push(t.getChild(i));
           }
-          if (!searchStack.isEmpty()) {
+          if (!stackIsEmpty()) {
             advance();
           }
         }
 
         @Override
         void advance() {
-          if (searchStack.isEmpty()) {
+          if (stackIsEmpty()) {
             next = null;
           } else {
-            next = searchStack.pop();
+            next = pop();
             for (int i = next.numChildren() - 1; i >= 0; i--) {
-              searchStack.push(next.getChild(i));
+              push(next.getChild(i));
             }
           }
         }
@@ -405,21 +584,21 @@ abstract class Relation implements Serializable {
     private static final long serialVersionUID = 6140614010121387690L;
 
     @Override
-    boolean satisfies(Tree t1, Tree t2, Tree root) {
-      return DOMINATES.satisfies(t2, t1, root);
+    boolean satisfies(Tree t1, Tree t2, TreeIndex index) {
+      return DOMINATES.satisfies(t2, t1, index);
     }
 
     @Override
-    Iterator<Tree> searchNodeIterator(final Tree t, final Tree root) {
+    SearchNodeIterator newSearchNodeIterator() {
       return new SearchNodeIterator() {
         @Override
         void initialize() {
-          next = t.parent(root);
+          next = index.parent(t);
         }
 
         @Override
         public void advance() {
-          next = next.parent(root);
+          next = index.parent(next);
         }
       };
     }
@@ -432,7 +611,7 @@ abstract class Relation implements Serializable {
     private static final long serialVersionUID = 9140193735607580808L;
 
     @Override
-    boolean satisfies(Tree t1, Tree t2, Tree root) {
+    boolean satisfies(Tree t1, Tree t2, TreeIndex index) {
       Tree[] kids = t1.children();
       for (int i = 0, n = kids.length; i < n; i++) {
         if (kids[i] == t2) {
@@ -443,15 +622,15 @@ abstract class Relation implements Serializable {
     }
 
     @Override
-    Iterator<Tree> searchNodeIterator(final Tree t, final Tree root) {
+    SearchNodeIterator newSearchNodeIterator() {
       return new SearchNodeIterator() {
-        int nextNum; // subtle bug warning here: if we use int nextNum=0;
-
-        // instead,
+        int nextNum;
 
-        // we get the first daughter twice because the assignment occurs after
-        // advance() has already been
-        // called once by the constructor of SearchNodeIterator.
+        @Override
+        void initialize() {
+          nextNum = 0;
+          advance();
+        }
 
         @Override
         public void advance() {
@@ -473,16 +652,16 @@ abstract class Relation implements Serializable {
     private static final long serialVersionUID = 8919710375433372537L;
 
     @Override
-    boolean satisfies(Tree t1, Tree t2, Tree root) {
-      return PARENT_OF.satisfies(t2, t1, root);
+    boolean satisfies(Tree t1, Tree t2, TreeIndex index) {
+      return PARENT_OF.satisfies(t2, t1, index);
     }
 
     @Override
-    Iterator<Tree> searchNodeIterator(final Tree t, final Tree root) {
+    SearchNodeIterator newSearchNodeIterator() {
       return new SearchNodeIterator() {
         @Override
         void initialize() {
-          next = t.parent(root);
+          next = index.parent(t);
         }
       };
     }
@@ -495,38 +674,36 @@ abstract class Relation implements Serializable {
     private static final long serialVersionUID = -9065012389549976867L;
 
     @Override
-    boolean satisfies(Tree t1, Tree t2, Tree root) {
-      return Trees.rightEdge(t1, root) <= Trees.leftEdge(t2, root);
+    boolean satisfies(Tree t1, Tree t2, TreeIndex index) {
+      return index.rightEdge(t1) <= index.leftEdge(t2);
     }
 
     @Override
-    Iterator<Tree> searchNodeIterator(final Tree t, final Tree root) {
+    SearchNodeIterator newSearchNodeIterator() {
       return new SearchNodeIterator() {
-        Stack<Tree> searchStack;
 
         @Override
         public void initialize() {
-          searchStack = new Stack<Tree>();
           Tree current = t;
-          Tree parent = t.parent(root);
+          Tree parent = index.parent(t);
           while (parent != null) {
             for (int i = parent.numChildren() - 1; parent.getChild(i) != current; i--) {
-              searchStack.push(parent.getChild(i));
+              push(parent.getChild(i));
             }
             current = parent;
-            parent = parent.parent(root);
+            parent = index.parent(parent);
           }
           advance();
         }
 
         @Override
         void advance() {
-          if (searchStack.isEmpty()) {
+          if (stackIsEmpty()) {
             next = null;
           } else {
-            next = searchStack.pop();
+            next = pop();
             for (int i = next.numChildren() - 1; i >= 0; i--) {
-              searchStack.push(next.getChild(i));
+              push(next.getChild(i));
             }
           }
         }
@@ -542,12 +719,12 @@ abstract class Relation implements Serializable {
     private static final long serialVersionUID = 3390147676937292768L;
 
     @Override
-    boolean satisfies(Tree t1, Tree t2, Tree root) {
-      return Trees.leftEdge(t2, root) == Trees.rightEdge(t1, root);
+    boolean satisfies(Tree t1, Tree t2, TreeIndex index) {
+      return index.leftEdge(t2) == index.rightEdge(t1);
     }
 
     @Override
-    Iterator<Tree> searchNodeIterator(final Tree t, final Tree root) {
+    SearchNodeIterator newSearchNodeIterator() {
       return new SearchNodeIterator() {
         @Override
         void initialize() {
@@ -555,19 +732,14 @@ abstract class Relation implements Serializable {
           Tree parent = t;
           do {
             current = parent;
-            parent = parent.parent(root);
+            parent = index.parent(parent);
             if (parent == null) {
               next = null;
               return;
             }
           } while (parent.lastChild() == current);
 
-          for (int i = 1, n = parent.numChildren(); i < n; i++) {
-            if (parent.getChild(i - 1) == current) {
-              next = parent.getChild(i);
-              return;
-            }
-          }
+          next = parent.getChild(index.childIndex(current) + 1);
         }
 
         @Override
@@ -589,38 +761,36 @@ abstract class Relation implements Serializable {
     private static final long serialVersionUID = -5948063114149496983L;
 
     @Override
-    boolean satisfies(Tree t1, Tree t2, Tree root) {
-      return Trees.rightEdge(t2, root) <= Trees.leftEdge(t1, root);
+    boolean satisfies(Tree t1, Tree t2, TreeIndex index) {
+      return index.rightEdge(t2) <= index.leftEdge(t1);
     }
 
     @Override
-    Iterator<Tree> searchNodeIterator(final Tree t, final Tree root) {
+    SearchNodeIterator newSearchNodeIterator() {
       return new SearchNodeIterator() {
-        Stack<Tree> searchStack;
 
         @Override
         public void initialize() {
-          searchStack = new Stack<Tree>();
           Tree current = t;
-          Tree parent = t.parent(root);
+          Tree parent = index.parent(t);
           while (parent != null) {
             for (int i = 0; parent.getChild(i) != current; i++) {
-              searchStack.push(parent.getChild(i));
+              push(parent.getChild(i));
             }
             current = parent;
-            parent = parent.parent(root);
+            parent = index.parent(parent);
           }
           advance();
         }
 
         @Override
         void advance() {
-          if (searchStack.isEmpty()) {
+          if (stackIsEmpty()) {
             next = null;
           } else {
-            next = searchStack.pop();
+            next = pop();
             for (int i = next.numChildren() - 1; i >= 0; i--) {
-              searchStack.push(next.getChild(i));
+              push(next.getChild(i));
             }
           }
         }
@@ -636,12 +806,12 @@ abstract class Relation implements Serializable {
     private static final long serialVersionUID = -2895075562891296830L;
 
     @Override
-    boolean satisfies(Tree t1, Tree t2, Tree root) {
-      return Trees.leftEdge(t1, root) == Trees.rightEdge(t2, root);
+    boolean satisfies(Tree t1, Tree t2, TreeIndex index) {
+      return index.leftEdge(t1) == index.rightEdge(t2);
     }
 
     @Override
-    Iterator<Tree> searchNodeIterator(final Tree t, final Tree root) {
+    SearchNodeIterator newSearchNodeIterator() {
       return new SearchNodeIterator() {
         @Override
         void initialize() {
@@ -649,19 +819,14 @@ abstract class Relation implements Serializable {
           Tree parent = t;
           do {
             current = parent;
-            parent = parent.parent(root);
+            parent = index.parent(parent);
             if (parent == null) {
               next = null;
               return;
             }
           } while (parent.firstChild() == current);
 
-          for (int i = 0, n = parent.numChildren() - 1; i < n; i++) {
-            if (parent.getChild(i + 1) == current) {
-              next = parent.getChild(i);
-              return;
-            }
-          }
+          next = parent.getChild(index.childIndex(current) - 1);
         }
 
         @Override
@@ -683,17 +848,17 @@ abstract class Relation implements Serializable {
     private static final long serialVersionUID = -7352081789429366726L;
 
     @Override
-    boolean satisfies(Tree t1, Tree t2, Tree root) {
+    boolean satisfies(Tree t1, Tree t2, TreeIndex index) {
       if (t1.isLeaf()) {
         return false;
       } else {
         return (t1.children()[0] == t2)
-            || satisfies(t1.children()[0], t2, root);
+            || satisfies(t1.children()[0], t2, index);
       }
     }
 
     @Override
-    Iterator<Tree> searchNodeIterator(final Tree t, final Tree root) {
+    SearchNodeIterator newSearchNodeIterator() {
       return new SearchNodeIterator() {
         @Override
         void initialize() {
@@ -720,17 +885,17 @@ abstract class Relation implements Serializable {
     private static final long serialVersionUID = -1405509785337859888L;
 
     @Override
-    boolean satisfies(Tree t1, Tree t2, Tree root) {
+    boolean satisfies(Tree t1, Tree t2, TreeIndex index) {
       if (t1.isLeaf()) {
         return false;
       } else {
         Tree lastKid = t1.children()[t1.children().length - 1];
-        return (lastKid == t2) || satisfies(lastKid, t2, root);
+        return (lastKid == t2) || satisfies(lastKid, t2, index);
       }
     }
 
     @Override
-    Iterator<Tree> searchNodeIterator(final Tree t, final Tree root) {
+    SearchNodeIterator newSearchNodeIterator() {
       return new SearchNodeIterator() {
         @Override
         void initialize() {
@@ -758,12 +923,12 @@ abstract class Relation implements Serializable {
     private static final long serialVersionUID = 3103412865783190437L;
 
     @Override
-    boolean satisfies(Tree t1, Tree t2, Tree root) {
-      return HAS_LEFTMOST_DESCENDENT.satisfies(t2, t1, root);
+    boolean satisfies(Tree t1, Tree t2, TreeIndex index) {
+      return HAS_LEFTMOST_DESCENDENT.satisfies(t2, t1, index);
     }
 
     @Override
-    Iterator<Tree> searchNodeIterator(final Tree t, final Tree root) {
+    SearchNodeIterator newSearchNodeIterator() {
       return new SearchNodeIterator() {
         @Override
         void initialize() {
@@ -774,7 +939,7 @@ abstract class Relation implements Serializable {
         @Override
         public void advance() {
           Tree last = next;
-          next = next.parent(root);
+          next = index.parent(next);
           if (next != null && next.firstChild() != last) {
             next = null;
           }
@@ -791,12 +956,12 @@ abstract class Relation implements Serializable {
     private static final long serialVersionUID = -2000255467314675477L;
 
     @Override
-    boolean satisfies(Tree t1, Tree t2, Tree root) {
-      return HAS_RIGHTMOST_DESCENDENT.satisfies(t2, t1, root);
+    boolean satisfies(Tree t1, Tree t2, TreeIndex index) {
+      return HAS_RIGHTMOST_DESCENDENT.satisfies(t2, t1, index);
     }
 
     @Override
-    Iterator<Tree> searchNodeIterator(final Tree t, final Tree root) {
+    SearchNodeIterator newSearchNodeIterator() {
       return new SearchNodeIterator() {
         @Override
         void initialize() {
@@ -807,7 +972,7 @@ abstract class Relation implements Serializable {
         @Override
         public void advance() {
           Tree last = next;
-          next = next.parent(root);
+          next = index.parent(next);
           if (next != null && next.lastChild() != last) {
             next = null;
           }
@@ -824,16 +989,15 @@ abstract class Relation implements Serializable {
     private static final long serialVersionUID = -3776688096782419004L;
 
     @Override
-    boolean satisfies(Tree t1, Tree t2, Tree root) {
-      if (t1 == t2 || t1 == root) {
+    boolean satisfies(Tree t1, Tree t2, TreeIndex index) {
+      if (t1 == t2 || t1 == index.root()) {
         return false;
       }
-      Tree parent = t1.parent(root);
-      return PARENT_OF.satisfies(parent, t2, root);
+      return index.parent(t1) == index.parent(t2);
     }
 
     @Override
-    Iterator<Tree> searchNodeIterator(final Tree t, final Tree root) {
+    SearchNodeIterator newSearchNodeIterator() {
       return new SearchNodeIterator() {
         Tree parent;
 
@@ -841,7 +1005,7 @@ abstract class Relation implements Serializable {
 
         @Override
         void initialize() {
-          parent = t.parent(root);
+          parent = index.parent(t);
           if (parent != null) {
             nextNum = 0;
             advance();
@@ -870,25 +1034,16 @@ abstract class Relation implements Serializable {
     private static final long serialVersionUID = -4516161080140406862L;
 
     @Override
-    boolean satisfies(Tree t1, Tree t2, Tree root) {
-      if (t1 == t2 || t1 == root) {
+    boolean satisfies(Tree t1, Tree t2, TreeIndex index) {
+      if (t1 == t2 || t1 == index.root()) {
         return false;
       }
-      Tree parent = t1.parent(root);
-      Tree[] kids = parent.children();
-      for (int i = kids.length - 1; i > 0; i--) {
-        if (kids[i] == t1) {
-          return false;
-        }
-        if (kids[i] == t2) {
-          return true;
-        }
-      }
-      return false;
+      return index.parent(t1) == index.parent(t2)
+          && index.childIndex(t1) < index.childIndex(t2);
     }
 
     @Override
-    Iterator<Tree> searchNodeIterator(final Tree t, final Tree root) {
+    SearchNodeIterator newSearchNodeIterator() {
       return new SearchNodeIterator() {
         Tree parent;
 
@@ -896,7 +1051,7 @@ abstract class Relation implements Serializable {
 
         @Override
         void initialize() {
-          parent = t.parent(root);
+          parent = index.parent(t);
           if (parent != null) {
             nextNum = parent.numChildren() - 1;
             advance();
@@ -921,12 +1076,12 @@ abstract class Relation implements Serializable {
     private static final long serialVersionUID = -5880626025192328694L;
 
     @Override
-    boolean satisfies(Tree t1, Tree t2, Tree root) {
-      return LEFT_SISTER_OF.satisfies(t2, t1, root);
+    boolean satisfies(Tree t1, Tree t2, TreeIndex index) {
+      return LEFT_SISTER_OF.satisfies(t2, t1, index);
     }
 
     @Override
-    Iterator<Tree> searchNodeIterator(final Tree t, final Tree root) {
+    SearchNodeIterator newSearchNodeIterator() {
       return new SearchNodeIterator() {
         Tree parent;
 
@@ -934,7 +1089,7 @@ abstract class Relation implements Serializable {
 
         @Override
         void initialize() {
-          parent = t.parent(root);
+          parent = index.parent(t);
           if (parent != null) {
             nextNum = 0;
             advance();
@@ -959,33 +1114,22 @@ abstract class Relation implements Serializable {
     private static final long serialVersionUID = 7745237994722126917L;
 
     @Override
-    boolean satisfies(Tree t1, Tree t2, Tree root) {
-      if (t1 == t2 || t1 == root) {
+    boolean satisfies(Tree t1, Tree t2, TreeIndex index) {
+      if (t1 == t2 || t1 == index.root()) {
         return false;
       }
-      Tree[] sisters = t1.parent(root).children();
-      for (int i = sisters.length - 1; i > 0; i--) {
-        if (sisters[i] == t1) {
-          return false;
-        }
-        if (sisters[i] == t2) {
-          return sisters[i - 1] == t1;
-        }
-      }
-      return false;
+      return index.parent(t1) == index.parent(t2)
+          && index.childIndex(t1) + 1 == index.childIndex(t2);
     }
 
     @Override
-    Iterator<Tree> searchNodeIterator(final Tree t, final Tree root) {
+    SearchNodeIterator newSearchNodeIterator() {
       return new SearchNodeIterator() {
         @Override
         void initialize() {
-          if (t != root) {
-            Tree parent = t.parent(root);
-            int i = 0;
-            while (parent.getChild(i) != t) {
-              i++;
-            }
+          if (t != index.root()) {
+            Tree parent = index.parent(t);
+            int i = index.childIndex(t);
             if (i + 1 < parent.numChildren()) {
               next = parent.getChild(i + 1);
             }
@@ -1002,21 +1146,18 @@ abstract class Relation implements Serializable {
     private static final long serialVersionUID = -6555264189937531019L;
 
     @Override
-    boolean satisfies(Tree t1, Tree t2, Tree root) {
-      return IMMEDIATE_LEFT_SISTER_OF.satisfies(t2, t1, root);
+    boolean satisfies(Tree t1, Tree t2, TreeIndex index) {
+      return IMMEDIATE_LEFT_SISTER_OF.satisfies(t2, t1, index);
     }
 
     @Override
-    Iterator<Tree> searchNodeIterator(final Tree t, final Tree root) {
+    SearchNodeIterator newSearchNodeIterator() {
       return new SearchNodeIterator() {
         @Override
         void initialize() {
-          if (t != root) {
-            Tree parent = t.parent(root);
-            int i = 0;
-            while (parent.getChild(i) != t) {
-              i++;
-            }
+          if (t != index.root()) {
+            Tree parent = index.parent(t);
+            int i = index.childIndex(t);
             if (i > 0) {
               next = parent.getChild(i - 1);
             }
@@ -1033,17 +1174,17 @@ abstract class Relation implements Serializable {
     private static final long serialVersionUID = 1719812660770087879L;
 
     @Override
-    boolean satisfies(Tree t1, Tree t2, Tree root) {
+    boolean satisfies(Tree t1, Tree t2, TreeIndex index) {
       return t2.children().length == 1 && t2.firstChild() == t1;
     }
 
     @Override
-    Iterator<Tree> searchNodeIterator(final Tree t, final Tree root) {
+    SearchNodeIterator newSearchNodeIterator() {
       return new SearchNodeIterator() {
         @Override
         void initialize() {
-          if (t != root) {
-            next = t.parent(root);
+          if (t != index.root()) {
+            next = index.parent(t);
             if (next.numChildren() != 1) {
               next = null;
             }
@@ -1060,12 +1201,12 @@ abstract class Relation implements Serializable {
     private static final long serialVersionUID = -8776487500849294279L;
 
     @Override
-    boolean satisfies(Tree t1, Tree t2, Tree root) {
+    boolean satisfies(Tree t1, Tree t2, TreeIndex index) {
       return t1.children().length == 1 && t1.firstChild() == t2;
     }
 
     @Override
-    Iterator<Tree> searchNodeIterator(final Tree t, final Tree root) {
+    SearchNodeIterator newSearchNodeIterator() {
       return new SearchNodeIterator() {
         @Override
         void initialize() {
@@ -1084,39 +1225,37 @@ abstract class Relation implements Serializable {
     private static final long serialVersionUID = -742912038636163403L;
 
     @Override
-    boolean satisfies(Tree t1, Tree t2, Tree root) {
+    boolean satisfies(Tree t1, Tree t2, TreeIndex index) {
       if (t1.isLeaf() || t1.children().length > 1)
         return false;
       Tree onlyDtr = t1.children()[0];
       if (onlyDtr == t2)
         return true;
       else
-        return satisfies(onlyDtr, t2, root);
+        return satisfies(onlyDtr, t2, index);
     }
 
     @Override
-    Iterator<Tree> searchNodeIterator(final Tree t, final Tree root) {
+    SearchNodeIterator newSearchNodeIterator() {
       return new SearchNodeIterator() {
-        Stack<Tree> searchStack;
 
         @Override
         public void initialize() {
-          searchStack = new Stack<Tree>();
           if (!t.isLeaf() && t.children().length == 1)
-            searchStack.push(t.getChild(0));
-          if (!searchStack.isEmpty()) {
+            push(t.getChild(0));
+          if (!stackIsEmpty()) {
             advance();
           }
         }
 
         @Override
         void advance() {
-          if (searchStack.isEmpty()) {
+          if (stackIsEmpty()) {
             next = null;
           } else {
-            next = searchStack.pop();
+            next = pop();
             if (!next.isLeaf() && next.children().length == 1)
-              searchStack.push(next.getChild(0));
+              push(next.getChild(0));
           }
         }
       };
@@ -1130,41 +1269,39 @@ abstract class Relation implements Serializable {
     private static final long serialVersionUID = 4364021807752979404L;
 
     @Override
-    boolean satisfies(Tree t1, Tree t2, Tree root) {
+    boolean satisfies(Tree t1, Tree t2, TreeIndex index) {
       if (t2.isLeaf() || t2.children().length > 1)
         return false;
       Tree onlyDtr = t2.children()[0];
       if (onlyDtr == t1)
         return true;
       else
-        return satisfies(t1, onlyDtr, root);
+        return satisfies(t1, onlyDtr, index);
     }
 
     @Override
-    Iterator<Tree> searchNodeIterator(final Tree t, final Tree root) {
+    SearchNodeIterator newSearchNodeIterator() {
       return new SearchNodeIterator() {
-        Stack<Tree> searchStack;
 
         @Override
         public void initialize() {
-          searchStack = new Stack<Tree>();
-          Tree parent = t.parent(root);
+          Tree parent = index.parent(t);
           if (parent != null && !parent.isLeaf() && parent.children().length == 1)
-            searchStack.push(parent);
-          if (!searchStack.isEmpty()) {
+            push(parent);
+          if (!stackIsEmpty()) {
             advance();
           }
         }
 
         @Override
         void advance() {
-          if (searchStack.isEmpty()) {
+          if (stackIsEmpty()) {
             next = null;
           } else {
-            next = searchStack.pop();
-            Tree parent = next.parent(root);
+            next = pop();
+            Tree parent = index.parent(next);
             if (parent != null && !parent.isLeaf() && parent.children().length == 1)
-              searchStack.push(parent);
+              push(parent);
           }
         }
       };
@@ -1234,23 +1371,26 @@ abstract class Relation implements Serializable {
     }
 
     @Override
-    boolean satisfies(Tree t1, Tree t2, Tree root) {
-      if (t2.isLeaf()) {
-        return false;
-      } else if (t2.isPreTerminal()) {
-        return (t2.firstChild() == t1);
-      } else {
-        Tree head = hf.determineHead(t2);
+    boolean satisfies(Tree t1, Tree t2, TreeIndex index) {
+      // follow the head chain down from t2
+      while (true) {
+        if (t2.isLeaf()) {
+          return false;
+        } else if (t2.isPreTerminal()) {
+          return (t2.firstChild() == t1);
+        }
+        Tree head = index.head(t2, hf);
         if (head == t1) {
           return true;
-        } else {
-          return satisfies(t1, head, root);
+        } else if (head == null) {
+          return false;
         }
+        t2 = head;
       }
     }
 
     @Override
-    Iterator<Tree> searchNodeIterator(final Tree t, final Tree root) {
+    SearchNodeIterator newSearchNodeIterator() {
       return new SearchNodeIterator() {
         @Override
         void initialize() {
@@ -1261,8 +1401,8 @@ abstract class Relation implements Serializable {
         @Override
         public void advance() {
           Tree last = next;
-          next = next.parent(root);
-          if (next != null && hf.determineHead(next) != last) {
+          next = index.parent(next);
+          if (next != null && index.head(next, hf) != last) {
             next = null;
           }
         }
@@ -1312,12 +1452,12 @@ abstract class Relation implements Serializable {
     }
 
     @Override
-    boolean satisfies(Tree t1, Tree t2, Tree root) {
-      return heads.satisfies(t2, t1, root);
+    boolean satisfies(Tree t1, Tree t2, TreeIndex index) {
+      return heads.satisfies(t2, t1, index);
     }
 
     @Override
-    Iterator<Tree> searchNodeIterator(final Tree t, final Tree root) {
+    SearchNodeIterator newSearchNodeIterator() {
       return new SearchNodeIterator() {
         @Override
         void initialize() {
@@ -1330,7 +1470,7 @@ abstract class Relation implements Serializable {
           if (next.isLeaf()) {
             next = null;
           } else {
-            next = heads.hf.determineHead(next);
+            next = index.head(next, heads.hf);
           }
         }
       };
@@ -1380,18 +1520,18 @@ abstract class Relation implements Serializable {
     }
 
     @Override
-    boolean satisfies(Tree t1, Tree t2, Tree root) {
-      return hf.determineHead(t2) == t1;
+    boolean satisfies(Tree t1, Tree t2, TreeIndex index) {
+      return ! t2.isLeaf() && index.head(t2, hf) == t1;
     }
 
     @Override
-    Iterator<Tree> searchNodeIterator(final Tree t, final Tree root) {
+    SearchNodeIterator newSearchNodeIterator() {
       return new SearchNodeIterator() {
         @Override
         void initialize() {
-          if (t != root) {
-            next = t.parent(root);
-            if (hf.determineHead(next) != t) {
+          if (t != index.root()) {
+            next = index.parent(t);
+            if (index.head(next, hf) != t) {
               next = null;
             }
           }
@@ -1443,17 +1583,17 @@ abstract class Relation implements Serializable {
     }
 
     @Override
-    boolean satisfies(Tree t1, Tree t2, Tree root) {
-      return immediatelyHeads.satisfies(t2, t1, root);
+    boolean satisfies(Tree t1, Tree t2, TreeIndex index) {
+      return immediatelyHeads.satisfies(t2, t1, index);
     }
 
     @Override
-    Iterator<Tree> searchNodeIterator(final Tree t, final Tree root) {
+    SearchNodeIterator newSearchNodeIterator() {
       return new SearchNodeIterator() {
         @Override
         void initialize() {
           if (!t.isLeaf()) {
-            next = immediatelyHeads.hf.determineHead(t);
+            next = index.head(t, immediatelyHeads.hf);
           }
         }
       };
@@ -1511,7 +1651,7 @@ abstract class Relation implements Serializable {
     }
 
     @Override
-    boolean satisfies(Tree t1, Tree t2, Tree root) {
+    boolean satisfies(Tree t1, Tree t2, TreeIndex index) {
       Tree[] kids = t2.children();
       if (kids.length < Math.abs(childNum)) {
         return false;
@@ -1526,12 +1666,12 @@ abstract class Relation implements Serializable {
     }
 
     @Override
-    Iterator<Tree> searchNodeIterator(final Tree t, final Tree root) {
+    SearchNodeIterator newSearchNodeIterator() {
       return new SearchNodeIterator() {
         @Override
         void initialize() {
-          if (t != root) {
-            next = t.parent(root);
+          if (t != index.root()) {
+            next = index.parent(t);
             if (childNum > 0
                 && (next.numChildren() < childNum || next
                     .getChild(childNum - 1) != t)
@@ -1589,12 +1729,12 @@ abstract class Relation implements Serializable {
     }
 
     @Override
-    boolean satisfies(Tree t1, Tree t2, Tree root) {
-      return ithChildOf.satisfies(t2, t1, root);
+    boolean satisfies(Tree t1, Tree t2, TreeIndex index) {
+      return ithChildOf.satisfies(t2, t1, index);
     }
 
     @Override
-    Iterator<Tree> searchNodeIterator(final Tree t, final Tree root) {
+    SearchNodeIterator newSearchNodeIterator() {
       return new SearchNodeIterator() {
         @Override
         void initialize() {
@@ -1684,12 +1824,12 @@ abstract class Relation implements Serializable {
 
     /** {@inheritDoc} */
     @Override
-    boolean satisfies(Tree t1, Tree t2, Tree root) {
+    boolean satisfies(Tree t1, Tree t2, TreeIndex index) {
       for (Tree kid : t1.children()) {
         if (kid == t2) {
           return true;
         } else {
-          if (pathMatchesNode(kid) && satisfies(kid, t2, root)) {
+          if (pathMatchesNode(kid) && satisfies(kid, t2, index)) {
             return true;
           }
         }
@@ -1714,30 +1854,28 @@ abstract class Relation implements Serializable {
 
     /** {@inheritDoc} */
     @Override
-    Iterator<Tree> searchNodeIterator(final Tree t, final Tree root) {
+    SearchNodeIterator newSearchNodeIterator() {
       return new SearchNodeIterator() {
-        Stack<Tree> searchStack;
 
         @Override
         public void initialize() {
-          searchStack = new Stack<Tree>();
           for (int i = t.numChildren() - 1; i >= 0; i--) {
-            searchStack.push(t.getChild(i));
+            push(t.getChild(i));
           }
-          if (!searchStack.isEmpty()) {
+          if (!stackIsEmpty()) {
             advance();
           }
         }
 
         @Override
         void advance() {
-          if (searchStack.isEmpty()) {
+          if (stackIsEmpty()) {
             next = null;
           } else {
-            next = searchStack.pop();
+            next = pop();
             if (pathMatchesNode(next)) {
               for (int i = next.numChildren() - 1; i >= 0; i--) {
-                searchStack.push(next.getChild(i));
+                push(next.getChild(i));
               }
             }
           }
@@ -1793,23 +1931,23 @@ abstract class Relation implements Serializable {
 
     /** {@inheritDoc} */
     @Override
-    boolean satisfies(Tree t1, Tree t2, Tree root) {
-      return unbrokenCategoryDominates.satisfies(t2, t1, root);
+    boolean satisfies(Tree t1, Tree t2, TreeIndex index) {
+      return unbrokenCategoryDominates.satisfies(t2, t1, index);
     }
 
     /** {@inheritDoc} */
     @Override
-    Iterator<Tree> searchNodeIterator(final Tree t, final Tree root) {
+    SearchNodeIterator newSearchNodeIterator() {
       return new SearchNodeIterator() {
         @Override
         void initialize() {
-          next = t.parent(root);
+          next = index.parent(t);
         }
 
         @Override
         public void advance() {
           if (unbrokenCategoryDominates.pathMatchesNode(next)) {
-            next = next.parent(root);
+            next = index.parent(next);
           } else {
             next = null;
           }
@@ -1890,7 +2028,7 @@ abstract class Relation implements Serializable {
 
     /** {@inheritDoc} */
     @Override
-    boolean satisfies(Tree t1, Tree t2, Tree root) {
+    boolean satisfies(Tree t1, Tree t2, TreeIndex index) {
       return true; // shouldn't have to do anything here.
     }
 
@@ -1911,29 +2049,31 @@ abstract class Relation implements Serializable {
 
     /** {@inheritDoc} */
     @Override
-    Iterator<Tree> searchNodeIterator(final Tree t, final Tree root) {
+    SearchNodeIterator newSearchNodeIterator() {
       return new SearchNodeIterator() {
         private IdentityHashSet<Tree> nodesToSearch;
-        private Stack<Tree> searchStack;
 
         @Override
         public void initialize() {
-          nodesToSearch = new IdentityHashSet<Tree>();
-          searchStack = new Stack<Tree>();
-          initializeHelper(searchStack,t,root);
+          if (nodesToSearch == null) {
+            nodesToSearch = new IdentityHashSet<Tree>();
+          } else {
+            nodesToSearch.clear();
+          }
+          initializeHelper(t);
           advance();
         }
 
-        private void initializeHelper(Stack<Tree> stack, Tree node, Tree root) {
-          if (node==root) {
+        private void initializeHelper(Tree node) {
+          if (node==index.root()) {
             return;
           }
-          Tree parent = node.parent(root);
-          int i = parent.indexOf(node);
-          while (i == parent.children().length-1 && parent != root) {
+          Tree parent = index.parent(node);
+          int i = index.childIndex(node);
+          while (i == parent.children().length-1 && parent != index.root()) {
             node = parent;
-            parent = parent.parent(root);
-            i = parent.indexOf(node);
+            parent = index.parent(parent);
+            i = index.childIndex(node);
           }
           Tree followingNode;
           if (i+1 < parent.children().length) {
@@ -1944,11 +2084,11 @@ abstract class Relation implements Serializable {
           while (followingNode != null) {
             //System.err.println("adding to stack node " + followingNode.toString());
             if (! nodesToSearch.contains(followingNode)) {
-              stack.add(followingNode);
+              push(followingNode);
               nodesToSearch.add(followingNode);
             }
             if (pathMatchesNode(followingNode)) {
-              initializeHelper(stack, followingNode, root);
+              initializeHelper(followingNode);
             }
             if (! followingNode.isLeaf()) {
               followingNode = followingNode.children()[0];
@@ -1960,10 +2100,10 @@ abstract class Relation implements Serializable {
 
         @Override
         void advance() {
-          if (searchStack.isEmpty()) {
+          if (stackIsEmpty()) {
             next = null;
           } else {
-            next = searchStack.pop();
+            next = pop();
           }
         }
       };
@@ -2017,7 +2157,7 @@ abstract class Relation implements Serializable {
 
     /** {@inheritDoc} */
     @Override
-    boolean satisfies(Tree t1, Tree t2, Tree root) {
+    boolean satisfies(Tree t1, Tree t2, TreeIndex index) {
       return true; // shouldn't have to do anything here.
     }
 
@@ -2038,29 +2178,31 @@ abstract class Relation implements Serializable {
 
     /** {@inheritDoc} */
     @Override
-    Iterator<Tree> searchNodeIterator(final Tree t, final Tree root) {
+    SearchNodeIterator newSearchNodeIterator() {
       return new SearchNodeIterator() {
-        IdentityHashSet<Tree> nodesToSearch;
-        Stack<Tree> searchStack;
+        private IdentityHashSet<Tree> nodesToSearch;
 
         @Override
         public void initialize() {
-          nodesToSearch = new IdentityHashSet<Tree>();
-          searchStack = new Stack<Tree>();
-          initializeHelper(searchStack,t,root);
+          if (nodesToSearch == null) {
+            nodesToSearch = new IdentityHashSet<Tree>();
+          } else {
+            nodesToSearch.clear();
+          }
+          initializeHelper(t);
           advance();
         }
 
-        private void initializeHelper(Stack<Tree> stack, Tree node, Tree root) {
-          if (node==root) {
+        private void initializeHelper(Tree node) {
+          if (node==index.root()) {
             return;
           }
-          Tree parent = node.parent(root);
-          int i = parent.indexOf(node);
-          while (i == 0 && parent != root) {
+          Tree parent = index.parent(node);
+          int i = index.childIndex(node);
+          while (i == 0 && parent != index.root()) {
             node = parent;
-            parent = parent.parent(root);
-            i = parent.indexOf(node);
+            parent = index.parent(parent);
+            i = index.childIndex(node);
           }
           Tree precedingNode;
           if (i > 0) {
@@ -2071,11 +2213,11 @@ abstract class Relation implements Serializable {
           while (precedingNode != null) {
             //System.err.println("adding to stack node " + precedingNode.toString());
             if ( ! nodesToSearch.contains(precedingNode)) {
-              stack.add(precedingNode);
+              push(precedingNode);
               nodesToSearch.add(precedingNode);
             }
             if (pathMatchesNode(precedingNode)) {
-              initializeHelper(stack, precedingNode, root);
+              initializeHelper(precedingNode);
             }
             if (! precedingNode.isLeaf()) {
               precedingNode = precedingNode.children()[0];
@@ -2087,10 +2229,10 @@ abstract class Relation implements Serializable {
 
         @Override
         void advance() {
-          if (searchStack.isEmpty()) {
+          if (stackIsEmpty()) {
             next = null;
           } else {
-            next = searchStack.pop();
+            next = pop();
           }
         }
       };
@@ -0,0 +1,352 @@
+package edu.stanford.nlp.trees.tregex;
+
+import java.util.Arrays;
+import java.util.List;
+
+import edu.stanford.nlp.trees.CollinsHeadFinder;
+import edu.stanford.nlp.trees.DiskTreebank;
+import edu.stanford.nlp.trees.HeadFinder;
+import edu.stanford.nlp.trees.ModCollinsHeadFinder;
+import edu.stanford.nlp.trees.Tree;
+import edu.stanford.nlp.trees.Treebank;
+
+/**
+ * Positional information about every node of a single tree, shared by all
+ * the {@link TregexMatcher}s of one match session.  For each node it records
+ * the parent, the node's index among its parent's children, its preorder and
+ * postorder numbers, the extent of its subtree in preorder, and the left and
+ * right edges of its span over the leaves, as {@link
+ * edu.stanford.nlp.trees.Trees#leftEdge} and {@link
+ * edu.stanford.nlp.trees.Trees#rightEdge} define them.
+ * <p>
+ * This replaces the repeated depth-first searches from the root that
+ * {@link Tree#parent(Tree)} and the <code>Trees</code> edge methods do, so the
+ * {@link Relation}s can answer parent, dominance and precedence questions in
+ * constant time.  The index is built lazily, the first time a relation asks
+ * for it, and reflects the tree as it was at that moment: if the tree is
+ * changed, the index must be {@link #reset} (along with its matcher).
+ * <p>
+ * The index also remembers the head child of each node, as a {@link
+ * HeadFinder} determines it, the first time a head relation asks for it,
+ * so that following head chains does not run the head finder's rules over
+ * the same nodes again and again.
+ */
+class TreeIndex {
+
+  private Tree root;
+
+  private boolean built = false;
+
+  /** The number of nodes in the tree; the arrays may be longer, when reused. */
+  private int size;
+
+  /** The nodes of the tree, in preorder. */
+  private Tree[] nodes;
+  /** The preorder number of each node's parent, or -1 for the root. */
+  private int[] parents;
+  /** The position of each node among its parent's children. */
+  private int[] childIndices;
+  /** One past the preorder number of the last node in each node's subtree. */
+  private int[] subtreeEnds;
+  private int[] postorder;
+  private int[] leftEdges;
+  private int[] rightEdges;
+
+  /** The head finder whose heads are remembered, or null if none have been asked for yet. */
+  private HeadFinder headFinder;
+  // an open-addressed identity hash table from nodes to their heads, kept
+  // apart from the rest of the index so that asking for heads does not build it
+  private Tree[] headKeys;
+  private Tree[] headValues;
+  private int numHeads;
+
+  // an open-addressed identity hash table from nodes to preorder numbers
+  private Tree[] keys;
+  private int[] values;
+
+  // used while building
+  private int nextPreorder;
+  private int nextPostorder;
+  private int nextLeaf;
+
+  TreeIndex(Tree root) {
+    this.root = root;
+  }
+
+  Tree root() {
+    return root;
+  }
+
+  /**
+   * Makes this the index of another tree, or of the same tree after it has
+   * been changed.  The index is built afresh when it is next used, in the
+   * space it already has where it is big enough.
+   */
+  void reset(Tree root) {
+    this.root = root;
+    if (built) {
+      Arrays.fill(nodes, 0, size, null);
+      Arrays.fill(keys, null);
+      built = false;
+    }
+    if (numHeads > 0) {
+      Arrays.fill(headKeys, null);
+      Arrays.fill(headValues, null);
+      numHeads = 0;
+    }
+  }
+
+  /**
+   * Returns the preorder number of a node, which is also its position
+   * in {@link #node}, or -1 if the node is not in the tree.
+   */
+  int preorder(Tree node) {
+    ensureBuilt();
+    int mask = keys.length - 1;
+    for (int i = hash(node) & mask; keys[i] != null; i = (i + 1) & mask) {
+      if (keys[i] == node) {
+        return values[i];
+      }
+    }
+    return -1;
+  }
+
+  /** The number of nodes in the tree. */
+  int size() {
+    ensureBuilt();
+    return size;
+  }
+
+  /** The node with the given preorder number. */
+  Tree node(int preorder) {
+    ensureBuilt();
+    return nodes[preorder];
+  }
+
+  int postorder(Tree node) {
+    return postorder[checkedPreorder(node)];
+  }
+
+  /**
+   * The parent of <code>node</code>, or <code>null</code> if it is the root
+   * or is not in the tree, as with {@link Tree#parent(Tree)}.
+   */
+  Tree parent(Tree node) {
+    int i = preorder(node);
+    if (i < 0 || parents[i] < 0) {
+      return null;
+    }
+    return nodes[parents[i]];
+  }
+
+  /**
+   * The position of <code>node</code> among the children of its parent,
+   * or -1 if it is the root.  Unlike {@link Tree#indexOf(Tree)}, this is by
+   * identity and not by <code>equals()</code>.
+   */
+  int childIndex(Tree node) {
+    int i = checkedPreorder(node);
+    return parents[i] < 0 ? -1 : childIndices[i];
+  }
+
+  /**
+   * Whether <code>t1</code> dominates <code>t2</code>.  As with {@link
+   * Tree#dominates(Tree)}, a node dominates itself.
+   */
+  boolean dominates(Tree t1, Tree t2) {
+    int i = preorder(t1);
+    int j = preorder(t2);
+    return i >= 0 && j >= i && j < subtreeEnds[i];
+  }
+
+  /**
+   * One past the preorder number of the last node dominated by
+   * <code>node</code>, so that its subtree is exactly the nodes numbered
+   * from <code>preorder(node)</code> up to this.
+   */
+  int subtreeEnd(Tree node) {
+    return subtreeEnds[checkedPreorder(node)];
+  }
+
+  /** The same value as {@link edu.stanford.nlp.trees.Trees#leftEdge}. */
+  int leftEdge(Tree node) {
+    return leftEdges[checkedPreorder(node)];
+  }
+
+  /** The same value as {@link edu.stanford.nlp.trees.Trees#rightEdge}. */
+  int rightEdge(Tree node) {
+    return rightEdges[checkedPreorder(node)];
+  }
+
+  /**
+   * The head child of a phrasal or preterminal node, as
+   * <code>hf.determineHead(node)</code> gives it, determined once per node.
+   * The heads of only one head finder are remembered; those of any other
+   * are determined afresh each time.
+   */
+  Tree head(Tree node, HeadFinder hf) {
+    if (headFinder == null) {
+      headFinder = hf;
+      headKeys = new Tree[32];
+      headValues = new Tree[32];
+    } else if (hf != headFinder) {
+      return hf.determineHead(node);
+    }
+    int mask = headKeys.length - 1;
+    int slot = hash(node) & mask;
+    for ( ; headKeys[slot] != null; slot = (slot + 1) & mask) {
+      if (headKeys[slot] == node) {
+        return headValues[slot];
+      }
+    }
+    Tree head = hf.determineHead(node);
+    headKeys[slot] = node;
+    headValues[slot] = head;
+    if (++numHeads * 2 > headKeys.length) {
+      growHeads();
+    }
+    return head;
+  }
+
+  private void growHeads() {
+    Tree[] oldKeys = headKeys;
+    Tree[] oldValues = headValues;
+    headKeys = new Tree[2 * oldKeys.length];
+    headValues = new Tree[2 * oldKeys.length];
+    int mask = headKeys.length - 1;
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldKeys[i] != null) {
+        int slot = hash(oldKeys[i]) & mask;
+        while (headKeys[slot] != null) {
+          slot = (slot + 1) & mask;
+        }
+        headKeys[slot] = oldKeys[i];
+        headValues[slot] = oldValues[i];
+      }
+    }
+  }
+
+  private int checkedPreorder(Tree node) {
+    int i = preorder(node);
+    if (i < 0) {
+      throw new RuntimeException("Tree is not a descendent of root.");
+    }
+    return i;
+  }
+
+  private static int hash(Tree node) {
+    int h = System.identityHashCode(node);
+    return h ^ (h >>> 16);
+  }
+
+  /**
+   * For testing: checks that the heads the index remembers are those the
+   * head finder determines.  One index is reset for each tree of the
+   * treebank, and is asked for the head of each phrasal and preterminal
+   * node twice, in preorder and then in reverse, by the head finder whose
+   * heads it remembers, and also by another head finder, whose heads it
+   * does not; each must be the node <code>determineHead</code> gives.
+   * <br>
+   * Usage: <code>
+   * java edu.stanford.nlp.trees.tregex.TreeIndex treebankPath
+   * </code>
+   */
+  public static void main(String[] args) {
+    if (args.length < 1) {
+      System.err.println("usage: TreeIndex treebankPath");
+      return;
+    }
+    Treebank treebank = new DiskTreebank();
+    treebank.loadPath(args[0]);
+    HeadFinder remembered = new CollinsHeadFinder();
+    HeadFinder other = new ModCollinsHeadFinder();
+    TreeIndex index = new TreeIndex(null);
+    int trees = 0, heads = 0;
+    for (Tree root : treebank) {
+      index.reset(root);
+      List<Tree> nodes = root.subTreeList();
+      for (int pass = 0; pass < 2; pass++) {
+        for (int i = 0; i < nodes.size(); i++) {
+          Tree node = nodes.get((pass == 0) ? i : nodes.size() - 1 - i);
+          if (node.isLeaf()) {
+            continue;
+          }
+          if (index.head(node, remembered) != remembered.determineHead(node) ||
+              index.head(node, other) != other.determineHead(node)) {
+            System.err.println("Wrong head for " + node.value() + " in tree:");
+            root.pennPrint(System.err);
+            System.exit(1);
+          }
+          heads++;
+        }
+      }
+      trees++;
+    }
+    System.out.println("Checked " + heads + " heads in " + trees + " trees with no errors.");
+  }
+
+  private void ensureBuilt() {
+    if (built) {
+      return;
+    }
+    int n = countNodes(root);
+    size = n;
+    if (nodes == null || nodes.length < n) {
+      nodes = new Tree[n];
+      parents = new int[n];
+      childIndices = new int[n];
+      subtreeEnds = new int[n];
+      postorder = new int[n];
+      leftEdges = new int[n];
+      rightEdges = new int[n];
+    }
+    int capacity = 2;
+    while (capacity < 2 * n) {
+      capacity <<= 1;
+    }
+    if (keys == null || keys.length < capacity) {
+      keys = new Tree[capacity];
+      values = new int[capacity];
+    }
+    nextPreorder = 0;
+    nextPostorder = 0;
+    nextLeaf = 0;
+    add(root, -1, -1);
+    built = true;
+  }
+
+  private static int countNodes(Tree t) {
+    int n = 1;
+    for (Tree kid : t.children()) {
+      n += countNodes(kid);
+    }
+    return n;
+  }
+
+  private void add(Tree t, int parent, int childIndex) {
+    int i = nextPreorder++;
+    nodes[i] = t;
+    parents[i] = parent;
+    childIndices[i] = childIndex;
+    int mask = keys.length - 1;
+    int slot = hash(t) & mask;
+    while (keys[slot] != null && keys[slot] != t) {
+      slot = (slot + 1) & mask;
+    }
+    keys[slot] = t;
+    values[slot] = i;
+    leftEdges[i] = nextLeaf;
+    Tree[] kids = t.children();
+    if (kids.length == 0) {
+      nextLeaf++;
+    } else {
+      for (int k = 0; k < kids.length; k++) {
+        add(kids[k], i, k);
+      }
+    }
+    rightEdges[i] = nextLeaf;
+    subtreeEnds[i] = nextPreorder;
+    postorder[i] = nextPostorder++;
+  }
+
+}
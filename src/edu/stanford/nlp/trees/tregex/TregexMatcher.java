@@ -28,33 +28,54 @@
 
 package edu.stanford.nlp.trees.tregex;
 
-import java.util.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
+import edu.stanford.nlp.trees.DiskTreebank;
 import edu.stanford.nlp.trees.Tree;
+import edu.stanford.nlp.trees.Treebank;
 
 /**
  * A TregexMatcher can be used to match a {@link TregexPattern} against a {@link edu.stanford.nlp.trees.Tree}.
  * <p>
  * Usage should to be the same as {@link java.util.regex.Matcher}.
  * <p>
+ * Like a <code>Matcher</code>, a TregexMatcher can be {@link #reset(Tree) reset}
+ * onto another tree, which reuses everything it has made, so that matching a
+ * pattern against many trees with one matcher makes little garbage.
+ * <p>
  * @author Galen Andrew
  */
 public abstract class TregexMatcher {
 
-  final Tree root;
+  Tree root;
   Tree tree;
-  final Map<String, Tree> namesToNodes;
+  final TreeIndex treeIndex;
+  final NamedNodes namedNodes;
   final VariableStrings variableStrings;
 
-  // these things are used by "find"
-  Iterator<Tree> findIterator;
+  // these things are used by "find": the nodes still to be tried, the next on top
+  private Tree[] findStack; // = null;
+  private int findStackSize = -1; // -1 until find starts
   Tree findCurrent;
+  // if the pattern is anchored, the nodes find tries instead, by preorder number
+  private TregexPlanner.Anchor.Search findAnchor; // = null;
+  private boolean[] findCandidates; // = null;
+  private int findNext = -1; // -1 until find starts
+  // the most matches find gives before it is reset, and the number it has given
+  private int findLimit = Integer.MAX_VALUE;
+  private int numFound; // = 0;
+
+  // the node "findAt" is currently anchored at
+  Tree anchor;
 
 
-  TregexMatcher(Tree root, Tree tree, Map<String, Tree> namesToNodes, VariableStrings variableStrings) {
+  TregexMatcher(Tree root, Tree tree, TreeIndex treeIndex, NamedNodes namedNodes, VariableStrings variableStrings) {
     this.root = root;
     this.tree = tree;
-    this.namesToNodes = namesToNodes;
+    this.treeIndex = treeIndex;
+    this.namedNodes = namedNodes;
     this.variableStrings = variableStrings;
   }
 
@@ -62,8 +83,39 @@ public abstract class TregexMatcher {
    * Resets the matcher so that its search starts over.
    */
   public void reset() {
-    findIterator = null;
-    namesToNodes.clear();
+    if (findStackSize > 0) {
+      Arrays.fill(findStack, 0, findStackSize, null);
+    }
+    findStackSize = -1;
+    findNext = -1;
+    findCurrent = null;
+    numFound = 0;
+    anchor = null;
+    namedNodes.reset();
+    variableStrings.reset();
+    forgetVariables();
+  }
+
+  /**
+   * Resets the matcher so that its search starts over on another tree, as
+   * if it had been made for that tree.  This is only allowed on a matcher
+   * made with {@link TregexPattern#matcher(Tree)}, not on one of its parts.
+   *
+   * @param newRoot The tree to search from now on
+   */
+  public void reset(Tree newRoot) {
+    treeIndex.reset(newRoot);
+    setRoot(newRoot);
+    reset();
+    resetChildIter(newRoot);
+  }
+
+  /**
+   * Sets the tree that this matcher, and the matchers of the parts of its
+   * pattern, search.
+   */
+  void setRoot(Tree newRoot) {
+    root = newRoot;
   }
 
   /**
@@ -82,6 +134,14 @@ public abstract class TregexMatcher {
   void resetChildIter() {
   }
 
+  /**
+   * Forgets that this matcher, and the matchers of the parts of its
+   * pattern, have committed variable groups, once the variable strings
+   * have been cleared, so that none is uncommitted again later.
+   */
+  void forgetVariables() {
+  }
+
   /**
    * Does the pattern match the tree?  It's actually closer to java.util.regex's
    * "lookingAt" in that the root of the tree has to match the root of the pattern
@@ -118,14 +178,107 @@ public abstract class TregexMatcher {
    * @return whether there is a match somewhere in the tree
    */
   public boolean find() {
-    if (findIterator == null) {
-      findIterator = root.iterator();
+    if (numFound >= findLimit) {
+      return false;
+    }
+    boolean found = (findAnchor != null) ? findFromAnchor() : findInPreorder();
+    if (found) {
+      numFound++;
+    }
+    return found;
+  }
+
+  /**
+   * Makes {@link #find} give at most <code>limit</code> matches, from when
+   * the matcher was last reset, so that a search for the first few matches
+   * stops as soon as it has them.  This limits the other ways of finding
+   * matches, which use <code>find</code>, too.
+   *
+   * @param limit The most matches to find, or <code>Integer.MAX_VALUE</code>
+   *     for no limit
+   * @return This matcher
+   */
+  public TregexMatcher limit(int limit) {
+    if (limit < 0) {
+      throw new IllegalArgumentException("Negative limit: " + limit);
+    }
+    findLimit = limit;
+    return this;
+  }
+
+  /**
+   * Whether the pattern matches anywhere in the tree.  The search starts
+   * over, as after {@link #reset()}, and stops at the first match, which
+   * the matcher is left at.
+   */
+  public boolean exists() {
+    reset();
+    return find();
+  }
+
+  /**
+   * Counts the matches of the pattern on the tree, as {@link #find} finds
+   * them: once for every way the pattern matches at every node.  The search
+   * starts over, as after {@link #reset()}.
+   *
+   * @return The number of matches, up to the {@link #limit}
+   */
+  public int countMatches() {
+    reset();
+    int count = 0;
+    while (find()) {
+      count++;
+    }
+    return count;
+  }
+
+  /**
+   * Counts the nodes of the tree that the root of the pattern matches.
+   * Once the pattern has matched at a node, no other ways of matching at
+   * it are looked for, unless the pattern names nodes or has variable
+   * groups, which are only let go of as the ways of matching run out.  The
+   * search starts over, as after {@link #reset()}.
+   *
+   * @return The number of matching nodes, up to the {@link #limit}
+   */
+  public int countMatchingRoots() {
+    reset();
+    int count = 0;
+    while (find()) {
+      count++;
+      skipToNextNode();
+    }
+    return count;
+  }
+
+  /** Makes the next {@link #find} start at the next node, rather than look for more matches at this one. */
+  private void skipToNextNode() {
+    if (namedNodes.size() > 0 || variableStrings.size() > 0) {
+      // the nodes named and the variable groups committed at this node are
+      // only let go of as the ways of matching at it run out, and the next
+      // node must not see them, so they are run out, as find would
+      while (matches()) {
+      }
+    }
+    findCurrent = null;
+  }
+
+  private boolean findInPreorder() {
+    if (findStackSize < 0) {
+      // the nodes are tried in preorder, as root.iterator() gives them
+      findStackSize = 0;
+      pushFind(root);
     }
     if (findCurrent != null && matches()) {
       return true;
     }
-    while (findIterator.hasNext()) {
-      findCurrent = findIterator.next();
+    while (findStackSize > 0) {
+      findCurrent = findStack[--findStackSize];
+      findStack[findStackSize] = null;
+      Tree[] kids = findCurrent.children();
+      for (int i = kids.length - 1; i >= 0; i--) {
+        pushFind(kids[i]);
+      }
       resetChildIter(findCurrent);
       if (matches()) {
         return true;
@@ -134,13 +287,87 @@ public abstract class TregexMatcher {
     return false;
   }
 
+  /**
+   * Does what {@link #find} does, but tries the pattern only at the nodes
+   * that its anchor leads to, which are the only ones it can match.
+   */
+  private boolean findFromAnchor() {
+    if (findNext < 0) {
+      findCandidates = findAnchor.candidates(treeIndex, findCandidates);
+      findNext = 0;
+    }
+    if (findCurrent != null && matches()) {
+      return true;
+    }
+    int size = treeIndex.size();
+    while (findNext < size) {
+      int next = findNext++;
+      if (findCandidates[next]) {
+        findCurrent = treeIndex.node(next);
+        resetChildIter(findCurrent);
+        if (matches()) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  void setAnchor(TregexPlanner.Anchor.Search anchor) {
+    findAnchor = anchor;
+  }
+
+  private void pushFind(Tree node) {
+    if (findStack == null) {
+      findStack = new Tree[16];
+    } else if (findStackSize == findStack.length) {
+      Tree[] newFindStack = new Tree[2 * findStackSize];
+      System.arraycopy(findStack, 0, newFindStack, 0, findStackSize);
+      findStack = newFindStack;
+    }
+    findStack[findStackSize++] = node;
+  }
+
+  /**
+   * Find the next match of the pattern on the tree whose matching node (that is,
+   * the tree node matching the root node of the pattern) is <code>node</code>.
+   * This gives the same matches, in the same order, as calling {@link #find}
+   * on a new matcher and keeping only those for which <code>getMatch() ==
+   * node</code>, but no other node of the tree is tried.  The first call for
+   * a node anchors the matcher there, starting afresh, with no nodes named
+   * and no variable groups set, however far the matches at the node it was
+   * anchored at before were gone through; each further call with the same
+   * node gives the next way in which the pattern matches at it, until it
+   * returns false.  Call {@link #reset} to enumerate the matches at the same
+   * node again.
+   *
+   * @param node The node of the tree at which the pattern must match
+   * @return whether there is another match at <code>node</code>
+   */
+  public boolean findAt(Tree node) {
+    if (anchor != node) {
+      namedNodes.reset();
+      variableStrings.reset();
+      forgetVariables();
+      anchor = node;
+      return matchesAt(node);
+    }
+    return matches();
+  }
+
   /**
    * Find the next match of the pattern on the tree such that the matching node (that is, the tree node matching the
    * root node of the pattern) differs from the previous matching node.
+   * The other ways the pattern matches at the previous matching node are
+   * skipped without being looked for, unless the pattern names nodes or has
+   * variable groups, as for {@link #countMatchingRoots}.
    * @return true iff another matching node is found.
    */
   public boolean findNextMatchingNode() {
     Tree lastMatchingNode = getMatch();
+    if (lastMatchingNode != null && lastMatchingNode == findCurrent) {
+      skipToNextNode();
+    }
     while(find()) {
       if(getMatch() != lastMatchingNode)
         return true;
@@ -155,7 +382,124 @@ public abstract class TregexMatcher {
    * @return node labeled by the name
    */
   public Tree getNode(String name) {
-    return namesToNodes.get(name);
+    return namedNodes.get(name);
+  }
+
+  /** Patterns for {@link #main} to check, if it is given none. */
+  private static final String[] CHECK_PATTERNS = {
+    "NP < (DT $+ NN)",
+    "@NP <+(NP) NNP=n",
+    "VP=vp << (NP=np < PRP) ?<< PP=pp",
+    "S=s [<< NN=a | <- VP] : =s << NNS=b",
+    "/^(NP|S)/#1%x << /^(NP|S)/#1%x",
+    "/^(NP|VP)/#1%x < /^(NP|VP)/#1%x",
+    "/^(NP|VP|PP)/#1%x <, (__ <- /^(NP|VP|PP)/#1%x)",
+    "/^(.*)/#1%c < (__ < /^(.*)/#1%c)",
+  };
+
+  /**
+   * For testing: checks the ways of matching built on {@link #find}
+   * against <code>find</code> itself, as they were done before they had
+   * ways of their own.  For each pattern and each tree of the treebank,
+   * {@link #exists}, {@link #countMatches} and {@link #countMatchingRoots}
+   * must agree with the matches <code>find</code> gives, {@link
+   * #findNextMatchingNode} must give the first match at each matching node,
+   * with the same nodes named in it, and {@link #findAt} must give the
+   * matches at each node, whichever node the matcher was anchored at
+   * before.
+   * <br>
+   * Usage: <code>
+   * java edu.stanford.nlp.trees.tregex.TregexMatcher treebankPath [pattern]*
+   * </code>
+   *
+   * @param args The treebank path, then the patterns to check, or none to
+   *     check some patterns with named nodes and variable groups
+   */
+  public static void main(String[] args) throws ParseException {
+    if (args.length < 1) {
+      System.err.println("usage: TregexMatcher treebankPath [pattern]*");
+      return;
+    }
+    Treebank treebank = new DiskTreebank();
+    treebank.loadPath(args[0]);
+    String[] patterns = CHECK_PATTERNS;
+    if (args.length > 1) {
+      patterns = new String[args.length - 1];
+      System.arraycopy(args, 1, patterns, 0, patterns.length);
+    }
+    int errors = 0;
+    for (String s : patterns) {
+      TregexPattern pattern = TregexPattern.compile(s);
+      int matches = 0, roots = 0;
+      for (Tree t : treebank) {
+        // every match, and the first match at each node, with the nodes named in them
+        List<Tree> all = new ArrayList<Tree>();
+        List<Tree> firsts = new ArrayList<Tree>();
+        TregexMatcher m = pattern.matcher(t);
+        Tree last = null;
+        while (m.find()) {
+          List<Tree> match = nodes(m);
+          all.addAll(match);
+          if (m.getMatch() != last) {
+            firsts.addAll(match);
+            last = m.getMatch();
+            roots++;
+          }
+          matches++;
+        }
+        int numMatches = all.size() / (m.namedNodes.size() + 1);
+        int numRoots = firsts.size() / (m.namedNodes.size() + 1);
+        List<Tree> next = new ArrayList<Tree>();
+        TregexMatcher nm = pattern.matcher(t);
+        while (nm.findNextMatchingNode()) {
+          next.addAll(nodes(nm));
+        }
+        // findAt at every node, in preorder, and the first match at each
+        // node, in reverse, leaving the other ways of matching behind
+        List<Tree> at = new ArrayList<Tree>();
+        List<Tree> firstAt = new ArrayList<Tree>();
+        List<Tree> freshFirstAt = new ArrayList<Tree>();
+        TregexMatcher am = pattern.matcher(t);
+        List<Tree> subtrees = t.subTreeList();
+        for (Tree node : subtrees) {
+          while (am.findAt(node)) {
+            at.addAll(nodes(am));
+          }
+        }
+        for (int i = subtrees.size() - 1; i >= 0; i--) {
+          if (am.findAt(subtrees.get(i))) {
+            firstAt.addAll(nodes(am));
+          }
+          TregexMatcher fresh = pattern.matcher(t);
+          if (fresh.findAt(subtrees.get(i))) {
+            freshFirstAt.addAll(nodes(fresh));
+          }
+        }
+        if (m.exists() != (numMatches > 0) || m.countMatches() != numMatches ||
+            m.countMatchingRoots() != numRoots || ! next.equals(firsts) ||
+            ! at.equals(all) || ! firstAt.equals(freshFirstAt)) {
+          System.err.println("The ways of matching " + s + " do not agree on:");
+          t.pennPrint(System.err);
+          errors++;
+        }
+      }
+      System.out.println(s + ": " + matches + " matches at " + roots + " nodes");
+    }
+    if (errors > 0) {
+      System.out.println("The ways of matching disagreed on " + errors + " trees.");
+      System.exit(1);
+    }
+    System.out.println("The ways of matching agreed for " + patterns.length + " patterns.");
+  }
+
+  /** The node <code>m</code> has matched at, then the nodes named in the match. */
+  private static List<Tree> nodes(TregexMatcher m) {
+    List<Tree> nodes = new ArrayList<Tree>();
+    nodes.add(m.getMatch());
+    for (int slot = 0; slot < m.namedNodes.size(); slot++) {
+      nodes.add(m.namedNodes.get(slot));
+    }
+    return nodes;
   }
 
 }
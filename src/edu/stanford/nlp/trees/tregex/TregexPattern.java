@@ -34,17 +34,23 @@ import java.io.*;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import edu.stanford.nlp.io.BatchingWriter;
 import edu.stanford.nlp.ling.StringLabelFactory;
 import edu.stanford.nlp.util.Function;
 import edu.stanford.nlp.trees.*;
+import edu.stanford.nlp.util.AbstractIterator;
 import edu.stanford.nlp.util.Pair;
 import edu.stanford.nlp.util.StringUtils;
 import edu.stanford.nlp.util.Timing;
+import edu.stanford.nlp.util.Triple;
+import edu.stanford.nlp.util.concurrent.InOrderMapper;
 
 /**
  * A TregexPattern is a <code>tgrep</code>-type pattern for matching tree
@@ -254,12 +260,14 @@ import edu.stanford.nlp.util.Timing;
  * will match only such that the WH- node under the SBAR is coindexed with the trace node that gets the name <code>empty</code>.
  *
  *
- * <p><h3>Current known bugs/shortcomings:</h3>
+ * <p><h3>Implementation notes:</h3>
  *
  * <ul>
  *
- * <li> Due to the lack of parent pointers in {@link edu.stanford.nlp.trees.Tree}s, parents are found via
- * exhaustive depth-first search from the root.  This is a serious efficiency bottleneck.
+ * <li> Since {@link edu.stanford.nlp.trees.Tree}s do not in general have parent pointers,
+ * each matcher indexes its tree (parents, preorder positions and leaf spans) the first time a
+ * relation needs it, and all the relations of that match are answered from this index.
+ * If a tree is changed, any matchers on it must be discarded.
  *
  * </ul>
  *
@@ -277,6 +285,11 @@ public abstract class TregexPattern implements Serializable {
 
   private boolean neg = false;
   private boolean opt = false;
+  // the number of each node name and variable, set on the whole pattern by assignSlots
+  private volatile Map<String, Integer> nameSlots; // = null;
+  private Map<String, Integer> varSlots; // = null;
+  // where find starts from, as planned for the whole pattern, or null to try every node
+  private transient volatile TregexPlanner.Anchor anchor; // = null;
   private String patternString;
   private static boolean filterMode = false;
 
@@ -316,6 +329,64 @@ public abstract class TregexPattern implements Serializable {
 
   abstract List<TregexPattern> getChildren();
 
+  /**
+   * Returns whether this pattern only looks at the subtree of the node its
+   * root matches: that is, whether every relation in it leads from a node
+   * down to itself or to nodes it dominates.  Whether such a pattern
+   * matches at a node cannot be changed by changes to the tree outside that
+   * node's subtree.  This is a syntactic check, so some patterns that only
+   * look within the subtree, such as <code>A &lt; (B $ C)</code>, are not
+   * recognized.
+   */
+  public boolean isSubtreeLocal() {
+    for (TregexPattern child : getChildren()) {
+      if ( ! child.relatesWithinSubtree()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Whether the relations of this pattern and of all the patterns below it
+   * lead down the tree, as {@link Relation#isWithinSubtree} defines.
+   */
+  boolean relatesWithinSubtree() {
+    for (TregexPattern child : getChildren()) {
+      if ( ! child.relatesWithinSubtree()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns sets of labels that a tree must contain for this pattern to
+   * match anywhere in it: for each set, some node of the tree must have a
+   * value in that set.  These come from the nodes of the pattern with
+   * literal descriptions, such as <code>NP</code> or <code>NN|NNS</code>,
+   * except those that are negated or optional or below such a node.  Since
+   * only one side of a disjunction need match, a disjunction requires just
+   * one set, made of one set required by each of its sides.  This is only a
+   * necessary condition, for skipping trees (as with a {@link
+   * edu.stanford.nlp.trees.LabelIndex}) that the pattern cannot match.
+   *
+   * @return The sets of labels, which is empty if nothing is known to be
+   *     required
+   */
+  public List<Set<String>> requiredLabels() {
+    List<Set<String>> required = new ArrayList<Set<String>>();
+    addRequiredLabels(required);
+    return required;
+  }
+
+  /**
+   * Adds to <code>required</code> the sets of labels that a tree must
+   * contain for this pattern to match in it, as {@link #requiredLabels}
+   * describes.
+   */
+  abstract void addRequiredLabels(List<Set<String>> required);
+
   abstract String localString();
 
   boolean isNegated() {
@@ -326,16 +397,99 @@ public abstract class TregexPattern implements Serializable {
     return opt;
   }
 
-  abstract TregexMatcher matcher(Tree root, Tree tree, Map<String, Tree> namesToNodes, VariableStrings variableStrings);
+  /**
+   * Numbers the node names and the variables of this pattern, so that its
+   * matchers can keep the nodes and strings they match in arrays.  This is
+   * done once, when the pattern is compiled, and only for the whole
+   * pattern; it must not be called on its parts.
+   */
+  synchronized void assignSlots() {
+    if (nameSlots == null) {
+      Map<String, Integer> names = new HashMap<String, Integer>();
+      Map<String, Integer> vars = new HashMap<String, Integer>();
+      assignSlots(names, vars);
+      varSlots = vars;
+      nameSlots = names;
+    }
+  }
 
   /**
-   * Get a {@link TregexMatcher} for this pattern on this tree.
+   * Gives each node name and variable of this pattern, and of the
+   * patterns below it, a slot, if it does not have one yet.
+   *
+   * @param names The slots of the names, by name
+   * @param vars The slots of the variables, by variable
+   */
+  void assignSlots(Map<String, Integer> names, Map<String, Integer> vars) {
+    for (TregexPattern child : getChildren()) {
+      child.assignSlots(names, vars);
+    }
+  }
+
+  abstract TregexMatcher matcher(Tree root, Tree tree, TreeIndex treeIndex, NamedNodes namedNodes, VariableStrings variableStrings);
+
+  /**
+   * Get a {@link TregexMatcher} for this pattern on this tree.  The matcher
+   * can be {@link TregexMatcher#reset(Tree) reset} onto other trees.
    *
    * @param t a tree to match on
    * @return a TregexMatcher
    */
   public TregexMatcher matcher(Tree t) {
-    return matcher(t, t, new HashMap<String, Tree>(), new VariableStrings());
+    return matcher(t, new TreeIndex(t));
+  }
+
+  /** Get a {@link TregexMatcher} for this pattern on a tree with its index. */
+  TregexMatcher matcher(Tree t, TreeIndex treeIndex) {
+    if (nameSlots == null) {
+      // a pattern not made by a compiler, such as a deserialized one
+      assignSlots();
+    }
+    TregexMatcher m = matcher(t, t, treeIndex, new NamedNodes(nameSlots), new VariableStrings(varSlots.size()));
+    TregexPlanner.Anchor a = anchor;
+    if (a != null) {
+      m.setAnchor(a.newSearch());
+    }
+    return m;
+  }
+
+  /**
+   * Plans how this pattern is matched, for trees whose node labels occur
+   * with the given frequencies: the order in which the parts of a
+   * conjunction are tried, and whether {@link TregexMatcher#find} tries the
+   * pattern at every node of a tree, or only at those near the nodes that
+   * a rare part of the pattern can match.  A plan only affects how fast
+   * matching is, never the matches found, their order, or the nodes named
+   * in them.  Patterns are planned with guessed frequencies when they are
+   * compiled; planning again affects only matchers made afterwards, but
+   * affects them wherever the pattern is shared.
+   *
+   * @param frequencies The frequencies of the labels in the trees to be
+   *     searched (or in a sample of them), or null to guess them from the
+   *     descriptions in the pattern
+   */
+  public void plan(LabelFrequencies frequencies) {
+    anchor = TregexPlanner.plan(this, frequencies);
+  }
+
+  /**
+   * Forgets the plan of this pattern and its parts, so that matchers made
+   * afterwards try it as written, at every node.  For checking plans.
+   */
+  void unplan() {
+    anchor = null;
+    if (this instanceof CoordinationPattern) {
+      ((CoordinationPattern) this).setOrder(null);
+    }
+    for (TregexPattern child : getChildren()) {
+      child.unplan();
+    }
+  }
+
+  /** The anchor of the last plan, as a string, or null if there is none. */
+  String anchorString() {
+    TregexPlanner.Anchor a = anchor;
+    return (a == null) ? null : a.toString();
   }
 
   /**
@@ -436,7 +590,7 @@ public abstract class TregexPattern implements Serializable {
   /**
    * Prints out all matches of a tree pattern on each tree in the path.
    * Usage: <br><br><code>
-   * java edu.stanford.nlp.trees.tregex.TregexPattern [[-TCwfosnu] [-filter] [-h &lt;node-name&gt;]]* pattern
+   * java edu.stanford.nlp.trees.tregex.TregexPattern [[-TCwfosnu] [-filter] [-threads &lt;n&gt;] [-h &lt;node-name&gt;]]* pattern
    *  filepath   </code>
    *
    * <p>
@@ -450,7 +604,9 @@ public abstract class TregexPattern implements Serializable {
    * <ul><li> <code>-T</code> causes all trees to be printed as processed.  Otherwise only matching nodes
    * are printed.
    * <li> <code>-C</code> suppresses printing of matches, so only the
-   * number of matches is printed.
+   * number of matches is printed.  The matches are then only counted (with
+   * {@link TregexMatcher#countMatches}, or with <code>-o</code>, {@link
+   * TregexMatcher#countMatchingRoots}), which is faster.
    * <li> <code>-w</code> causes the whole of a tree that matches to be printed.
    * <li> <code>-f</code> causes the filename to be printed.
    * <li> <code>-i &lt;filename&gt;</code> causes the pattern to be matched to be read from <code>&lt;filename&gt;</code> rather than the command line.  Don't specify a pattern when this option is used.
@@ -479,6 +635,29 @@ public abstract class TregexPattern implements Serializable {
    * <li> <code>-extract &lt;code&gt; &lt;tree-file&gt;</code> extracts the subtree s:n specified by <tt>code</tt> from the specified <tt>tree-file</tt>.  Overrides all other behavior of tregex.  Can't specify multiple encodings etc. yet.
    * <li> <code>-extractFile &lt;code-file&gt; &lt;tree-file&gt;</code> extracts every subtree specified by the subtree codes in <tt>code-file</tt>, which must appear exactly one per line, from the specified <tt>tree-file</tt>.  Overrides all other behavior of tregex. Can't specify multiple encodings etc. yet.
    * <li> <code>-filter</code> causes this to act as a filter, reading tree input from stdin
+   * <li> <code>-binary</code> read the trees from files in the binary format written by {@link BinaryTreebankWriter}
+   * (files ending in "trb", if a directory is given), rather than from Penn Treebank text files.  This
+   * saves parsing the text of the trees on each search.
+   * <li> <code>-index</code> only read and match the trees that contain the labels the pattern requires
+   * (see {@link #requiredLabels}), which are found with a {@link LabelIndex} of each treebank file.  The
+   * indices are built on the first search, and saved for later ones in a cache directory, leaving the treebank
+   * directories untouched.  This has no effect with <code>-v</code> or <code>-T</code>, which need every tree.
+   * <li> <code>-indexDir &lt;dir&gt;</code> save the label indices in <code>dir</code> (see {@link
+   * LabelIndex#setCacheDirectory}).
+   * <li> <code>-limit &lt;k&gt;</code> report (or count) at most <code>k</code> matches in each tree, stopping the
+   * search of a tree as soon as it has them.
+   * <li> <code>-threads &lt;n&gt;</code> match the trees on <code>n</code> threads.  The trees are still read, and the
+   * output is still printed, in order, so the output is the same as with one thread.
+   * <li> <code>-jsonl</code> instead of the matched subtree, print a line for each match with a JSON object
+   * giving the file (or null), the tree number, the node number of the matched node (as for <code>-x</code>),
+   * its span, and for each <code>-h</code> handle, the node number and span of the node with that handle (or
+   * null).  A span is a pair of the indices, counting from 0, of the first and last words under the node.
+   * <li> <code>-tsv</code> like <code>-jsonl</code>, but print the fields separated by tabs, with a heading line
+   * naming them.  The span of a node is given as two fields, and those of a missing handle are empty.
+   * <li> <code>-outThread</code> write the output on a thread of its own.  The output is always buffered,
+   * and written when the buffer fills, or at most once a second.
+   * <li> <code>-flushMillis &lt;ms&gt;</code> write out the buffered output at least every <code>ms</code>
+   * milliseconds, rather than every second, or with 0, only when the buffer fills.
    *
    * </ul>
    */
@@ -494,6 +673,11 @@ public abstract class TregexPattern implements Serializable {
     String headFinderOption = "-hf";
     String headFinderArgOption = "-hfArg";
     String trfOption = "-trf";
+    String threadsOption = "-threads";
+    int numThreads = 1;
+    String limitOption = "-limit";
+    String flushMillisOption = "-flushMillis";
+    long flushMillis = BatchingWriter.DEFAULT_FLUSH_MILLIS;
     String headFinderClassName = null;
     String[] headFinderArgs = StringUtils.EMPTY_STRING_ARRAY;
     String treeReaderFactoryClassName = null;
@@ -513,6 +697,10 @@ public abstract class TregexPattern implements Serializable {
     flagMap.put(headFinderOption,1);
     flagMap.put(headFinderArgOption,1);
     flagMap.put(trfOption,1);
+    flagMap.put(threadsOption,1);
+    flagMap.put(limitOption,1);
+    flagMap.put(flushMillisOption,1);
+    flagMap.put("-indexDir",1);
     Map<String, String[]> argsMap = StringUtils.argsToMap(args, flagMap);
     args = argsMap.get(null);
 
@@ -528,7 +716,7 @@ public abstract class TregexPattern implements Serializable {
     }
 
     if (args.length < 1) {
-      System.err.println("Usage: java edu.stanford.nlp.trees.tregex.TregexPattern [-T] [-C] [-w] [-f] [-o] [-n] [-s] [-filter] [-h handle]* pattern [filepath]");
+      System.err.println("Usage: java edu.stanford.nlp.trees.tregex.TregexPattern [-T] [-C] [-w] [-f] [-o] [-n] [-s] [-filter] [-binary] [-index] [-indexDir dir] [-limit k] [-jsonl|-tsv] [-outThread] [-flushMillis ms] [-h handle]* pattern [filepath]");
       System.exit(0);
     }
     String matchString = args[0];
@@ -544,9 +732,6 @@ public abstract class TregexPattern implements Serializable {
       treeReaderFactoryClassName = argsMap.get(trfOption)[0];
       System.err.println("Using tree reader factory " + treeReaderFactoryClassName + "...");
     }
-    if (argsMap.containsKey("-T")) {
-      TRegexTreeVisitor.printTree = true;
-    }
     if(argsMap.containsKey(encodingOption)) {
       encoding = argsMap.get(encodingOption)[0];
       System.err.println("set encoding to " + encoding);
@@ -558,31 +743,15 @@ public abstract class TregexPattern implements Serializable {
       System.arraycopy(args,0,newArgs,1,args.length);
       args = newArgs;
     }
-    if (argsMap.containsKey("-C")) {
-      TRegexTreeVisitor.printMatches = false;
-      TRegexTreeVisitor.printNumMatchesToStdOut = true ;
-
-    }
-    if (argsMap.containsKey("-v")) {
-      TRegexTreeVisitor.printNonMatchingTrees = true;
-    }
-    if (argsMap.containsKey("-x")) {
-      TRegexTreeVisitor.printSubtreeCode = true;
-      TRegexTreeVisitor.printMatches = false;
-    }
-    if (argsMap.containsKey("-w")) {
-      TRegexTreeVisitor.printWholeTree = true;
-    }
-    if (argsMap.containsKey("-f")) {
-      TRegexTreeVisitor.printFilename = true;
-    }
     if(argsMap.containsKey("-filter")) {
       TregexPattern.filterMode = true;
     }
-    if(argsMap.containsKey("-o"))
-      TRegexTreeVisitor.oneMatchPerRootNode = true;
-    if(argsMap.containsKey("-n"))
-      TRegexTreeVisitor.reportTreeNumbers = true;
+    if (argsMap.containsKey(threadsOption)) {
+      numThreads = Integer.parseInt(argsMap.get(threadsOption)[0]);
+    }
+    if (argsMap.containsKey(flushMillisOption)) {
+      flushMillis = Long.parseLong(argsMap.get(flushMillisOption)[0]);
+    }
     if(argsMap.containsKey("-u"))
       treePrintFormats +=  TreePrint.rootLabelOnlyFormat + ",";
     else if(argsMap.containsKey("-s")) // display short form
@@ -602,7 +771,7 @@ public abstract class TregexPattern implements Serializable {
       catch(Exception e) { throw new RuntimeException("Error occurred while constructing HeadFinder: " + e); }
     }
 
-    TRegexTreeVisitor.tp = new TreePrint(treePrintFormats, new PennTreebankLanguagePack());
+    TreePrint tp = new TreePrint(treePrintFormats, new PennTreebankLanguagePack());
 
     try {
       //TreePattern p = TreePattern.compile("/^S/ > S=dt $++ '' $-- ``");
@@ -613,6 +782,49 @@ public abstract class TregexPattern implements Serializable {
       p.prettyPrint(System.err);
 
       String[] handles = argsMap.get(printHandleOption);
+      TRegexTreeVisitor vis = new TRegexTreeVisitor(p, handles, tp, encoding, flushMillis, argsMap.containsKey("-outThread"));
+      if (argsMap.containsKey("-T")) {
+        vis.printTree = true;
+      }
+      if (argsMap.containsKey("-C")) {
+        vis.printMatches = false;
+        vis.printNumMatchesToStdOut = true;
+      }
+      if (argsMap.containsKey("-v")) {
+        vis.printNonMatchingTrees = true;
+      }
+      if (argsMap.containsKey("-x")) {
+        vis.printSubtreeCode = true;
+        vis.printMatches = false;
+      }
+      if (argsMap.containsKey("-w")) {
+        vis.printWholeTree = true;
+      }
+      if (argsMap.containsKey("-f")) {
+        vis.printFilename = true;
+      }
+      if(argsMap.containsKey("-o"))
+        vis.oneMatchPerRootNode = true;
+      if(argsMap.containsKey("-n"))
+        vis.reportTreeNumbers = true;
+      if (argsMap.containsKey("-index")) {
+        vis.useLabelIndex = true;
+      }
+      if (argsMap.containsKey("-indexDir")) {
+        LabelIndex.setCacheDirectory(new File(argsMap.get("-indexDir")[0]));
+      }
+      if (argsMap.containsKey(limitOption)) {
+        vis.matchLimit = Integer.parseInt(argsMap.get(limitOption)[0]);
+      }
+      if (vis.printMatches && argsMap.containsKey("-jsonl")) {
+        vis.recordFormat = TRegexTreeVisitor.RecordFormat.JSON_LINES;
+        vis.printMatches = false;
+      } else if (vis.printMatches && argsMap.containsKey("-tsv")) {
+        vis.recordFormat = TRegexTreeVisitor.RecordFormat.TSV;
+        vis.printMatches = false;
+      }
+
+      Treebank treebank;
       if(argsMap.containsKey("-filter")) {
         treebank = new MemoryTreebank();//has to be in memory since we're not storing it on disk
         TreeReaderFactory trf = getTreeReaderFactory(treeReaderFactoryClassName);
@@ -629,6 +841,11 @@ public abstract class TregexPattern implements Serializable {
         Tree t = r.readTree();
         treebank = new MemoryTreebank();
         treebank.add(t);
+      } else if (argsMap.containsKey("-binary")) {
+        int last = args.length - 1;
+        System.err.println("Reading binary trees from file(s) " + args[last]);
+        treebank = new BinaryTreebank();
+        treebank.loadPath(new File(args[last]));
       } else {
         int last = args.length - 1;
         System.err.println("Reading trees from file(s) " + args[last]);
@@ -636,14 +853,16 @@ public abstract class TregexPattern implements Serializable {
         treebank = new DiskTreebank(trf,encoding);
         treebank.loadPath(args[last], null, true);
       }
-      TRegexTreeVisitor vis = new TRegexTreeVisitor(p, handles, encoding);
-
-      treebank.apply(vis);
+      try {
+        vis.visitTrees(treebank, numThreads);
+        if(vis.printNumMatchesToStdOut)
+          vis.pw.println(vis.numMatches());
+      } finally {
+        vis.pw.close();
+      }
       Timing.endTime();
-      if(TRegexTreeVisitor.printMatches)
+      if(vis.printMatches || vis.recordFormat != null)
         System.err.println("There were " + vis.numMatches() + " matches in total.");
-      if(TRegexTreeVisitor.printNumMatchesToStdOut)
-        System.out.println(vis.numMatches());
     } catch (IOException e) {
       e.printStackTrace();
     } catch (ParseException e) {
@@ -664,22 +883,27 @@ public abstract class TregexPattern implements Serializable {
     return trf;
   }
 
-  private static Treebank treebank; // used by main method, must be accessible
-
   static class TRegexTreeVisitor implements TreeVisitor {
 
-    private static boolean printNumMatchesToStdOut = false;
-    static boolean printNonMatchingTrees = false;
-    static boolean printSubtreeCode = false;
-    static boolean printTree = false;
-    static boolean printWholeTree = false;
-    static boolean printMatches = true;
-    static boolean printFilename = false;
-    static boolean oneMatchPerRootNode = false;
-    static boolean reportTreeNumbers = false;
-
-    static TreePrint tp;
+    /** The machine-readable formats a record of each match can be printed in. */
+    enum RecordFormat { JSON_LINES, TSV }
+
+    boolean printNumMatchesToStdOut = false;
+    boolean printNonMatchingTrees = false;
+    boolean printSubtreeCode = false;
+    boolean printTree = false;
+    boolean printWholeTree = false;
+    boolean printMatches = true;
+    boolean printFilename = false;
+    boolean oneMatchPerRootNode = false;
+    boolean reportTreeNumbers = false;
+    boolean useLabelIndex = false;
+    int matchLimit = Integer.MAX_VALUE; // the most matches to report in a tree
+    RecordFormat recordFormat = null; // print a record of each match, rather than the matched tree
+
+    final TreePrint tp;
     PrintWriter pw;
+    Treebank treebank; // the trees being visited, for their file names
 
     int treeNumber = 0;
 
@@ -687,51 +911,178 @@ public abstract class TregexPattern implements Serializable {
     String[] handles;
     int numMatches;
 
-    TRegexTreeVisitor(TregexPattern p, String[] handles, String encoding) {
+    /**
+     * Makes a visitor printing to standard output.  The output is buffered,
+     * and written out when the buffer fills, after <code>flushMillis</code>
+     * milliseconds, and when <code>pw</code> is flushed or closed, which it
+     * must be when the trees have been visited.
+     *
+     * @param useWriterThread Whether to write the output on a thread of its own
+     */
+    TRegexTreeVisitor(TregexPattern p, String[] handles, TreePrint tp, String encoding,
+                      long flushMillis, boolean useWriterThread) {
       this.p = p;
       this.handles = handles;
+      this.tp = tp;
+      Writer out;
       try {
-        pw = new PrintWriter(new OutputStreamWriter(System.out,encoding),true);
+        out = new OutputStreamWriter(System.out,encoding);
       }
       catch (UnsupportedEncodingException e) {
         System.err.println("Error -- encoding " + encoding + " is unsupported.  Using ASCII print writer instead.");
-        pw = new PrintWriter(System.out,true);
+        out = new OutputStreamWriter(System.out);
       }
+      pw = new PrintWriter(new BatchingWriter(out, BatchingWriter.DEFAULT_FLUSH_SIZE, flushMillis, useWriterThread));
       tp.setPrintWriter(pw);
     }
 
+    /**
+     * Visits all the trees of a treebank.  With more than one thread, the
+     * trees are read on this thread and matched on a pool of worker threads,
+     * and each tree's output is collected and then printed in the order of
+     * the trees, so the output is the same as with one thread.  With
+     * <code>useLabelIndex</code>, only the trees that could match are visited.
+     */
+    void visitTrees(final Treebank treebank, int numThreads) {
+      this.treebank = treebank;
+      if (recordFormat == RecordFormat.TSV) {
+        printTsvHeading();
+      }
+      final List<Set<String>> requiredLabels = requiredLabels();
+      if (numThreads <= 1 && requiredLabels == null) {
+        treebank.apply(this);
+        return;
+      }
+      final Iterator<Tree> trees = (requiredLabels == null ? treebank.iterator() : candidateTrees(requiredLabels));
+      Iterator<Triple<Tree,Integer,String>> numberedTrees = new AbstractIterator<Triple<Tree,Integer,String>>() {
+        @Override
+        public boolean hasNext() {
+          return trees.hasNext();
+        }
+        @Override
+        public Triple<Tree,Integer,String> next() {
+          Tree t = trees.next();
+          if (requiredLabels == null) {
+            treeNumber++;
+          } else {
+            treeNumber = currentTreeNumber() + 1;
+          }
+          return new Triple<Tree,Integer,String>(t, treeNumber, currentFilename());
+        }
+      };
+      if (numThreads <= 1) {
+        while (numberedTrees.hasNext()) {
+          Triple<Tree,Integer,String> tree = numberedTrees.next();
+          numMatches += visitTree(tree.first(), tree.second(), tree.third(), pw);
+        }
+        return;
+      }
+      Function<Triple<Tree,Integer,String>, Pair<String,Integer>> matchTree = new Function<Triple<Tree,Integer,String>, Pair<String,Integer>>() {
+        public Pair<String,Integer> apply(Triple<Tree,Integer,String> tree) {
+          StringWriter sw = new StringWriter();
+          PrintWriter out = new PrintWriter(sw);
+          int matches = visitTree(tree.first(), tree.second(), tree.third(), out);
+          out.flush();
+          return new Pair<String,Integer>(sw.toString(), matches);
+        }
+      };
+      InOrderMapper.Results<Triple<Tree,Integer,String>, Pair<String,Integer>> results = new InOrderMapper<Triple<Tree,Integer,String>, Pair<String,Integer>>(matchTree, numThreads).map(numberedTrees);
+      try {
+        while (results.hasNext()) {
+          Pair<String,Integer> result = results.next();
+          pw.print(result.first());
+          numMatches += result.second();
+        }
+      } finally {
+        results.close();
+      }
+    }
+
     public void visitTree(Tree t) {
       treeNumber++;
+      numMatches += visitTree(t, treeNumber, currentFilename(), pw);
+    }
+
+    /**
+     * The sets of labels that the trees to visit must contain, if only
+     * those trees need be visited and the treebank can find them with a
+     * label index, or else null.
+     */
+    private List<Set<String>> requiredLabels() {
+      if ( ! useLabelIndex || printNonMatchingTrees || printTree ||
+           ! (treebank instanceof DiskTreebank || treebank instanceof BinaryTreebank)) {
+        return null;
+      }
+      List<Set<String>> requiredLabels = p.requiredLabels();
+      return requiredLabels.isEmpty() ? null : requiredLabels;
+    }
+
+    private Iterator<Tree> candidateTrees(List<Set<String>> requiredLabels) {
+      if (treebank instanceof DiskTreebank) {
+        return ((DiskTreebank) treebank).iterator(requiredLabels);
+      }
+      return ((BinaryTreebank) treebank).iterator(requiredLabels);
+    }
+
+    private int currentTreeNumber() {
+      if (treebank instanceof DiskTreebank) {
+        return ((DiskTreebank) treebank).getCurrentTreeNumber();
+      }
+      return ((BinaryTreebank) treebank).getCurrentTreeNumber();
+    }
+
+    /**
+     * The name of the file the treebank is reading trees from, or null if
+     * it is not a {@link DiskTreebank}.  For a {@link BinaryTreebank}, this
+     * is the name of the text file that the current file was made from.
+     */
+    private String currentFilename() {
+      if (treebank instanceof DiskTreebank) {
+        return String.valueOf(((DiskTreebank) treebank).getCurrentFile());
+      } else if (treebank instanceof BinaryTreebank) {
+        BinaryTreebank.TreeFile file = ((BinaryTreebank) treebank).getCurrentFile();
+        return file == null ? "null" : file.getSourceName();
+      }
+      return null;
+    }
+
+    /**
+     * Prints the output for one tree to <code>pw</code>.  This changes no
+     * state, so it can be called from several threads at once.
+     *
+     * @return The number of matches in the tree
+     */
+    private int visitTree(Tree t, int treeNumber, String filename, PrintWriter pw) {
+      int numMatches = 0;
       if (printTree) {
         pw.print(treeNumber+":");
         pw.println("Next tree read:");
         tp.printTree(t,pw);
       }
-      TregexMatcher match = p.matcher(t);
+      TregexMatcher match = p.matcher(t).limit(matchLimit);
       if(printNonMatchingTrees) {
-        if(match.find())
+        if(match.exists())
           numMatches++;
         else
           tp.printTree(t,pw);
-        return;
+        return numMatches;
       }
-      Tree lastMatchingRootNode = null;
-      while (match.find()) {
-        if(oneMatchPerRootNode) {
-          if(lastMatchingRootNode == match.getMatch())
-            continue;
-          else
-            lastMatchingRootNode = match.getMatch();
-        }
+      if ( ! printMatches && ! printSubtreeCode && recordFormat == null && ! (printFilename && filename != null)) {
+        // nothing is printed for each match, so they need only be counted
+        return oneMatchPerRootNode ? match.countMatchingRoots() : match.countMatches();
+      }
+      while (oneMatchPerRootNode ? match.findNextMatchingNode() : match.find()) {
         numMatches++;
-        if (printFilename && treebank instanceof DiskTreebank) {
-          DiskTreebank dtb = (DiskTreebank) treebank;
+        if (printFilename && filename != null) {
           pw.print("# ");
-          pw.println(dtb.getCurrentFile());
+          pw.println(filename);
         }
         if(printSubtreeCode) {
           pw.println(treeNumber + ":" + match.getMatch().nodeNumber(t));
         }
+        if (recordFormat != null) {
+          printRecord(t, treeNumber, filename, match, pw);
+        }
         if (printMatches) {
           if(reportTreeNumbers) {
             pw.print(treeNumber + ": ");
@@ -759,20 +1110,147 @@ public abstract class TregexPattern implements Serializable {
           // pw.println();  // TreePrint already puts a blank line in
         } // end if (printMatches)
       } // end while match.find()
+      return numMatches;
     } // end visitTree
 
     public int numMatches() {
       return numMatches;
     }
 
+    private void printTsvHeading() {
+      pw.print("file\ttree\tnode\tstart\tend");
+      if (handles != null) {
+        for (String handle : handles) {
+          pw.print("\t" + handle + ".node\t" + handle + ".start\t" + handle + ".end");
+        }
+      }
+      pw.println();
+    }
+
+    /**
+     * Prints a line for one match in the record format: where the match is,
+     * and the node number and span of the matched node and of each handle.
+     */
+    private void printRecord(Tree t, int treeNumber, String filename, TregexMatcher match, PrintWriter pw) {
+      StringBuilder sb = new StringBuilder();
+      if (recordFormat == RecordFormat.JSON_LINES) {
+        sb.append("{\"file\":");
+        appendJsonString(sb, filename);
+        sb.append(",\"tree\":").append(treeNumber).append(',');
+        appendJsonNode(sb, t, match.getMatch());
+        if (handles != null) {
+          sb.append(",\"handles\":{");
+          for (int i = 0; i < handles.length; i++) {
+            if (i > 0) {
+              sb.append(',');
+            }
+            appendJsonString(sb, handles[i]);
+            sb.append(':');
+            Tree node = match.getNode(handles[i]);
+            if (node == null) {
+              sb.append("null");
+            } else {
+              sb.append('{');
+              appendJsonNode(sb, t, node);
+              sb.append('}');
+            }
+          }
+          sb.append('}');
+        }
+        sb.append('}');
+      } else {
+        sb.append(filename == null ? "" : filename).append('\t').append(treeNumber);
+        appendTsvNode(sb, t, match.getMatch());
+        if (handles != null) {
+          for (String handle : handles) {
+            appendTsvNode(sb, t, match.getNode(handle));
+          }
+        }
+      }
+      pw.println(sb);
+    }
+
+    /** Appends the node number and span of <code>node</code> in <code>t</code> as JSON object members. */
+    private static void appendJsonNode(StringBuilder sb, Tree t, Tree node) {
+      int[] span = span(t, node);
+      sb.append("\"node\":").append(node.nodeNumber(t));
+      sb.append(",\"span\":[").append(span[0]).append(',').append(span[1]).append(']');
+    }
+
+    /** Appends tab-separated fields for the node number and span of <code>node</code>, or empty ones if it is null. */
+    private static void appendTsvNode(StringBuilder sb, Tree t, Tree node) {
+      if (node == null) {
+        sb.append("\t\t\t");
+        return;
+      }
+      int[] span = span(t, node);
+      sb.append('\t').append(node.nodeNumber(t));
+      sb.append('\t').append(span[0]).append('\t').append(span[1]);
+    }
+
+    private static void appendJsonString(StringBuilder sb, String str) {
+      if (str == null) {
+        sb.append("null");
+        return;
+      }
+      sb.append('"');
+      for (int i = 0; i < str.length(); i++) {
+        char c = str.charAt(i);
+        switch (c) {
+          case '"': sb.append("\\\""); break;
+          case '\\': sb.append("\\\\"); break;
+          case '\n': sb.append("\\n"); break;
+          case '\r': sb.append("\\r"); break;
+          case '\t': sb.append("\\t"); break;
+          default:
+            if (c < ' ') {
+              sb.append(String.format("\\u%04x", (int) c));
+            } else {
+              sb.append(c);
+            }
+        }
+      }
+      sb.append('"');
+    }
+
+    /**
+     * The indices, counting from 0, of the first and last leaves of
+     * <code>node</code> among the leaves of <code>t</code>.
+     */
+    private static int[] span(Tree t, Tree node) {
+      int[] leavesBefore = new int[1];
+      countLeavesBefore(t, node, leavesBefore);
+      int start = leavesBefore[0];
+      return new int[] { start, start + node.getLeaves().size() - 1 };
+    }
+
+    /** Counts the leaves of <code>t</code> before <code>node</code> into <code>count</code>, returning whether <code>node</code> was reached. */
+    private static boolean countLeavesBefore(Tree t, Tree node, int[] count) {
+      if (t == node) {
+        return true;
+      }
+      if (t.isLeaf()) {
+        count[0]++;
+        return false;
+      }
+      for (Tree kid : t.children()) {
+        if (countLeavesBefore(kid, node, count)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
   } // end class TRegexTreeVisitor
 
   private static final long serialVersionUID = 5060298043763944913L;
 
 
-  public static class TRegexTreeReaderFactory implements TreeReaderFactory {
+  public static class TRegexTreeReaderFactory implements LabelIndex.KeyedTreeReaderFactory {
 
     private TreeNormalizer tn;
+    // whether the normalizer is the one made here, with known settings
+    private boolean defaultSettings; // = false;
 
     public TRegexTreeReaderFactory() {
       this(new TreeNormalizer() {
@@ -790,6 +1268,7 @@ public abstract class TregexPattern implements Serializable {
           }
         }
       });
+      defaultSettings = true;
     }
 
     public TRegexTreeReaderFactory(TreeNormalizer tn) {
@@ -797,7 +1276,19 @@ public abstract class TregexPattern implements Serializable {
     }
 
     public TreeReader newTreeReader(Reader in) {
-      return new PennTreeReader(new BufferedReader(in), new LabeledScoredTreeFactory(new StringLabelFactory()), tn);
+      return new StreamingPennTreeReader(in, new LabeledScoredTreeFactory(new StringLabelFactory()), tn);
+    }
+
+    /**
+     * Returns the names of the classes of this factory and of its
+     * normalizer, if it was made with the default constructor, or else
+     * null, since the settings of a normalizer it was given are not known.
+     */
+    public String labelIndexKey() {
+      if ( ! defaultSettings || getClass() != TRegexTreeReaderFactory.class) {
+        return null;
+      }
+      return getClass().getName() + ' ' + tn.getClass().getName();
     }
 
   } // end class TRegexTreeReaderFactory
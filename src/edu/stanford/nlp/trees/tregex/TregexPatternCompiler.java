@@ -28,6 +28,10 @@
 
 package edu.stanford.nlp.trees.tregex;
 
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import edu.stanford.nlp.util.Function;
 import edu.stanford.nlp.trees.CollinsHeadFinder;
 import edu.stanford.nlp.trees.HeadFinder;
@@ -36,6 +40,14 @@ import edu.stanford.nlp.trees.PennTreebankLanguagePack;
 /**
  * A class for compiling TregexPatterns with specific HeadFinders and or
  * basicCategoryFunctions.
+ * <p/>
+ * Compiled patterns are kept in a cache shared by all compilers, keyed by
+ * the pattern string, head finder and basicCategoryFunction, and holding
+ * the {@link #getCacheSize() cache size} most recently used patterns, so
+ * that compiling the same pattern again is cheap.  This is safe because a
+ * <code>TregexPattern</code> is not changed once compiled, and can be used
+ * by several threads at once, each with its own {@link TregexMatcher}.
+ * Compiling is thread safe.
  *
  * @author Galen Andrew
  */
@@ -46,6 +58,27 @@ public class TregexPatternCompiler {
 
   public static TregexPatternCompiler defaultCompiler = new TregexPatternCompiler();
 
+  /** The number of compiled patterns the cache holds by default */
+  public static final int DEFAULT_CACHE_SIZE = 1000;
+
+  private static int cacheSize = DEFAULT_CACHE_SIZE;
+  private static long cacheHits; // = 0;
+  private static long cacheMisses; // = 0;
+  private static long cacheEvictions; // = 0;
+
+  // guarded by itself, as are the settings and counts above
+  private static final Map<CacheKey,TregexPattern> cache = new LinkedHashMap<CacheKey,TregexPattern>(16, 0.75f, true) {
+    private static final long serialVersionUID = 1L;
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<CacheKey,TregexPattern> eldest) {
+      if (size() > cacheSize) {
+        cacheEvictions++;
+        return true;
+      }
+      return false;
+    }
+  };
+
   public TregexPatternCompiler() {
   }
 
@@ -87,10 +120,126 @@ public class TregexPatternCompiler {
    * @throws ParseException
    */
   public TregexPattern compile(String tregex) throws ParseException {
-    TregexPattern.setBasicCatFunction(basicCatFunction);
-    Relation.setHeadFinder(headFinder);
-    TregexPattern pattern = TregexParser.parse(tregex);
+    CacheKey key = new CacheKey(tregex, headFinder, basicCatFunction);
+    synchronized (cache) {
+      TregexPattern pattern = cache.get(key);
+      if (pattern != null) {
+        cacheHits++;
+        return pattern;
+      }
+      cacheMisses++;
+    }
+    TregexPattern pattern;
+    // the parser, and the settings it reads, are static
+    synchronized (TregexParser.class) {
+      TregexPattern.setBasicCatFunction(basicCatFunction);
+      Relation.setHeadFinder(headFinder);
+      pattern = TregexParser.parse(tregex);
+    }
     pattern.setPatternString(tregex);
+    pattern.assignSlots();
+    pattern.plan(null);
+    synchronized (cache) {
+      if (cacheSize > 0) {
+        cache.put(key, pattern);
+      }
+    }
     return pattern;
   }
+
+  /** The most compiled patterns the cache holds. */
+  public static int getCacheSize() {
+    synchronized (cache) {
+      return cacheSize;
+    }
+  }
+
+  /**
+   * Sets the most compiled patterns the cache holds, evicting the least
+   * recently used patterns if it holds more.  A size of 0 turns caching off.
+   */
+  public static void setCacheSize(int size) {
+    if (size < 0) {
+      throw new IllegalArgumentException("Negative cache size: " + size);
+    }
+    synchronized (cache) {
+      cacheSize = size;
+      Iterator<CacheKey> it = cache.keySet().iterator();
+      while (cache.size() > size) {
+        it.next();
+        it.remove();
+        cacheEvictions++;
+      }
+    }
+  }
+
+  /** Empties the cache.  The counts are kept. */
+  public static void clearCache() {
+    synchronized (cache) {
+      cache.clear();
+    }
+  }
+
+  /** The number of times a compiled pattern was found in the cache. */
+  public static long cacheHits() {
+    synchronized (cache) {
+      return cacheHits;
+    }
+  }
+
+  /** The number of times a pattern had to be compiled. */
+  public static long cacheMisses() {
+    synchronized (cache) {
+      return cacheMisses;
+    }
+  }
+
+  /** The number of compiled patterns dropped from the cache to make room for others. */
+  public static long cacheEvictions() {
+    synchronized (cache) {
+      return cacheEvictions;
+    }
+  }
+
+
+  /** A pattern string, and the head finder and basic category function it is compiled with. */
+  private static class CacheKey {
+
+    private final String tregex;
+    private final HeadFinder headFinder;
+    private final Function<String,String> basicCatFunction;
+
+    CacheKey(String tregex, HeadFinder headFinder, Function<String,String> basicCatFunction) {
+      this.tregex = tregex;
+      this.headFinder = headFinder;
+      this.basicCatFunction = basicCatFunction;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if ( ! (o instanceof CacheKey)) {
+        return false;
+      }
+      CacheKey key = (CacheKey) o;
+      return tregex.equals(key.tregex) && equal(headFinder, key.headFinder) &&
+          equal(basicCatFunction, key.basicCatFunction);
+    }
+
+    private static boolean equal(Object o1, Object o2) {
+      return (o1 == null) ? o2 == null : o1.equals(o2);
+    }
+
+    @Override
+    public int hashCode() {
+      int result = tregex.hashCode();
+      result = 31 * result + (headFinder == null ? 0 : headFinder.hashCode());
+      result = 31 * result + (basicCatFunction == null ? 0 : basicCatFunction.hashCode());
+      return result;
+    }
+
+  } // end class CacheKey
+
 }
@@ -0,0 +1,328 @@
+package edu.stanford.nlp.trees.tregex;
+
+import java.util.*;
+
+import edu.stanford.nlp.trees.Tree;
+import edu.stanford.nlp.util.Function;
+
+/**
+ * A set of {@link TregexPattern}s that are matched against a tree together,
+ * in one walk over its nodes.  The patterns are numbered by their position
+ * in the list the set was made from.
+ * <p>
+ * Most patterns' root nodes have a literal description, such as
+ * <code>NP</code>, <code>@VP</code> or <code>NN|NNS</code>.  The set indexes
+ * the patterns by these labels (or basic categories), so that each tree
+ * node is only tried against the patterns whose root node could match its
+ * label, plus those few whose root node description is not literal.
+ * Besides this, the matchers of all the patterns on a tree share one
+ * {@link TreeIndex}.
+ * <p>
+ * Usage is like that of a single pattern:
+ * <pre>
+ * TregexPatternSet.Matcher m = patternSet.matcher(tree);
+ * while (m.find()) {
+ *   int id = m.getPatternId();
+ *   Tree node = m.getNode("name");
+ *   ...
+ * }
+ * </pre>
+ * Matches are found node by node, in preorder, and at each node pattern by
+ * pattern, in id order.  So the matches of any one pattern come in the same
+ * order as from its own {@link TregexMatcher#find}.
+ */
+public class TregexPatternSet {
+
+  private final List<TregexPattern> patterns;
+
+  /** Patterns whose root node must match a literal label, by that label. */
+  private final Map<String, int[]> byLabel = new HashMap<String, int[]>();
+
+  /**
+   * Patterns whose root node must match a literal basic category, by basic
+   * category function and then by basic category.
+   */
+  private final Map<Function<String, String>, Map<String, int[]>> byBasicCategory =
+    new IdentityHashMap<Function<String, String>, Map<String, int[]>>();
+
+  /** Patterns whose root node has to be tried at every tree node. */
+  private final int[] unindexed;
+
+  public TregexPatternSet(List<TregexPattern> patterns) {
+    this.patterns = new ArrayList<TregexPattern>(patterns);
+    Map<String, List<Integer>> labelLists = new HashMap<String, List<Integer>>();
+    Map<Function<String, String>, Map<String, List<Integer>>> basicCategoryLists =
+      new IdentityHashMap<Function<String, String>, Map<String, List<Integer>>>();
+    List<Integer> unindexedList = new ArrayList<Integer>();
+    for (int id = 0; id < this.patterns.size(); id++) {
+      DescriptionPattern root = (DescriptionPattern) this.patterns.get(id);
+      Set<String> labels = root.literalDescriptions();
+      if (labels == null) {
+        unindexedList.add(id);
+        continue;
+      }
+      Map<String, List<Integer>> lists = labelLists;
+      if (root.basicCatFunction() != null) {
+        lists = basicCategoryLists.get(root.basicCatFunction());
+        if (lists == null) {
+          lists = new HashMap<String, List<Integer>>();
+          basicCategoryLists.put(root.basicCatFunction(), lists);
+        }
+      }
+      for (String label : labels) {
+        List<Integer> ids = lists.get(label);
+        if (ids == null) {
+          ids = new ArrayList<Integer>();
+          lists.put(label, ids);
+        }
+        ids.add(id);
+      }
+    }
+    toArrays(labelLists, byLabel);
+    for (Map.Entry<Function<String, String>, Map<String, List<Integer>>> entry : basicCategoryLists.entrySet()) {
+      Map<String, int[]> arrays = new HashMap<String, int[]>();
+      toArrays(entry.getValue(), arrays);
+      byBasicCategory.put(entry.getKey(), arrays);
+    }
+    unindexed = toArray(unindexedList);
+  }
+
+  private static void toArrays(Map<String, List<Integer>> lists, Map<String, int[]> arrays) {
+    for (Map.Entry<String, List<Integer>> entry : lists.entrySet()) {
+      arrays.put(entry.getKey(), toArray(entry.getValue()));
+    }
+  }
+
+  private static int[] toArray(List<Integer> list) {
+    int[] array = new int[list.size()];
+    for (int i = 0; i < array.length; i++) {
+      array[i] = list.get(i);
+    }
+    return array;
+  }
+
+  /** The number of patterns in the set. */
+  public int size() {
+    return patterns.size();
+  }
+
+  /** The pattern with the given id. */
+  public TregexPattern getPattern(int id) {
+    return patterns.get(id);
+  }
+
+  /**
+   * Puts into <code>ids</code>, from position 0, the ids of the patterns
+   * whose root node could match <code>node</code>, judging by its label,
+   * in increasing order.
+   *
+   * @return The number of ids put in <code>ids</code>
+   */
+  private int candidates(Tree node, int[] ids, boolean[] seen) {
+    int n = 0;
+    String value = node.value();
+    if (value != null) {
+      n = add(byLabel.get(value), ids, n, seen);
+      for (Map.Entry<Function<String, String>, Map<String, int[]>> entry : byBasicCategory.entrySet()) {
+        n = add(entry.getValue().get(entry.getKey().apply(value)), ids, n, seen);
+      }
+    }
+    n = add(unindexed, ids, n, seen);
+    for (int i = 0; i < n; i++) {
+      seen[ids[i]] = false;
+    }
+    Arrays.sort(ids, 0, n);
+    return n;
+  }
+
+  private static int add(int[] from, int[] ids, int n, boolean[] seen) {
+    if (from != null) {
+      for (int id : from) {
+        if ( ! seen[id]) {
+          seen[id] = true;
+          ids[n++] = id;
+        }
+      }
+    }
+    return n;
+  }
+
+  /**
+   * Returns, for each pattern of this set, the nodes of <code>t</code> that
+   * its root node could match, judging only by their labels, in preorder.
+   * A pattern has no matches at nodes not in its list, so {@link
+   * TregexMatcher#findAt} need only be tried at these.
+   *
+   * @param t The tree
+   * @return A list of candidate nodes for each pattern id, which is empty
+   *         if the pattern cannot match <code>t</code> at all
+   */
+  public List<List<Tree>> candidateNodes(Tree t) {
+    List<List<Tree>> result = new ArrayList<List<Tree>>(patterns.size());
+    for (int id = 0; id < patterns.size(); id++) {
+      result.add(Collections.<Tree>emptyList());
+    }
+    int[] ids = new int[patterns.size()];
+    boolean[] seen = new boolean[patterns.size()];
+    for (Tree node : t) {
+      int n = candidates(node, ids, seen);
+      for (int i = 0; i < n; i++) {
+        List<Tree> nodes = result.get(ids[i]);
+        if (nodes.isEmpty()) {
+          nodes = new ArrayList<Tree>();
+          result.set(ids[i], nodes);
+        }
+        nodes.add(node);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the nodes of <code>t</code> that the root node of the pattern
+   * with the given id could match, judging only by their labels, in
+   * preorder.  This is one element of {@link #candidateNodes(Tree)}.
+   *
+   * @param t The tree
+   * @param id The pattern id
+   * @return The candidate nodes for the pattern
+   */
+  public List<Tree> candidateNodes(Tree t, int id) {
+    List<Tree> result = new ArrayList<Tree>();
+    for (Tree node : t) {
+      if (isCandidate(node, id)) {
+        result.add(node);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns whether the root node of the pattern with the given id could
+   * match <code>node</code>, judging only by its label.  These are the
+   * nodes in the pattern's {@link #candidateNodes(Tree, int) candidate
+   * list}.
+   *
+   * @param node The tree node
+   * @param id The pattern id
+   * @return Whether the pattern could match at <code>node</code>
+   */
+  public boolean isCandidate(Tree node, int id) {
+    DescriptionPattern root = (DescriptionPattern) patterns.get(id);
+    Set<String> labels = root.literalDescriptions();
+    if (labels == null) {
+      return true;
+    }
+    String value = node.value();
+    if (value == null) {
+      return false;
+    }
+    Function<String, String> basicCatFunction = root.basicCatFunction();
+    return labels.contains(basicCatFunction == null ? value : basicCatFunction.apply(value));
+  }
+
+  /**
+   * Get a {@link Matcher} for all the patterns of this set on this tree.
+   *
+   * @param t a tree to match on
+   * @return a TregexPatternSet.Matcher
+   */
+  public Matcher matcher(Tree t) {
+    return new Matcher(t);
+  }
+
+
+  /**
+   * Finds the matches of all the patterns of a {@link TregexPatternSet} in
+   * one tree, in one preorder walk over its nodes.
+   */
+  public class Matcher {
+
+    private final Tree root;
+    private final TreeIndex treeIndex;
+    private final TregexMatcher[] matchers;
+    private final Iterator<Tree> nodes;
+
+    private Tree node;
+    // ids of the patterns to try at node, and where we are in them
+    private final int[] ids;
+    private final boolean[] seen;
+    private int numIds;
+    private int nextId;
+    private int patternId = -1;
+
+    private Matcher(Tree root) {
+      this.root = root;
+      treeIndex = new TreeIndex(root);
+      matchers = new TregexMatcher[patterns.size()];
+      nodes = root.iterator();
+      ids = new int[patterns.size()];
+      seen = new boolean[patterns.size()];
+    }
+
+    /**
+     * Find the next match of any pattern on the tree.
+     *
+     * @return whether there is another match somewhere in the tree
+     */
+    public boolean find() {
+      while (true) {
+        if (patternId >= 0 && matchers[patternId].findAt(node)) {
+          return true;
+        }
+        if (nextId < numIds) {
+          patternId = ids[nextId++];
+          if (matchers[patternId] == null) {
+            matchers[patternId] = patterns.get(patternId).matcher(root, treeIndex);
+          } else {
+            matchers[patternId].reset();
+          }
+        } else if (nodes.hasNext()) {
+          node = nodes.next();
+          numIds = candidates(node, ids, seen);
+          nextId = 0;
+          patternId = -1;
+        } else {
+          patternId = -1;
+          return false;
+        }
+      }
+    }
+
+    /** The id of the pattern of the last match. */
+    public int getPatternId() {
+      return patternId;
+    }
+
+    /** The pattern of the last match. */
+    public TregexPattern getPattern() {
+      return patterns.get(patternId);
+    }
+
+    /**
+     * The {@link TregexMatcher} of the last match, which can be used (but
+     * should not be advanced) to look at the match.
+     */
+    public TregexMatcher getMatcher() {
+      return matchers[patternId];
+    }
+
+    /**
+     * Get the last matching tree -- that is, the tree node that matches the
+     * root node of the pattern that matched.
+     */
+    public Tree getMatch() {
+      return node;
+    }
+
+    /**
+     * Returns the node labeled with <code>name</code> in the pattern of the
+     * last match.
+     */
+    public Tree getNode(String name) {
+      return matchers[patternId].getNode(name);
+    }
+
+  } // end class Matcher
+
+}
@@ -0,0 +1,499 @@
+package edu.stanford.nlp.trees.tregex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+
+import edu.stanford.nlp.trees.DiskTreebank;
+import edu.stanford.nlp.trees.Tree;
+import edu.stanford.nlp.trees.Treebank;
+
+/**
+ * Plans how a {@link TregexPattern} is matched, from estimates of how many
+ * nodes of a tree each part of it can match: the fraction of nodes that the
+ * description of a node of the pattern accepts (from {@link
+ * LabelFrequencies}, or guessed from the kind of description), and the
+ * number of nodes a relation leads to ({@link Relation#fanOut}).  A plan
+ * never changes the matches a pattern has, their order, or the nodes that
+ * are named in them.  It does two things:
+ * <ul>
+ * <li>A conjunction tries first those children that are cheap and likely
+ * to fail.  Only children that name no nodes and capture no variables, and
+ * have no parts that do, are moved, and only among neighbours like them.
+ * Such a child binds nothing, so the number of ways it matches does not
+ * depend on the others, and trying a run of them in any order gives the
+ * same matches in the same order.
+ * <li>If some node of the pattern that must match for the whole to match
+ * is much rarer than the root node, it becomes the anchor of
+ * {@link TregexMatcher#find}.  The nodes of the tree that the anchor can
+ * match are found first, and the converses of the relations on the path
+ * from the root of the pattern down to the anchor (such as
+ * <code>&gt;</code> for <code>&lt;</code>) are followed back up from them to
+ * the nodes the root could match.  The pattern is tried only at those
+ * nodes, still in preorder.  This is not done if any node of the pattern
+ * off that required part names a node or captures a variable, since the
+ * bindings left by an attempt at a node that does not match could then
+ * show in a later match.
+ * </ul>
+ */
+final class TregexPlanner {
+
+  /**
+   * The cost, per node of the tree, of finding the nodes to try from an
+   * anchor, in the units of {@link Estimate#cost}: the anchor is tested at
+   * every node, and the tree must be indexed.
+   */
+  private static final double ANCHOR_COST = 3.0;
+
+  private final LabelFrequencies frequencies;
+
+  private TregexPlanner(LabelFrequencies frequencies) {
+    this.frequencies = frequencies;
+  }
+
+  /**
+   * Plans how to match <code>pattern</code>, setting the order of the
+   * children of its conjunctions.
+   *
+   * @param frequencies The frequencies of the labels of the trees to be
+   *     searched, or null to guess
+   * @return The anchor for <code>find</code> to start from, or null to try
+   *     the pattern at every node
+   */
+  static Anchor plan(TregexPattern pattern, LabelFrequencies frequencies) {
+    TregexPlanner planner = new TregexPlanner(frequencies);
+    Estimate estimate = planner.estimate(pattern);
+    return planner.chooseAnchor(pattern, estimate);
+  }
+
+
+  /**
+   * The estimated chance that a pattern matches at a node, and the cost of
+   * finding out, as the number of nodes looked at.
+   */
+  private static class Estimate {
+    final double probability;
+    final double cost;
+
+    Estimate(double probability, double cost) {
+      this.probability = probability;
+      this.cost = cost;
+    }
+
+    /** Where to try this among children of a conjunction: the lowest first. */
+    double rank() {
+      return cost / (1.0 - probability + 1e-9);
+    }
+  }
+
+  /** Estimates how <code>pattern</code> matches, ordering its conjunctions on the way. */
+  private Estimate estimate(TregexPattern pattern) {
+    double probability;
+    double cost;
+    if (pattern instanceof DescriptionPattern) {
+      DescriptionPattern node = (DescriptionPattern) pattern;
+      double fanOut = node.relation().fanOut();
+      double selectivity = node.selectivity(frequencies);
+      Estimate child = (node.child() == null) ? null : estimate(node.child());
+      double atNode = (child == null) ? selectivity : selectivity * child.probability;
+      probability = 1.0 - Math.pow(1.0 - atNode, fanOut);
+      cost = fanOut * (1.0 + ((child == null) ? 0.0 : selectivity * child.cost));
+    } else {
+      CoordinationPattern coordination = (CoordinationPattern) pattern;
+      List<TregexPattern> children = coordination.getChildren();
+      final Estimate[] estimates = new Estimate[children.size()];
+      for (int i = 0; i < estimates.length; i++) {
+        estimates[i] = estimate(children.get(i));
+      }
+      if (coordination.isConj()) {
+        Integer[] order = new Integer[estimates.length];
+        boolean moved = false;
+        int start = 0;
+        for (int i = 0; i <= order.length; i++) {
+          if (i < order.length) {
+            order[i] = i;
+            if ( ! usesNames(children.get(i))) {
+              continue;
+            }
+          }
+          // sort the run of children that use no names before i
+          if (i - start > 1) {
+            Arrays.sort(order, start, i, new Comparator<Integer>() {
+              public int compare(Integer c1, Integer c2) {
+                return Double.compare(estimates[c1].rank(), estimates[c2].rank());
+              }
+            });
+            for (int k = start; k < i; k++) {
+              moved |= (order[k] != k);
+            }
+          }
+          start = i + 1;
+        }
+        int[] newOrder = null;
+        if (moved) {
+          newOrder = new int[order.length];
+          for (int k = 0; k < order.length; k++) {
+            newOrder[k] = order[k];
+          }
+        }
+        coordination.setOrder(newOrder);
+        probability = 1.0;
+        cost = 0.0;
+        for (int k = 0; k < order.length; k++) {
+          cost += probability * estimates[order[k]].cost;
+          probability *= estimates[order[k]].probability;
+        }
+      } else {
+        double none = 1.0;
+        cost = 0.0;
+        for (Estimate estimate : estimates) {
+          cost += estimate.cost;
+          none *= 1.0 - estimate.probability;
+        }
+        probability = 1.0 - none;
+      }
+    }
+    if (pattern.isNegated()) {
+      probability = 1.0 - probability;
+    } else if (pattern.isOptional()) {
+      probability = 1.0;
+    }
+    return new Estimate(probability, cost);
+  }
+
+  /** Whether <code>pattern</code> or any pattern below it names a node, or captures variables. */
+  private static boolean usesNames(TregexPattern pattern) {
+    if (pattern instanceof DescriptionPattern && ((DescriptionPattern) pattern).usesNames()) {
+      return true;
+    }
+    for (TregexPattern child : pattern.getChildren()) {
+      if (usesNames(child)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Whether any pattern at or below <code>pattern</code> that is not
+   * required to match (when <code>required</code> says that
+   * <code>pattern</code> is) uses names.
+   */
+  private static boolean usesNamesOptionally(TregexPattern pattern, boolean required) {
+    required &= ! pattern.isNegated() && ! pattern.isOptional();
+    if (pattern instanceof DescriptionPattern) {
+      if ( ! required && ((DescriptionPattern) pattern).usesNames()) {
+        return true;
+      }
+    } else {
+      required &= ((CoordinationPattern) pattern).isConj();
+    }
+    for (TregexPattern child : pattern.getChildren()) {
+      if (usesNamesOptionally(child, required)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Adds to <code>parents</code> each node of the pattern below
+   * <code>node</code> that must match for it to match, with the node whose
+   * relation to it the pattern gives.
+   */
+  private static void addRequired(DescriptionPattern node, TregexPattern pattern,
+                                  Map<DescriptionPattern, DescriptionPattern> parents) {
+    if (pattern == null || pattern.isNegated() || pattern.isOptional()) {
+      return;
+    }
+    if (pattern instanceof DescriptionPattern) {
+      DescriptionPattern child = (DescriptionPattern) pattern;
+      parents.put(child, node);
+      addRequired(child, child.child(), parents);
+    } else if (((CoordinationPattern) pattern).isConj()) {
+      for (TregexPattern child : pattern.getChildren()) {
+        addRequired(node, child, parents);
+      }
+    }
+  }
+
+  /**
+   * Chooses the required node of the pattern that leads to the fewest
+   * nodes to try the pattern at, if trying it only there would be cheaper
+   * than trying it everywhere.
+   *
+   * @param estimate The estimate of trying the pattern at a node
+   */
+  private Anchor chooseAnchor(TregexPattern pattern, Estimate estimate) {
+    if ( ! (pattern instanceof DescriptionPattern) || pattern.isNegated() || pattern.isOptional() ||
+        usesNamesOptionally(pattern, true)) {
+      return null;
+    }
+    DescriptionPattern root = (DescriptionPattern) pattern;
+    Map<DescriptionPattern, DescriptionPattern> parents = new IdentityHashMap<DescriptionPattern, DescriptionPattern>();
+    addRequired(root, root.child(), parents);
+
+    DescriptionPattern best = null;
+    double bestCandidates = Double.POSITIVE_INFINITY;
+    for (DescriptionPattern node : parents.keySet()) {
+      // the nodes the root could match, as a fraction of the tree
+      double candidates = node.selectivity(frequencies);
+      for (DescriptionPattern n = node; n != root; n = parents.get(n)) {
+        Relation converse = n.relation().converse();
+        if (converse == null) {
+          candidates = Double.POSITIVE_INFINITY;
+          break;
+        }
+        candidates *= converse.fanOut();
+      }
+      if (candidates < bestCandidates) {
+        best = node;
+        bestCandidates = candidates;
+      }
+    }
+    // the pattern is tried at each node for the cost of the estimate, which
+    // is the cost of testing the root's description, and then of its relations
+    double selectivity = root.selectivity(frequencies);
+    double relationCost = (selectivity > 0.0) ? (estimate.cost - 1.0) / selectivity : 0.0;
+    double anchoredCost = ANCHOR_COST + Math.min(1.0, bestCandidates) * (1.0 + relationCost);
+    if (best == null || anchoredCost >= estimate.cost) {
+      return null;
+    }
+    List<Relation> converses = new ArrayList<Relation>();
+    List<DescriptionPattern> nodes = new ArrayList<DescriptionPattern>();
+    for (DescriptionPattern n = best; n != root; n = parents.get(n)) {
+      converses.add(n.relation().converse());
+      nodes.add(parents.get(n));
+    }
+    return new Anchor(best, converses.toArray(new Relation[converses.size()]),
+                      nodes.toArray(new DescriptionPattern[nodes.size()]));
+  }
+
+
+  /**
+   * The node of a pattern that {@link TregexMatcher#find} starts from, and
+   * the path from it back up to the root of the pattern.
+   */
+  static class Anchor {
+
+    private final DescriptionPattern anchor;
+    // going up from the anchor: the converse of the relation to each node, and the node
+    private final Relation[] converses;
+    private final DescriptionPattern[] nodes;
+
+    Anchor(DescriptionPattern anchor, Relation[] converses, DescriptionPattern[] nodes) {
+      this.anchor = anchor;
+      this.converses = converses;
+      this.nodes = nodes;
+    }
+
+    /** A search for the nodes the root could match, for one matcher to reuse. */
+    Search newSearch() {
+      return new Search();
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder sb = new StringBuilder(anchor.localString());
+      for (int i = 0; i < converses.length; i++) {
+        sb.append(' ').append(converses[i]).append(' ').append(nodes[i].localString());
+      }
+      return sb.toString();
+    }
+
+
+    /** Finds the nodes of a tree that the root of the pattern could match. */
+    class Search {
+
+      private static final byte UNSEEN = 0;
+      private static final byte ACCEPTED = 1;
+      private static final byte REJECTED = 2;
+
+      private final Relation.SearchNodeIterator[] cursors = new Relation.SearchNodeIterator[converses.length];
+      private final Matcher anchorMatcher = anchor.newDescMatcher();
+      private final Matcher[] matchers = new Matcher[nodes.length];
+      private byte[] marks = new byte[0];
+      private byte[] nextMarks = new byte[0];
+
+      Search() {
+        for (int i = 0; i < cursors.length; i++) {
+          cursors[i] = converses[i].newSearchNodeIterator();
+          matchers[i] = nodes[i].newDescMatcher();
+        }
+      }
+
+      /**
+       * Returns whether the root of the pattern could match each node of
+       * the tree, by its preorder number in <code>index</code>.  The array
+       * is reused by the next search, and may be longer than the tree.
+       */
+      boolean[] candidates(TreeIndex index, boolean[] candidates) {
+        int size = index.size();
+        if (marks.length < size) {
+          marks = new byte[size];
+          nextMarks = new byte[size];
+        }
+        boolean any = false;
+        for (int i = 0; i < size; i++) {
+          boolean accepted = anchor.mayMatch(index.node(i), anchorMatcher);
+          marks[i] = accepted ? ACCEPTED : REJECTED;
+          any |= accepted;
+        }
+        for (int level = 0; level < cursors.length && any; level++) {
+          Arrays.fill(nextMarks, 0, size, UNSEEN);
+          any = false;
+          for (int i = 0; i < size; i++) {
+            if (marks[i] != ACCEPTED) {
+              continue;
+            }
+            Relation.SearchNodeIterator cursor = cursors[level].reset(index.node(i), index);
+            while (cursor.hasNext()) {
+              Tree node = cursor.next();
+              int j = index.preorder(node);
+              if (nextMarks[j] == UNSEEN) {
+                boolean accepted = nodes[level].mayMatch(node, matchers[level]);
+                nextMarks[j] = accepted ? ACCEPTED : REJECTED;
+                any |= accepted;
+              }
+            }
+          }
+          byte[] swap = marks;
+          marks = nextMarks;
+          nextMarks = swap;
+        }
+        if (candidates == null || candidates.length < size) {
+          candidates = new boolean[size];
+        }
+        for (int i = 0; i < size; i++) {
+          candidates[i] = any && marks[i] == ACCEPTED;
+        }
+        return candidates;
+      }
+
+    } // end class Search
+
+  } // end class Anchor
+
+
+  /** Patterns for {@link #main} to check, if it is given none. */
+  private static final String[] CHECK_PATTERNS = {
+    "NP=np < (DT=d $+ NN) !<< QP",
+    "S < (NP $+ VP) << WHNP=w",
+    "@NP < (CD $++ NNS) ?< DT=d",
+    "NP < (NNP=a $+ NNP=b)",
+    "VP < (/^VB/ < /^[Ss]aid$/) < SBAR | << QP",
+    "NP !< DT < (JJ $+ (NN $+ NN))",
+    "S < NP < VP << QP",
+    "@S < NP < VP << (SBAR < (WHNP < WP))",
+    "__ < CD < NNS !< DT",
+    "__=x < CD=c < NNS",
+    "__ < (NP < (PRP < it)) < VP",
+    "__ <<, (RB < /^[Nn]ot$/)",
+    "__ << WRB",
+    "__ < (PRN < -LRB-) ?< NN=n",
+  };
+
+  /**
+   * For testing: checks that planning does not change what a pattern
+   * matches.  Each pattern is matched against every tree of the treebank
+   * as written, as planned when it is compiled, and as planned with the
+   * label frequencies of the treebank, and the three must find the same
+   * nodes, in the same order, with the same nodes named in each match.
+   * <br>
+   * Usage: <code>
+   * java edu.stanford.nlp.trees.tregex.TregexPlanner treebankPath [pattern]*
+   * </code>
+   *
+   * @param args The treebank path, then the patterns to check, or none to
+   *     check some patterns that planning reorders and anchors
+   */
+  public static void main(String[] args) throws ParseException {
+    if (args.length < 1) {
+      System.err.println("usage: TregexPlanner treebankPath [pattern]*");
+      return;
+    }
+    Treebank treebank = new DiskTreebank();
+    treebank.loadPath(args[0]);
+    LabelFrequencies frequencies = new LabelFrequencies();
+    treebank.apply(frequencies);
+    String[] patterns = CHECK_PATTERNS;
+    if (args.length > 1) {
+      patterns = new String[args.length - 1];
+      System.arraycopy(args, 1, patterns, 0, patterns.length);
+    }
+    // each compile must give a pattern of its own, for each to have its plan
+    TregexPatternCompiler.setCacheSize(0);
+    int errors = 0;
+    for (String s : patterns) {
+      TregexPattern unplanned = TregexPattern.compile(s);
+      unplanned.unplan();
+      TregexPattern guessed = TregexPattern.compile(s);
+      TregexPattern fitted = TregexPattern.compile(s);
+      fitted.plan(frequencies);
+      int matches = 0;
+      int trees = 0;
+      for (Tree t : treebank) {
+        List<Tree> expected = matches(unplanned, t);
+        if ( ! sameNodes(expected, matches(guessed, t)) || ! sameNodes(expected, matches(fitted, t))) {
+          System.err.println("Planning changes the matches of " + s + " on:");
+          t.pennPrint(System.err);
+          errors++;
+        }
+        matches += expected.size();
+        trees++;
+      }
+      System.out.println(s + ": " + trees + " trees, " + matches + " nodes matched or named"
+                         + "; reordered: " + reordered(guessed) + "/" + reordered(fitted)
+                         + "; anchor: " + guessed.anchorString() + " / " + fitted.anchorString());
+    }
+    if (errors > 0) {
+      System.out.println("Planning changed the matches on " + errors + " trees.");
+      System.exit(1);
+    }
+    System.out.println("Planning changed no matches of " + patterns.length + " patterns.");
+  }
+
+  /** Each node <code>pattern</code> matches in <code>t</code>, each followed by the nodes named in the match. */
+  private static List<Tree> matches(TregexPattern pattern, Tree t) {
+    List<Tree> nodes = new ArrayList<Tree>();
+    TregexMatcher m = pattern.matcher(t);
+    while (m.find()) {
+      nodes.add(m.getMatch());
+      for (int slot = 0; slot < m.namedNodes.size(); slot++) {
+        nodes.add(m.namedNodes.get(slot));
+      }
+    }
+    return nodes;
+  }
+
+  /** Whether two lists hold the same nodes, by identity, in the same order. */
+  private static boolean sameNodes(List<Tree> a, List<Tree> b) {
+    if (a.size() != b.size()) {
+      return false;
+    }
+    for (int i = 0; i < a.size(); i++) {
+      if (a.get(i) != b.get(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Whether the plan of <code>pattern</code> changes the order of any of its conjunctions. */
+  private static boolean reordered(TregexPattern pattern) {
+    if (pattern instanceof CoordinationPattern && ((CoordinationPattern) pattern).getOrder() != null) {
+      return true;
+    }
+    for (TregexPattern child : pattern.getChildren()) {
+      if (reordered(child)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+}
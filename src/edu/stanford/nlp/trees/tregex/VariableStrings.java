@@ -1,42 +1,52 @@
 package edu.stanford.nlp.trees.tregex;
 
-import edu.stanford.nlp.stats.IntCounter;
-
-import java.util.Map;
-import java.util.HashMap;
+import java.util.Arrays;
 
 /** a class that takes care of the stuff necessary for variable strings.
+ * The variables are numbered, by the slots the pattern gives them when
+ * it is compiled, so that their strings can be kept in arrays.
  * @author Roger Levy (rog@nlp.stanford.edu)
  */
 class VariableStrings {
-  private Map<Object, String> varsToStrings;
-  private IntCounter numVarsSet;
+  private final String[] varsToStrings;
+  private final int[] numVarsSet;
+
+  public VariableStrings(int numVars) {
+    varsToStrings = new String[numVars];
+    numVarsSet = new int[numVars];
+  }
 
-  public VariableStrings() {
-    varsToStrings = new HashMap<Object,String>();
-    numVarsSet = new IntCounter();
+  /** The number of variables. */
+  public int size() {
+    return varsToStrings.length;
   }
 
-  public boolean isSet(Object o) {
-    return numVarsSet.getCount(o) == 1;
+  public boolean isSet(int var) {
+    return numVarsSet[var] == 1;
   }
 
-  public void setVar(Object var, String string) {
-    String oldString = varsToStrings.put(var,string);
+  public void setVar(int var, String string) {
+    String oldString = varsToStrings[var];
+    varsToStrings[var] = string;
     if(oldString != null && ! oldString.equals(string))
       throw new RuntimeException("Error -- can't setVar to a different string -- old: " + oldString + " new: " + string);
-    numVarsSet.incrementCount(var);
+    numVarsSet[var]++;
+  }
+
+  public void unsetVar(int var) {
+    if(numVarsSet[var] > 0)
+      numVarsSet[var]--;
+    if(numVarsSet[var]==0)
+      varsToStrings[var] = null;
   }
 
-  public void unsetVar(Object var) {
-    if(numVarsSet.getCount(var) > 0)
-      numVarsSet.decrementCount(var);
-    if(numVarsSet.getCount(var)==0)
-      varsToStrings.put(var,null);
+  public void reset() {
+    Arrays.fill(varsToStrings, null);
+    Arrays.fill(numVarsSet, 0);
   }
 
-  public String getString(Object var) {
-    return varsToStrings.get(var);
+  public String getString(int var) {
+    return varsToStrings[var];
   }
 
 }
@@ -113,6 +113,26 @@ public class FilePanel extends JPanel implements ActionListener {
     }
   }
 
+  /**
+   * Sets whether the trees of files are read into memory once, rather than
+   * from disk for each search, and how much memory they may take up.  If
+   * this changes, the files already loaded are read again.
+   * @param loadIntoMemory true if trees should be read into memory
+   * @param memorySize the most memory the trees may take up, in megabytes, or null to leave it as it is
+   */
+  public void setLoadIntoMemory(boolean loadIntoMemory, Integer memorySize) {
+    boolean changed = loadIntoMemory != FileTreeModel.isLoadIntoMemory();
+    FileTreeModel.setLoadIntoMemory(loadIntoMemory);
+    if(memorySize != null) {
+      long budget = memorySize * 1024L * 1024L;
+      changed |= loadIntoMemory && budget != FileTreeModel.getMemoryBudget();
+      FileTreeModel.setMemoryBudget(budget);
+    }
+    if(changed) {
+      treeModel.reloadAllFiles();
+    }
+  }
+
   public void loadFiles(EnumMap<TregexGUI.FilterType, String> filters, File[] files) {
     treeModel.addFileFolder(filters, files);
   }
@@ -143,6 +163,7 @@ public class FilePanel extends JPanel implements ActionListener {
   public List<FileTreeNode> getActiveTreebanks() {
     List<FileTreeNode> active = new ArrayList<FileTreeNode>();
     setActiveTreebanksFromParent(active, treeModel.getRoot());
+    treeModel.reloadChangedFiles(active);
     return active;
   }
 
@@ -32,7 +32,13 @@ public class FileTreeModel extends DefaultTreeModel implements FileTreeNodeListe
   public static final String DEFAULT_CHINESE_ENCODING = "GB18030";
   public static final String DEFAULT_NEGRA_ENCODING = " ISO-8859-1";
   private static String curEncoding = DEFAULT_ENCODING;
+  /** The default memory budget for treebanks loaded into memory: 512 MB */
+  public static final long DEFAULT_MEMORY_BUDGET = 512L * 1024 * 1024;
+  private static boolean loadIntoMemory = false;
+  private static long memoryBudget = DEFAULT_MEMORY_BUDGET;
   private TreeReaderFactory trf;
+  // the bytes taken up by the treebanks of this model that are in memory
+  private long residentBytes; // = 0;
 
   public FileTreeModel(FileTreeNode root) {
    super(root);
@@ -156,12 +162,92 @@ public class FileTreeModel extends DefaultTreeModel implements FileTreeNodeListe
     t.start();
   }
 
-  private void readTrees(FileTreeNode fileNode) {
-    Treebank treebank = new DiskTreebank(trf, curEncoding);
-    treebank.loadPath(fileNode.getFile(), null, true);
+  /**
+   * Reads the trees of a file into a treebank.  If treebanks are to be
+   * loaded into memory, and the file fits in what is left of the memory
+   * budget, they are read into a {@link ResidentTreebank}; otherwise they
+   * are read from disk each time they are searched.
+   */
+  private synchronized void readTrees(FileTreeNode fileNode) {
+    File file = fileNode.getFile();
+    Treebank treebank = null;
+    // the trees of a file take up more memory than the file, so one too big for the budget is not read
+    if (loadIntoMemory && residentBytes + file.length() <= memoryBudget) {
+      ResidentTreebank resident = new ResidentTreebank(trf, curEncoding);
+      resident.loadPath(file, null, true);
+      if (residentBytes + resident.memoryUse() <= memoryBudget) {
+        residentBytes += resident.memoryUse();
+        treebank = resident;
+      }
+    }
+    if (treebank == null) {
+      treebank = new DiskTreebank(trf, curEncoding);
+      treebank.loadPath(file, null, true);
+    }
     fileNode.setTreebank(treebank);
   }
 
+  /** Gives back the memory the trees of a file take up, before they are read again. */
+  private void releaseTrees(FileTreeNode fileNode) {
+    if (fileNode.getTreebank() instanceof ResidentTreebank) {
+      residentBytes -= ((ResidentTreebank) fileNode.getTreebank()).memoryUse();
+    }
+  }
+
+  /**
+   * Reads the trees of those of the given files that were loaded into
+   * memory and have changed on disk since, so that they are searched as
+   * they are now.  Files read from disk are left alone, as they are read
+   * afresh on each search anyway.  This is done on the calling thread.
+   */
+  public synchronized void reloadChangedFiles(List<FileTreeNode> files) {
+    for (FileTreeNode f : files) {
+      Treebank treebank = f.getTreebank();
+      if (treebank instanceof ResidentTreebank && ((ResidentTreebank) treebank).isStale()) {
+        releaseTrees(f);
+        readTrees(f);
+      }
+    }
+  }
+
+  /**
+   * Reads the trees of all the files again, on another thread, so that
+   * they are loaded into memory, or not, as the current settings say.  The
+   * trees read before are searched until the new ones replace them.
+   */
+  public void reloadAllFiles() {
+    final List<FileTreeNode> files = new ArrayList<FileTreeNode>();
+    findFiles(root, files);
+    Thread t = new Thread() {
+      @Override
+      public void run() {
+        synchronized (FileTreeModel.this) {
+          for (FileTreeNode f : files) {
+            releaseTrees(f);
+          }
+          for (FileTreeNode f : files) {
+            readTrees(f);
+          }
+        }
+      }
+    };
+    t.start();
+  }
+
+  private void findFiles(FileTreeNode parent, List<FileTreeNode> files) {
+    List<FileTreeNode> children = treeStructure.get(parent);
+    if (children == null) {
+      return;
+    }
+    for (FileTreeNode child : children) {
+      if (child.getAllowsChildren()) {
+        findFiles(child, files);
+      } else {
+        files.add(child);
+      }
+    }
+  }
+
   /**
    * Forks off a new thread to load your files based on the filters you set in the interface
    * @param filters
@@ -267,5 +353,23 @@ public class FileTreeModel extends DefaultTreeModel implements FileTreeNodeListe
     FileTreeModel.curEncoding = curEncoding;
   }
 
+  /** Whether the trees of files are read into memory once, rather than from disk for each search */
+  public static boolean isLoadIntoMemory() {
+    return loadIntoMemory;
+  }
+
+  public static void setLoadIntoMemory(boolean loadIntoMemory) {
+    FileTreeModel.loadIntoMemory = loadIntoMemory;
+  }
+
+  /** The most memory, in bytes, that the trees read into memory may take up */
+  public static long getMemoryBudget() {
+    return memoryBudget;
+  }
+
+  public static void setMemoryBudget(long memoryBudget) {
+    FileTreeModel.memoryBudget = memoryBudget;
+  }
+
 
 }
@@ -2,12 +2,14 @@ package edu.stanford.nlp.trees.tregex.gui;
 
 import java.awt.Color;
 import java.io.File;
+import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.List;
 
 import javax.swing.JCheckBox;
 import javax.swing.JComponent;
 import javax.swing.JLabel;
+import javax.swing.SwingUtilities;
 import javax.swing.tree.DefaultMutableTreeNode;
 
 import edu.stanford.nlp.trees.Treebank;
@@ -24,6 +26,7 @@ public class FileTreeNode extends DefaultMutableTreeNode{
   private JCheckBox check = null;
   private JLabel label =null;
   private Treebank t;
+  private volatile int numTrees = -1;
   private List<FileTreeNodeListener> listeners = new ArrayList<FileTreeNodeListener>();
   
   //this is only for a root node
@@ -93,6 +96,41 @@ public class FileTreeNode extends DefaultMutableTreeNode{
 
   public void setTreebank(Treebank t) {
     this.t = t;
+    numTrees = -1;
+    if (check != null) {
+      // show how much memory the trees take up, if they are held in memory
+      final String text;
+      if (t instanceof ResidentTreebank) {
+        text = this.toString() + " (" + memoryString(((ResidentTreebank) t).memoryUse()) + " in memory)";
+      } else {
+        text = this.toString();
+      }
+      SwingUtilities.invokeLater(new Runnable() {
+        public void run() {
+          check.setText(text);
+          sendToListeners();
+        }
+      });
+    }
+  }
+
+  private static String memoryString(long bytes) {
+    if (bytes < 1024 * 1024) {
+      return ((bytes + 1023) / 1024) + " KB";
+    }
+    return new DecimalFormat("0.0").format(bytes / (1024.0 * 1024.0)) + " MB";
+  }
+
+  /**
+   * Returns the number of trees in this node's treebank, if it has been
+   * counted by reading through it, or else -1.
+   */
+  public int getNumTrees() {
+    return numTrees;
+  }
+
+  public void setNumTrees(int numTrees) {
+    this.numTrees = numTrees;
   }
   
   public String getFilename() {
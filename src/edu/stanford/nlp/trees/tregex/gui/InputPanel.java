@@ -57,6 +57,7 @@ import edu.stanford.nlp.trees.TreeVisitor;
 import edu.stanford.nlp.trees.tregex.TregexMatcher;
 import edu.stanford.nlp.trees.tregex.TregexPattern;
 import edu.stanford.nlp.trees.tregex.TregexPatternCompiler;
+import edu.stanford.nlp.trees.tregex.tsurgeon.TreeEditLog;
 import edu.stanford.nlp.trees.tregex.tsurgeon.Tsurgeon;
 import edu.stanford.nlp.trees.tregex.tsurgeon.TsurgeonPattern;
 
@@ -586,7 +587,22 @@ public class InputPanel extends JPanel implements ActionListener, ChangeListener
             useProgressBar(true);
           }
         });
-        final TRegexGUITreeVisitor visitor = getMatchTreeVisitor(text,this);
+        // the matches are shown as they are found
+        TRegexGUISearch.Listener listener = new TRegexGUISearch.Listener() {
+          private int treesMatched; // = 0;
+          public void matchesFound(final TRegexGUITreeVisitor batch, int treesSearched, double progress) {
+            treesMatched += batch.getMatches().size();
+            updateProgressBar(progress, treesSearched + " trees searched, " + treesMatched + " matched");
+            if ( ! batch.getMatches().isEmpty()) {
+              SwingUtilities.invokeLater(new Runnable() {
+                public void run() {
+                  MatchesPanel.getInstance().addMatches(batch.getMatches(), batch.getMatchedParts());
+                }
+              });
+            }
+          }
+        };
+        final TRegexGUITreeVisitor visitor = getMatchTreeVisitor(text, listener);
         if (visitor != null) {
 
           SwingUtilities.invokeLater(new Runnable() {
@@ -594,7 +610,6 @@ public class InputPanel extends JPanel implements ActionListener, ChangeListener
               useProgressBar(false);
               updateFoundStats(text, visitor.getMatches().size(), visitor.numUniqueMatches());
               //addToHistoryList(text, visitor.getMatches().size(), visitor.numUniqueMatches());
-              MatchesPanel.getInstance().setMatches(visitor.getMatches(), visitor.getMatchedParts());
               MatchesPanel.getInstance().focusOnList();
             }
           });
@@ -640,7 +655,7 @@ public class InputPanel extends JPanel implements ActionListener, ChangeListener
               useProgressBar(true);
             }
           });
-          final TRegexGUITreeVisitor visitor = getMatchTreeVisitor(text,this);
+          final TRegexGUITreeVisitor visitor = getMatchTreeVisitor(text, null);
           if (visitor == null) return; //means the tregex errored out
           if (this.isInterrupted()) {
             returnToValidState(text, visitor, new ArrayList<TreeFromFile>());
@@ -651,13 +666,21 @@ public class InputPanel extends JPanel implements ActionListener, ChangeListener
           TsurgeonPattern operation = Tsurgeon.getTsurgeonOperationsFromReader(reader);
           List<TreeFromFile> trees = visitor.getMatches();
           final List<TreeFromFile> modifiedTrees = new ArrayList<TreeFromFile>();
+          // the matched trees are operated on in place, and put back once
+          // the results have been taken down
+          TreeEditLog edits = new TreeEditLog();
           for (TreeFromFile tff : trees) {
             if (this.isInterrupted()) {
               returnToValidState(text, visitor, trees);
               return;
             }
-            Tree modifiedTree = Tsurgeon.processPattern(visitor.getPattern(), operation, tff.getTree());
-            modifiedTrees.add(new TreeFromFile(modifiedTree,tff.getFilename().intern()));
+            Tree modifiedTree = Tsurgeon.processPattern(visitor.getPattern(), operation, tff.getTree(), edits);
+            TreeFromFile modified = new TreeFromFile(modifiedTree,tff.getFilename().intern());
+            if ( ! edits.isEmpty()) {
+              edits.undo();
+              modified.forgetTree();
+            }
+            modifiedTrees.add(modified);
           }
           returnToValidState(text, visitor, modifiedTrees);
         } catch (Exception e) {
@@ -719,35 +742,29 @@ public class InputPanel extends JPanel implements ActionListener, ChangeListener
 
   /**
    * Check all active treebanks to find the trees that match the given pattern when interpreted
-   * as a tregex pattern.
+   * as a tregex pattern.  The search runs on a worker thread for each processor, and stops
+   * early if the calling thread is interrupted.
    *
    * @param patternString string version of the tregex pattern you wish to match
-   * @param t The thread we are running on
+   * @param listener Receives the matches as they are found, or null
    * @return tree visitor that contains the trees that were matched as well as the parts of those trees that matched
    */
-  private TRegexGUITreeVisitor getMatchTreeVisitor(String patternString, Thread t) {
+  private TRegexGUITreeVisitor getMatchTreeVisitor(String patternString, TRegexGUISearch.Listener listener) {
     TRegexGUITreeVisitor vis = null;
     try {
       TregexPattern pattern = compiler.compile(patternString);
-      vis = new TRegexGUITreeVisitor(pattern); //handles);
       List<FileTreeNode> treebanks = FilePanel.getInstance().getActiveTreebanks();
-      double multiplier = 100.0/treebanks.size();
-      int treebankNum = 1;
-      for (FileTreeNode treebank : treebanks) {
-        if (t.isInterrupted()) { //get out as quickly as possible if interrupted
-          t.interrupt();
-          // cdm 2008: I added here resetting the buttons or else it didn't seem to happen; not quite sure this is the right place to do it but.
-          SwingUtilities.invokeLater(new Runnable() {
-            public void run() {
-              setTregexState(false);
-              InputPanel.this.searchThread = null;
-            }
-          });
-          return vis;
-        }
-        vis.setFilename(treebank.getFilename().intern());
-        treebank.getTreebank().apply(vis);
-        updateProgressBar(multiplier*treebankNum++);
+      TRegexGUISearch search = new TRegexGUISearch(pattern, treebanks, Runtime.getRuntime().availableProcessors());
+      vis = search.run(listener);
+      if (search.wasCancelled()) {
+        Thread.currentThread().interrupt(); // so that callers see it
+        // cdm 2008: I added here resetting the buttons or else it didn't seem to happen; not quite sure this is the right place to do it but.
+        SwingUtilities.invokeLater(new Runnable() {
+          public void run() {
+            setTregexState(false);
+            InputPanel.this.searchThread = null;
+          }
+        });
       }
     } catch (Exception e) {
       doError("Sorry, there was an error compiling or running the Tregex pattern.  Please press Help if you need assistance.", e);
@@ -788,6 +805,26 @@ public class InputPanel extends JPanel implements ActionListener, ChangeListener
     });
   }
 
+  /**
+   * Thread safe way to update how much progress we've made on the search so far,
+   * with a description of it shown on the progress bar
+   * @param progress Percentage of the way through that we are, or a negative number if it is not known
+   * @param text The description of the progress
+   */
+  public void updateProgressBar(final double progress, final String text) {
+    SwingUtilities.invokeLater(new Runnable() {
+      public void run() {
+        if(progressBar == null)
+          return;
+        progressBar.setIndeterminate(progress < 0);
+        if(progress >= 0)
+          progressBar.setValue((int) progress);
+        progressBar.setStringPainted(true);
+        progressBar.setString(text);
+      }
+    });
+  }
+
 
   /**
    * Simple class for storing history objects that go nicely into a toString for saving
@@ -892,6 +929,16 @@ public class InputPanel extends JPanel implements ActionListener, ChangeListener
       return matchedTrees;
     }
 
+    /**
+     * Adds the trees another visitor matched, and their matched parts,
+     * after those this one has matched.
+     */
+    void addAll(TRegexGUITreeVisitor other) {
+      matchedTrees.addAll(other.matchedTrees);
+      matchedParts.putAll(other.matchedParts);
+      totalMatches += other.totalMatches;
+    }
+
     public String getFilename() {
       return filename;
     }
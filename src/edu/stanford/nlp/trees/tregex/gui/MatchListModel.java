@@ -0,0 +1,134 @@
+package edu.stanford.nlp.trees.tregex.gui;
+
+import java.util.*;
+
+import javax.swing.AbstractListModel;
+
+import edu.stanford.nlp.trees.Tree;
+
+/**
+ * The list of matches shown in the {@link MatchesPanel}.  Each row is kept
+ * as just two numbers: the matched tree it shows, and, when only the
+ * matched portions of trees are shown, which of the tree's matched parts
+ * it is.  The <code>TreeFromFile</code> shown for a matched portion is only
+ * made when the row is asked for, which the list does for the rows it
+ * shows, and only the most recently asked for are kept.
+ * <p/>
+ * Like other Swing models, this must only be used on the event dispatch
+ * thread.
+ */
+@SuppressWarnings("serial")
+class MatchListModel extends AbstractListModel {
+
+  /** How many of the matched portions made for rows are kept */
+  private static final int PORTION_CACHE_SIZE = 1000;
+
+  private final List<TreeFromFile> trees = new ArrayList<TreeFromFile>();
+  private final HashMap<TreeFromFile, List<Tree>> matchedParts = new HashMap<TreeFromFile, List<Tree>>();
+  // for each row, the index of its tree, and the index of its matched part, or -1 for the whole tree
+  private int[] rowTrees = new int[64];
+  private int[] rowParts = new int[64];
+  private int size; // = 0;
+
+  private final Map<Integer, TreeFromFile> portions = new LinkedHashMap<Integer, TreeFromFile>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Integer, TreeFromFile> eldest) {
+      return size() > PORTION_CACHE_SIZE;
+    }
+  };
+
+  public int getSize() {
+    return size;
+  }
+
+  public Object getElementAt(int row) {
+    if (row < 0 || row >= size) {
+      throw new ArrayIndexOutOfBoundsException(row);
+    }
+    TreeFromFile t = trees.get(rowTrees[row]);
+    if (rowParts[row] < 0) {
+      return t;
+    }
+    TreeFromFile portion = portions.get(row);
+    if (portion == null) {
+      Tree match = matchedParts.get(t).get(rowParts[row]);
+      portion = new TreeFromFile(match, t.getFilename());
+      portions.put(row, portion);
+    }
+    return portion;
+  }
+
+  boolean isEmpty() {
+    return size == 0;
+  }
+
+  /** The matched parts of the trees added, by tree. */
+  HashMap<TreeFromFile, List<Tree>> getMatchedParts() {
+    return matchedParts;
+  }
+
+  void clear() {
+    int oldSize = size;
+    trees.clear();
+    matchedParts.clear();
+    portions.clear();
+    size = 0;
+    if (oldSize > 0) {
+      fireIntervalRemoved(this, 0, oldSize - 1);
+    }
+  }
+
+  /**
+   * Adds rows for the given trees, up to <code>maxRows</code> rows in all:
+   * one row for each tree, or, if <code>portionsOnly</code> is true, one
+   * for each of its matched parts.
+   *
+   * @param matches The matched trees
+   * @param parts Their matched parts, or null if there are none
+   * @param portionsOnly Whether to show the matched parts rather than the trees
+   * @param maxRows The most rows the list may have
+   */
+  void addMatches(List<TreeFromFile> matches, Map<TreeFromFile, List<Tree>> parts,
+                  boolean portionsOnly, int maxRows) {
+    int oldSize = size;
+    if (parts != null) {
+      matchedParts.putAll(parts);
+    }
+    for (TreeFromFile t : matches) {
+      if (size >= maxRows) {
+        break;
+      }
+      List<Tree> treeParts = (parts == null) ? null : parts.get(t);
+      if (portionsOnly && treeParts == null) {
+        continue;
+      }
+      int treeIndex = trees.size();
+      trees.add(t);
+      if ( ! portionsOnly) {
+        addRow(treeIndex, -1);
+      } else {
+        for (int i = 0; i < treeParts.size() && size < maxRows; i++) {
+          addRow(treeIndex, i);
+        }
+      }
+    }
+    if (size > oldSize) {
+      fireIntervalAdded(this, oldSize, size - 1);
+    }
+  }
+
+  private void addRow(int tree, int part) {
+    if (size == rowTrees.length) {
+      int[] newRowTrees = new int[2 * size];
+      System.arraycopy(rowTrees, 0, newRowTrees, 0, size);
+      rowTrees = newRowTrees;
+      int[] newRowParts = new int[2 * size];
+      System.arraycopy(rowParts, 0, newRowParts, 0, size);
+      rowParts = newRowParts;
+    }
+    rowTrees[size] = tree;
+    rowParts[size] = part;
+    size++;
+  }
+
+}
@@ -14,11 +14,10 @@ import java.awt.event.MouseEvent;
 import java.awt.geom.Point2D;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import javax.swing.BorderFactory;
-import javax.swing.DefaultListModel;
 import javax.swing.JComponent;
 import javax.swing.JLabel;
 import javax.swing.JList;
@@ -40,7 +39,8 @@ import edu.stanford.nlp.util.Pair;
 
 /**
  * Component for displaying the list of trees that match
- * the query.
+ * the query.  The list only makes, and lays out, the rows it shows, so
+ * it can hold as many matches as a search finds.
  * @author Anna Rafferty
  *
  */
@@ -48,13 +48,14 @@ import edu.stanford.nlp.util.Pair;
 public class MatchesPanel extends JPanel implements ListSelectionListener {
   private static MatchesPanel instance = null;
   private JList list;
-  private HashMap<TreeFromFile,List<Tree>> matchedParts;
+  private MatchListModel model;
   private List<MatchesPanelListener> listeners;
   private Color highlightColor = Color.CYAN;
   private boolean showOnlyMatchedPortion = false;
   private JTextField lastSelected = null;
   private MouseEvent firstMouseEvent = null;
-  private int maxMatches =1000;
+  private int maxMatches = Integer.MAX_VALUE;
+  private int widestRow; // = 0;
 
 
   /**
@@ -70,11 +71,12 @@ public class MatchesPanel extends JPanel implements ListSelectionListener {
 
   private MatchesPanel() {
     //data
-    DefaultListModel model = new DefaultListModel();
+    model = new MatchListModel();
     list = new TooltipJList(model);
     list.setCellRenderer(new MatchCellRenderer());
     list.setTransferHandler(new TreeTransferHandler());
-    matchedParts = new HashMap<TreeFromFile,List<Tree>>();
+    //with a fixed cell size, the list only renders the rows it shows
+    setFixedCellSize();
     list.addListSelectionListener(this);
     MouseInputAdapter mouseListener = new MouseInputAdapter() {
       private boolean dragNDrop = false;
@@ -173,10 +175,24 @@ public class MatchesPanel extends JPanel implements ListSelectionListener {
     this.add(scroller, BorderLayout.CENTER);
   }
 
+  /**
+   * Sets the height of the rows to that of one line of text, and their
+   * width to that of the widest row shown so far, which grows as wider rows
+   * are shown.
+   */
+  private void setFixedCellSize() {
+    JTextField l = new JTextField("Xg");
+    l.setFont(list.getFont());
+    l.setBorder(BorderFactory.createEmptyBorder(0, 5, 0, 0));
+    list.setFixedCellHeight(l.getPreferredSize().height);
+    list.setFixedCellWidth(Math.max(widestRow, 1));
+  }
+
   public void removeAllMatches() {
-    setMatchedParts(new HashMap<TreeFromFile, List<Tree>>());
-    ((DefaultListModel) list.getModel()).removeAllElements();
+    model.clear();
     list.setSelectedIndex(-1);
+    widestRow = 0;
+    setFixedCellSize();
     this.sendToListeners();
   }
 
@@ -187,26 +203,9 @@ public class MatchesPanel extends JPanel implements ListSelectionListener {
    */
   public void setMatches(List<TreeFromFile> matches, HashMap<TreeFromFile, List<Tree>> matchedParts) {
     this.removeAllMatches();
-    setMatchedParts(matchedParts);
     this.setPreferredSize(this.getSize());
-    if(!showOnlyMatchedPortion || matchedParts == null) {
-      for(int i = 0; i < maxMatches && i < matches.size(); i++) {
-        final TreeFromFile t = matches.get(i);
-        ((DefaultListModel) list.getModel()).addElement(t);
-      }
-    } else {
-      Iterator<TreeFromFile> iter = matchedParts.keySet().iterator();
-      for(int i = 0; i < maxMatches && iter.hasNext(); i++) {
-        final TreeFromFile t = iter.next();
-        List<Tree> curMatches = matchedParts.get(t);
-        for(final Tree match : curMatches) {
-          ((DefaultListModel) list.getModel()).addElement(new TreeFromFile(match, t.getFilename()));
-          i++;
-          if(i >= maxMatches) break;
-        }
-      }
-    }
-    if(!((DefaultListModel) list.getModel()).isEmpty())
+    model.addMatches(matches, matchedParts, showOnlyMatchedPortion && matchedParts != null, maxMatches);
+    if(!model.isEmpty())
       SwingUtilities.invokeLater(new Runnable() {
         public void run() {
           list.setSelectedIndex(0);
@@ -216,6 +215,21 @@ public class MatchesPanel extends JPanel implements ListSelectionListener {
     this.sendToListeners();
   }
 
+  /**
+   * Adds more trees to those displayed in this panel, as a search finds
+   * them, up to the maximum number of matches shown.  The first tree
+   * added is selected.
+   * @param matches trees that match the expression
+   * @param matchedParts the parts of those trees that match
+   */
+  public void addMatches(List<TreeFromFile> matches, Map<TreeFromFile, List<Tree>> matchedParts) {
+    boolean wasEmpty = model.isEmpty();
+    model.addMatches(matches, matchedParts, showOnlyMatchedPortion, maxMatches);
+    if (wasEmpty && !model.isEmpty()) {
+      list.setSelectedIndex(0);
+    }
+    this.sendToListeners();
+  }
 
 
   /**
@@ -225,7 +239,7 @@ public class MatchesPanel extends JPanel implements ListSelectionListener {
   public Pair<TreeFromFile, List<Tree>> getSelectedMatch() {
     if(!isEmpty()) {
       TreeFromFile selectedTree = (TreeFromFile) list.getSelectedValue();
-      return new Pair<TreeFromFile,List<Tree>>(selectedTree, matchedParts.get(selectedTree));
+      return new Pair<TreeFromFile,List<Tree>>(selectedTree, model.getMatchedParts().get(selectedTree));
     }
     else
       return null;
@@ -253,7 +267,7 @@ public class MatchesPanel extends JPanel implements ListSelectionListener {
   public StringBuffer getMatchedSentences() {
     StringBuffer sb = new StringBuffer();
     for(int i = 0; i < list.getModel().getSize(); i++) {
-      String t = ((TreeFromFile) list.getModel().getElementAt(i)).getLabel().getText();
+      String t = list.getModel().getElementAt(i).toString();
       sb.append(t);
       sb.append("\n");
     }
@@ -265,7 +279,7 @@ public class MatchesPanel extends JPanel implements ListSelectionListener {
    * @return true if trees are present
    */
   public boolean isEmpty() {
-    return ((DefaultListModel) list.getModel()).isEmpty();
+    return model.isEmpty();
   }
 
   /**
@@ -316,6 +330,18 @@ public class MatchesPanel extends JPanel implements ListSelectionListener {
       } else {
         l.setBackground(Color.WHITE);
       }
+      l.setFont(list.getFont());
+      final int width = l.getPreferredSize().width;
+      if(width > widestRow) {
+        //widen the rows, but not while the list is being painted
+        widestRow = width;
+        SwingUtilities.invokeLater(new Runnable() {
+          public void run() {
+            if(list.getFixedCellWidth() < width)
+              list.setFixedCellWidth(width);
+          }
+        });
+      }
       return l;
     }
 
@@ -357,19 +383,7 @@ public class MatchesPanel extends JPanel implements ListSelectionListener {
   }
 
   public HashMap<TreeFromFile, List<Tree>> getMatchedParts() {
-    return matchedParts;
-  }
-
-  /**
-   * Set the matched parts to the given hash/list - if null is passed in,
-   * resets matchedParts to an empty hash.
-   * @param matchedParts
-   */
-  private void setMatchedParts(HashMap<TreeFromFile, List<Tree>> matchedParts) {
-    if(matchedParts == null)
-      this.matchedParts = new HashMap<TreeFromFile, List<Tree>>();
-    else
-      this.matchedParts = matchedParts;
+    return model.getMatchedParts();
   }
 
   public Color getHighlightColor() {
@@ -392,6 +406,8 @@ public class MatchesPanel extends JPanel implements ListSelectionListener {
     Font curFont = this.getFont();
     Font newFont = new Font(fontName, curFont.getStyle(), curFont.getSize());
     list.setFont(newFont);
+    widestRow = 0;
+    setFixedCellSize();
   }
 
   public void valueChanged(ListSelectionEvent arg0) {
@@ -83,6 +83,7 @@ public class PreferencesPanel extends JDialog {
   private static final String FONT_ERROR = "font";//error code if font size given is not an int > 0
   private static final String HISTORY_ERROR = "history";//error code if history size is not an int >0
   private static final String MAX_MATCH_ERROR = "maxMatch";//error code if history size is not an int >0
+  private static final String MEMORY_ERROR = "memory";//error code if treebank memory is not an int >0
 
   final JButton highlightButton;
   private JTextField setEncoding;//declared here because may change in different places
@@ -150,7 +151,7 @@ public class PreferencesPanel extends JDialog {
     //advanced preferences - headfinder, tree reader factory
     JPanel advOptions = new JPanel();
     advOptions.setBorder(BorderFactory.createTitledBorder("Advanced "));
-    advOptions.setLayout(new GridLayout(3,2,0,4));
+    advOptions.setLayout(new GridLayout(4,2,0,4));
     JLabel headfinderName = new JLabel("Head finder:");
     final JComboBox headfinderPicker = new JComboBox(new String[] {"ArabicHeadFinder", "BikelChineseHeadFinder", "ChineseHeadFinder", "ChineseSemanticHeadFinder", "CollinsHeadFinder", "LeftHeadFinder", "ModCollinsHeadFinder", "NegraHeadFinder", "SemanticHeadFinder", "SunJurafskyChineseHeadFinder", "SwbdHeadFinder", "TueBaDZHeadFinder"}); //
     headfinderPicker.setEditable(true);
@@ -168,10 +169,18 @@ public class PreferencesPanel extends JDialog {
     advOptions.add(trfPicker);
     advOptions.add(encodingLabel);
     advOptions.add(setEncoding);
+    JLabel memoryLabel = new JLabel("Treebank memory (MB): ");
+    final JTextField memoryField = new JTextField(Long.toString(FileTreeModel.getMemoryBudget() / (1024 * 1024)));
+    advOptions.add(memoryLabel);
+    advOptions.add(memoryField);
     //tsurgeon enabled box
     final JCheckBox tsurgeonCheck = new JCheckBox("Enable Tsurgeon");
     tsurgeonCheck.setSelected(InputPanel.getInstance().getTsurgeonEnabled());
 
+    //load into memory box
+    final JCheckBox memoryCheck = new JCheckBox("Load treebanks into memory");
+    memoryCheck.setSelected(FileTreeModel.isLoadIntoMemory());
+
     //matched portions only box
     final JCheckBox matchPortion = new JCheckBox("Show only matched portions of tree");
     matchPortion.setSelected(MatchesPanel.getInstance().isShowOnlyMatchedPortion());
@@ -186,6 +195,7 @@ public class PreferencesPanel extends JDialog {
     prefPanel.add(treeDisplayPrefs,c);
     prefPanel.add(advOptions,c);
     prefPanel.add(tsurgeonCheck,c);
+    prefPanel.add(memoryCheck,c);
     c.gridheight = GridBagConstraints.REMAINDER;
     prefPanel.add(matchPortion,c);
 
@@ -224,6 +234,7 @@ public class PreferencesPanel extends JDialog {
           Integer historySize = checkNumberFormat(historySizeField, PreferencesPanel.HISTORY_ERROR);
           Integer maxMatchSize = checkNumberFormat(maxMatchesSizeField, PreferencesPanel.MAX_MATCH_ERROR);
           Integer textSize = checkNumberFormat(size, PreferencesPanel.FONT_ERROR);
+          Integer memorySize = checkNumberFormat(memoryField, PreferencesPanel.MEMORY_ERROR);
 
           syncFromPrefPanel(fontPicker.getSelectedItem().toString(),
               textSize,
@@ -232,7 +243,8 @@ public class PreferencesPanel extends JDialog {
               ((ColorIcon) highlightButton.getIcon()).getColor(),
               historySize,
               maxMatchSize,
-              tsurgeonCheck.isSelected(), matchPortion.isSelected(), hf, trf, setEncoding.getText().trim());
+              tsurgeonCheck.isSelected(), matchPortion.isSelected(), hf, trf, setEncoding.getText().trim(),
+              memoryCheck.isSelected(), memorySize);
           PreferencesPanel.this.setVisible(false);
         } catch(NumberFormatException e) {
          //System.out.println("Error is: " + e.getMessage());
@@ -242,6 +254,8 @@ public class PreferencesPanel extends JDialog {
             JOptionPane.showMessageDialog(prefPanel, "Please enter an integer greater than or equal to 0 for the number of recent matches to remember.", "History size error", JOptionPane.ERROR_MESSAGE);
           else if (e.getMessage() == PreferencesPanel.HISTORY_ERROR)
             JOptionPane.showMessageDialog(prefPanel, "Please enter an integer greater than or equal to 0 for the maximum number of matches to display.", "Max Matches size error", JOptionPane.ERROR_MESSAGE);
+          else if (e.getMessage() == PreferencesPanel.MEMORY_ERROR)
+            JOptionPane.showMessageDialog(prefPanel, "Please enter an integer greater than 0 for the treebank memory, in megabytes.", "Treebank memory error", JOptionPane.ERROR_MESSAGE);
           else
             JOptionPane.showMessageDialog(prefPanel, "Please check that the font size, max matches to display, and number of recent matches to remember are all integers greater than 0.", "Size error", JOptionPane.ERROR_MESSAGE);
         } catch (Exception e) {
@@ -351,7 +365,8 @@ public class PreferencesPanel extends JDialog {
   }
 
   private void syncFromPrefPanel(String font, Integer fontSize, Color treeColor, Color matchedColor, Color highlightColor,
-      Integer historySize, Integer maxMatches, boolean enableTsurgeon, boolean matchPortionOnly, HeadFinder hf, TreeReaderFactory trf, String encoding) {
+      Integer historySize, Integer maxMatches, boolean enableTsurgeon, boolean matchPortionOnly, HeadFinder hf, TreeReaderFactory trf, String encoding,
+      boolean loadIntoMemory, Integer memorySize) {
     //general parameters
     InputPanel.getInstance().enableTsurgeon(enableTsurgeon);
     MatchesPanel.getInstance().setShowOnlyMatchedPortion(matchPortionOnly);
@@ -377,6 +392,7 @@ public class PreferencesPanel extends JDialog {
     String trfName = trf.getClass().getSimpleName();
     if(encoding != null && !encoding.equals(""))
       FileTreeModel.setCurEncoding(encoding);
+    FilePanel.getInstance().setLoadIntoMemory(loadIntoMemory, memorySize);
     if(isChinese(hfName, trfName))
         setChineseFont();
     else if(isArabic(hfName, trfName))
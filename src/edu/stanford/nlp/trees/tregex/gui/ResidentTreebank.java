@@ -0,0 +1,129 @@
+package edu.stanford.nlp.trees.tregex.gui;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import edu.stanford.nlp.io.FileSequentialCollection;
+import edu.stanford.nlp.io.RuntimeIOException;
+import edu.stanford.nlp.ling.StringLabelFactory;
+import edu.stanford.nlp.trees.*;
+
+/**
+ * A treebank read once into memory, for the GUI to search again and
+ * again without re-reading its files.  The trees are read with a
+ * <code>DiskTreebank</code> and held compactly, as the node arrays of a
+ * {@link BinaryTreebank} file in a buffer, with the node labels interned;
+ * each tree is built afresh, with <code>StringLabel</code>s, when it is
+ * iterated over.
+ * <p/>
+ * The modification times of the files are recorded when they are read, so
+ * that {@link #isStale} can tell when they have changed since.
+ */
+public class ResidentTreebank extends Treebank {
+
+  private static final TreeFactory tf = new LabeledScoredTreeFactory(new StringLabelFactory());
+
+  private final List<File> files = new ArrayList<File>();
+  private final List<Long> lastModified = new ArrayList<Long>();
+  private BinaryTreebank.TreeFile trees; // = null;
+  private long memoryUse; // = 0;
+
+  public ResidentTreebank(TreeReaderFactory trf, String encoding) {
+    super(trf, encoding);
+  }
+
+  @Override
+  public void clear() {
+    files.clear();
+    lastModified.clear();
+    trees = null;
+    memoryUse = 0;
+  }
+
+  /**
+   * Reads the trees of the files under <code>path</code> that
+   * <code>filt</code> accepts into memory, replacing any trees read before.
+   *
+   * @throws RuntimeIOException If a file cannot be read
+   */
+  @Override
+  public void loadPath(File path, FileFilter filt) {
+    clear();
+    // the times are taken first, so that a change made while reading is noticed
+    for (File file : new FileSequentialCollection(Collections.singletonList(path), filt)) {
+      files.add(file);
+      lastModified.add(file.lastModified());
+    }
+    DiskTreebank treebank = new DiskTreebank(treeReaderFactory(), encoding());
+    treebank.loadPath(path, filt);
+    BinaryTreebankWriter writer = new BinaryTreebankWriter();
+    treebank.apply(writer);
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      writer.write(bytes, path.getPath());
+      trees = new BinaryTreebank.TreeFile(ByteBuffer.wrap(bytes.toByteArray()), tf);
+      memoryUse = bytes.size();
+    } catch (IOException e) {
+      // cannot happen, writing to memory
+      throw new RuntimeIOException(e);
+    }
+  }
+
+  /**
+   * Whether any of the files the trees were read from has changed, or
+   * gone, since they were read.
+   */
+  public boolean isStale() {
+    for (int i = 0; i < files.size(); i++) {
+      if (files.get(i).lastModified() != lastModified.get(i)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** The number of bytes the trees take up in memory (roughly). */
+  public long memoryUse() {
+    return memoryUse;
+  }
+
+  @Override
+  public void apply(TreeVisitor tp) {
+    for (Tree t : this) {
+      tp.visitTree(t);
+    }
+  }
+
+  @Override
+  public int size() {
+    return (trees == null) ? 0 : trees.size();
+  }
+
+  @Override
+  public Iterator<Tree> iterator() {
+    final BinaryTreebank.TreeFile treeFile = trees;
+    return new Iterator<Tree>() {
+      private int next; // = 0;
+
+      public boolean hasNext() {
+        return treeFile != null && next < treeFile.size();
+      }
+
+      public Tree next() {
+        if ( ! hasNext()) {
+          throw new NoSuchElementException();
+        }
+        return treeFile.getTree(next++);
+      }
+
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+
+}
@@ -0,0 +1,240 @@
+package edu.stanford.nlp.trees.tregex.gui;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import edu.stanford.nlp.trees.Tree;
+import edu.stanford.nlp.trees.tregex.TregexPattern;
+import edu.stanford.nlp.trees.tregex.gui.InputPanel.TRegexGUITreeVisitor;
+import edu.stanford.nlp.util.AbstractIterator;
+import edu.stanford.nlp.util.Function;
+import edu.stanford.nlp.util.concurrent.InOrderMapper;
+
+/**
+ * Searches the active treebanks for a tregex pattern on a pool of worker
+ * threads.  The trees are read on the thread that runs the search, and
+ * split into chunks of at most {@link #CHUNK_SIZE} trees of one treebank
+ * each, which the workers match the pattern against.  The matches are
+ * collected in treebank order, and handed to a {@link Listener} in
+ * batches as they are found, so that they can be shown while the search
+ * goes on.
+ * <p/>
+ * The search stops, keeping the matches found so far, soon after the
+ * thread that runs it is interrupted: the trees are read, and matched, a
+ * chunk at a time, and both stop at the next tree.
+ */
+class TRegexGUISearch {
+
+  /** Receives the matches of a search as they are found. */
+  interface Listener {
+
+    /**
+     * Called, on the thread running the search, with the next batch of
+     * matches found.
+     *
+     * @param batch The trees matched since the last batch, and their matched parts
+     * @param treesSearched The number of trees searched so far
+     * @param progress The percentage of the trees searched so far, or -1 if
+     *     this cannot yet be estimated
+     */
+    void matchesFound(TRegexGUITreeVisitor batch, int treesSearched, double progress);
+
+  }
+
+  static final int CHUNK_SIZE = 100;
+
+  /** How often batches of matches are handed to the listener, at most */
+  private static final long BATCH_MILLIS = 200;
+
+  private final TregexPattern pattern;
+  private final List<FileTreeNode> treebanks;
+  private final int numThreads;
+  private volatile boolean cancelled; // = false;
+
+  TRegexGUISearch(TregexPattern pattern, List<FileTreeNode> treebanks, int numThreads) {
+    this.pattern = pattern;
+    this.treebanks = treebanks;
+    this.numThreads = numThreads;
+  }
+
+  /** Whether the search was stopped by an interrupt before it searched all the trees */
+  boolean wasCancelled() {
+    return cancelled;
+  }
+
+  /**
+   * Runs the search on the calling thread and the workers.
+   *
+   * @param listener Receives the matches as they are found, or null
+   * @return All the trees matched, and their matched parts
+   */
+  TRegexGUITreeVisitor run(Listener listener) {
+    TRegexGUITreeVisitor all = new TRegexGUITreeVisitor(pattern);
+    TRegexGUITreeVisitor batch = new TRegexGUITreeVisitor(pattern);
+    Function<Chunk, Chunk> matchChunk = new Function<Chunk, Chunk>() {
+      public Chunk apply(Chunk chunk) {
+        chunk.matches = new TRegexGUITreeVisitor(pattern);
+        chunk.matches.setFilename(chunk.treebank.getFilename());
+        for (Tree t : chunk.trees) {
+          if (cancelled) {
+            break;
+          }
+          chunk.matches.visitTree(t);
+        }
+        return chunk;
+      }
+    };
+    InOrderMapper.Results<Chunk, Chunk> chunks = new InOrderMapper<Chunk, Chunk>(matchChunk, numThreads).map(new ChunkIterator());
+
+    int treesSearched = 0;
+    long lastBatch = System.currentTimeMillis();
+    try {
+      while (chunks.hasNext()) {
+        Chunk chunk = chunks.next();
+        if (Thread.currentThread().isInterrupted()) {
+          cancelled = true;
+        }
+        if (cancelled) {
+          // the chunks read ahead are dropped, and the workers stop
+          break;
+        }
+        treesSearched += chunk.trees.size();
+        if (chunk.numTreesInFile >= 0) {
+          chunk.treebank.setNumTrees(chunk.numTreesInFile);
+        }
+        all.addAll(chunk.matches);
+        batch.addAll(chunk.matches);
+        long now = System.currentTimeMillis();
+        if (listener != null && now - lastBatch >= BATCH_MILLIS) {
+          listener.matchesFound(batch, treesSearched, progress(treesSearched));
+          batch = new TRegexGUITreeVisitor(pattern);
+          lastBatch = now;
+        }
+      }
+    } catch (RuntimeException e) {
+      if ( ! (e.getCause() instanceof InterruptedException)) {
+        throw e;
+      }
+      // interrupted while waiting for a worker
+      cancelled = true;
+    } finally {
+      chunks.close();
+    }
+    if (listener != null) {
+      listener.matchesFound(batch, treesSearched, cancelled ? progress(treesSearched) : 100.0);
+    }
+    return all;
+  }
+
+  /**
+   * Estimates the percentage of the trees that have been searched.  The
+   * number of trees in a treebank is known once it has been read through;
+   * for those that have not been, it is estimated from the sizes of their
+   * files, at the average size of a tree in the others.
+   */
+  private double progress(int treesSearched) {
+    long countedTrees = 0;
+    long countedBytes = 0;
+    long uncountedBytes = 0;
+    for (FileTreeNode treebank : treebanks) {
+      int numTrees = treebank.getNumTrees();
+      File file = treebank.getFile();
+      long bytes = (file == null) ? 0 : file.length();
+      if (numTrees >= 0) {
+        countedTrees += numTrees;
+        countedBytes += bytes;
+      } else {
+        uncountedBytes += bytes;
+      }
+    }
+    double totalTrees = countedTrees;
+    if (uncountedBytes > 0) {
+      if (countedTrees == 0 || countedBytes == 0) {
+        return -1;
+      }
+      totalTrees += uncountedBytes * ((double) countedTrees / countedBytes);
+    }
+    if (totalTrees == 0) {
+      return 100.0;
+    }
+    return Math.min(100.0, 100.0 * treesSearched / totalTrees);
+  }
+
+
+  /** Some consecutive trees of one treebank, and then the matches found in them. */
+  private static class Chunk {
+
+    final FileTreeNode treebank;
+    final List<Tree> trees = new ArrayList<Tree>(CHUNK_SIZE);
+    /** The number of trees in the treebank, if this is its last chunk, or else -1 */
+    int numTreesInFile = -1;
+    TRegexGUITreeVisitor matches;
+
+    Chunk(FileTreeNode treebank) {
+      this.treebank = treebank;
+    }
+
+  }
+
+  /**
+   * Reads the trees of the treebanks in chunks, until they run out or the
+   * reading thread is interrupted.
+   */
+  private class ChunkIterator extends AbstractIterator<Chunk> {
+
+    private final Iterator<FileTreeNode> treebankIterator = treebanks.iterator();
+    private FileTreeNode treebank; // = null;
+    private Iterator<Tree> treeIterator; // = null;
+    private int numTreesRead; // = 0;
+    private Chunk next; // = null;
+
+    ChunkIterator() {
+      next = readChunk();
+    }
+
+    private Chunk readChunk() {
+      if (cancelled || Thread.currentThread().isInterrupted()) {
+        cancelled = true;
+        return null;
+      }
+      if (treeIterator == null) {
+        if ( ! treebankIterator.hasNext()) {
+          return null;
+        }
+        treebank = treebankIterator.next();
+        treeIterator = treebank.getTreebank().iterator();
+        numTreesRead = 0;
+      }
+      Chunk chunk = new Chunk(treebank);
+      while (chunk.trees.size() < CHUNK_SIZE && treeIterator.hasNext()) {
+        if (Thread.currentThread().isInterrupted()) {
+          cancelled = true;
+          return null;
+        }
+        chunk.trees.add(treeIterator.next());
+      }
+      numTreesRead += chunk.trees.size();
+      if ( ! treeIterator.hasNext()) {
+        chunk.numTreesInFile = numTreesRead;
+        treeIterator = null;
+      }
+      return chunk;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return next != null;
+    }
+
+    @Override
+    public Chunk next() {
+      Chunk chunk = next;
+      next = readChunk();
+      return chunk;
+    }
+
+  } // end class ChunkIterator
+
+}
@@ -1,29 +1,59 @@
 package edu.stanford.nlp.trees.tregex.gui;
 
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
 import java.util.List;
 
 import javax.swing.BorderFactory;
 import javax.swing.JTextField;
 
+import edu.stanford.nlp.ling.StringLabelFactory;
+import edu.stanford.nlp.trees.LabeledScoredTreeFactory;
 import edu.stanford.nlp.trees.Tree;
+import edu.stanford.nlp.trees.TreeFactory;
 
 /**
  * Simple utility class for storing a tree as well as the sentence the tree represents and
  * a label with the filename of the file that the tree was stored in.
+ * <p/>
+ * The tree is kept compactly, as the values of its nodes in preorder (with
+ * equal values shared between all trees) and their numbers of children.
+ * The tree itself is only softly referenced, so that it can be given back
+ * quickly by {@link #getTree()} but can be reclaimed if memory runs low; it
+ * is then rebuilt from the compact form the next time it is asked for.
  *
  * @author Anna Rafferty
  */
 public class TreeFromFile {
 
-  private String treeString;
-  //private Tree t;
+  private static final TreeFactory tf = new LabeledScoredTreeFactory(new StringLabelFactory());
+
+  // the tree in preorder, or null if there is none
+  private final String[] values;
+  private final int[] numChildren;
+  private SoftReference<Tree> tree;
+
   private String filename;
-  private String sentence = "";
+  private String sentence; // = null;
   private JTextField label; // = null;
 
   public TreeFromFile(Tree t) {
-    //this.t = t;
-    this.treeString = t.pennString();
+    if (t == null) {
+      values = null;
+      numChildren = null;
+      return;
+    }
+    int size = t.size();
+    values = new String[size];
+    numChildren = new int[size];
+    int i = 0;
+    for (Tree node : t) {
+      String value = node.value();
+      values[i] = (value == null) ? null : value.intern();
+      numChildren[i] = node.numChildren();
+      i++;
+    }
+    tree = new SoftReference<Tree>(t);
   }
 
   public TreeFromFile(Tree t, String filename) {
@@ -39,13 +69,48 @@ public class TreeFromFile {
     this.filename = filename;
   }
 
+  /**
+   * Returns the tree.  As long as it has not been reclaimed, this is the
+   * tree this <code>TreeFromFile</code> was made with, so the matched parts
+   * a search found are its nodes; afterwards it is an equal copy.  The tree
+   * is shared, so it must not be changed: copy it first.
+   *
+   * @return The tree, or null if there is none
+   */
   public Tree getTree() {
-    try {
-      return Tree.valueOf(treeString);
-    } catch(Exception e) {
+    if (values == null) {
       return null;
     }
+    Tree t = tree.get();
+    if (t == null) {
+      t = buildTree(new int[1]);
+      tree = new SoftReference<Tree>(t);
+    }
+    return t;
+  }
 
+  /**
+   * Lets go of the tree, which is rebuilt from the compact form the next
+   * time it is asked for.  For when the tree this was made with is to be
+   * changed.
+   */
+  void forgetTree() {
+    if (tree != null) {
+      tree.clear();
+    }
+  }
+
+  /** Builds the subtree whose root is the node numbered <code>next[0]</code>, and advances past it. */
+  private Tree buildTree(int[] next) {
+    int i = next[0]++;
+    if (numChildren[i] == 0) {
+      return tf.newLeaf(values[i]);
+    }
+    List<Tree> children = new ArrayList<Tree>(numChildren[i]);
+    for (int k = 0; k < numChildren[i]; k++) {
+      children.add(buildTree(next));
+    }
+    return tf.newTreeNode(values[i], children);
   }
 
   public JTextField getLabel() {
@@ -58,12 +123,13 @@ public class TreeFromFile {
 
   @Override
   public String toString() {
-    if (sentence.length() == 0) {
-      if (this.getTree() != null) {
-        List<Tree> leaves = this.getTree().getLeaves();
+    if (sentence == null) {
+      if (values != null) {
         StringBuilder sb = new StringBuilder();
-        for (Tree leaf : leaves) {
-          sb.append(leaf).append(" ");
+        for (int i = 0; i < values.length; i++) {
+          if (numChildren[i] == 0) {
+            sb.append(values[i]).append(" ");
+          }
         }
         sentence = sb.toString();
       } else {
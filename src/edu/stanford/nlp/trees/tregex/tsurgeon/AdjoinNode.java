@@ -20,15 +20,16 @@ class AdjoinNode extends TsurgeonPattern {
   }
 
   @Override
-  public Tree evaluate(Tree t, TregexMatcher m) {
-    Tree targetNode = children[0].evaluate(t,m);
+  Tree evaluate(Tree t, TregexMatcher m, TsurgeonContext context) {
+    Tree targetNode = children[0].evaluate(t,m,context);
     Tree parent = targetNode.parent(t);
-    AuxiliaryTree ft = adjunctionTree.copy(this);
+    AuxiliaryTree ft = adjunctionTree.copy(context);
     ft.foot.setChildren(targetNode.getChildrenAsList());
     if (parent==null) {
       return ft.tree;
     } else {
       int i = parent.indexOf(targetNode);
+      context.changingChildren(parent);
       parent.setChild(i,ft.tree);
       return t;
     }
@@ -17,10 +17,10 @@ class AdjoinToFootNode extends TsurgeonPattern {
   }
 
   @Override
-  public Tree evaluate(Tree t, TregexMatcher m) {
-    Tree targetNode = children[0].evaluate(t,m);
+  Tree evaluate(Tree t, TregexMatcher m, TsurgeonContext context) {
+    Tree targetNode = children[0].evaluate(t,m,context);
     Tree parent = targetNode.parent(t);
-    AuxiliaryTree ft = adjunctionTree.copy(this);
+    AuxiliaryTree ft = adjunctionTree.copy(context);
     // System.err.println("ft=" + ft + "; ft.foot=" + ft.foot + "; ft.tree=" + ft.tree);
     Tree parentOfFoot = ft.foot.parent(ft.tree);
     if(parentOfFoot == null) {
@@ -34,6 +34,7 @@ class AdjoinToFootNode extends TsurgeonPattern {
     }
     else {
       int j = parent.indexOf(targetNode);
+      context.changingChildren(parent);
       parent.setChild(j,ft.tree);
       parentOfFoot.setChild(i,targetNode);
       return t;
@@ -17,10 +17,11 @@ class AdjoinToHeadNode extends TsurgeonPattern {
   }
 
   @Override
-  public Tree evaluate(Tree t, TregexMatcher m) {
-    Tree targetNode = children[0].evaluate(t,m);
-    AuxiliaryTree ft = adjunctionTree.copy(this);
+  Tree evaluate(Tree t, TregexMatcher m, TsurgeonContext context) {
+    Tree targetNode = children[0].evaluate(t,m,context);
+    AuxiliaryTree ft = adjunctionTree.copy(context);
     ft.foot.setChildren(targetNode.getChildrenAsList());
+    context.changingChildren(targetNode);
     targetNode.setChildren(ft.tree.getChildrenAsList());
     return t;
   }
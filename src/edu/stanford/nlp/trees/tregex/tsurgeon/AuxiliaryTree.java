@@ -49,16 +49,16 @@ class AuxiliaryTree {
   }
 
   /**
-   * Copies the Auxiliary tree.  Also, puts the new names->nodes map in the TsurgeonPattern that called copy.
-   * @param p
+   * Copies the Auxiliary tree.  Also, puts the new names->nodes map in the context of the surgery that called copy.
+   * @param context
    * @return
    */
-  public AuxiliaryTree copy(TsurgeonPattern p) {
+  public AuxiliaryTree copy(TsurgeonContext context) {
     Map<String,Tree> newNamesToNodes = new HashMap<String,Tree>();
     Pair<Tree,Tree> result = copyHelper(tree,newNamesToNodes);
     //if(! result.first().dominates(result.second()))
       //System.err.println("Error -- aux tree copy doesn't dominate foot copy.");
-    p.root.newNodeNames.putAll(newNamesToNodes);
+    context.newNodeNames.putAll(newNamesToNodes);
     return new AuxiliaryTree(result.first(), result.second(), newNamesToNodes, originalTreeString);
   }
 
@@ -68,7 +68,7 @@ class AuxiliaryTree {
     Tree newFoot = null;
     if (node.isLeaf()) {
       if (node == foot) { // found the foot node; pass it up.
-        clone = node.treeFactory().newTreeNode(node.label(),new ArrayList<Tree>(0));
+        clone = node.treeFactory().newTreeNode(node.label().labelFactory().newLabel(node.label()),new ArrayList<Tree>(0));
         newFoot = clone;
       } else {
         clone = node.treeFactory().newLeaf(node.label().labelFactory().newLabel(node.label()));
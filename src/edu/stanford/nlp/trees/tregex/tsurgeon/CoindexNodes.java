@@ -15,13 +15,19 @@ public class CoindexNodes extends TsurgeonPattern {
   }
 
   @Override
-  public Tree evaluate(Tree t, TregexMatcher m) {
-    int newIndex = root.coindexer.generateIndex();
+  Tree evaluate(Tree t, TregexMatcher m, TsurgeonContext context) {
+    int newIndex = context.coindexer.generateIndex();
     for(TsurgeonPattern child : children) {
-      Tree node = child.evaluate(t,m);
+      Tree node = child.evaluate(t,m,context);
+      context.changingValue(node);
       node.label().setValue(node.label().value() + coindexationIntroductionString + newIndex);
     }
     return t;
   }
 
+  @Override
+  boolean coindexes() {
+    return true;
+  }
+
 }
@@ -20,14 +20,15 @@ class DeleteNode extends TsurgeonPattern {
 
 
   @Override
-  public Tree evaluate(Tree t, TregexMatcher m) {
+  Tree evaluate(Tree t, TregexMatcher m, TsurgeonContext context) {
     Tree result = t;
     for (TsurgeonPattern child : children) {
-      Tree nodeToDelete = child.evaluate(t, m);
+      Tree nodeToDelete = child.evaluate(t, m, context);
       if (nodeToDelete == t) {
         result = null;
       }
       Tree parent = nodeToDelete.parent(t);
+      context.changingChildren(parent);
       parent.removeChild(Trees.objectEqualityIndexOf(parent,nodeToDelete));
     }
     return result;
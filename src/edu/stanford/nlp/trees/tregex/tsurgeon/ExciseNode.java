@@ -27,9 +27,9 @@ class ExciseNode extends TsurgeonPattern {
   }
 
   @Override
-  public Tree evaluate(Tree t, TregexMatcher m) {
-    Tree topNode = children[0].evaluate(t,m);
-    Tree bottomNode = children[1].evaluate(t,m);
+  Tree evaluate(Tree t, TregexMatcher m, TsurgeonContext context) {
+    Tree topNode = children[0].evaluate(t,m,context);
+    Tree bottomNode = children[1].evaluate(t,m,context);
     if(Tsurgeon.verbose) {
       System.err.println("Excising...original tree:");
       t.pennPrint(System.err);
@@ -41,6 +41,7 @@ class ExciseNode extends TsurgeonPattern {
     if(Tsurgeon.verbose)
       System.err.println("Parent: " + parent);
     int i = Trees.objectEqualityIndexOf(parent,topNode);
+    context.changingChildren(parent);
     parent.removeChild(i);
     for(Tree child : bottomNode.children()) {
       parent.addChild(i,child);
@@ -13,8 +13,8 @@ class FetchNode extends TsurgeonPattern {
   }
 
   @Override
-  public Tree evaluate(Tree t, TregexMatcher m) {
-    Tree result = root.newNodeNames.get(label);
+  Tree evaluate(Tree t, TregexMatcher m, TsurgeonContext context) {
+    Tree result = context.newNodeNames.get(label);
     if (result == null) {
       result = m.getNode(label);
     }
@@ -16,8 +16,8 @@ class HoldTreeNode extends TsurgeonPattern {
   }
 
   @Override
-  public Tree evaluate(Tree t, TregexMatcher m) {
-    return subTree.copy(this).tree;
+  Tree evaluate(Tree t, TregexMatcher m, TsurgeonContext context) {
+    return subTree.copy(context).tree;
   }
 
   @Override
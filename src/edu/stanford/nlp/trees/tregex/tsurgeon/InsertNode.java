@@ -16,20 +16,15 @@ class InsertNode extends TsurgeonPattern {
     this.l = l;
   }
 
-  @Override
-  protected void setRoot(TsurgeonPatternRoot root) {
-    super.setRoot(root);
-    l.setRoot(root);
-  }
-
   public InsertNode(AuxiliaryTree t, TreeLocation l) {
     this(new HoldTreeNode(t),l);
   }
 
   @Override
-  public Tree evaluate(Tree t, TregexMatcher m) {
-    Tree nodeToInsert = children[0].evaluate(t,m);
-    Pair<Tree,Integer> position = l.evaluate(t,m);
+  Tree evaluate(Tree t, TregexMatcher m, TsurgeonContext context) {
+    Tree nodeToInsert = children[0].evaluate(t,m,context);
+    Pair<Tree,Integer> position = l.evaluate(t,m,context);
+    context.changingChildren(position.first());
     position.first().insertDtr(nodeToInsert,position.second());
     return t;
   }
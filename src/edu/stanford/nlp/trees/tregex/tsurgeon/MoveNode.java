@@ -17,17 +17,13 @@ class MoveNode extends TsurgeonPattern {
   }
 
   @Override
-  protected void setRoot(TsurgeonPatternRoot root) {
-    super.setRoot(root);
-    l.setRoot(root);
-  }
-
-  @Override
-  public Tree evaluate(Tree t, TregexMatcher m) {
-    Tree nodeToMove = children[0].evaluate(t,m);
+  Tree evaluate(Tree t, TregexMatcher m, TsurgeonContext context) {
+    Tree nodeToMove = children[0].evaluate(t,m,context);
     Tree oldParent = nodeToMove.parent(t);
+    context.changingChildren(oldParent);
     oldParent.removeChild(Trees.objectEqualityIndexOf(oldParent,nodeToMove));
-    Pair<Tree,Integer> position = l.evaluate(t,m);
+    Pair<Tree,Integer> position = l.evaluate(t,m,context);
+    context.changingChildren(position.first());
     position.first().insertDtr(nodeToMove,position.second());
     return t;
   }
@@ -65,8 +65,9 @@ class RelabelNode extends TsurgeonPattern {
 
 
   @Override
-  public Tree evaluate(Tree t, TregexMatcher tm) {
-    Tree nodeToRelabel = children[0].evaluate(t, tm);
+  Tree evaluate(Tree t, TregexMatcher tm, TsurgeonContext context) {
+    Tree nodeToRelabel = children[0].evaluate(t, tm, context);
+    context.changingValue(nodeToRelabel);
     if (fixedNewLabel) {
       nodeToRelabel.label().setValue(newLabel);
     } else {
@@ -17,13 +17,14 @@ class ReplaceNode extends TsurgeonPattern {
   }
 
   @Override
-  public Tree evaluate(Tree t, TregexMatcher m) {
-    Tree oldNode = children[0].evaluate(t,m);
-    Tree newNode = children[1].evaluate(t,m);
+  Tree evaluate(Tree t, TregexMatcher m, TsurgeonContext context) {
+    Tree oldNode = children[0].evaluate(t,m,context);
+    Tree newNode = children[1].evaluate(t,m,context);
     if(oldNode==t)
       return newNode;
     Tree parent = oldNode.parent(t);
     int i = parent.indexOf(oldNode);
+    context.changingChildren(parent);
     parent.removeChild(i);
     parent.insertDtr(newNode,i);
     return t;
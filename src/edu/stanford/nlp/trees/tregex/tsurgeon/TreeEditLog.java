@@ -0,0 +1,180 @@
+package edu.stanford.nlp.trees.tregex.tsurgeon;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.stanford.nlp.trees.DiskTreebank;
+import edu.stanford.nlp.trees.Tree;
+import edu.stanford.nlp.trees.Treebank;
+import edu.stanford.nlp.trees.tregex.TregexPattern;
+import edu.stanford.nlp.trees.tregex.TregexPatternSet;
+import edu.stanford.nlp.util.Pair;
+
+/**
+ * A record of how a tree was before surgery was done on it, so that the
+ * tree can be put back as it was, instead of copying every tree before
+ * operating on it in case the original is wanted afterwards.  Give one to
+ * {@link Tsurgeon#processPatternsOnTree(java.util.List,
+ * edu.stanford.nlp.trees.tregex.TregexPatternSet, Tree, TreeEditLog)}, and
+ * the first time an operation changes the children or the label of a node,
+ * the node's old children, or old label value, are kept.  A tree the
+ * operations do not touch costs nothing, and for one they do, only the
+ * nodes on the paths they change are recorded.
+ * <p/>
+ * {@link #undo} puts the original tree back, node for node, which the
+ * result of the surgery shares nodes with, so the result must be used (for
+ * instance printed) before then.  Nodes the operations made, such as
+ * inserted auxiliary trees, are not part of the original tree.
+ * <p/>
+ * A log must only be used by one thread at a time.
+ */
+public class TreeEditLog {
+
+  private final Map<Tree, Tree[]> oldChildren = new IdentityHashMap<Tree, Tree[]>();
+  private final Map<Tree, String> oldValues = new IdentityHashMap<Tree, String>();
+
+  /** Keeps the children of <code>node</code>, if they have not been kept already, before they change. */
+  void recordChildren(Tree node) {
+    if ( ! oldChildren.containsKey(node)) {
+      // setChild() changes the array itself, so it is copied
+      oldChildren.put(node, node.children().clone());
+    }
+  }
+
+  /** Keeps the label value of <code>node</code>, if it has not been kept already, before it changes. */
+  void recordValue(Tree node) {
+    if ( ! oldValues.containsKey(node)) {
+      oldValues.put(node, node.label().value());
+    }
+  }
+
+  /** Whether nothing has been changed since the log was made or last cleared. */
+  public boolean isEmpty() {
+    return oldChildren.isEmpty() && oldValues.isEmpty();
+  }
+
+  /**
+   * Puts the nodes that were changed back as they were, and clears the
+   * log.
+   */
+  public void undo() {
+    for (Map.Entry<Tree, Tree[]> entry : oldChildren.entrySet()) {
+      entry.getKey().setChildren(entry.getValue());
+    }
+    for (Map.Entry<Tree, String> entry : oldValues.entrySet()) {
+      entry.getKey().label().setValue(entry.getValue());
+    }
+    clear();
+  }
+
+  /** Forgets the changes, keeping them, so that the log can be used for another tree. */
+  public void clear() {
+    if ( ! isEmpty()) {
+      oldChildren.clear();
+      oldValues.clear();
+    }
+  }
+
+
+  /** Patterns and operations for {@link #main} to check, if it is given none. */
+  private static final String[][] CHECK_OPERATIONS = {
+    { "NP=n < (DT=d $+ NN)", "prune d" },
+    { "NP=n < (DT=d $+ NN)", "excise n n" },
+    { "VP=v < (VBD=vb $+ NP=o) !< ADVP", "relabel vb VBX" },
+    { "S < (NP-SBJ=s $+ VP=v) !<< FOO", "move s $- v" },
+    { "NP=n < NNP=p !< ADJP", "insert (ADJP (JJ big)) $+ p" },
+    { "NP=n < CD=c !<< /^QQ/", "replace c (QQ (CD 42))" },
+    { "PP=p < IN !> XP", "adjoin (XP PP@) p" },
+    { "PP=p < IN !> PP", "adjoinH (XP PP@) p" },
+    { "PP=p < IN !> YY !> XP", "adjoinF (XP (YY x) PP@) p" },
+    { "S < (NP-SBJ=a $+ VP=b) !< /-[0-9]/", "coindex a b" },
+    { "NP=n", "relabel n /^NP$/NP-X/" },
+    { "-NONE-=e", "prune e" },
+    { "NP=n < NNP=p !<< ZZ", "insert (ZZ=z (JJ big)) $+ p" },
+  };
+
+  /**
+   * For testing: checks that undoing the log of some surgery gives back
+   * the original tree.  Each operation, and then all of them in turn, is
+   * done on each tree of the treebank twice: on a copy of the tree and its
+   * labels, as was done before there were edit logs, and on the tree itself
+   * with a log.
+   * The two results must be equal, and after {@link #undo} the tree must
+   * equal the copy, made of the same nodes as before the surgery.
+   * <br>
+   * Usage: <code>
+   * java edu.stanford.nlp.trees.tregex.tsurgeon.TreeEditLog treebankPath [operationFile]*
+   * </code>
+   *
+   * @param args The treebank path, then files of a pattern and operations
+   *     each, as {@link Tsurgeon#getOperationFromFile} reads, or none to
+   *     check some operations of each kind
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length < 1) {
+      System.err.println("usage: TreeEditLog treebankPath [operationFile]*");
+      return;
+    }
+    Treebank treebank = new DiskTreebank();
+    treebank.loadPath(args[0]);
+    List<Pair<TregexPattern,TsurgeonPattern>> all = new ArrayList<Pair<TregexPattern,TsurgeonPattern>>();
+    if (args.length > 1) {
+      for (int i = 1; i < args.length; i++) {
+        all.add(Tsurgeon.getOperationFromFile(args[i]));
+      }
+    } else {
+      for (String[] operation : CHECK_OPERATIONS) {
+        all.add(new Pair<TregexPattern,TsurgeonPattern>(TregexPattern.safeCompile(operation[0], true),
+                                                        Tsurgeon.parseOperation(operation[1])));
+      }
+    }
+    List<List<Pair<TregexPattern,TsurgeonPattern>>> scripts = new ArrayList<List<Pair<TregexPattern,TsurgeonPattern>>>();
+    for (Pair<TregexPattern,TsurgeonPattern> op : all) {
+      scripts.add(Collections.singletonList(op));
+    }
+    scripts.add(all);
+    TreeEditLog log = new TreeEditLog();
+    int trees = 0, edited = 0;
+    for (Tree t : treebank) {
+      for (List<Pair<TregexPattern,TsurgeonPattern>> ops : scripts) {
+        TregexPatternSet patternSet = Tsurgeon.getPatternSet(ops);
+        Tree copy = t.deeperCopy();
+        List<Tree> nodes = t.subTreeList();
+        Tree expected = Tsurgeon.processPatternsOnTree(ops, patternSet, t.deeperCopy());
+        Tree result = Tsurgeon.processPatternsOnTree(ops, patternSet, t, log);
+        boolean sameResult = (expected == null) ? result == null : expected.equals(result);
+        if ( ! log.isEmpty()) {
+          edited++;
+        }
+        log.undo();
+        if ( ! sameResult || ! t.equals(copy) || ! sameNodes(nodes, t.subTreeList())) {
+          System.err.println((sameResult ? "Undo does not restore" : "The log changes the result of")
+                             + " " + ops.get(ops.size() - 1).first() + " on:");
+          copy.pennPrint(System.err);
+          System.exit(1);
+        }
+      }
+      trees++;
+    }
+    System.out.println("Undid surgery on " + edited + " of " + (trees * scripts.size())
+                       + " trees and scripts with no errors.");
+  }
+
+  /** Whether two lists hold the same nodes, by identity, in the same order. */
+  private static boolean sameNodes(List<Tree> a, List<Tree> b) {
+    if (a.size() != b.size()) {
+      return false;
+    }
+    for (int i = 0; i < a.size(); i++) {
+      if (a.get(i) != b.get(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+}
@@ -21,16 +21,12 @@ class TreeLocation {
     this.p = p;
   }
 
-  void setRoot(TsurgeonPatternRoot root) {
-    p.setRoot(root);
-  }
-
   private static final Pattern daughterPattern = Pattern.compile(">-?([0-9]+)");
 
-  Pair<Tree,Integer> evaluate(Tree t, TregexMatcher tm) {
+  Pair<Tree,Integer> evaluate(Tree t, TregexMatcher tm, TsurgeonContext context) {
     int newIndex = -1;
     Tree parent = null;
-    Tree relativeNode = p.evaluate(t,tm);
+    Tree relativeNode = p.evaluate(t,tm,context);
     Matcher m = daughterPattern.matcher(relation);
     if (m.matches()) {
       newIndex = Integer.parseInt(m.group(1))-1;
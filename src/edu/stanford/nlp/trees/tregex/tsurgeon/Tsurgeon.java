@@ -31,8 +31,12 @@ package edu.stanford.nlp.trees.tregex.tsurgeon;
 import edu.stanford.nlp.trees.*;
 import edu.stanford.nlp.trees.tregex.TregexPattern;
 import edu.stanford.nlp.trees.tregex.TregexMatcher;
+import edu.stanford.nlp.trees.tregex.TregexPatternSet;
+import edu.stanford.nlp.util.Factory;
+import edu.stanford.nlp.util.Function;
 import edu.stanford.nlp.util.StringUtils;
 import edu.stanford.nlp.util.Pair;
+import edu.stanford.nlp.util.concurrent.InOrderMapper;
 
 import java.util.*;
 import java.util.regex.Pattern;
@@ -79,7 +83,11 @@ import java.io.*;
  * <p>
  * <i>Note:</i> If you want to apply multiple surgery patterns, you will not want to call
  * processPatternOnTrees, but rather to call processPatternsOnTree, and to loop through the
- * trees yourself.  This is much faster.
+ * trees yourself.  This is much faster.  Or call {@link #processPatternsOnTrees}, which can
+ * also spread the trees over several threads.
+ * <p>
+ * The compiled patterns and operations are not changed by the surgery, so the
+ * same ones can be applied to different trees on several threads at once.
  * <p>
  * For more information on using Tsurgeon from the command line,
  * see the {@link #main} method and the package Javadoc.
@@ -124,6 +132,7 @@ public class Tsurgeon {
    *   <code>-s</code> Print each output tree on one line (default is pretty-printing).
    *   <code>-m</code> For every tree that had a matching pattern, print "before" (prepended as "Operated on:") and "after" (prepended as "Result:").  Unoperated trees just pass through the transducer as usual.
    *   <code>-encoding X</code> Uses character set X for input and output of trees.
+   *   <code>-threads n</code> Do the surgery on <code>n</code> threads.  The trees are still read, and printed, in order, so the output is the same as with one thread.
    * </ul>
    *
    * <h4>Legal operation syntax:</h4>
@@ -163,11 +172,13 @@ public class Tsurgeon {
     String matchedOption = "-m"; // if set, then print original form of trees that are matched & thus operated on
     String patternOperationOption = "-po";
     String treeFileOption = "-treeFile";
+    String threadsOption = "-threads";
     Map<String,Integer> flagMap = new HashMap<String,Integer>();
     flagMap.put(patternOperationOption,2);
     flagMap.put(treeFileOption,1);
     flagMap.put(singleLineOption,0);
     flagMap.put(encodingOption,1);
+    flagMap.put(threadsOption,1);
     Map<String,String[]> argsMap = StringUtils.argsToMap(args,flagMap);
     args = argsMap.get(null);
 
@@ -175,7 +186,7 @@ public class Tsurgeon {
     if(argsMap.containsKey(singleLineOption))   treePrintFormats = "oneline,";   else treePrintFormats = "penn,";
     if(argsMap.containsKey(encodingOption)) encoding = argsMap.get(encodingOption)[0];
 
-    TreePrint tp = new TreePrint(treePrintFormats, new PennTreebankLanguagePack());
+    final TreePrint tp = new TreePrint(treePrintFormats, new PennTreebankLanguagePack());
     PrintWriter pwOut = new PrintWriter(new OutputStreamWriter(System.out,encoding), true);
     tp.setPrintWriter(pwOut);
 
@@ -183,37 +194,113 @@ public class Tsurgeon {
     if (argsMap.containsKey(treeFileOption)) {
       trees.loadPath(argsMap.get(treeFileOption)[0]);
     }
-    List<Pair<TregexPattern,TsurgeonPattern>> ops = new ArrayList<Pair<TregexPattern,TsurgeonPattern>>();
-
+    List<Pair<TregexPattern,TsurgeonPattern>> ops = getOperations(argsMap.get(patternOperationOption), args);
+    if (verbose) {
+      for (Pair<TregexPattern,TsurgeonPattern> op : ops) {
+        System.err.println(op.second());
+      }
+    }
+    boolean printMatched = argsMap.containsKey(matchedOption);
+    if (argsMap.containsKey(threadsOption)) {
+      int numThreads = Integer.parseInt(argsMap.get(threadsOption)[0]);
+      // the operations are shared, but each worker thread keeps its own
+      // state for printing
+      final List<Pair<TregexPattern,TsurgeonPattern>> sharedOps = ops;
+      final TregexPatternSet patternSet = getPatternSet(ops);
+      final boolean printMatchedTrees = printMatched;
+      InOrderMapper.Results<Tree,String> results = new InOrderMapper<Tree,String>(new Factory<Function<Tree,String>>() {
+        private static final long serialVersionUID = 1L;
+        public Function<Tree,String> create() {
+          return new SurgeryPrinter(sharedOps, patternSet, tp, printMatchedTrees);
+        }
+      }, numThreads).map(trees.iterator());
+      try {
+        while (results.hasNext()) {
+          pwOut.print(results.next());
+          pwOut.flush();
+        }
+      } finally {
+        results.close();
+      }
+    } else {
+      SurgeryPrinter printer = new SurgeryPrinter(ops, getPatternSet(ops), tp, printMatched);
+      for (Tree t : trees) {
+        pwOut.print(printer.apply(t));
+        pwOut.flush();
+      }
+    }
+  }
 
-    if (argsMap.containsKey(patternOperationOption)) {
-      TregexPattern matchPattern = TregexPattern.compile(argsMap.get(patternOperationOption)[0]);
-      TsurgeonPattern p = parseOperation(argsMap.get(patternOperationOption)[1]);
+  /**
+   * Reads the operations given on the command line: either the one
+   * <code>-po</code> pattern and operation, or the operations in the files.
+   */
+  private static List<Pair<TregexPattern,TsurgeonPattern>> getOperations(String[] patternOperation, String[] operationFiles) throws Exception {
+    List<Pair<TregexPattern,TsurgeonPattern>> ops = new ArrayList<Pair<TregexPattern,TsurgeonPattern>>();
+    if (patternOperation != null) {
+      TregexPattern matchPattern = TregexPattern.compile(patternOperation[0]);
+      TsurgeonPattern p = parseOperation(patternOperation[1]);
       ops.add(new Pair<TregexPattern,TsurgeonPattern>(matchPattern,p));
     }
     else {
-      for(String arg : args) {
-        Pair<TregexPattern,TsurgeonPattern> pair = getOperationFromFile(arg);
-        if(verbose)
-          System.err.println(pair.second());
-        ops.add(pair);
+      for(String arg : operationFiles) {
+        ops.add(getOperationFromFile(arg));
       }
     }
-    for (Tree t : trees ) {
-      Tree original = t.deeperCopy();
-      Tree result = processPatternsOnTree(ops, t);
-      if (argsMap.containsKey(matchedOption) && matchedOnTree) {
-        pwOut.println("Operated on: ");
-        disposeOfTree(original,tp,pwOut);
-        pwOut.println("Result: ");
+    return ops;
+  }
+
+  /**
+   * Does the surgery on a tree, and returns what {@link #main} prints for
+   * it.  An instance must only be used by one thread at a time.
+   */
+  private static class SurgeryPrinter implements Function<Tree,String> {
+
+    private final List<Pair<TregexPattern,TsurgeonPattern>> ops;
+    private final TregexPatternSet patternSet;
+    private final TreePrint tp;
+    private final boolean printMatched;
+    // with an edit log if printMatched, so that the original of a tree that
+    // was operated on can be printed
+    private final TsurgeonContext context;
+
+    SurgeryPrinter(List<Pair<TregexPattern,TsurgeonPattern>> ops, TregexPatternSet patternSet,
+                   TreePrint tp, boolean printMatched) {
+      this.ops = ops;
+      this.patternSet = patternSet;
+      this.tp = tp;
+      this.printMatched = printMatched;
+      context = new TsurgeonContext(printMatched ? new TreeEditLog() : null);
+    }
+
+    public String apply(Tree t) {
+      StringWriter sw = new StringWriter();
+      PrintWriter pw = new PrintWriter(sw);
+      Tree result = processPatternsOnTree(ops, patternSet, t, context);
+      if (printMatched && context.matched) {
+        // the result shares nodes with the original, so it is printed
+        // before the surgery is undone to get the original back
+        StringWriter resultSW = new StringWriter();
+        PrintWriter resultPW = new PrintWriter(resultSW);
+        disposeOfTree(result,tp,resultPW);
+        resultPW.flush();
+        context.edits.undo();
+        pw.println("Operated on: ");
+        disposeOfTree(t,tp,pw);
+        pw.println("Result: ");
+        pw.print(resultSW.toString());
+      } else {
+        disposeOfTree(result,tp,pw);
       }
-      disposeOfTree(result,tp,pwOut);
+      pw.flush();
+      return sw.toString();
     }
+
   }
 
   private static void disposeOfTree(Tree t, TreePrint tp, PrintWriter pw) {
     if (t==null) {
-      System.out.println("null");
+      pw.println("null");
     } else {
       tp.printTree(t,pw);
     }
@@ -346,30 +433,145 @@ public class Tsurgeon {
    * @return t, which has been surgically modified.
    */
   public static Tree processPattern(TregexPattern matchPattern, TsurgeonPattern p, Tree t) {
-    TregexMatcher m = matchPattern.matcher(t);
-    while(m.find()) {
-      t = p.evaluate(t,m);
-      if(t==null)
-        break;
-      m = matchPattern.matcher(t);
-    }
-    return t;
+    return processPattern(matchPattern, p, t, null);
   }
 
-  private static boolean matchedOnTree; // hack-in field for seeing whether there was a match.
+  /**
+   * Like {@link #processPattern(TregexPattern, TsurgeonPattern, Tree)}, but
+   * records what the surgery changes in <code>edits</code>, so that the
+   * original tree can be got back without copying it first.
+   *
+   * @param matchPattern A {@link TregexPattern} to be matched against a {@link Tree}.
+   * @param p A {@link TsurgeonPattern} to apply.
+   * @param t the {@link Tree} to match against and perform surgery on.
+   * @param edits Where to record the changes, or null not to
+   * @return t, which has been surgically modified.
+   */
+  public static Tree processPattern(TregexPattern matchPattern, TsurgeonPattern p, Tree t, TreeEditLog edits) {
+    List<Pair<TregexPattern,TsurgeonPattern>> ops = Collections.singletonList(new Pair<TregexPattern,TsurgeonPattern>(matchPattern, p));
+    return processPatternsOnTree(ops, getPatternSet(ops), t, edits);
+  }
 
+  /**
+   * Applies each of a list of operations in turn to a tree: for each pair
+   * of a {@link TregexPattern} and a {@link TsurgeonPattern}, the surgery
+   * is done for as long as the pattern matches the tree.
+   *
+   * @param ops The patterns and surgical operations, in the order to apply them
+   * @param t the {@link Tree} to match against and perform surgery on.
+   * @return t, which has been surgically modified, or null if it was deleted
+   */
   public static Tree processPatternsOnTree(List<Pair<TregexPattern, TsurgeonPattern>> ops, Tree t) {
-    matchedOnTree = false;
+    return processPatternsOnTree(ops, getPatternSet(ops), t);
+  }
+
+  /**
+   * Returns a {@link TregexPatternSet} of the match patterns of
+   * <code>ops</code>, in order, for use with {@link
+   * #processPatternsOnTree(List, TregexPatternSet, Tree)}.
+   */
+  public static TregexPatternSet getPatternSet(List<Pair<TregexPattern, TsurgeonPattern>> ops) {
+    List<TregexPattern> patterns = new ArrayList<TregexPattern>(ops.size());
     for (Pair<TregexPattern,TsurgeonPattern> op : ops) {
+      patterns.add(op.first());
+    }
+    return new TregexPatternSet(patterns);
+  }
+
+  /**
+   * Like {@link #processPatternsOnTree(List, Tree)}, but uses
+   * <code>patternSet</code> to find, in one walk over the tree, the nodes
+   * whose labels each pattern could match, and only tries to match each
+   * pattern at those nodes.  Operations whose patterns match none of the
+   * labels in the tree are skipped altogether.  When the same operations are
+   * applied to many trees, make the pattern set once with {@link
+   * #getPatternSet}.
+   *
+   * @param ops The patterns and surgical operations, in the order to apply them
+   * @param patternSet The match patterns of <code>ops</code>, in the same order
+   * @param t the {@link Tree} to match against and perform surgery on.
+   * @return t, which has been surgically modified, or null if it was deleted
+   */
+  public static Tree processPatternsOnTree(List<Pair<TregexPattern, TsurgeonPattern>> ops, TregexPatternSet patternSet, Tree t) {
+    return processPatternsOnTree(ops, patternSet, t, (TreeEditLog) null);
+  }
+
+  /**
+   * Like {@link #processPatternsOnTree(List, TregexPatternSet, Tree)}, but
+   * records in <code>edits</code> the nodes the operations change, as they
+   * were before, so that {@link TreeEditLog#undo} can put the original tree
+   * back.  This is much cheaper than copying each tree before operating on
+   * it, as trees that are not matched are not touched at all.
+   *
+   * @param ops The patterns and surgical operations, in the order to apply them
+   * @param patternSet The match patterns of <code>ops</code>, in the same order
+   * @param t the {@link Tree} to match against and perform surgery on.
+   * @param edits Where to record the changes, or null not to
+   * @return t, which has been surgically modified, or null if it was deleted
+   */
+  public static Tree processPatternsOnTree(List<Pair<TregexPattern, TsurgeonPattern>> ops, TregexPatternSet patternSet, Tree t, TreeEditLog edits) {
+    return processPatternsOnTree(ops, patternSet, t, new TsurgeonContext(edits));
+  }
+
+  /**
+   * Applies operations to a tree as {@link
+   * #processPatternsOnTree(List, TregexPatternSet, Tree, TreeEditLog)}
+   * does, keeping the state of the surgery in <code>context</code>.
+   */
+  private static Tree processPatternsOnTree(List<Pair<TregexPattern, TsurgeonPattern>> ops, TregexPatternSet patternSet, Tree t, TsurgeonContext context) {
+    context.matched = false;
+    // the nodes each pattern could match, found afresh after surgery
+    List<List<Tree>> candidates = patternSet.candidateNodes(t);
+    boolean changed = false;
+    PreorderWalk walk = null;
+    for (int i = 0, n = ops.size(); i < n; i++) {
+      Pair<TregexPattern,TsurgeonPattern> op = ops.get(i);
+      if (changed) {
+        candidates = patternSet.candidateNodes(t);
+        changed = false;
+      }
+      if (candidates.get(i).isEmpty()) {
+        continue;
+      }
+      // Surgery only changes the subtree of the match's root, its parent's
+      // children where it was, and the nodes above it.  So if the pattern
+      // only looks within the subtree of the node it matches, the nodes
+      // before the match that do not dominate it still do not match
+      // afterwards, and the search for the next match goes on from there,
+      // rather than from the root.
+      boolean local = op.first().isSubtreeLocal();
+      TregexMatcher m = op.first().matcher(t);
       try {
-        TregexMatcher m = op.first().matcher(t);
-        while (m.find()) {
-          matchedOnTree = true;
-          t = op.second().evaluate(t,m);
-          if (t == null) {
+        Tree match = null;
+        for (Tree node : candidates.get(i)) {
+          if (m.findAt(node)) {
+            match = node;
+            break;
+          }
+        }
+        if (match != null) {
+          if (walk == null) {
+            walk = new PreorderWalk();
+          }
+          walk.start(t);
+          walk.skipTo(match);
+        }
+        while (match != null) {
+          context.matched = true;
+          context.startSurgery(t, op.second());
+          Tree result = op.second().evaluate(t, m, context);
+          changed = true;
+          if (result == null) {
             return null;
           }
-          m = op.first().matcher(t);
+          if (local && result == t) {
+            walk.resume();
+          } else {
+            walk.start(result);
+          }
+          t = result;
+          m.reset(t);
+          match = nextMatch(walk, patternSet, i, m);
         }
       } catch (NullPointerException npe) {
         throw new RuntimeException("Tsurgeon.processPatternsOnTree failed to match label for pattern: " + op.first() + ", " + op.second(), npe);
@@ -378,7 +580,195 @@ public class Tsurgeon {
     return t;
   }
 
+  /**
+   * Returns the next node given by <code>walk</code> at which the pattern
+   * with the given id matches, or null if there is none.
+   */
+  private static Tree nextMatch(PreorderWalk walk, TregexPatternSet patternSet, int id, TregexMatcher m) {
+    for (Tree node = walk.next(); node != null; node = walk.next()) {
+      if (patternSet.isCandidate(node, id) && m.findAt(node)) {
+        return node;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * A walk over the nodes of a tree in preorder, which after surgery at the
+   * node it last gave can go on from where the tree may have changed.  It
+   * keeps the path from the root to that node, and for each node on the
+   * path, which of its children comes next and which came before it.
+   */
+  private static class PreorderWalk {
+
+    private Tree[] path = new Tree[32];
+    private int[] nextChild = new int[32];
+    private Tree[] previousSibling = new Tree[32];
+    private int depth; // = 0;
+    /** The root, until it has been given. */
+    private Tree root; // = null;
+    /**
+     * While nodes on the path are given again, the next of them, how many
+     * there are, and the child of the last of them to go on from.
+     */
+    private int replay; // = 0;
+    private int replayEnd; // = 0;
+    private int replayChild; // = 0;
 
+    /** Starts the walk over at <code>root</code>. */
+    void start(Tree root) {
+      this.root = root;
+      depth = 0;
+      replay = 0;
+      replayEnd = 0;
+    }
+
+    /** The next node in preorder, or null if the walk is over. */
+    Tree next() {
+      if (replay < replayEnd) {
+        Tree node = path[replay];
+        depth = replay + 1;
+        if (depth == replayEnd) {
+          nextChild[replay] = replayChild;
+        }
+        replay++;
+        return node;
+      }
+      if (root != null) {
+        Tree node = root;
+        root = null;
+        push(node, null);
+        return node;
+      }
+      while (depth > 0) {
+        Tree[] kids = path[depth - 1].children();
+        int k = nextChild[depth - 1];
+        if (k < kids.length) {
+          nextChild[depth - 1] = k + 1;
+          push(kids[k], k > 0 ? kids[k - 1] : null);
+          return kids[k];
+        }
+        depth--;
+      }
+      return null;
+    }
+
+    /** Goes on through the walk until it has given <code>node</code>. */
+    void skipTo(Tree node) {
+      for (Tree next = next(); next != node && next != null; next = next()) {
+      }
+    }
+
+    /**
+     * Goes back after surgery at the node last given, by an operation whose
+     * pattern only looks within that node's subtree.  Such surgery only
+     * changes that subtree, the children of the node's parent where the node
+     * was, and the nodes above, some of which it may prune.  So the walk
+     * gives again the nodes from the root down to the parent, or to the
+     * lowest of them still in the tree, and then goes on from the child of
+     * that last one where the changes begin.
+     */
+    void resume() {
+      int end = depth - 1;
+      if (end == 0) {
+        // the root itself matched, so all of it may have changed
+        replay = 0;
+        replayEnd = 1;
+        replayChild = 0;
+        return;
+      }
+      for (int i = 1; i < end; i++) {
+        Tree[] kids = path[i - 1].children();
+        int k = nextChild[i - 1] - 1;
+        if (k >= kids.length || kids[k] != path[i]) {
+          end = i;
+          break;
+        }
+      }
+      // the children before the one on the path are unchanged, as long as
+      // the one just before it is still in its place
+      Tree[] kids = path[end - 1].children();
+      int k = nextChild[end - 1] - 1;
+      if (k > kids.length || (k > 0 && kids[k - 1] != previousSibling[end])) {
+        k = 0;
+      }
+      root = null;
+      replay = 0;
+      replayEnd = end;
+      replayChild = k;
+    }
+
+    private void push(Tree node, Tree previous) {
+      if (depth == path.length) {
+        Tree[] newPath = new Tree[2 * depth];
+        System.arraycopy(path, 0, newPath, 0, depth);
+        path = newPath;
+        int[] newNextChild = new int[2 * depth];
+        System.arraycopy(nextChild, 0, newNextChild, 0, depth);
+        nextChild = newNextChild;
+        Tree[] newPreviousSibling = new Tree[2 * depth];
+        System.arraycopy(previousSibling, 0, newPreviousSibling, 0, depth);
+        previousSibling = newPreviousSibling;
+      }
+      path[depth] = node;
+      nextChild[depth] = 0;
+      previousSibling[depth] = previous;
+      depth++;
+    }
+
+  } // end class PreorderWalk
+
+
+  /**
+   * Applies each of a list of operations in turn to each of some trees, as
+   * {@link #processPatternsOnTree(List, Tree)} does, on
+   * <code>parallelism</code> worker threads at once.  The operations are
+   * shared by the threads, as they are not changed by the surgery, but the
+   * trees must not share nodes.  The trees are read, and the results given
+   * back, on the calling thread, as the returned iterator is gone through;
+   * only a bounded number of trees are read ahead, so arbitrarily many can
+   * be processed.
+   *
+   * @param ops The patterns and surgical operations, in the order to apply them
+   * @param trees The trees to perform surgery on
+   * @param parallelism The number of worker threads to use
+   * @return The results of the surgery, each null if its tree was deleted,
+   *         in the order of the trees
+   */
+  public static Iterator<Tree> processPatternsOnTrees(final List<Pair<TregexPattern, TsurgeonPattern>> ops,
+                                                      Iterable<Tree> trees, int parallelism) {
+    final TregexPatternSet patternSet = getPatternSet(ops);
+    return new InOrderMapper<Tree,Tree>(new Factory<Function<Tree,Tree>>() {
+      private static final long serialVersionUID = 1L;
+      public Function<Tree,Tree> create() {
+        final TsurgeonContext context = new TsurgeonContext(null);
+        return new Function<Tree,Tree>() {
+          public Tree apply(Tree t) {
+            return processPatternsOnTree(ops, patternSet, t, context);
+          }
+        };
+      }
+    }, parallelism).map(trees.iterator());
+  }
+
+  /**
+   * Returns a {@link TreeTransformer} that applies <code>ops</code> to each
+   * tree it is given, as {@link #processPatternsOnTree(List, Tree)} does, so
+   * that the operations can be a stage of a lazy treebank pipeline, such as
+   * {@link Treebank#transform(TreeTransformer, int)}.  The tree given is
+   * changed, not copied.  The transformer can be used from several threads
+   * at once.
+   *
+   * @param ops The patterns and surgical operations, in the order to apply them
+   */
+  public static TreeTransformer getTransformer(final List<Pair<TregexPattern, TsurgeonPattern>> ops) {
+    final TregexPatternSet patternSet = getPatternSet(ops);
+    return new TreeTransformer() {
+      public Tree transformTree(Tree t) {
+        return processPatternsOnTree(ops, patternSet, t);
+      }
+    };
+  }
 
   /**
    * Parses an operation string into a {@link TsurgeonPattern}.  Throws an {@link IllegalArgumentException} if
@@ -0,0 +1,59 @@
+package edu.stanford.nlp.trees.tregex.tsurgeon;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import edu.stanford.nlp.trees.Tree;
+
+/**
+ * The state of one application of Tsurgeon operations to a tree: the nodes
+ * the operations have made and named, the coindexation indices handed out,
+ * and where the changes are recorded, if anywhere.  Keeping it here, rather
+ * than in the {@link TsurgeonPattern}s, lets a compiled pattern be applied
+ * to different trees on several threads at once, each with a context of its
+ * own.  A context must only be used by one thread at a time.
+ */
+final class TsurgeonContext {
+
+  /** The nodes made by the operations, such as inserted trees, by name. */
+  final Map<String, Tree> newNodeNames = new HashMap<String, Tree>();
+  final CoindexationGenerator coindexer = new CoindexationGenerator();
+  /** Where the changes are recorded, or null if they are not. */
+  final TreeEditLog edits;
+  /** Whether a pattern has matched the tree since this was last reset. */
+  boolean matched; // = false;
+
+  TsurgeonContext(TreeEditLog edits) {
+    this.edits = edits;
+  }
+
+  /**
+   * Readies the context for applying <code>op</code> to <code>t</code> for
+   * a match.  This is done once for each match, however many operations the
+   * operation (through {@link Tsurgeon#collectOperations}) is made of, so
+   * that those after an insertion can refer to the new nodes by name.  The
+   * tree is only searched for the highest coindexation index if
+   * <code>op</code> coindexes nodes.
+   */
+  void startSurgery(Tree t, TsurgeonPattern op) {
+    newNodeNames.clear();
+    if (op.coindexes()) {
+      coindexer.setLastIndex(t);
+    }
+  }
+
+  /** Records the children of <code>node</code>, if changes are recorded, before an operation changes them. */
+  void changingChildren(Tree node) {
+    if (edits != null) {
+      edits.recordChildren(node);
+    }
+  }
+
+  /** Records the label value of <code>node</code>, if changes are recorded, before an operation changes it. */
+  void changingValue(Tree node) {
+    if (edits != null) {
+      edits.recordValue(node);
+    }
+  }
+
+}
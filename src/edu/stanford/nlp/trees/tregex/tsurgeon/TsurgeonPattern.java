@@ -42,7 +42,6 @@ public abstract class TsurgeonPattern {
 
   static final TsurgeonPattern[] EMPTY_TSURGEON_PATTERN_ARRAY = new TsurgeonPattern[0];
 
-  TsurgeonPatternRoot root;
   String label;
   TsurgeonPattern[] children;
 
@@ -51,13 +50,6 @@ public abstract class TsurgeonPattern {
     this.children = children;
   }
 
-  protected void setRoot(TsurgeonPatternRoot root) {
-    this.root = root;
-    for (TsurgeonPattern child : children) {
-      child.setRoot(root);
-    }
-  }
-
   @Override
   public String toString() {
     StringBuilder resultSB = new StringBuilder();
@@ -83,6 +75,36 @@ public abstract class TsurgeonPattern {
    * @param m the successfully matched {@link TregexMatcher}
    * @return some node in the tree; depends on implementation and use of the specific subclass.
    */
-  public abstract Tree evaluate(Tree t, TregexMatcher m);
+  public Tree evaluate(Tree t, TregexMatcher m) {
+    TsurgeonContext context = new TsurgeonContext(null);
+    context.startSurgery(t, this);
+    return evaluate(t, m, context);
+  }
+
+  /**
+   * Evaluates the pattern as {@link #evaluate(Tree, TregexMatcher)} does,
+   * keeping the state of the surgery in <code>context</code>, so that the
+   * pattern itself is not changed and can be evaluated on several threads
+   * at once.
+   *
+   * @param t the {@link Tree} that has been matched upon
+   * @param m the successfully matched {@link TregexMatcher}
+   * @param context the state of this application of the operations
+   * @return some node in the tree; depends on implementation and use of the specific subclass.
+   */
+  abstract Tree evaluate(Tree t, TregexMatcher m, TsurgeonContext context);
+
+  /**
+   * Whether this pattern, or one of its parts, hands out new coindexation
+   * indices, and so needs to know the highest index already in the tree.
+   */
+  boolean coindexes() {
+    for (TsurgeonPattern child : children) {
+      if (child.coindexes()) {
+        return true;
+      }
+    }
+    return false;
+  }
 
 }
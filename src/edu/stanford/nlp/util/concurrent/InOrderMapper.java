@@ -0,0 +1,253 @@
+package edu.stanford.nlp.util.concurrent;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import edu.stanford.nlp.util.AbstractIterator;
+import edu.stanford.nlp.util.Factory;
+import edu.stanford.nlp.util.Function;
+
+/**
+ * <p>
+ * Applies a function to a sequence of items on a pool of worker threads,
+ * and gives back the results in the order of the items, as if the function
+ * had been applied to them one after another.
+ * </p>
+ *
+ * <p>
+ * The items are read, and the results are consumed, on the calling thread,
+ * through the iterator that {@link #map} returns.  Only a bounded number of
+ * items are read ahead of the result last consumed, so that arbitrarily long
+ * sequences (such as the trees of a large {@link
+ * edu.stanford.nlp.trees.DiskTreebank}) can be processed in constant space.
+ * </p>
+ *
+ * <p>
+ * If the function is not safe to call from several threads at once, give a
+ * {@link Factory} instead: each worker thread then gets its own function.
+ * </p>
+ *
+ * <p>
+ * The worker threads are started as they are needed, and each exits once it
+ * has had nothing to do for a while, so the results need not be gone
+ * through to the end.  A caller that stops early should still {@link
+ * Results#close close} them, in a <code>finally</code> block, so that the
+ * items read ahead are not worked on for nothing and the threads exit at once.
+ * </p>
+ *
+ * @param <I> The type of the items
+ * @param <O> The type of the results
+ */
+public class InOrderMapper<I, O> {
+
+  /** How long, in milliseconds, a worker thread waits for work before it exits. */
+  private static final long KEEP_ALIVE_MILLIS = 1000;
+
+  private final Factory<? extends Function<I, O>> functionFactory;
+  private final int numThreads;
+  private final int maxPending;
+
+  /**
+   * Makes a mapper that applies the one <code>function</code> on all the
+   * threads, which must therefore be thread-safe.
+   *
+   * @param function The function to apply
+   * @param numThreads The number of worker threads to use
+   */
+  public InOrderMapper(final Function<I, O> function, int numThreads) {
+    this(new Factory<Function<I, O>>() {
+      private static final long serialVersionUID = 1L;
+      public Function<I, O> create() {
+        return function;
+      }
+    }, numThreads);
+  }
+
+  /**
+   * Makes a mapper in which each worker thread applies its own function,
+   * made by <code>functionFactory</code> when the thread first needs it.
+   *
+   * @param functionFactory Makes the functions to apply
+   * @param numThreads The number of worker threads to use
+   */
+  public InOrderMapper(Factory<? extends Function<I, O>> functionFactory, int numThreads) {
+    if (numThreads < 1) {
+      throw new IllegalArgumentException("Number of threads must be at least 1: " + numThreads);
+    }
+    this.functionFactory = functionFactory;
+    this.numThreads = numThreads;
+    this.maxPending = 4 * numThreads;
+  }
+
+  /**
+   * Returns an iterator over the results of applying the function to each of
+   * <code>items</code>, in order.  An exception thrown by the function is
+   * rethrown by <code>next()</code> for the item that caused it, after which
+   * the results are closed.
+   *
+   * @param items The items to apply the function to
+   * @return The results, in the order of the items
+   */
+  public Results<I, O> map(Iterator<? extends I> items) {
+    return new Results<I, O>(items, functionFactory, numThreads, maxPending);
+  }
+
+
+  /**
+   * The results of a {@link InOrderMapper#map}, which are worked out by
+   * worker threads of their own.
+   */
+  public static class Results<I, O> extends AbstractIterator<O> implements Closeable {
+
+    private final Iterator<? extends I> items;
+    private final int numThreads;
+    private final int maxPending;
+    private final ThreadLocal<Function<I, O>> functions;
+
+    /** The results not yet given back, in order. */
+    private final LinkedList<FutureTask<O>> pending = new LinkedList<FutureTask<O>>();
+    /** The work not yet started, which the worker threads take. */
+    private final BlockingQueue<FutureTask<O>> work = new LinkedBlockingQueue<FutureTask<O>>();
+    /** The running worker threads, which is also the lock for starting and stopping them. */
+    private final List<Thread> workers = new ArrayList<Thread>();
+    private volatile boolean closed; // = false;
+
+    Results(Iterator<? extends I> items, final Factory<? extends Function<I, O>> functionFactory,
+            int numThreads, int maxPending) {
+      this.items = items;
+      this.numThreads = numThreads;
+      this.maxPending = maxPending;
+      functions = new ThreadLocal<Function<I, O>>() {
+        @Override
+        protected Function<I, O> initialValue() {
+          return functionFactory.create();
+        }
+      };
+      submitPending();
+    }
+
+    private void submitPending() {
+      while (pending.size() < maxPending && items.hasNext()) {
+        final I item = items.next();
+        FutureTask<O> task = new FutureTask<O>(new Callable<O>() {
+          public O call() {
+            return functions.get().apply(item);
+          }
+        });
+        pending.add(task);
+        work.add(task);
+        synchronized (workers) {
+          if (workers.size() < numThreads) {
+            startWorker();
+          }
+        }
+      }
+      if (pending.isEmpty()) {
+        close();
+      }
+    }
+
+    /** Starts a worker thread.  Must be called holding the lock of <code>workers</code>. */
+    private void startWorker() {
+      Thread worker = new Thread(new Runnable() {
+        public void run() {
+          runWork();
+        }
+      }, "InOrderMapper");
+      // don't keep the JVM alive if the results are abandoned
+      worker.setDaemon(true);
+      workers.add(worker);
+      worker.start();
+    }
+
+    /** What a worker thread does: runs the work it is given until there is none for a while. */
+    private void runWork() {
+      while (true) {
+        FutureTask<O> task = null;
+        try {
+          task = work.poll(KEEP_ALIVE_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+          // closed, or left over from a cancelled task
+        }
+        if (task == null) {
+          synchronized (workers) {
+            // work may have been added since the poll; if so, the caller
+            // counted on this thread to do it
+            if (closed || work.isEmpty()) {
+              workers.remove(Thread.currentThread());
+              return;
+            }
+          }
+          continue;
+        }
+        task.run();
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      return ! pending.isEmpty();
+    }
+
+    @Override
+    public O next() {
+      if (pending.isEmpty()) {
+        throw new NoSuchElementException();
+      }
+      O result;
+      try {
+        result = pending.removeFirst().get();
+      } catch (InterruptedException e) {
+        close();
+        throw new RuntimeException(e);
+      } catch (ExecutionException e) {
+        close();
+        Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException) {
+          throw (RuntimeException) cause;
+        } else if (cause instanceof Error) {
+          throw (Error) cause;
+        }
+        throw new RuntimeException(cause);
+      }
+      submitPending();
+      return result;
+    }
+
+    /**
+     * Stops working out the results: the work not yet done is dropped, that
+     * being done is interrupted, and the worker threads exit.  There are no
+     * more results after this.  Closing the results again has no effect.
+     * Like the rest of the iterator, this must be called on the thread that
+     * goes through the results.
+     */
+    public void close() {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      work.clear();
+      for (FutureTask<O> task : pending) {
+        task.cancel(true);
+      }
+      pending.clear();
+      synchronized (workers) {
+        for (Thread worker : workers) {
+          worker.interrupt();
+        }
+      }
+    }
+
+  } // end class Results
+
+}